@@ -29,6 +29,7 @@ import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.ForceRegenContextHelper;
 import org.ow2.mind.InputResourceLocator;
 import org.ow2.mind.InputResourcesHelper;
@@ -70,7 +71,7 @@ public abstract class AbstractSourceGenerator
       final Definition definition, final Map<Object, Object> context) {
     if (ForceRegenContextHelper.getForceRegen(context)) return true;
 
-    if (!outputFile.exists()) {
+    if (!FileStatCache.getFileStatCache(context).exists(outputFile)) {
       if (depLogger.isLoggable(Level.FINE)) {
         depLogger.fine("Generated source file '" + outputFile
             + "' does not exist, generate.");
@@ -44,11 +44,13 @@ import org.ow2.mind.adl.ast.ASTHelper;
 import org.ow2.mind.adl.ast.ImplementationContainer;
 import org.ow2.mind.adl.ast.Source;
 import org.ow2.mind.adl.compilation.CompilationCommandFactory;
+import org.ow2.mind.adl.compilation.PipelinedCompilationCommand;
 import org.ow2.mind.adl.implementation.ImplementationLocator;
 import org.ow2.mind.compilation.AssemblerCommand;
 import org.ow2.mind.compilation.CompilationCommand;
 import org.ow2.mind.compilation.CompilerCommand;
 import org.ow2.mind.compilation.PreprocessorCommand;
+import org.ow2.mind.error.ErrorManager;
 import org.ow2.mind.io.IOErrors;
 import org.ow2.mind.io.OutputFileLocator;
 import org.ow2.mind.preproc.MPPCommand;
@@ -70,6 +72,9 @@ public class BasicDefinitionCompiler implements DefinitionCompiler {
   @Inject
   protected CompilationCommandFactory compilationCommandFactory;
 
+  @Inject
+  protected ErrorManager              errorManagerItf;
+
   // ---------------------------------------------------------------------------
   // Implementation of the Visitor interface
   // ---------------------------------------------------------------------------
@@ -174,7 +179,7 @@ public class BasicDefinitionCompiler implements DefinitionCompiler {
           inlinedCCode = BackendFormatRenderer.sourceToLine(src) + "\n"
               + inlinedCCode + "\n";
           try {
-            SourceFileWriter.writeToFile(srcFile, inlinedCCode);
+            SourceFileWriter.writeToFile(srcFile, inlinedCCode, context);
           } catch (final IOException e) {
             throw new CompilerError(IOErrors.WRITE_ERROR, e,
                 srcFile.getAbsolutePath());
@@ -243,9 +248,8 @@ public class BasicDefinitionCompiler implements DefinitionCompiler {
             context));
         gccCommand.setAllDependenciesManaged(true);
 
-        compilationTasks.add(cppCommand);
-        compilationTasks.add(mppCommand);
-        compilationTasks.add(gccCommand);
+        addMPPCompilationCommands(cppCommand, mppCommand, gccCommand,
+            compilationTasks, context);
       }
     }
   }
@@ -325,10 +329,30 @@ public class BasicDefinitionCompiler implements DefinitionCompiler {
             context));
         gccCommand.setAllDependenciesManaged(true);
 
-        compilationTasks.add(cppCommand);
-        compilationTasks.add(mppCommand);
-        compilationTasks.add(gccCommand);
+        addMPPCompilationCommands(cppCommand, mppCommand, gccCommand,
+            compilationTasks, context);
       }
     }
   }
+
+  /**
+   * Adds the given CPP, MPP and GCC commands to the given collection, either
+   * separately, or as a single {@link PipelinedCompilationCommand} if they can
+   * be pipelined.
+   */
+  protected void addMPPCompilationCommands(
+      final PreprocessorCommand cppCommand, final MPPCommand mppCommand,
+      final CompilerCommand gccCommand,
+      final Collection<CompilationCommand> compilationTasks,
+      final Map<Object, Object> context) {
+    if (PipelinedCompilationCommand.canPipeline(cppCommand, mppCommand,
+        gccCommand, context)) {
+      compilationTasks.add(new PipelinedCompilationCommand(cppCommand,
+          mppCommand, gccCommand, errorManagerItf));
+    } else {
+      compilationTasks.add(cppCommand);
+      compilationTasks.add(mppCommand);
+      compilationTasks.add(gccCommand);
+    }
+  }
 }
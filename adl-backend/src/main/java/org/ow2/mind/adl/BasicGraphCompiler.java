@@ -22,26 +22,59 @@
 
 package org.ow2.mind.adl;
 
+import static org.ow2.mind.PathHelper.fullyQualifiedNameToDirName;
+
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.error.GenericErrors;
+import org.ow2.mind.ConcurrentContextHelper;
+import org.ow2.mind.ThreadPoolHelper;
 import org.ow2.mind.adl.graph.ComponentGraph;
+import org.ow2.mind.compilation.BasicCompilationCommandExecutor;
 import org.ow2.mind.compilation.CompilationCommand;
+import org.ow2.mind.io.OutputFileLocator;
 
 import com.google.inject.Inject;
 
+/**
+ * Basic {@link GraphCompiler} that compiles each definition of the graph once
+ * and then compiles the instances of each definition.
+ * <p>
+ * If the number of {@link BasicCompilationCommandExecutor#CONCURENT_JOBS_CONTEXT_KEY
+ * concurrent jobs} registered in the context is greater than one, definitions
+ * are compiled (i.e. their source files are generated and their compilation
+ * commands are created) concurrently on a pool of threads. The returned
+ * commands are merged in the order in which definitions are found in the
+ * graph, so the result does not depend on the scheduling of the threads.
+ * Since definition compilers store their state in the context, definitions are
+ * compiled concurrently only if the context is
+ * {@link ConcurrentContextHelper#isThreadSafe thread-safe}.
+ */
 public class BasicGraphCompiler implements GraphCompiler {
 
+  private static final String EXECUTOR_CONTEXT_KEY = "definition-compiler-executor";
+
   @Inject
-  protected DefinitionCompiler definitionCompilerItf;
+  protected DefinitionCompiler  definitionCompilerItf;
 
   @Inject
-  protected InstanceCompiler   instanceCompilerItf;
+  protected InstanceCompiler    instanceCompilerItf;
+
+  @Inject
+  protected OutputFileLocator   outputFileLocatorItf;
 
   // ---------------------------------------------------------------------------
   // Implementation of the Visitor interface
@@ -54,8 +87,17 @@ public class BasicGraphCompiler implements GraphCompiler {
     final List<Definition> definitionList = new ArrayList<Definition>();
     final Map<String, Collection<ComponentGraph>> instanceMap = new HashMap<String, Collection<ComponentGraph>>();
 
-    // visit graph to build instanceMap and compile definitions
-    visitGraph(graph, instanceMap, definitionList, result, context);
+    // visit graph to build instanceMap and definitionList
+    visitGraph(graph, instanceMap, definitionList, context);
+
+    // create in one pass the output directories of the definitions
+    createOutputDirs(definitionList, context);
+
+    // compile definitions
+    for (final Collection<CompilationCommand> commands : compileDefinitions(
+        definitionList, context)) {
+      result.addAll(commands);
+    }
 
     if (instanceCompilerItf != null) {
       final Definition topLevelDef = graph.getDefinition();
@@ -74,16 +116,13 @@ public class BasicGraphCompiler implements GraphCompiler {
 
   protected void visitGraph(final ComponentGraph graph,
       final Map<String, Collection<ComponentGraph>> instanceMap,
-      final List<Definition> definitionList,
-      final List<CompilationCommand> result, final Map<Object, Object> context)
+      final List<Definition> definitionList, final Map<Object, Object> context)
       throws ADLException {
 
     Collection<ComponentGraph> instances = instanceMap.get(graph
         .getDefinition().getName());
     if (instances == null) {
-      // new definition, compile it.
-      result
-          .addAll(definitionCompilerItf.visit(graph.getDefinition(), context));
+      // new definition, it will be compiled.
       instances = new ArrayList<ComponentGraph>();
       instances.add(graph);
       instanceMap.put(graph.getDefinition().getName(), instances);
@@ -95,7 +134,94 @@ public class BasicGraphCompiler implements GraphCompiler {
 
     for (final ComponentGraph subComp : graph.getSubComponents()) {
       // TODO handle shared components
-      visitGraph(subComp, instanceMap, definitionList, result, context);
+      visitGraph(subComp, instanceMap, definitionList, context);
+    }
+  }
+
+  /**
+   * Creates the output directories into which the files of the given
+   * definitions will be generated, so that these directories are not checked
+   * one by one while the definitions are compiled.
+   * 
+   * @param definitionList the definitions that will be compiled.
+   * @param context the context.
+   */
+  protected void createOutputDirs(final List<Definition> definitionList,
+      final Map<Object, Object> context) {
+    final File outputDir = outputFileLocatorItf.getCSourceOutputDir(context);
+    final Collection<File> dirs = new HashSet<File>();
+    for (final Definition def : definitionList) {
+      dirs.add(new File(outputDir, fullyQualifiedNameToDirName(def.getName())));
+    }
+    outputFileLocatorItf.createOutputDirs(dirs, context);
+  }
+
+  /**
+   * Compiles the given definitions, concurrently if more than one job is
+   * registered in the given context and if this context is thread-safe.
+   * 
+   * @param definitionList the definitions to compile.
+   * @param context the context.
+   * @return the compilation commands of each definition, in the order of the
+   *         given list.
+   * @throws ADLException the exception thrown by the compilation of the first
+   *           definition (in the order of the given list) that failed.
+   */
+  protected List<Collection<CompilationCommand>> compileDefinitions(
+      final List<Definition> definitionList, final Map<Object, Object> context)
+      throws ADLException {
+    final List<Collection<CompilationCommand>> result = new ArrayList<Collection<CompilationCommand>>(
+        definitionList.size());
+    final int jobs = getJobs(context);
+    if (jobs <= 1 || definitionList.size() <= 1
+        || !ConcurrentContextHelper.isThreadSafe(context)) {
+      for (final Definition def : definitionList) {
+        result.add(definitionCompilerItf.visit(def, context));
+      }
+      return result;
+    }
+
+    final List<Callable<Collection<CompilationCommand>>> tasks = new ArrayList<Callable<Collection<CompilationCommand>>>(
+        definitionList.size());
+    for (final Definition def : definitionList) {
+      tasks.add(new Callable<Collection<CompilationCommand>>() {
+        public Collection<CompilationCommand> call() throws ADLException {
+          return definitionCompilerItf.visit(def, context);
+        }
+      });
+    }
+
+    final List<Future<Collection<CompilationCommand>>> futures;
+    try {
+      futures = ThreadPoolHelper.getDaemonThreadPool(context,
+          EXECUTOR_CONTEXT_KEY, "mindc-generator", jobs).invokeAll(tasks);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+          "Interrupted while compiling definitions");
+    }
+
+    for (final Future<Collection<CompilationCommand>> future : futures) {
+      try {
+        result.add(future.get());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+            "Interrupted while compiling definitions");
+      } catch (final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof ADLException) throw (ADLException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, cause);
+      }
     }
+    return result;
+  }
+
+  protected int getJobs(final Map<Object, Object> context) {
+    final Object jobs = context
+        .get(BasicCompilationCommandExecutor.CONCURENT_JOBS_CONTEXT_KEY);
+    return (jobs instanceof Integer) ? (Integer) jobs : 1;
   }
 }
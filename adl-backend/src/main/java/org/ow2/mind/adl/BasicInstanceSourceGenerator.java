@@ -121,7 +121,7 @@ public class BasicInstanceSourceGenerator extends AbstractSourceGenerator
       }
 
       try {
-        SourceFileWriter.writeToFile(outputFile, st.toString());
+        SourceFileWriter.writeToFile(outputFile, st.toString(), context);
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             outputFile.getAbsolutePath());
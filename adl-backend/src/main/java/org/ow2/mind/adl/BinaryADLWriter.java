@@ -32,9 +32,11 @@ import java.util.logging.Logger;
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.Definition;
-import org.objectweb.fractal.adl.io.NodeOutputStream;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.InputResourcesHelper;
+import org.ow2.mind.io.BinaryASTOutputStream;
 import org.ow2.mind.io.IOErrors;
 
 public class BinaryADLWriter extends AbstractSourceGenerator
@@ -65,21 +67,30 @@ public class BinaryADLWriter extends AbstractSourceGenerator
     final File outputFile = outputFileLocatorItf.getMetadataOutputFile(
         BasicADLLocator.getADLBinaryName(definition), context);
 
-    if (regenerate(outputFile, definition, context)) {
+    // binary ADL written by previous versions of the compiler have no
+    // dependency manifest, regenerate them.
+    if (!FileStatCache.getFileStatCache(context).exists(
+        InputResourcesHelper.getDependencyManifestFile(outputFile))
+        || regenerate(outputFile, definition, context)) {
 
-      NodeOutputStream nos = null;
+      BinaryASTOutputStream bos = null;
       try {
         if (logger.isLoggable(Level.FINE))
           logger.log(Level.FINE, "Write binary ADL to " + outputFile);
-        nos = new NodeOutputStream(new FileOutputStream(outputFile));
-        nos.writeObject(definition);
+        bos = new BinaryASTOutputStream(new FileOutputStream(outputFile));
+        bos.writeNode(definition);
+        bos.close();
+        bos = null;
+        FileStatCache.fileWritten(outputFile);
+        InputResourcesHelper.writeDependencyManifest(outputFile,
+            InputResourcesHelper.getInputResources(definition));
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             "Can't write binary ADL to file " + outputFile);
       } finally {
-        if (nos != null)
+        if (bos != null)
           try {
-            nos.close();
+            bos.close();
           } catch (final IOException e) {
             if (logger.isLoggable(Level.WARNING))
               logger
@@ -87,7 +87,7 @@ public class DefinitionHeaderSourceGenerator extends AbstractSourceGenerator
       st.setAttribute("definition", definition);
 
       try {
-        SourceFileWriter.writeToFile(outputFile, st.toString());
+        SourceFileWriter.writeToFile(outputFile, st.toString(), context);
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             outputFile.getAbsolutePath());
@@ -124,7 +124,7 @@ public class DefinitionIncSourceGenerator extends AbstractSourceGenerator
       }
 
       try {
-        SourceFileWriter.writeToFile(outputFile, st.toString());
+        SourceFileWriter.writeToFile(outputFile, st.toString(), context);
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             outputFile.getAbsolutePath());
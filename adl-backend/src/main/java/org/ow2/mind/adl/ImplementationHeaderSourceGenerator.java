@@ -95,7 +95,8 @@ public class ImplementationHeaderSourceGenerator
     if (regenerate(headerFile, definition, context)) {
 
       try {
-        SourceFileWriter.writeToFile(headerFile, getFileContent(definition));
+        SourceFileWriter.writeToFile(headerFile, getFileContent(definition),
+            context);
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             headerFile.getAbsolutePath());
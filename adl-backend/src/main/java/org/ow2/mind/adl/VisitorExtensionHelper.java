@@ -24,6 +24,7 @@ package org.ow2.mind.adl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import org.ow2.mind.plugin.ConfigurationElement;
@@ -39,39 +40,68 @@ public class VisitorExtensionHelper {
   private static final String VISITOR                               = "visitor";
   private static final String ENABLE_WHEN                           = "enableWhen";
 
+  /**
+   * Returns the definition source generators contributed by plugins and enabled
+   * in the given context. Generators are instantiated only once per context,
+   * so that they (and their parsed template groups) are shared by every visited
+   * definition.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param context the context.
+   * @return the enabled definition source generators.
+   */
   public static Collection<DefinitionSourceGenerator> getDefinitionSourceGeneratorExtensions(
       final PluginManager pluginManagerItf, final Map<Object, Object> context) {
-    final Collection<DefinitionSourceGenerator> generators = new ArrayList<DefinitionSourceGenerator>();
-    for (final ConfigurationElement configElement : pluginManagerItf
-        .getConfigurationElements(DEFINITION_SOURCE_GENERATOR_EXTENSION,
-            VISITOR)) {
-      final ConfigurationElement condition = configElement
-          .getChild(ENABLE_WHEN);
-      if (condition == null
-          || BooleanEvaluatorHelper.evaluate(condition.getChild(),
-              pluginManagerItf, context)) {
-        generators.add(configElement.createInstance(CLASS,
-            DefinitionSourceGenerator.class));
+    return getExtensions(DEFINITION_SOURCE_GENERATOR_EXTENSION,
+        DefinitionSourceGenerator.class, pluginManagerItf, context);
+  }
+
+  /**
+   * Returns the instance source generators contributed by plugins and enabled
+   * in the given context. Generators are instantiated only once per context.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param context the context.
+   * @return the enabled instance source generators.
+   * @see #getDefinitionSourceGeneratorExtensions(PluginManager, Map)
+   */
+  public static Collection<InstanceSourceGenerator> getInstanceSourceGeneratorExtensions(
+      final PluginManager pluginManagerItf, final Map<Object, Object> context) {
+    return getExtensions(INSTANCE_SOURCE_GENERATOR_EXTENSION,
+        InstanceSourceGenerator.class, pluginManagerItf, context);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Collection<T> getExtensions(final String extensionPoint,
+      final Class<T> expectedType, final PluginManager pluginManagerItf,
+      final Map<Object, Object> context) {
+    // the instantiated generators are stored in the context with the name of
+    // the extension point as key.
+    synchronized (context) {
+      Collection<T> generators = (Collection<T>) context.get(extensionPoint);
+      if (generators == null) {
+        generators = Collections.unmodifiableCollection(createExtensions(
+            extensionPoint, expectedType, pluginManagerItf, context));
+        context.put(extensionPoint, generators);
       }
+      return generators;
     }
-    return generators;
   }
 
-  public static Collection<InstanceSourceGenerator> getInstanceSourceGeneratorExtensions(
+  private static <T> Collection<T> createExtensions(
+      final String extensionPoint, final Class<T> expectedType,
       final PluginManager pluginManagerItf, final Map<Object, Object> context) {
-    final Collection<InstanceSourceGenerator> generators = new ArrayList<InstanceSourceGenerator>();
+    final Collection<T> generators = new ArrayList<T>();
     for (final ConfigurationElement configElement : pluginManagerItf
-        .getConfigurationElements(INSTANCE_SOURCE_GENERATOR_EXTENSION, VISITOR)) {
+        .getConfigurationElements(extensionPoint, VISITOR)) {
       final ConfigurationElement condition = configElement
           .getChild(ENABLE_WHEN);
       if (condition == null
           || BooleanEvaluatorHelper.evaluate(condition.getChild(),
               pluginManagerItf, context)) {
-        generators.add(configElement.createInstance(CLASS,
-            InstanceSourceGenerator.class));
+        generators.add(configElement.createInstance(CLASS, expectedType));
       }
     }
-
     return generators;
   }
 }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.adl.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.compilation.CompilationCommand;
+import org.ow2.mind.compilation.CompileWorkerPool;
+import org.ow2.mind.compilation.CompilerCommand;
+import org.ow2.mind.compilation.CompilerContextHelper;
+import org.ow2.mind.compilation.CompilerErrors;
+import org.ow2.mind.compilation.ExecutionHelper.StreamedProcess;
+import org.ow2.mind.compilation.ObjectCache;
+import org.ow2.mind.compilation.PipeableCompilerCommand;
+import org.ow2.mind.compilation.PipeablePreprocessorCommand;
+import org.ow2.mind.compilation.PreprocessorCommand;
+import org.ow2.mind.compilation.SignedCompilationCommand;
+import org.ow2.mind.error.ErrorManager;
+import org.ow2.mind.preproc.MPPCommand;
+import org.ow2.mind.preproc.PipeableMPPCommand;
+
+/**
+ * A {@link CompilationCommand} that executes a CPP, a MPP and a GCC command in
+ * a pipeline: the output of the preprocessor is streamed to MPP that streams
+ * its output to the compiler. So the intermediate preprocessed files are never
+ * written on the file system.
+ * <p>
+ * Since the preprocessed code is never written, a pipelined compilation can
+ * neither be looked up in the {@link ObjectCache} nor be sent to a
+ * {@link CompileWorkerPool compile worker}; commands are therefore not
+ * pipelined when one of them is configured (see {@link #canPipeline}). A
+ * pipelined command is always executed locally and counts as a single job for
+ * the load throttle of the executor, although the preprocessor and the
+ * compiler run concurrently.
+ */
+public class PipelinedCompilationCommand implements SignedCompilationCommand {
+
+  protected final PipeablePreprocessorCommand cppCommand;
+  protected final PipeableMPPCommand          mppCommand;
+  protected final PipeableCompilerCommand     gccCommand;
+  protected final ErrorManager                errorManagerItf;
+
+  protected Collection<File>                  inputFiles;
+  protected Collection<File>                  outputFiles;
+
+  /**
+   * Returns <code>true</code> if the given commands can be pipelined in the
+   * given context. Pipelining requires that it is
+   * {@link CompilerContextHelper#getPipeline enabled}, that temporary files are
+   * not {@link ForceRegenContextHelper#getKeepTemp kept}, that neither an
+   * object cache nor compile workers are used (both need the preprocessed
+   * file) and that the given commands support streamed execution.
+   * 
+   * @param cppCommand the preprocessor command.
+   * @param mppCommand the MPP command.
+   * @param gccCommand the compiler command.
+   * @param context the context.
+   * @return <code>true</code> if the given commands can be pipelined.
+   */
+  public static boolean canPipeline(final PreprocessorCommand cppCommand,
+      final MPPCommand mppCommand, final CompilerCommand gccCommand,
+      final Map<Object, Object> context) {
+    return CompilerContextHelper.getPipeline(context)
+        && !ForceRegenContextHelper.getKeepTemp(context)
+        && ObjectCache.getObjectCacheDir(context) == null
+        && context.get(CompileWorkerPool.COMPILE_WORKERS_CONTEXT_KEY) == null
+        && cppCommand instanceof PipeablePreprocessorCommand
+        && mppCommand instanceof PipeableMPPCommand
+        && gccCommand instanceof PipeableCompilerCommand;
+  }
+
+  /**
+   * Creates a pipelined command. The given commands must be
+   * {@link #canPipeline pipeable}.
+   */
+  public PipelinedCompilationCommand(final PreprocessorCommand cppCommand,
+      final MPPCommand mppCommand, final CompilerCommand gccCommand,
+      final ErrorManager errorManagerItf) {
+    this.cppCommand = (PipeablePreprocessorCommand) cppCommand;
+    this.mppCommand = (PipeableMPPCommand) mppCommand;
+    this.gccCommand = (PipeableCompilerCommand) gccCommand;
+    this.errorManagerItf = errorManagerItf;
+  }
+
+  public String getCommand() {
+    return gccCommand.getCommand();
+  }
+
+  public void setCommand(final String command) {
+    throw new UnsupportedOperationException();
+  }
+
+  public Collection<File> getInputFiles() {
+    return inputFiles;
+  }
+
+  public Collection<File> getOutputFiles() {
+    return outputFiles;
+  }
+
+  public String getDescription() {
+    return "CPP|MPP|GCC: " + gccCommand.getOutputFile().getPath();
+  }
+
+  public String getSignature() {
+    return getSignature(cppCommand) + "|" + getSignature(mppCommand) + "|"
+        + getSignature(gccCommand);
+  }
+
+  protected static String getSignature(final CompilationCommand command) {
+    return (command instanceof SignedCompilationCommand)
+        ? ((SignedCompilationCommand) command).getSignature()
+        : null;
+  }
+
+  public boolean forceExec() {
+    return cppCommand.forceExec() || mppCommand.forceExec()
+        || gccCommand.forceExec();
+  }
+
+  public void prepare() {
+    cppCommand.prepare();
+    mppCommand.prepare();
+    gccCommand.prepare();
+
+    // intermediate files are neither inputs nor outputs of the pipeline.
+    final Set<File> intermediates = new LinkedHashSet<File>();
+    intermediates.add(cppCommand.getOutputFile());
+    intermediates.add(gccCommand.getInputFile());
+
+    final Set<File> inputs = new LinkedHashSet<File>();
+    addAll(inputs, cppCommand.getInputFiles(), intermediates);
+    addAll(inputs, mppCommand.getInputFiles(), intermediates);
+    addAll(inputs, gccCommand.getInputFiles(), intermediates);
+    // the dependency file of the compiler may refer to its standard input.
+    inputs.remove(new File("-"));
+    inputFiles = new ArrayList<File>(inputs);
+
+    final Set<File> outputs = new LinkedHashSet<File>();
+    addAll(outputs, cppCommand.getOutputFiles(), intermediates);
+    addAll(outputs, mppCommand.getOutputFiles(), intermediates);
+    addAll(outputs, gccCommand.getOutputFiles(), intermediates);
+    outputFiles = new ArrayList<File>(outputs);
+  }
+
+  public boolean exec() throws ADLException, InterruptedException {
+    final StreamedProcess cpp;
+    try {
+      cpp = cppCommand.startPipedExec();
+    } catch (final IOException e) {
+      errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR,
+          cppCommand.getCommand());
+      return false;
+    }
+
+    final StreamedProcess gcc;
+    try {
+      gcc = gccCommand.startPipedExec();
+    } catch (final IOException e) {
+      cpp.destroy();
+      errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR,
+          gccCommand.getCommand());
+      return false;
+    }
+    // the compiler writes its object file on the file system, but it may print
+    // messages on its standard output that must be consumed.
+    gcc.drainOutput();
+
+    boolean mppSucceed = false;
+    boolean mppCompleted = false;
+    try {
+      // the preprocessor has no input, close its standard input.
+      cpp.getOutputStream().close();
+      mppSucceed = mppCommand.exec(cpp.getInputStream(), gcc.getOutputStream());
+      mppCompleted = true;
+    } catch (final IOException e) {
+      // the standard input of the preprocessor can't be closed, MPP is not
+      // executed.
+    } finally {
+      if (!mppCompleted) {
+        // the output of the preprocessor has not been fully read.
+        cpp.destroy();
+      }
+      if (!mppSucceed) {
+        // don't let the compiler produce an object file from a partial input.
+        gcc.destroy();
+      }
+      try {
+        gcc.getOutputStream().close();
+      } catch (final IOException e) {
+        // the compiler may have terminated before reading its whole input,
+        // its error is reported by endPipedExec.
+      }
+    }
+
+    final boolean cppSucceed = cppCommand.endPipedExec(cpp);
+    if (!mppSucceed || !cppSucceed) {
+      gcc.waitFor();
+      removeOutputFile();
+      return false;
+    }
+    if (!gccCommand.endPipedExec(gcc)) {
+      removeOutputFile();
+      return false;
+    }
+    return true;
+  }
+
+  protected void removeOutputFile() {
+    gccCommand.getOutputFile().delete();
+  }
+
+  protected static void addAll(final Set<File> set,
+      final Collection<File> files, final Set<File> excluded) {
+    if (files == null) return;
+    for (final File file : files) {
+      if (!excluded.contains(file)) set.add(file);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return cppCommand + "| MPP |" + gccCommand;
+  }
+}
@@ -25,6 +25,7 @@ package org.ow2.mind.adl.idl;
 import java.util.Map;
 
 import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.ContextLocal;
 import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.interfaces.Interface;
 import org.objectweb.fractal.adl.interfaces.InterfaceContainer;
@@ -39,11 +40,21 @@ import com.google.inject.Inject;
 
 public class IDLDefinitionSourceGenerator implements DefinitionSourceGenerator {
 
+  /**
+   * Locks that serialize the compilation of IDLs within a context. Definitions
+   * may be compiled concurrently (see
+   * {@link org.ow2.mind.adl.BasicGraphCompiler}), while the same IDL is usually
+   * used by several definitions; this lock ensures that the files generated for
+   * an IDL are not written by several threads at once. Compilations of
+   * different contexts do not share their lock.
+   */
+  protected final ContextLocal<Object> contextualLocks = new ContextLocal<Object>();
+
   @Inject
-  protected IDLLoader  idlLoaderItf;
+  protected IDLLoader                  idlLoaderItf;
 
   @Inject
-  protected IDLVisitor idlCompilerItf;
+  protected IDLVisitor                 idlCompilerItf;
 
   // ---------------------------------------------------------------------------
   // Implementation of the Visitor interface
@@ -51,6 +62,28 @@ public class IDLDefinitionSourceGenerator implements DefinitionSourceGenerator {
 
   public void visit(final Definition definition,
       final Map<Object, Object> context) throws ADLException {
+    synchronized (getLock(context)) {
+      compileIDLs(definition, context);
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  protected Object getLock(final Map<Object, Object> context) {
+    synchronized (contextualLocks) {
+      Object lock = contextualLocks.get(context);
+      if (lock == null) {
+        lock = new Object();
+        contextualLocks.set(context, lock);
+      }
+      return lock;
+    }
+  }
+
+  protected void compileIDLs(final Definition definition,
+      final Map<Object, Object> context) throws ADLException {
     if (definition instanceof InterfaceContainer) {
       for (final Interface itf : ((InterfaceContainer) definition)
           .getInterfaces()) {
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.objectweb.fractal.adl.ADLException;
+import org.ow2.mind.compilation.DependencyDatabase;
 import org.ow2.mind.io.BasicOutputFileLocator;
 
 public abstract class AbstractIncrementalTest extends AbstractFunctionalTest {
@@ -221,6 +222,11 @@ public abstract class AbstractIncrementalTest extends AbstractFunctionalTest {
   protected void getTimestamps(final File f, final String path,
       final Map<String, Long> timestamps) {
     final String name = path + f.getName();
+    // digest and dependency manifests are not build outputs.
+    if (f.getName().equals(SourceFileWriter.DIGEST_MANIFEST_FILE_NAME)
+        || f.getName().equals(DependencyDatabase.DEPENDENCY_DB_FILE_NAME)
+        || f.getName().endsWith(
+            InputResourcesHelper.DEPENDENCY_MANIFEST_EXTENSION)) return;
     if (f.isDirectory()) {
       final String subPath = name + "/";
       for (final File subFile : f.listFiles()) {
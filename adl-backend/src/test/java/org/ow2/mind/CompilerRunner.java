@@ -92,7 +92,13 @@ public class CompilerRunner {
 
   public CompilerRunner(final Map<Object, Object> initialContext)
       throws ADLException {
+    this(initialContext, new File("target/build"));
+  }
+
+  public CompilerRunner(final Map<Object, Object> initialContext,
+      final File buildDir) throws ADLException {
     this.initialContext = initialContext;
+    this.buildDir = buildDir;
     final Injector pluginManagerInjector = Guice
         .createInjector(new PluginLoaderModule());
     pluginManager = pluginManagerInjector.getInstance(PluginManager.class);
@@ -108,14 +114,12 @@ public class CompilerRunner {
     definitionCompiler = injector.getInstance(DefinitionCompiler.class);
     executor = injector.getInstance(CompilationCommandExecutor.class);
 
-    buildDir = new File("target/build");
-
     // init context
     initContext();
   }
 
   public void initContext() throws ADLException {
-    context = new HashMap<Object, Object>(initialContext);
+    context = ConcurrentContextHelper.newContext(initialContext);
     if (!buildDir.exists()) {
       buildDir.mkdirs();
     }
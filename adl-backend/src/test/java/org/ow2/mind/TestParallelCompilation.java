@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ow2.mind.compilation.BasicCompilationCommandExecutor;
+import org.testng.annotations.Test;
+
+public class TestParallelCompilation extends AbstractFunctionalTest {
+
+  @Override
+  protected Map<Object, Object> getInitialContext() throws Exception {
+    final Map<Object, Object> context = super.getInitialContext();
+    context.put(BasicCompilationCommandExecutor.CONCURENT_JOBS_CONTEXT_KEY, 4);
+    return context;
+  }
+
+  @Test(groups = {"checkin"})
+  public void testHelloworld() throws Exception {
+    initSourcePath(getDepsDir("fractal/api/Component.itf").getAbsolutePath(),
+        "common", "functional");
+    runner.compileRunAndCheck("helloworld.HelloworldApplication", null);
+  }
+
+  @Test(groups = {"functional"})
+  public void testParallelOutputEqualsSequential() throws Exception {
+    final String[] adlNames = {"GenericApplication<helloworld.Helloworld>",
+        "GenericApplication<collection.HelloworldCollection4>",
+        "GenericApplication<factory.FactoryOfFactoryTest>",
+        "GenericApplication<factory.ParametricCompositeFactoryTest>"};
+    final String depsDir = getDepsDir("fractal/api/Component.itf")
+        .getAbsolutePath();
+
+    final File sequentialDir = new File("target/build-sequential");
+    final File parallelDir = new File("target/build-parallel");
+    delete(sequentialDir);
+    delete(parallelDir);
+    final CompilerRunner sequentialRunner = new CompilerRunner(
+        new HashMap<Object, Object>(), sequentialDir);
+    final CompilerRunner parallelRunner = new CompilerRunner(
+        getInitialContext(), parallelDir);
+    initSourcePath(sequentialRunner, depsDir, "common", "functional");
+    initSourcePath(parallelRunner, depsDir, "common", "functional");
+
+    for (final String adlName : adlNames) {
+      sequentialRunner.compile(adlName);
+      parallelRunner.compile(adlName);
+    }
+
+    final Map<String, String> expected = readGeneratedFiles(sequentialDir);
+    assertFalse(expected.isEmpty());
+    assertEquals(readGeneratedFiles(parallelDir), expected);
+  }
+
+  /*
+   * Returns the content of the source files generated in the given directory,
+   * indexed by their path relative to this directory. The path of the
+   * directory is replaced in the returned content, so that directories can be
+   * compared.
+   */
+  protected Map<String, String> readGeneratedFiles(final File buildDir)
+      throws IOException {
+    final Map<String, String> files = new TreeMap<String, String>();
+    readGeneratedFiles(buildDir, "", buildDir.getAbsolutePath(), files);
+    return files;
+  }
+
+  protected void readGeneratedFiles(final File dir, final String path,
+      final String buildDirPath, final Map<String, String> files)
+      throws IOException {
+    final File[] children = dir.listFiles();
+    if (children == null) return;
+    for (final File child : children) {
+      final String childPath = path + "/" + child.getName();
+      if (child.isDirectory()) {
+        readGeneratedFiles(child, childPath, buildDirPath, files);
+      } else if (child.getName().endsWith(".c")
+          || child.getName().endsWith(".h")
+          || child.getName().endsWith(".inc")) {
+        files.put(childPath, read(child).replace(buildDirPath, "${BUILD_DIR}"));
+      }
+    }
+  }
+
+  protected String read(final File file) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line = reader.readLine();
+      while (line != null) {
+        sb.append(line).append('\n');
+        line = reader.readLine();
+      }
+    } finally {
+      reader.close();
+    }
+    return sb.toString();
+  }
+
+  protected void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
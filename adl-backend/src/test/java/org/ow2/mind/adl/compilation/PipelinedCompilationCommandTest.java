@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.adl.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.ow2.mind.compilation.CompilerCommand;
+import org.ow2.mind.compilation.CompilerContextHelper;
+import org.ow2.mind.compilation.CompileWorkerPool;
+import org.ow2.mind.compilation.ObjectCache;
+import org.ow2.mind.compilation.PreprocessorCommand;
+import org.ow2.mind.compilation.gcc.GccCompilerWrapper;
+import org.ow2.mind.error.ErrorManagerFactory;
+import org.ow2.mind.preproc.MPPCommand;
+import org.ow2.mind.preproc.PipeableMPPCommand;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PipelinedCompilationCommandTest {
+
+  static final String SOURCE = "int foo;\n";
+
+  File                testDir;
+  GccCompilerWrapper  wrapper;
+  Map<Object, Object> context;
+  File                srcFile;
+  File                objFile;
+  TestMPPCommand      mppCommand;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws IOException {
+    testDir = new File("target/test/pipelined-command");
+    testDir.mkdirs();
+    wrapper = new GccCompilerWrapper();
+    wrapper.errorManagerItf = ErrorManagerFactory.newSimpleErrorManager();
+    context = new HashMap<Object, Object>();
+    CompilerContextHelper.setPipeline(context, true);
+    srcFile = new File(testDir, "foo.c");
+    writeFile(srcFile, SOURCE);
+    objFile = new File(testDir, "foo.o");
+    objFile.delete();
+    mppCommand = new TestMPPCommand();
+  }
+
+  @Test(groups = {"functional"})
+  public void testSuccess() throws Exception {
+    setFakeCompiler(0, 0);
+    assertTrue(exec());
+    // the code went through the whole pipeline.
+    assertEquals(readFile(objFile), "/* mpp */\n" + SOURCE);
+    assertTrue(wrapper.errorManagerItf.getErrors().isEmpty());
+  }
+
+  @Test(groups = {"functional"})
+  public void testCompilerFailure() throws Exception {
+    setFakeCompiler(0, 1);
+    assertFalse(exec());
+    assertFalse(objFile.exists());
+    assertEquals(wrapper.errorManagerItf.getErrors().size(), 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testPreprocessorFailure() throws Exception {
+    setFakeCompiler(1, 0);
+    assertFalse(exec());
+    assertFalse(objFile.exists());
+    assertEquals(wrapper.errorManagerItf.getErrors().size(), 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testMPPFailure() throws Exception {
+    setFakeCompiler(0, 0);
+    mppCommand.fail = true;
+    assertFalse(exec());
+    assertFalse(objFile.exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testCanPipeline() throws Exception {
+    final PreprocessorCommand cppCommand = wrapper
+        .newPreprocessorCommand(context);
+    final CompilerCommand gccCommand = wrapper.newCompilerCommand(context);
+    assertTrue(PipelinedCompilationCommand.canPipeline(cppCommand,
+        mppCommand, gccCommand, context));
+
+    // the object cache and compile workers need the preprocessed file.
+    ObjectCache.setObjectCacheDir(context, new File(testDir, "cache"));
+    assertFalse(PipelinedCompilationCommand.canPipeline(cppCommand,
+        mppCommand, gccCommand, context));
+    context.remove(ObjectCache.OBJECT_CACHE_DIR_CONTEXT_KEY);
+    context.put(CompileWorkerPool.COMPILE_WORKERS_CONTEXT_KEY,
+        Collections.emptyList());
+    assertFalse(PipelinedCompilationCommand.canPipeline(cppCommand,
+        mppCommand, gccCommand, context));
+  }
+
+  protected boolean exec() throws ADLException, InterruptedException {
+    final PreprocessorCommand cppCommand = wrapper
+        .newPreprocessorCommand(context);
+    cppCommand.setInputFile(srcFile);
+    cppCommand.setOutputFile(new File(testDir, "foo.i"));
+    mppCommand.setInputFile(new File(testDir, "foo.i"));
+    mppCommand.setOutputFile(new File(testDir, "foo.mpp.c"));
+    final CompilerCommand gccCommand = wrapper.newCompilerCommand(context);
+    gccCommand.setInputFile(new File(testDir, "foo.mpp.c"));
+    gccCommand.setOutputFile(objFile);
+
+    final PipelinedCompilationCommand command = new PipelinedCompilationCommand(
+        cppCommand, mppCommand, gccCommand, wrapper.errorManagerItf);
+    command.prepare();
+    return command.exec();
+  }
+
+  /**
+   * Uses a shell script as compiler command. When invoked with "-E", it prints
+   * its input file; otherwise it copies its standard input in its "-o" file and
+   * then prints more than the capacity of a pipe on its standard output.
+   */
+  protected void setFakeCompiler(final int cppStatus, final int gccStatus)
+      throws IOException {
+    final File script = new File(testDir, "fake-gcc-" + cppStatus + gccStatus
+        + ".sh");
+    writeFile(script, "#!/bin/sh\n" //
+        + "prev=\n" //
+        + "for arg in \"$@\"; do\n" //
+        + "  [ \"$prev\" = \"-o\" ] && out=\"$arg\"\n" //
+        + "  [ \"$arg\" = \"-E\" ] && mode=cpp\n" //
+        + "  prev=\"$arg\"\n" //
+        + "done\n" //
+        + "if [ \"$mode\" = \"cpp\" ]; then\n" //
+        + "  cat \"$prev\"\n" //
+        + "  exit " + cppStatus + "\n" //
+        + "fi\n" //
+        + "cat > \"$out\"\n" //
+        + "i=0\n" //
+        + "while [ $i -lt 4000 ]; do\n" //
+        + "  echo \"note: this compiler is very talkative\"\n" //
+        + "  i=$((i+1))\n" //
+        + "done\n" //
+        + "exit " + gccStatus + "\n");
+    script.setExecutable(true);
+    CompilerContextHelper.setCompilerCommand(context, script.getAbsolutePath());
+  }
+
+  protected static void writeFile(final File file, final String content)
+      throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  protected static String readFile(final File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      copy(in, out);
+      return out.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  protected static void copy(final InputStream in, final OutputStream out)
+      throws IOException {
+    final byte[] buffer = new byte[4096];
+    int n;
+    while ((n = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, n);
+    }
+  }
+
+  /** MPP command that prepends a comment to the code it reads. */
+  static class TestMPPCommand implements PipeableMPPCommand {
+
+    File    inputFile;
+    File    outputFile;
+    boolean fail;
+
+    public MPPCommand setSingletonMode() {
+      return this;
+    }
+
+    public MPPCommand unsetSingletonMode() {
+      return this;
+    }
+
+    public MPPCommand setOutputFile(final File outputFile) {
+      this.outputFile = outputFile;
+      return this;
+    }
+
+    public MPPCommand setHeaderOutputFile(final File headerOutputFile) {
+      return this;
+    }
+
+    public MPPCommand setInputFile(final File inputFile) {
+      this.inputFile = inputFile;
+      return this;
+    }
+
+    public String getCommand() {
+      return "mpp";
+    }
+
+    public void setCommand(final String command) {
+    }
+
+    public Collection<File> getInputFiles() {
+      return Collections.singletonList(inputFile);
+    }
+
+    public Collection<File> getOutputFiles() {
+      return Collections.singletonList(outputFile);
+    }
+
+    public String getDescription() {
+      return "MPP: " + outputFile.getPath();
+    }
+
+    public boolean forceExec() {
+      return false;
+    }
+
+    public void prepare() {
+    }
+
+    public boolean exec() {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean exec(final InputStream in, final OutputStream out) {
+      if (fail) return false;
+      try {
+        out.write("/* mpp */\n".getBytes("UTF-8"));
+        copy(in, out);
+        return true;
+      } catch (final IOException e) {
+        return false;
+      }
+    }
+  }
+}
@@ -113,6 +113,7 @@ public class ADLFrontendModule extends AbstractADLFrontendModule {
     bind(defaultLoaderKey())
         .toChainStartingWith(CacheLoader.class)
         .followedBy(TemplateInstanceLoader.class)
+        .followedBy(ContentHashADLLoader.class)
         .followedBy(BinaryADLLoader.class)
         .followedBy(
             new AnnotationProcessorProvider(binder(),
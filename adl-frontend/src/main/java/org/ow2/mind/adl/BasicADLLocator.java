@@ -24,14 +24,13 @@ package org.ow2.mind.adl;
 
 import static org.ow2.mind.PathHelper.fullyQualifiedNameToPath;
 
-import java.io.IOException;
 import java.net.URL;
-import java.util.Enumeration;
 import java.util.Map;
 
 import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.util.ClassLoaderHelper;
 import org.ow2.mind.InputResource;
+import org.ow2.mind.SourcePathIndex;
 
 import com.google.common.collect.Lists;
 
@@ -81,30 +80,20 @@ public class BasicADLLocator implements ADLLocator {
   // ---------------------------------------------------------------------------
 
   public URL findBinaryADL(final String name, final Map<Object, Object> context) {
-    return ClassLoaderHelper.getClassLoader(this, context).getResource(
+    return getSourcePathIndex(context).findResource(
         getADLBinaryName(name).substring(1));
   }
 
   public URL findSourceADL(final String name, final Map<Object, Object> context) {
-    try {
-      /*
-       * Usual case was with getResource. However, the Maven plugin case is more
-       * complex: when using elements from fractal-runtime, it would find
-       * matches in the fractal-runtime.jar in the Maven cache + matches in the
-       * compiler's distribution 'runtime' folder. We get all possible contents,
-       * and return a file-system entry only, thus discarding jar contents.
-       */
-      final Enumeration<URL> urls = ClassLoaderHelper.getClassLoader(this,
-          context).getResources(getADLSourceName(name).substring(1));
-
-      while (urls.hasMoreElements()) {
-        final URL url = urls.nextElement();
-        if (url.getProtocol().equals("file")) return url;
-      }
-    } catch (final IOException e) {
-      // ignore ('null' case handled at higher level)
-    }
-    return null;
+    /*
+     * Usual case was with getResource. However, the Maven plugin case is more
+     * complex: when using elements from fractal-runtime, it would find matches
+     * in the fractal-runtime.jar in the Maven cache + matches in the
+     * compiler's distribution 'runtime' folder. We get all possible contents,
+     * and return a file-system entry only, thus discarding jar contents.
+     */
+    return getSourcePathIndex(context).findFile(
+        getADLSourceName(name).substring(1));
   }
 
   public URL findResource(final String name, final Map<Object, Object> context) {
@@ -114,4 +103,14 @@ public class BasicADLLocator implements ADLLocator {
   public InputResource toInputResource(final String name) {
     return new InputResource(ADL_RESOURCE_KIND, name);
   }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  protected SourcePathIndex getSourcePathIndex(
+      final Map<Object, Object> context) {
+    return SourcePathIndex.getIndex(
+        ClassLoaderHelper.getClassLoader(this, context), context);
+  }
 }
@@ -27,6 +27,7 @@ import static org.ow2.mind.InputResourcesHelper.getTimestamp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StreamCorruptedException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
@@ -39,13 +40,13 @@ import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.NodeFactory;
 import org.objectweb.fractal.adl.NodeUtil;
 import org.objectweb.fractal.adl.error.GenericErrors;
-import org.objectweb.fractal.adl.io.NodeInputStream;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
 import org.ow2.mind.ForceRegenContextHelper;
 import org.ow2.mind.InputResource;
 import org.ow2.mind.InputResourceLocator;
 import org.ow2.mind.InputResourcesHelper;
 import org.ow2.mind.error.ErrorManager;
+import org.ow2.mind.io.BinaryASTInputStream;
 
 import com.google.inject.Inject;
 
@@ -111,8 +112,8 @@ public class BinaryADLLoader extends AbstractDelegatingLoader {
     boolean outOfDate;
     long binTimestamp = 0;
     try {
-      binTimestamp = getTimestamp(binADL);
-      outOfDate = getTimestamp(srcADL) >= binTimestamp;
+      binTimestamp = getTimestamp(binADL, context);
+      outOfDate = getTimestamp(srcADL, context) >= binTimestamp;
     } catch (final MalformedURLException e) {
       if (logger.isLoggable(Level.WARNING))
         logger.log(Level.WARNING, "Load ADL \"" + name
@@ -126,25 +127,26 @@ public class BinaryADLLoader extends AbstractDelegatingLoader {
     } else {
       // if binary file is more recent than source file, check dependencies.
 
-      // load binary ADL to retrieve list of input resources.
-      Definition binDef;
-      try {
-        binDef = loadBinaryADL(name, binADL, context);
-      } catch (final IOException e) {
-        errorManagerItf.logWarning(GenericErrors.INTERNAL_ERROR, e,
-            "Can't read binary ADL " + binADL + ". Use source ADL.");
-        return null;
+      // retrieve list of input resources from the dependency manifest of the
+      // binary ADL, so that the binary ADL is read only if it is up-to-date.
+      Definition binDef = null;
+      Set<InputResource> dependencies = InputResourcesHelper
+          .readDependencyManifest(binADL, binTimestamp, context);
+      if (dependencies == null) {
+        // no manifest, load binary ADL to retrieve list of input resources.
+        binDef = readBinaryADL(name, binADL, context);
+        if (binDef != null)
+          dependencies = InputResourcesHelper.getInputResources(binDef);
       }
 
-      if (binDef != null) {
-        final Set<InputResource> dependencies = InputResourcesHelper
-            .getInputResources(binDef);
-        if (logger.isLoggable(Level.FINEST))
-          logger.log(Level.FINEST, "Load ADL \"" + name
-              + "\". check dependencies=" + dependencies);
-        if (dependencies != null
-            && inputResourceLocatorItf.isUpToDate(binTimestamp, dependencies,
-                context)) {
+      if (logger.isLoggable(Level.FINEST))
+        logger.log(Level.FINEST, "Load ADL \"" + name
+            + "\". check dependencies=" + dependencies);
+      if (dependencies != null
+          && inputResourceLocatorItf.isUpToDate(binTimestamp, dependencies,
+              context)) {
+        if (binDef == null) binDef = readBinaryADL(name, binADL, context);
+        if (binDef != null) {
           if (logger.isLoggable(Level.FINEST))
             logger.log(Level.FINEST, "Load ADL \"" + name
                 + "\". Binary version is up-to-date");
@@ -178,12 +180,38 @@ public class BinaryADLLoader extends AbstractDelegatingLoader {
     return definition;
   }
 
+  /**
+   * Reads the given binary ADL. Returns <code>null</code> if the binary ADL
+   * can't be read, in which case the source ADL should be used.
+   */
+  protected Definition readBinaryADL(final String name, final URL location,
+      final Map<Object, Object> context) throws ADLException {
+    try {
+      return loadBinaryADL(name, location, context);
+    } catch (final StreamCorruptedException e) {
+      // binary ADL has been written by another version of the compiler.
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Load ADL \"" + name
+            + "\". Incompatible binary ADL, load source");
+      return null;
+    } catch (final IOException e) {
+      errorManagerItf.logWarning(GenericErrors.INTERNAL_ERROR, e,
+          "Can't read binary ADL " + location + ". Use source ADL.");
+      return null;
+    }
+  }
+
   protected Definition loadBinaryADL(final String name, final URL location,
       final Map<Object, Object> context) throws ADLException, IOException {
     try {
       final InputStream is = location.openStream();
-      final NodeInputStream nis = new NodeInputStream(is,
-          nodeFactoryItf.getClassLoader());
+      final BinaryASTInputStream bis;
+      try {
+        bis = new BinaryASTInputStream(is, nodeFactoryItf);
+      } catch (final IOException e) {
+        is.close();
+        throw e;
+      }
       if (logger.isLoggable(Level.FINE))
         logger.log(Level.FINE, "Load ADL \"" + name + "\". Read ADL from "
             + location);
@@ -191,8 +219,12 @@ public class BinaryADLLoader extends AbstractDelegatingLoader {
       long t = 0;
       if (logger.isLoggable(Level.FINER)) t = currentTimeMillis();
 
-      final Definition d = NodeUtil.castNodeError(nis.readObject(),
-          Definition.class);
+      final Definition d;
+      try {
+        d = NodeUtil.castNodeError(bis.readNode(), Definition.class);
+      } finally {
+        bis.close();
+      }
 
       if (logger.isLoggable(Level.FINER)) {
         t = currentTimeMillis() - t;
@@ -200,8 +232,6 @@ public class BinaryADLLoader extends AbstractDelegatingLoader {
             + "\".  read from binary file in " + t + "ms.");
       }
 
-      nis.close();
-
       return d;
     } catch (final ClassNotFoundException e) {
       errorManagerItf.logFatal(GenericErrors.INTERNAL_ERROR, e,
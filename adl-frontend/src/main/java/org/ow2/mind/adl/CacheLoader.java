@@ -22,15 +22,25 @@
 
 package org.ow2.mind.adl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
 
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.ContextLocal;
 import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.NodeUtil;
 import org.objectweb.fractal.adl.components.ComponentErrors;
+import org.ow2.mind.InputResourceLocator;
+import org.ow2.mind.PersistentCacheContextHelper;
+import org.ow2.mind.PersistentCacheContextHelper.CachedEntry;
 import org.ow2.mind.error.ErrorManager;
 
 import com.google.inject.Inject;
@@ -40,19 +50,38 @@ import com.google.inject.Singleton;
  * Simple delegating loader that manage a cache of already loaded definitions.
  * This component also provides the {@link DefinitionCache} interface that can
  * be used to add/get definitions to/from the cache. The cache is different for
- * each given <code>context</code> (see {@link ContextLocal}).
+ * each given <code>context</code> (see {@link ContextLocal}). If a
+ * {@link PersistentCacheContextHelper persistent cache} is attached to the
+ * context, loaded definitions are also kept in it and reused by subsequent
+ * contexts as long as their input resources are up-to-date.<br>
+ * This loader can be used concurrently by several threads (see
+ * {@link ConcurrentLoadHelper}). A definition that is requested while it is
+ * being loaded by another thread is not loaded twice, the requesting thread
+ * waits for the end of the pending load. Definition cycles are detected across
+ * threads.
  */
 @Singleton
 public class CacheLoader extends AbstractDelegatingLoader
     implements
       DefinitionCache {
 
-  protected final ContextLocal<Map<String, Definition>> contextualCache    = new ContextLocal<Map<String, Definition>>();
+  protected final ContextLocal<Map<String, Definition>>             contextualCache    = new ContextLocal<Map<String, Definition>>();
 
-  protected ThreadLocal<Set<String>>                    loadingDefinitions = new ThreadLocal<Set<String>>();
+  protected final ContextLocal<Map<String, FutureTask<Definition>>> contextualPending  = new ContextLocal<Map<String, FutureTask<Definition>>>();
+
+  /**
+   * For each definition that is being loaded in a context, the names of the
+   * definitions whose loads it is waiting for (i.e. the definitions it is
+   * loading itself, or whose pending loads it is waiting for). Used to detect
+   * cycles across threads.
+   */
+  protected final ContextLocal<Map<String, List<String>>>           contextualWaitsFor = new ContextLocal<Map<String, List<String>>>();
+
+  @Inject
+  protected ErrorManager                                            errorManagerItf;
 
   @Inject
-  protected ErrorManager                                errorManagerItf;
+  protected InputResourceLocator                                    inputResourceLocatorItf;
 
   // ---------------------------------------------------------------------------
   // Implementation of the Loader interface
@@ -62,26 +91,173 @@ public class CacheLoader extends AbstractDelegatingLoader
       throws ADLException {
     final Map<String, Definition> cache = getCache(context);
     Definition d = cache.get(name);
+    if (d != null) return d;
+
+    final Set<String> loadingDefinitions = ConcurrentLoadHelper
+        .getLoadingDefinitions();
+    if (loadingDefinitions.contains(name)) {
+      errorManagerItf.logFatal(ComponentErrors.DEFINITION_CYCLE,
+          cycleToString(loadingDefinitions, name));
+    }
+
+    final Map<String, FutureTask<Definition>> pending = getPending(context);
+    final FutureTask<Definition> task = new FutureTask<Definition>(
+        new Callable<Definition>() {
+          public Definition call() throws ADLException {
+            return loadFromClient(name, context);
+          }
+        });
+    final FutureTask<Definition> pendingTask;
+    synchronized (pending) {
+      // check again the cache, the definition may have been loaded in the
+      // meantime.
+      d = cache.get(name);
+      if (d != null) return d;
+      pendingTask = pending.get(name);
+      if (pendingTask == null) pending.put(name, task);
+    }
+
+    final Map<String, List<String>> waitsFor = getWaitsFor(context);
+    if (pendingTask != null) {
+      // the definition is being loaded by another thread.
+      return waitFor(pendingTask, name, loadingDefinitions, waitsFor);
+    }
 
-    if (d == null) {
-      Set<String> loadingDefinitions = this.loadingDefinitions.get();
-      if (loadingDefinitions == null) {
-        loadingDefinitions = new LinkedHashSet<String>();
-        this.loadingDefinitions.set(loadingDefinitions);
+    final String parentName = getInnermost(loadingDefinitions);
+    if (parentName != null) {
+      synchronized (waitsFor) {
+        addWait(waitsFor, parentName, name);
+      }
+    }
+    loadingDefinitions.add(name);
+    try {
+      task.run();
+      d = ConcurrentLoadHelper.getResult(task);
+      if (d != null) cache.put(name, d);
+    } finally {
+      loadingDefinitions.remove(name);
+      synchronized (pending) {
+        pending.remove(name);
+      }
+      if (parentName != null) {
+        synchronized (waitsFor) {
+          removeWait(waitsFor, parentName, name);
+        }
       }
+    }
+    return d;
+  }
 
-      if (!loadingDefinitions.add(name)) {
+  /**
+   * Waits for the pending load of the definition with the given name. Before
+   * waiting, checks that the pending load does not (transitively) wait for one
+   * of the definitions that are being loaded by the current thread.
+   */
+  protected Definition waitFor(final FutureTask<Definition> pendingTask,
+      final String name, final Set<String> loadingDefinitions,
+      final Map<String, List<String>> waitsFor) throws ADLException {
+    final String waitingName = getInnermost(loadingDefinitions);
+
+    synchronized (waitsFor) {
+      final List<String> path = findWaitPath(waitsFor, name,
+          loadingDefinitions, new HashSet<String>());
+      if (path != null) {
+        final Set<String> cycle = new LinkedHashSet<String>(loadingDefinitions);
+        cycle.addAll(path);
         errorManagerItf.logFatal(ComponentErrors.DEFINITION_CYCLE,
-            loadingDefinitions.toString());
+            cycleToString(cycle, name));
       }
-      try {
-        d = clientLoader.load(name, context);
-      } finally {
-        loadingDefinitions.remove(name);
+      if (waitingName != null) addWait(waitsFor, waitingName, name);
+    }
+    try {
+      return ConcurrentLoadHelper.getResult(pendingTask);
+    } finally {
+      if (waitingName != null) {
+        synchronized (waitsFor) {
+          removeWait(waitsFor, waitingName, name);
+        }
       }
-      cache.put(name, d);
+    }
+  }
+
+  /**
+   * Returns the path of definitions from <code>name</code> to one of the
+   * given <code>targets</code> following the "waits for" relation, or
+   * <code>null</code> if there is no such path.
+   */
+  protected List<String> findWaitPath(final Map<String, List<String>> waitsFor,
+      final String name, final Set<String> targets, final Set<String> visited) {
+    if (!visited.add(name)) return null;
+    final List<String> waited = waitsFor.get(name);
+    if (waited == null) return null;
+    for (final String waitedName : waited) {
+      List<String> path;
+      if (targets.contains(waitedName)) {
+        path = new ArrayList<String>();
+      } else {
+        path = findWaitPath(waitsFor, waitedName, targets, visited);
+        if (path == null) continue;
+      }
+      path.add(0, name);
+      return path;
+    }
+    return null;
+  }
+
+  protected void addWait(final Map<String, List<String>> waitsFor,
+      final String waitingName, final String waitedName) {
+    List<String> waited = waitsFor.get(waitingName);
+    if (waited == null) {
+      waited = new ArrayList<String>();
+      waitsFor.put(waitingName, waited);
+    }
+    waited.add(waitedName);
+  }
+
+  protected void removeWait(final Map<String, List<String>> waitsFor,
+      final String waitingName, final String waitedName) {
+    final List<String> waited = waitsFor.get(waitingName);
+    waited.remove(waitedName);
+    if (waited.isEmpty()) waitsFor.remove(waitingName);
+  }
+
+  protected static String getInnermost(final Set<String> loadingDefinitions) {
+    String innermost = null;
+    for (final String name : loadingDefinitions) {
+      innermost = name;
+    }
+    return innermost;
+  }
+
+  protected static String cycleToString(final Set<String> loadingDefinitions,
+      final String name) {
+    final Set<String> cycle = new LinkedHashSet<String>(loadingDefinitions);
+    cycle.add(name);
+    return cycle.toString();
+  }
+
+  protected Definition loadFromClient(final String name,
+      final Map<Object, Object> context) throws ADLException {
+    final Map<String, CachedEntry<Definition>> persistentCache = PersistentCacheContextHelper
+        .getPersistentMap(context, CacheLoader.class);
+    if (persistentCache == null) return clientLoader.load(name, context);
+
+    // the persistent cache keeps a pristine copy of loaded definitions, since
+    // the definitions returned to a compilation are decorated by its later
+    // phases.
+    final CachedEntry<Definition> entry = persistentCache.get(name);
+    if (entry != null
+        && PersistentCacheContextHelper.isUpToDate(entry.value,
+            entry.timestamp, inputResourceLocatorItf, context)) {
+      return NodeUtil.cloneGraph(entry.value);
     }
 
+    // take timestamp before loading to detect files modified while loading.
+    final long timestamp = System.currentTimeMillis();
+    final Definition d = clientLoader.load(name, context);
+    if (d != null)
+      persistentCache.put(name,
+          new CachedEntry<Definition>(NodeUtil.cloneGraph(d), timestamp));
     return d;
   }
 
@@ -103,11 +279,38 @@ public class CacheLoader extends AbstractDelegatingLoader
   // ---------------------------------------------------------------------------
 
   protected Map<String, Definition> getCache(final Map<Object, Object> context) {
-    Map<String, Definition> cache = contextualCache.get(context);
-    if (cache == null) {
-      cache = new HashMap<String, Definition>();
-      contextualCache.set(context, cache);
+    synchronized (contextualCache) {
+      Map<String, Definition> cache = contextualCache.get(context);
+      if (cache == null) {
+        cache = new ConcurrentHashMap<String, Definition>();
+        contextualCache.set(context, cache);
+      }
+      return cache;
+    }
+  }
+
+  protected Map<String, FutureTask<Definition>> getPending(
+      final Map<Object, Object> context) {
+    synchronized (contextualPending) {
+      Map<String, FutureTask<Definition>> pending = contextualPending
+          .get(context);
+      if (pending == null) {
+        pending = new HashMap<String, FutureTask<Definition>>();
+        contextualPending.set(context, pending);
+      }
+      return pending;
+    }
+  }
+
+  protected Map<String, List<String>> getWaitsFor(
+      final Map<Object, Object> context) {
+    synchronized (contextualWaitsFor) {
+      Map<String, List<String>> waitsFor = contextualWaitsFor.get(context);
+      if (waitsFor == null) {
+        waitsFor = new HashMap<String, List<String>>();
+        contextualWaitsFor.set(context, waitsFor);
+      }
+      return waitsFor;
     }
-    return cache;
   }
 }
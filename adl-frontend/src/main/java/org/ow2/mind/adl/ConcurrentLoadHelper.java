@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.adl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.CompilerError;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.error.GenericErrors;
+import org.ow2.mind.ConcurrentContextHelper;
+import org.ow2.mind.ThreadPoolHelper;
+import org.ow2.mind.adl.ast.DefinitionReference;
+
+/**
+ * Helper class that allows loaders to resolve independent
+ * {@link DefinitionReference definition references} concurrently. The
+ * concurrent mode is enabled by {@link #setLoadJobs setting} a number of load
+ * jobs greater than one in the context. In this mode, the {@link CacheLoader}
+ * ensures that each definition is loaded only once, even if it is requested
+ * concurrently by several threads.
+ * <p>
+ * Since loaders store their state in the context, references are resolved
+ * concurrently only if the context is thread-safe (see
+ * {@link ConcurrentContextHelper#newContext(Map)}). Otherwise they are resolved
+ * sequentially.
+ */
+public final class ConcurrentLoadHelper {
+
+  /** Context key of the number of concurrent load jobs. */
+  public static final String                              LOAD_JOBS_CONTEXT_KEY = "load-jobs";
+
+  private static final String                             EXECUTOR_CONTEXT_KEY  = "load-executor";
+
+  /**
+   * Names of the definitions that are being loaded by the current thread.
+   * Tasks created by {@link #resolveAll} inherit the names of the thread that
+   * created them, so that definition cycles are detected across threads.
+   */
+  private static final ThreadLocal<LinkedHashSet<String>> loadingDefinitions    = new ThreadLocal<LinkedHashSet<String>>();
+
+  private ConcurrentLoadHelper() {
+  }
+
+  public static void setLoadJobs(final Map<Object, Object> context,
+      final int jobs) {
+    context.put(LOAD_JOBS_CONTEXT_KEY, jobs);
+  }
+
+  /**
+   * Returns the number of concurrent load jobs registered in the given context.
+   * 
+   * @param context the context.
+   * @return the number of concurrent load jobs (default is 1).
+   */
+  public static int getLoadJobs(final Map<Object, Object> context) {
+    final Integer jobs = (Integer) context.get(LOAD_JOBS_CONTEXT_KEY);
+    return (jobs == null) ? 1 : jobs;
+  }
+
+  /**
+   * Returns the names of the definitions that are being loaded by the current
+   * thread, in loading order.
+   * 
+   * @return the names of the definitions that are being loaded by the current
+   *         thread.
+   */
+  public static Set<String> getLoadingDefinitions() {
+    LinkedHashSet<String> names = loadingDefinitions.get();
+    if (names == null) {
+      names = new LinkedHashSet<String>();
+      loadingDefinitions.set(names);
+    }
+    return names;
+  }
+
+  /**
+   * Resolves concurrently the given references if the concurrent mode is
+   * enabled in the given context.
+   * 
+   * @param resolver the resolver used to resolve each reference.
+   * @param references the references to resolve.
+   * @param encapsulatingDefinition the definition that contains the references.
+   * @param context the context.
+   * @return the resolved definitions, in the order of the given references, or
+   *         <code>null</code> if the concurrent mode is not enabled, if the
+   *         context is not thread-safe or if there is less than two
+   *         references. In this case, the caller must resolve the references
+   *         sequentially.
+   * @throws ADLException the exception thrown by the resolution of the first
+   *           reference that failed.
+   */
+  public static Definition[] resolveAll(
+      final DefinitionReferenceResolver resolver,
+      final DefinitionReference[] references,
+      final Definition encapsulatingDefinition,
+      final Map<Object, Object> context) throws ADLException {
+    final int jobs = getLoadJobs(context);
+    if (jobs <= 1 || references.length <= 1
+        || !ConcurrentContextHelper.isThreadSafe(context)) return null;
+
+    final ExecutorService executor = ThreadPoolHelper.getDaemonThreadPool(
+        context, EXECUTOR_CONTEXT_KEY, "mindc-loader", jobs);
+    final Set<String> parentLoadingDefinitions = new LinkedHashSet<String>(
+        getLoadingDefinitions());
+
+    final List<FutureTask<Definition>> tasks = new ArrayList<FutureTask<Definition>>(
+        references.length);
+    for (final DefinitionReference reference : references) {
+      final FutureTask<Definition> task = new FutureTask<Definition>(
+          new Callable<Definition>() {
+            public Definition call() throws ADLException {
+              final LinkedHashSet<String> saved = loadingDefinitions.get();
+              loadingDefinitions.set(new LinkedHashSet<String>(
+                  parentLoadingDefinitions));
+              try {
+                if (reference == null) return null;
+                return resolver.resolve(reference, encapsulatingDefinition,
+                    context);
+              } finally {
+                loadingDefinitions.set(saved);
+              }
+            }
+          });
+      tasks.add(task);
+      executor.execute(task);
+    }
+
+    // execute in the current thread the tasks that have not been started yet
+    // by the pool. So the current thread never waits for a task that is not
+    // running, and nested calls can't exhaust the threads of the pool.
+    for (final FutureTask<Definition> task : tasks) {
+      task.run();
+    }
+
+    final Definition[] result = new Definition[references.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = getResult(tasks.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Waits for the given task and returns its result. If the task failed, its
+   * exception is rethrown.
+   */
+  static <T> T getResult(final FutureTask<T> task) throws ADLException {
+    try {
+      return task.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+          "Interrupted while loading definitions");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof ADLException) throw (ADLException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new CompilerError(GenericErrors.INTERNAL_ERROR, cause);
+    }
+  }
+}
@@ -0,0 +1,442 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.adl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.ContextLocal;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.NodeFactory;
+import org.objectweb.fractal.adl.NodeUtil;
+import org.objectweb.fractal.adl.util.ClassLoaderHelper;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.DefinitionCacheContextHelper;
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.InputResource;
+import org.ow2.mind.InputResourceLocator;
+import org.ow2.mind.InputResourcesHelper;
+import org.ow2.mind.cache.ArtifactCache;
+import org.ow2.mind.cache.ArtifactCacheHelper;
+import org.ow2.mind.error.ErrorManager;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BinaryASTInputStream;
+import org.ow2.mind.io.BinaryASTOutputStream;
+import org.ow2.mind.plugin.Extension;
+import org.ow2.mind.plugin.PluginManager;
+
+import com.google.inject.Inject;
+
+/**
+ * Delegating loader that manages a content-addressed cache of loaded
+ * definitions. This cache is located in the directory returned by
+ * {@link DefinitionCacheContextHelper#getDefinitionCacheDir(Map)}; if no such
+ * directory is specified, this loader simply delegates to its client loader.
+ * <p>
+ * For each ADL name, an index file records the list of
+ * {@link InputResourcesHelper input resources} the definition depends on. The
+ * key of a cached definition is the digest of the content of these resources
+ * and of the {@link #getContextDigest(Map) context digest}. So a cached
+ * definition is reused, without parsing nor checking, as long as the content
+ * of its input resources is unchanged, even if their timestamps changed.
+ * <p>
+ * If a shared {@link ArtifactCache} is {@link ArtifactCacheHelper specified},
+ * index and definition files that are not found locally are fetched from it,
+ * and newly stored files are uploaded to it, so that definitions loaded on a
+ * host are reused by the other ones.
+ */
+public class ContentHashADLLoader extends AbstractDelegatingLoader {
+
+  protected static Logger                         logger           = FractalADLLogManager
+                                                                       .getLogger("loader.ContentHashLoader");
+
+  protected static final String                   INDEX_DIR        = "index";
+  protected static final String                   OBJECTS_DIR      = "objects";
+  protected static final String                   OBJECT_EXTENSION = ".def";
+
+  /** The prefix of the keys of the files in the shared artifact cache. */
+  protected static final String                   REMOTE_PREFIX    = "adl/";
+
+  /** The version of the format of index files. */
+  protected static final int                      INDEX_VERSION    = 1;
+
+  @Inject
+  protected ErrorManager                          errorManagerItf;
+
+  @Inject
+  protected InputResourceLocator                  inputResourceLocatorItf;
+
+  @Inject
+  protected NodeFactory                           nodeFactoryItf;
+
+  @Inject
+  protected PluginManager                         pluginManagerItf;
+
+  /** Digests of input resources, computed at most once per context. */
+  protected final ContextLocal<Map<String, String>> resourceDigests = new ContextLocal<Map<String, String>>();
+
+  /** Context digests, computed at most once per context. */
+  protected final ContextLocal<String>              contextDigests  = new ContextLocal<String>();
+
+  // ---------------------------------------------------------------------------
+  // Implementation of the Loader interface
+  // ---------------------------------------------------------------------------
+
+  public Definition load(final String name, final Map<Object, Object> context)
+      throws ADLException {
+    final File cacheDir = DefinitionCacheContextHelper
+        .getDefinitionCacheDir(context);
+    if (cacheDir == null || ForceRegenContextHelper.getForceRegen(context))
+      return clientLoader.load(name, context);
+
+    final String contextDigest = getContextDigest(context);
+    final File indexFile = getIndexFile(cacheDir, name, contextDigest);
+    final ArtifactCache remote = ArtifactCacheHelper.getArtifactCache(
+        pluginManagerItf, context);
+
+    List<InputResource> dependencies = readIndex(indexFile);
+    if (dependencies == null && remote != null
+        && fetch(remote, cacheDir, indexFile)) {
+      dependencies = readIndex(indexFile);
+    }
+    if (dependencies != null) {
+      final String key = computeKey(name, contextDigest, dependencies,
+          context);
+      if (key != null) {
+        final File objectFile = getObjectFile(cacheDir, key);
+        if (objectFile.isFile()
+            || (remote != null && fetch(remote, cacheDir, objectFile))) {
+          final Definition d = readObject(name, objectFile);
+          if (d != null) {
+            if (logger.isLoggable(Level.FINE))
+              logger.log(Level.FINE, "Load ADL \"" + name
+                  + "\". Content-addressed cache hit (key=" + key + ")");
+            return d;
+          }
+        }
+      }
+    }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.log(Level.FINE, "Load ADL \"" + name
+          + "\". Content-addressed cache miss");
+
+    final int nbErrors = errorManagerItf.getErrors().size();
+    final Definition d = clientLoader.load(name, context);
+    if (d != null && errorManagerItf.getErrors().size() == nbErrors) {
+      store(cacheDir, indexFile, name, contextDigest, d, context);
+    }
+    return d;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Returns the digest of the context options that may change the result of
+   * the loading of a definition. The default implementation takes into account:
+   * <ul>
+   * <li>the version of the compiler and the version of the format of cached
+   * files,</li>
+   * <li>the source path, i.e. the URLs of the source class loader and of its
+   * parents, since resources may be found by any of them,</li>
+   * <li>the extensions provided by the loaded plugins, since they may add
+   * loaders or annotation processors that transform definitions.</li>
+   * </ul>
+   * The digest is computed once per context.
+   * 
+   * @param context the current context.
+   * @return the digest of the relevant context options.
+   */
+  protected String getContextDigest(final Map<Object, Object> context) {
+    synchronized (contextDigests) {
+      final String contextDigest = contextDigests.get(context);
+      if (contextDigest != null) return contextDigest;
+    }
+
+    final MessageDigest digest = DigestHelper.newDigest();
+    final String version = ContentHashADLLoader.class.getPackage()
+        .getImplementationVersion();
+    DigestHelper.update(digest, (version == null) ? "unknown" : version);
+    DigestHelper.update(digest, Integer.toString(INDEX_VERSION));
+
+    ClassLoader cl = ClassLoaderHelper.getClassLoader(this, context);
+    while (cl != null) {
+      if (cl instanceof URLClassLoader) {
+        for (final URL url : ((URLClassLoader) cl).getURLs()) {
+          DigestHelper.update(digest, url.toExternalForm());
+        }
+      }
+      cl = cl.getParent();
+    }
+
+    // sort extensions since the iteration order of the plugin manager is not
+    // specified.
+    final List<String> extensions = new ArrayList<String>();
+    for (final String extensionPoint : pluginManagerItf
+        .getExtensionPointNames()) {
+      for (final Extension extension : pluginManagerItf
+          .getExtensions(extensionPoint)) {
+        extensions.add(extensionPoint + ":" + extension.getPlugin().getId()
+            + ":" + extension.getId());
+      }
+    }
+    Collections.sort(extensions);
+    for (final String extension : extensions) {
+      DigestHelper.update(digest, extension);
+    }
+
+    final String contextDigest = DigestHelper.toHexString(digest.digest());
+    synchronized (contextDigests) {
+      contextDigests.set(context, contextDigest);
+    }
+    return contextDigest;
+  }
+
+  protected String computeKey(final String name, final String contextDigest,
+      final List<InputResource> dependencies, final Map<Object, Object> context) {
+    final List<String> entries = new ArrayList<String>(dependencies.size());
+    for (final InputResource dependency : dependencies) {
+      final String resourceDigest = getResourceDigest(dependency, context);
+      if (resourceDigest == null) return null;
+      entries.add(dependency + "=" + resourceDigest);
+    }
+    // sort entries to get a key that is independent of the iteration order of
+    // the set of input resources.
+    Collections.sort(entries);
+
+    final MessageDigest digest = DigestHelper.newDigest();
+    DigestHelper.update(digest, name);
+    DigestHelper.update(digest, contextDigest);
+    for (final String entry : entries) {
+      DigestHelper.update(digest, entry);
+    }
+    return DigestHelper.toHexString(digest.digest());
+  }
+
+  protected String getResourceDigest(final InputResource resource,
+      final Map<Object, Object> context) {
+    Map<String, String> digests;
+    synchronized (resourceDigests) {
+      digests = resourceDigests.get(context);
+      if (digests == null) {
+        digests = new ConcurrentHashMap<String, String>();
+        resourceDigests.set(context, digests);
+      }
+    }
+    final String resourceKey = resource.toString();
+    String resourceDigest = digests.get(resourceKey);
+    if (resourceDigest == null) {
+      final URL location = inputResourceLocatorItf.findResource(
+          new InputResource(resource.getKind(), resource.getName()), context);
+      if (location == null) return null;
+      try {
+        resourceDigest = DigestHelper.digest(location);
+      } catch (final IOException e) {
+        if (logger.isLoggable(Level.FINE))
+          logger.log(Level.FINE, "Can't compute digest of \"" + location
+              + "\"", e);
+        return null;
+      }
+      digests.put(resourceKey, resourceDigest);
+    }
+    return resourceDigest;
+  }
+
+  protected void store(final File cacheDir, final File indexFile,
+      final String name, final String contextDigest, final Definition d,
+      final Map<Object, Object> context) {
+    final Set<InputResource> inputResources = InputResourcesHelper
+        .getInputResources(d);
+    // definitions that do not depend on any file can't be validated.
+    if (inputResources == null || inputResources.isEmpty()) return;
+
+    final List<InputResource> dependencies = new ArrayList<InputResource>(
+        inputResources);
+    final String key = computeKey(name, contextDigest, dependencies, context);
+    if (key == null) return;
+
+    try {
+      final File objectFile = getObjectFile(cacheDir, key);
+      if (!objectFile.isFile()) writeObject(d, objectFile);
+      writeIndex(indexFile, dependencies);
+
+      // share the definition with other hosts. Uploads are asynchronous.
+      final ArtifactCache remote = ArtifactCacheHelper
+          .getArtifactCache(context);
+      if (remote != null) {
+        remote.store(getRemoteKey(cacheDir, objectFile), objectFile);
+        remote.store(getRemoteKey(cacheDir, indexFile), indexFile);
+      }
+    } catch (final IOException e) {
+      if (logger.isLoggable(Level.WARNING))
+        logger.log(Level.WARNING, "Can't store ADL \"" + name
+            + "\" in definition cache", e);
+    }
+  }
+
+  protected File getIndexFile(final File cacheDir, final String name,
+      final String contextDigest) {
+    return new File(new File(cacheDir, INDEX_DIR), DigestHelper.digest(name
+        + "@" + contextDigest));
+  }
+
+  protected File getObjectFile(final File cacheDir, final String key) {
+    final File dir = new File(new File(cacheDir, OBJECTS_DIR), key.substring(0,
+        2));
+    return new File(dir, key.substring(2) + OBJECT_EXTENSION);
+  }
+
+  /**
+   * Returns the key, in the shared {@link ArtifactCache}, of the given file of
+   * the definition cache.
+   */
+  protected String getRemoteKey(final File cacheDir, final File file) {
+    return REMOTE_PREFIX
+        + cacheDir.toURI().relativize(file.toURI()).getPath();
+  }
+
+  /**
+   * Fetches the given file of the definition cache from the shared artifact
+   * cache.
+   * 
+   * @return <code>true</code> if the file has been fetched.
+   */
+  protected boolean fetch(final ArtifactCache remote, final File cacheDir,
+      final File file) {
+    try {
+      return remote.fetch(getRemoteKey(cacheDir, file), file);
+    } catch (final IOException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Can't fetch \"" + file
+            + "\" from artifact cache", e);
+      return false;
+    }
+  }
+
+  protected List<InputResource> readIndex(final File indexFile) {
+    if (!indexFile.isFile()) return null;
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(indexFile)));
+      try {
+        if (in.readInt() != INDEX_VERSION) return null;
+        final int size = in.readInt();
+        final List<InputResource> dependencies = new ArrayList<InputResource>(
+            size);
+        for (int i = 0; i < size; i++) {
+          final String kind = in.readUTF();
+          dependencies.add(new InputResource(kind, in.readUTF()));
+        }
+        return dependencies;
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Can't read index file \"" + indexFile + "\"",
+            e);
+      return null;
+    }
+  }
+
+  protected void writeIndex(final File indexFile,
+      final List<InputResource> dependencies) throws IOException {
+    final File tmpFile = AtomicFileHelper.createTempFile(indexFile);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tmpFile)));
+    try {
+      out.writeInt(INDEX_VERSION);
+      out.writeInt(dependencies.size());
+      for (final InputResource dependency : dependencies) {
+        out.writeUTF(dependency.getKind());
+        out.writeUTF(dependency.getName());
+      }
+    } finally {
+      out.close();
+    }
+    AtomicFileHelper.replace(tmpFile, indexFile);
+  }
+
+  protected Definition readObject(final String name, final File objectFile) {
+    try {
+      final InputStream is = new FileInputStream(objectFile);
+      final BinaryASTInputStream bis;
+      try {
+        bis = new BinaryASTInputStream(is, nodeFactoryItf);
+      } catch (final IOException e) {
+        is.close();
+        throw e;
+      }
+      try {
+        return NodeUtil.castNodeError(bis.readNode(), Definition.class);
+      } finally {
+        bis.close();
+      }
+    } catch (final IOException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Load ADL \"" + name + "\". Can't read \""
+            + objectFile + "\"", e);
+      return null;
+    } catch (final ClassNotFoundException e) {
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Load ADL \"" + name + "\". Can't read \""
+            + objectFile + "\"", e);
+      return null;
+    }
+  }
+
+  protected void writeObject(final Definition d, final File objectFile)
+      throws IOException {
+    final File tmpFile = AtomicFileHelper.createTempFile(objectFile);
+    final BinaryASTOutputStream bos = new BinaryASTOutputStream(
+        new FileOutputStream(tmpFile));
+    try {
+      bos.writeNode(d);
+    } finally {
+      bos.close();
+    }
+    AtomicFileHelper.replace(tmpFile, objectFile);
+  }
+}
@@ -126,6 +126,10 @@ public class ExtendsLoader extends AbstractDelegatingLoader {
     if (subDefsObject instanceof SubDefinitionsDecoration)
       savedSubDefinitionsDecoration = (SubDefinitionsDecoration) subDefsObject;
 
+    // in concurrent mode, extended definitions are resolved in parallel
+    final Definition[] resolvedDefs = ConcurrentLoadHelper.resolveAll(
+        definitionReferenceResolverItf, extendedDefs, d, context);
+
     // keep inheritance information as a decoration, since the direct "extends"
     // is removed afterwards
     final ExtendsDecoration list = new ExtendsDecoration();
@@ -150,9 +154,11 @@ public class ExtendsLoader extends AbstractDelegatingLoader {
 
       // first resolve extended list
       Definition superDef = null;
-      for (final DefinitionReference extend : extendedDefs) {
-        final Definition extendedDefinition = definitionReferenceResolverItf
-            .resolve(extend, d, context);
+      for (int i = 0; i < extendedDefs.length; i++) {
+        final DefinitionReference extend = extendedDefs[i];
+        final Definition extendedDefinition = (resolvedDefs != null)
+            ? resolvedDefs[i]
+            : definitionReferenceResolverItf.resolve(extend, d, context);
 
         // if the definition has not been resolved correctly, ignore it.
         if (ASTHelper.isUnresolvedDefinitionNode(extendedDefinition)) continue;
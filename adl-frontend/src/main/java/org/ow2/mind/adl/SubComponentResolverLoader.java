@@ -70,13 +70,25 @@ public class SubComponentResolverLoader extends AbstractDelegatingLoader {
 
     // resolve sub components (if any)
     if (d instanceof ComponentContainer) {
-      for (final Component subComp : ((ComponentContainer) d).getComponents()) {
+      final Component[] subComps = ((ComponentContainer) d).getComponents();
 
-        final DefinitionReference subCompDefRef = subComp
-            .getDefinitionReference();
+      // in concurrent mode, sub component references are resolved in parallel
+      final DefinitionReference[] subCompDefRefs = new DefinitionReference[subComps.length];
+      for (int i = 0; i < subComps.length; i++) {
+        subCompDefRefs[i] = subComps[i].getDefinitionReference();
+      }
+      final Definition[] subCompDefs = ConcurrentLoadHelper.resolveAll(
+          definitionReferenceResolverItf, subCompDefRefs, d, context);
+
+      for (int i = 0; i < subComps.length; i++) {
+        final Component subComp = subComps[i];
+
+        final DefinitionReference subCompDefRef = subCompDefRefs[i];
         if (subCompDefRef != null) {
-          final Definition subCompDef = definitionReferenceResolverItf.resolve(
-              subCompDefRef, d, context);
+          final Definition subCompDef = (subCompDefs != null)
+              ? subCompDefs[i]
+              : definitionReferenceResolverItf.resolve(subCompDefRef, d,
+                  context);
 
           if (!isUnresolvedDefinitionNode(subCompDef)
               && (isType(subCompDef) || isAbstract(subCompDef)))
@@ -136,7 +136,12 @@ public abstract class AbstractADLLoaderAnnotationProcessor
     if (def != null) {
       return def;
     }
-    ADLParserContextHelper.registerADL(name, adlSource, context);
+    // the same ADL may be generated concurrently by several loaders, register
+    // it only once.
+    synchronized (context) {
+      if (!ADLParserContextHelper.isRegisteredADL(name, context))
+        ADLParserContextHelper.registerADL(name, adlSource, context);
+    }
     final int nbErrors = errorManagerItf.getErrors().size();
     boolean containsErrors = false;
     try {
@@ -172,7 +177,10 @@ public abstract class AbstractADLLoaderAnnotationProcessor
     if (d != null) {
       return d;
     }
-    ADLParserContextHelper.registerADL(def, context);
+    synchronized (context) {
+      if (!ADLParserContextHelper.isRegisteredADL(def.getName(), context))
+        ADLParserContextHelper.registerADL(def, context);
+    }
     return loaderItf.load(def.getName(), context);
   }
 
@@ -211,7 +219,10 @@ public abstract class AbstractADLLoaderAnnotationProcessor
     if (idl != null) {
       return idl;
     }
-    IDLParserContextHelper.registerIDL(name, idlSource, context);
+    synchronized (context) {
+      if (!IDLParserContextHelper.isRegisteredIDL(name, context))
+        IDLParserContextHelper.registerIDL(name, idlSource, context);
+    }
     final int nbErrors = errorManagerItf.getErrors().size();
     boolean containsErrors = false;
     try {
@@ -246,7 +257,10 @@ public abstract class AbstractADLLoaderAnnotationProcessor
     if (d != null) {
       return d;
     }
-    IDLParserContextHelper.registerIDL(idl, context);
+    synchronized (context) {
+      if (!IDLParserContextHelper.isRegisteredIDL(idl.getName(), context))
+        IDLParserContextHelper.registerIDL(idl, context);
+    }
     return idlLoaderItf.load(idl.getName(), context);
   }
 
@@ -65,17 +65,20 @@ public class AnonymousDefinitionExtractorImpl
     ((AnonymousDefinitionContainer) component).setAnonymousDefinition(null);
 
     // get a name for this definition
-    Map<String, Integer> counters = contextualCounters.get(context);
-    if (counters == null) {
-      counters = new HashMap<String, Integer>();
-      contextualCounters.set(context, counters);
-    }
     final String topLevelName = encapsulatingDefinition.getName();
-    Integer counter = counters.get(topLevelName);
-    if (counter == null) {
-      counter = 0;
+    Integer counter;
+    synchronized (contextualCounters) {
+      Map<String, Integer> counters = contextualCounters.get(context);
+      if (counters == null) {
+        counters = new HashMap<String, Integer>();
+        contextualCounters.set(context, counters);
+      }
+      counter = counters.get(topLevelName);
+      if (counter == null) {
+        counter = 0;
+      }
+      counters.put(topLevelName, counter + 1);
     }
-    counters.put(topLevelName, counter + 1);
     final String defName = topLevelName + "$" + counter;
 
     anonymousDefinition.setName(defName);
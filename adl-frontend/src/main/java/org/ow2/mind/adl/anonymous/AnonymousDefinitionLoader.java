@@ -63,14 +63,17 @@ public class AnonymousDefinitionLoader extends AbstractDelegatingLoader {
   public Definition load(final String name, final Map<Object, Object> context)
       throws ADLException {
     // looks if it is a known anonymous definition.
-    final Map<String, Definition> anonymousDefinitions = contextualAnonymousDefinitions
-        .get(context);
-    if (anonymousDefinitions != null) {
-      final Definition anonymousDefinition = anonymousDefinitions.remove(name);
-      if (anonymousDefinition != null) {
-        // An anonymous definition with the corresponding name has been found in
-        // local cache. Return it.
-        return anonymousDefinition;
+    synchronized (contextualAnonymousDefinitions) {
+      final Map<String, Definition> anonymousDefinitions = contextualAnonymousDefinitions
+          .get(context);
+      if (anonymousDefinitions != null) {
+        final Definition anonymousDefinition = anonymousDefinitions
+            .remove(name);
+        if (anonymousDefinition != null) {
+          // An anonymous definition with the corresponding name has been found
+          // in local cache. Return it.
+          return anonymousDefinition;
+        }
       }
     }
 
@@ -125,15 +128,17 @@ public class AnonymousDefinitionLoader extends AbstractDelegatingLoader {
 
   protected void addAnonymousDefinition(final Definition anonymousDefinition,
       final Map<Object, Object> context) {
-    Map<String, Definition> anonymousDefinitions = contextualAnonymousDefinitions
-        .get(context);
+    synchronized (contextualAnonymousDefinitions) {
+      Map<String, Definition> anonymousDefinitions = contextualAnonymousDefinitions
+          .get(context);
 
-    if (anonymousDefinitions == null) {
-      anonymousDefinitions = new HashMap<String, Definition>();
-      contextualAnonymousDefinitions.set(context, anonymousDefinitions);
-    }
+      if (anonymousDefinitions == null) {
+        anonymousDefinitions = new HashMap<String, Definition>();
+        contextualAnonymousDefinitions.set(context, anonymousDefinitions);
+      }
 
-    anonymousDefinitions
-        .put(anonymousDefinition.getName(), anonymousDefinition);
+      anonymousDefinitions.put(anonymousDefinition.getName(),
+          anonymousDefinition);
+    }
   }
 }
@@ -434,7 +434,7 @@ public class GenericDefinitionReferenceResolver
     }
   }
 
-  protected Map<String, FormalTypeParameter> getTypeParameters(
+  protected synchronized Map<String, FormalTypeParameter> getTypeParameters(
       final Definition d, final Map<Object, Object> context)
       throws ADLException {
     Map<Definition, Map<String, FormalTypeParameter>> typeParameters = contextualTypeParameters
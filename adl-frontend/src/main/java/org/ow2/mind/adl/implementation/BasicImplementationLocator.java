@@ -26,12 +26,11 @@ import static org.objectweb.fractal.adl.util.ClassLoaderHelper.getClassLoader;
 import static org.ow2.mind.PathHelper.isRelative;
 import static org.ow2.mind.PathHelper.isValid;
 
-import java.io.IOException;
 import java.net.URL;
-import java.util.Enumeration;
 import java.util.Map;
 
 import org.ow2.mind.InputResource;
+import org.ow2.mind.SourcePathIndex;
 
 import com.google.common.collect.Lists;
 
@@ -53,25 +52,14 @@ public class BasicImplementationLocator implements ImplementationLocator {
       throw new IllegalArgumentException("\"" + path
           + "\" is not an absolute path");
 
-    try {
-      /*
-       * Usual case was with getResource. However, the Maven plugin case is more
-       * complex: when using elements from fractal-runtime, it would find
-       * matches in the fractal-runtime.jar in the Maven cache + matches in the
-       * compiler's distribution 'runtime' folder. We get all possible contents,
-       * and return a file-system entry only, thus discarding jar contents.
-       */
-      final Enumeration<URL> urls = getClassLoader(this, context).getResources(
-          path.substring(1));
-      while (urls.hasMoreElements()) {
-        final URL url = urls.nextElement();
-        if (url.getProtocol().equals("file")) return url;
-      }
-    } catch (final IOException e) {
-      // ignore ('null' case handled at higher level)
-    }
-    return null;
-
+    /*
+     * Usual case was with getResource. However, the Maven plugin case is more
+     * complex: when using elements from fractal-runtime, it would find matches
+     * in the fractal-runtime.jar in the Maven cache + matches in the
+     * compiler's distribution 'runtime' folder. We get all possible contents,
+     * and return a file-system entry only, thus discarding jar contents.
+     */
+    return getSourcePathIndex(context).findFile(path.substring(1));
   }
 
   public InputResource toInputResource(final String path) {
@@ -83,4 +71,12 @@ public class BasicImplementationLocator implements ImplementationLocator {
     return findSource(name, context);
   }
 
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  protected SourcePathIndex getSourcePathIndex(
+      final Map<Object, Object> context) {
+    return SourcePathIndex.getIndex(getClassLoader(this, context), context);
+  }
 }
@@ -268,8 +268,9 @@ public class ParametricDefinitionReferenceResolver
     }
   }
 
-  protected Map<String, FormalParameter> getParameters(final Definition d,
-      final Map<Object, Object> context) throws ADLException {
+  protected synchronized Map<String, FormalParameter> getParameters(
+      final Definition d, final Map<Object, Object> context)
+      throws ADLException {
     Map<Definition, Map<String, FormalParameter>> parameters = contextualParameters
         .get(context);
     if (parameters == null) {
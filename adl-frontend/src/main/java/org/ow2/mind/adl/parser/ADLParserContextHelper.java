@@ -52,12 +52,16 @@ public final class ADLParserContextHelper {
   public static void registerADL(final String adlName, final String adlSource,
       final Map<Object, Object> context) {
     final String contextKey = getContextKey(adlName);
-    final Object o = context.get(contextKey);
-    if (o != null) {
-      throw new IllegalArgumentException("Invalid adlName '" + adlName
-          + "'. An ADL with the same name already exist in the context map");
+    // the check and the registration are atomic, the context may be shared
+    // by concurrent loaders.
+    synchronized (context) {
+      final Object o = context.get(contextKey);
+      if (o != null) {
+        throw new IllegalArgumentException("Invalid adlName '" + adlName
+            + "'. An ADL with the same name already exist in the context map");
+      }
+      context.put(contextKey, adlSource);
     }
-    context.put(contextKey, adlSource);
   }
 
   /**
@@ -73,13 +77,15 @@ public final class ADLParserContextHelper {
       throw new IllegalArgumentException("definition name must be set");
     }
     final String contextKey = getContextKey(definition.getName());
-    final Object o = context.get(contextKey);
-    if (o != null) {
-      throw new IllegalArgumentException("Invalid adlName '"
-          + definition.getName()
-          + "'. An ADL with the same name already exist in the context map");
+    synchronized (context) {
+      final Object o = context.get(contextKey);
+      if (o != null) {
+        throw new IllegalArgumentException("Invalid adlName '"
+            + definition.getName()
+            + "'. An ADL with the same name already exist in the context map");
+      }
+      context.put(contextKey, definition);
     }
-    context.put(contextKey, definition);
   }
 
   /**
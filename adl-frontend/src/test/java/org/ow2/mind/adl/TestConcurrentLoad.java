@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.adl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.Loader;
+import org.objectweb.fractal.adl.components.ComponentErrors;
+import org.objectweb.fractal.adl.error.Error;
+import org.objectweb.fractal.adl.interfaces.Interface;
+import org.objectweb.fractal.adl.interfaces.InterfaceContainer;
+import org.objectweb.fractal.adl.types.TypeInterface;
+import org.ow2.mind.CommonFrontendModule;
+import org.ow2.mind.ConcurrentContextHelper;
+import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.adl.ast.ASTHelper;
+import org.ow2.mind.adl.ast.Binding;
+import org.ow2.mind.adl.ast.BindingContainer;
+import org.ow2.mind.adl.ast.Component;
+import org.ow2.mind.adl.ast.ComponentContainer;
+import org.ow2.mind.adl.idl.InterfaceDefinitionDecorationHelper;
+import org.ow2.mind.error.ErrorCollection;
+import org.ow2.mind.idl.IDLFrontendModule;
+import org.ow2.mind.idl.ast.InterfaceDefinition;
+import org.ow2.mind.plugin.PluginLoaderModule;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+public class TestConcurrentLoad {
+
+  static final int    WIDE_NB_IDLS   = 10;
+  static final int    WIDE_NB_GROUPS = 20;
+  static final int    WIDE_NB_PRIMS  = WIDE_NB_IDLS * WIDE_NB_GROUPS;
+
+  Loader              loader;
+
+  Map<Object, Object> context;
+
+  @BeforeMethod(alwaysRun = true)
+  protected void setUp() throws Exception {
+    final Injector injector = Guice.createInjector(new CommonFrontendModule(),
+        new PluginLoaderModule(), new IDLFrontendModule(),
+        new ADLFrontendModule() {
+          protected void configureErrorLoader() {
+            bind(Loader.class).annotatedWith(Names.named("ErrorLoader"))
+                .toChainStartingWith(ErrorLoader.class)
+                .endingWith(Loader.class);
+          }
+        });
+
+    loader = injector.getInstance(Key.get(Loader.class,
+        Names.named("ErrorLoader")));
+
+    context = newContext(new URLClassLoader(new URL[0], getClass()
+        .getClassLoader()), 4);
+  }
+
+  protected Map<Object, Object> newContext(final ClassLoader srcClassLoader,
+      final int jobs) {
+    final Map<Object, Object> context = ConcurrentContextHelper.newContext();
+    ForceRegenContextHelper.setForceRegen(context, true);
+    ConcurrentLoadHelper.setLoadJobs(context, jobs);
+    context.put("classloader", srcClassLoader);
+    return context;
+  }
+
+  protected Definition getSubCompDef(final Definition d, final String name)
+      throws ADLException {
+    return ASTHelper.getResolvedComponentDefinition(
+        ASTHelper.getComponent(d, name), loader, context);
+  }
+
+  @Test(groups = {"functional", "checkin"}, timeOut = 20000)
+  public void testSharedDefinitions() throws Exception {
+    final Definition top = loader.load("pkg1.concurrent.Top", context);
+    assertNotNull(top);
+
+    final Definition left = getSubCompDef(top, "l");
+    final Definition right = getSubCompDef(top, "r");
+    final Definition leaf = getSubCompDef(top, "a");
+    assertNotNull(left);
+    assertNotNull(right);
+    assertNotNull(leaf);
+
+    // each definition is loaded only once
+    assertSame(getSubCompDef(right, "l"), left);
+    assertSame(getSubCompDef(right, "a"), leaf);
+    assertSame(getSubCompDef(left, "a"), leaf);
+    assertSame(getSubCompDef(left, "b"), leaf);
+  }
+
+  @Test(groups = {"functional", "checkin"}, timeOut = 20000)
+  public void testCycle() throws Exception {
+    try {
+      loader.load("pkg1.concurrent.CycleTop", context);
+      fail("ADLException was expected here");
+    } catch (final ADLException e) {
+      assertTrue(e.getError() instanceof ErrorCollection);
+      boolean cycleFound = false;
+      for (final Error err : ((ErrorCollection) e.getError()).getErrors()) {
+        if (err.getTemplate() == ComponentErrors.DEFINITION_CYCLE)
+          cycleFound = true;
+      }
+      assertTrue(cycleFound, "Cycle not detected");
+    }
+  }
+
+  @Test(groups = {"functional"}, timeOut = 600000)
+  public void testWideGraph() throws Exception {
+    final File srcDir = new File("target/test-wide-graph");
+    generateWideGraph(srcDir);
+    final ClassLoader srcClassLoader = new URLClassLoader(
+        new URL[]{srcDir.toURI().toURL()}, getClass().getClassLoader());
+
+    final Map<Object, Object> sequentialContext = newContext(srcClassLoader,
+        1);
+    final String expected = dumpWideGraph(sequentialContext);
+
+    for (int i = 0; i < 20; i++) {
+      final Map<Object, Object> concurrentContext = newContext(
+          srcClassLoader, 8);
+      assertEquals(dumpWideGraph(concurrentContext), expected,
+          "Concurrent load differs from sequential load (iteration " + i
+              + ")");
+    }
+  }
+
+  protected String dumpWideGraph(final Map<Object, Object> context)
+      throws Exception {
+    final Definition top = loader.load("pkg1.wide.Top", context);
+    assertNotNull(top);
+    final StringBuilder sb = new StringBuilder();
+    dump(top, "", new HashMap<String, Object>(), context, sb);
+    return sb.toString();
+  }
+
+  /*
+   * Dumps the given definition, checking that every definition and every IDL
+   * is loaded only once in the given context.
+   */
+  protected void dump(final Definition def, final String indent,
+      final Map<String, Object> loaded, final Map<Object, Object> context,
+      final StringBuilder sb) throws Exception {
+    assertSameInstance(loaded, def.getName(), def);
+    sb.append(indent).append(def.getName()).append('\n');
+    if (def instanceof InterfaceContainer) {
+      for (final Interface itf : ((InterfaceContainer) def).getInterfaces()) {
+        final TypeInterface typeItf = (TypeInterface) itf;
+        sb.append(indent).append("  ").append(typeItf.getRole()).append(' ')
+            .append(typeItf.getSignature()).append(' ')
+            .append(typeItf.getName()).append('\n');
+        final InterfaceDefinition itfDef = InterfaceDefinitionDecorationHelper
+            .getResolvedInterfaceDefinition(typeItf, null, null);
+        assertNotNull(itfDef);
+        assertSameInstance(loaded, itfDef.getName(), itfDef);
+      }
+    }
+    if (def instanceof BindingContainer) {
+      for (final Binding binding : ((BindingContainer) def).getBindings()) {
+        sb.append(indent).append("  binds ")
+            .append(binding.getFromComponent()).append('.')
+            .append(binding.getFromInterface()).append(" to ")
+            .append(binding.getToComponent()).append('.')
+            .append(binding.getToInterface()).append('\n');
+      }
+    }
+    if (def instanceof ComponentContainer) {
+      for (final Component comp : ((ComponentContainer) def).getComponents()) {
+        sb.append(indent).append("  contains ").append(comp.getName())
+            .append('\n');
+        dump(ASTHelper.getResolvedComponentDefinition(comp, loader, context),
+            indent + "    ", loaded, context, sb);
+      }
+    }
+  }
+
+  protected void assertSameInstance(final Map<String, Object> loaded,
+      final String name, final Object instance) {
+    final Object previous = loaded.get(name);
+    if (previous == null)
+      loaded.put(name, instance);
+    else
+      assertSame(instance, previous, name + " loaded more than once");
+  }
+
+  /*
+   * Generates WIDE_NB_IDLS interfaces, WIDE_NB_PRIMS primitives, each one
+   * providing and requiring one of the interfaces, and WIDE_NB_GROUPS
+   * composites. Every group contains two rings of primitives: its own and the
+   * one of the next group, so that each primitive definition is shared by two
+   * groups.
+   */
+  protected void generateWideGraph(final File srcDir) throws IOException {
+    final File pkgDir = new File(srcDir, "pkg1/wide");
+    pkgDir.mkdirs();
+    for (int i = 0; i < WIDE_NB_IDLS; i++) {
+      write(new File(pkgDir, "Itf" + i + ".itf"), "interface pkg1.wide.Itf"
+          + i + " {\n  void m" + i + "();\n}\n");
+    }
+    for (int p = 0; p < WIDE_NB_PRIMS; p++) {
+      write(new File(pkgDir, "Prim" + p + ".adl"), "primitive pkg1.wide.Prim"
+          + p + " {\n  provides pkg1.wide.Itf" + (p % WIDE_NB_IDLS)
+          + " as s;\n  requires pkg1.wide.Itf" + ((p + 1) % WIDE_NB_IDLS)
+          + " as c;\n  source {{ }};\n}\n");
+    }
+    final StringBuilder top = new StringBuilder(
+        "composite pkg1.wide.Top {\n");
+    for (int g = 0; g < WIDE_NB_GROUPS; g++) {
+      final StringBuilder group = new StringBuilder("composite pkg1.wide.Group"
+          + g + " {\n");
+      appendRing(group, "a", g);
+      appendRing(group, "b", (g + 1) % WIDE_NB_GROUPS);
+      group.append("}\n");
+      write(new File(pkgDir, "Group" + g + ".adl"), group.toString());
+      top.append("  contains Group").append(g).append(" as g").append(g)
+          .append(";\n");
+    }
+    top.append("}\n");
+    write(new File(pkgDir, "Top.adl"), top.toString());
+  }
+
+  protected void appendRing(final StringBuilder sb, final String prefix,
+      final int group) {
+    for (int i = 0; i < WIDE_NB_IDLS; i++) {
+      sb.append("  contains Prim").append(group * WIDE_NB_IDLS + i)
+          .append(" as ").append(prefix).append(i).append(";\n");
+    }
+    for (int i = 0; i < WIDE_NB_IDLS; i++) {
+      sb.append("  binds ").append(prefix).append(i).append(".c to ")
+          .append(prefix).append((i + 1) % WIDE_NB_IDLS).append(".s;\n");
+    }
+  }
+
+  protected void write(final File file, final String content)
+      throws IOException {
+    final FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
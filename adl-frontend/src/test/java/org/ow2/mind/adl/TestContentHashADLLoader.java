@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.adl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.Definition;
+import org.objectweb.fractal.adl.Loader;
+import org.ow2.mind.CommonFrontendModule;
+import org.ow2.mind.DefinitionCacheContextHelper;
+import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.adl.graph.ComponentGraph;
+import org.ow2.mind.adl.graph.Instantiator;
+import org.ow2.mind.adl.parser.ADLParser;
+import org.ow2.mind.idl.IDLFrontendModule;
+import org.ow2.mind.plugin.PluginLoaderModule;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+public class TestContentHashADLLoader {
+
+  static final AtomicInteger parseCount = new AtomicInteger();
+
+  Loader                     loader;
+  Instantiator               instantiator;
+
+  Map<Object, Object>        context;
+
+  File                       cacheDir;
+  File                       srcDir;
+
+  @BeforeMethod(alwaysRun = true)
+  protected void setUp() throws Exception {
+    final Injector injector = Guice.createInjector(new CommonFrontendModule(),
+        new PluginLoaderModule(), new IDLFrontendModule(),
+        new ADLFrontendModule() {
+          protected void configureErrorLoader() {
+            bind(Loader.class).annotatedWith(Names.named("ErrorLoader"))
+                .toChainStartingWith(ErrorLoader.class)
+                .endingWith(Loader.class);
+          }
+
+          @Override
+          protected void configureParser() {
+            bind(parserKey()).to(CountingADLParser.class);
+          }
+        });
+
+    loader = injector.getInstance(Key.get(Loader.class,
+        Names.named("ErrorLoader")));
+    instantiator = injector.getInstance(Instantiator.class);
+
+    cacheDir = new File("target/test/def-cache");
+    TestBinaryLoader.rm(cacheDir);
+    srcDir = new File("target/test/def-cache-src");
+    TestBinaryLoader.rm(srcDir);
+    new File(srcDir, "cachetest").mkdirs();
+    parseCount.set(0);
+    initContext();
+  }
+
+  protected void initContext() throws MalformedURLException {
+    context = new HashMap<Object, Object>();
+    ForceRegenContextHelper.setForceRegen(context, false);
+    DefinitionCacheContextHelper.setDefinitionCacheDir(context, cacheDir);
+    final ClassLoader srcClassLoader = new URLClassLoader(new URL[]{srcDir
+        .toURI().toURL()}, getClass().getClassLoader());
+    context.put("classloader", srcClassLoader);
+  }
+
+  protected static int countFiles(final File file) {
+    if (!file.isDirectory()) return 1;
+    int n = 0;
+    for (final File subFile : file.listFiles()) {
+      n += countFiles(subFile);
+    }
+    return n;
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void test1() throws Exception {
+    final Definition d1 = loader.load("pkg1.generic.Composite4", context);
+    assertNotNull(d1);
+    final ComponentGraph g1 = instantiator.instantiate(d1, context);
+    assertNotNull(g1);
+    assertTrue(parseCount.get() > 0);
+
+    final File objectsDir = new File(cacheDir, "objects");
+    assertTrue(objectsDir.isDirectory());
+    final int nbObjects = countFiles(objectsDir);
+    assertTrue(nbObjects > 0);
+
+    // reinitialize context
+    initContext();
+
+    // reload the same one, it must be retrieved from the cache.
+    parseCount.set(0);
+    final Definition d2 = loader.load("pkg1.generic.Composite4", context);
+    assertNotNull(d2);
+    assertEquals(d2.getName(), d1.getName());
+    final ComponentGraph g2 = instantiator.instantiate(d2, context);
+    assertNotNull(g2);
+    assertEquals(countFiles(objectsDir), nbObjects);
+    assertEquals(parseCount.get(), 0);
+  }
+
+  @Test(groups = {"functional"})
+  public void testTouchedSourceHit() throws Exception {
+    final File adlFile = writeADL("cachetest.Simple", "");
+    assertNotNull(loader.load("cachetest.Simple", context));
+    assertEquals(parseCount.get(), 1);
+
+    // only the timestamp changes, the cached definition is still valid.
+    assertTrue(adlFile.setLastModified(adlFile.lastModified() + 10000));
+    initContext();
+    parseCount.set(0);
+    assertNotNull(loader.load("cachetest.Simple", context));
+    assertEquals(parseCount.get(), 0);
+  }
+
+  @Test(groups = {"functional"})
+  public void testModifiedSourceMiss() throws Exception {
+    final File adlFile = writeADL("cachetest.Simple", "");
+    final long timestamp = adlFile.lastModified();
+    assertNotNull(loader.load("cachetest.Simple", context));
+    assertEquals(parseCount.get(), 1);
+
+    // the content changes but not the timestamp.
+    writeADL("cachetest.Simple", "requires pkg1.I2 as cItf2;");
+    adlFile.setLastModified(timestamp);
+    initContext();
+    parseCount.set(0);
+    final Definition d = loader.load("cachetest.Simple", context);
+    assertNotNull(d);
+    assertEquals(parseCount.get(), 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testSourcePathChangeMiss() throws Exception {
+    writeADL("cachetest.Simple", "");
+    assertNotNull(loader.load("cachetest.Simple", context));
+    assertEquals(parseCount.get(), 1);
+
+    // the same file found through another source path may not be loaded the
+    // same way.
+    initContext();
+    final File otherDir = new File("target/test/def-cache-other");
+    otherDir.mkdirs();
+    context.put("classloader", new URLClassLoader(new URL[]{
+        otherDir.toURI().toURL(), srcDir.toURI().toURL()}, getClass()
+        .getClassLoader()));
+    parseCount.set(0);
+    assertNotNull(loader.load("cachetest.Simple", context));
+    assertEquals(parseCount.get(), 1);
+  }
+
+  protected File writeADL(final String name, final String body)
+      throws IOException {
+    final File adlFile = new File(srcDir, name.replace('.', '/') + ".adl");
+    final FileOutputStream out = new FileOutputStream(adlFile);
+    try {
+      out.write(("type " + name + " {\n  requires pkg1.I2 as cItf;\n  "
+          + body + "\n}\n").getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return adlFile;
+  }
+
+  /** ADL parser that counts the definitions it actually parses. */
+  public static class CountingADLParser extends ADLParser {
+    @Override
+    public Definition load(final String name, final Map<Object, Object> context)
+        throws ADLException {
+      parseCount.incrementAndGet();
+      return super.load(name, context);
+    }
+  }
+}
@@ -22,8 +22,8 @@
 
 package org.ow2.mind;
 
-import org.ow2.mind.compilation.BasicCompilationCommandExecutor;
 import org.ow2.mind.compilation.CompilationCommandExecutor;
+import org.ow2.mind.compilation.ConcurrentCompilationCommandExecutor;
 import org.ow2.mind.compilation.CompilerWrapper;
 import org.ow2.mind.compilation.gcc.GccCompilerWrapper;
 import org.ow2.mind.inject.AbstractMindModule;
@@ -42,6 +42,6 @@ public class CommonBackendModule extends AbstractMindModule {
 
   protected void configureCompilationCommandExecutor() {
     bind(CompilationCommandExecutor.class).to(
-        BasicCompilationCommandExecutor.class);
+        ConcurrentCompilationCommandExecutor.class);
   }
 }
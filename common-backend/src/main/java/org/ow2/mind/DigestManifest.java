@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.FileTimestampHelper;
+
+/**
+ * Manifest of the digests of the files generated in a directory. The manifest
+ * is stored in a sidecar file of the directory. For each generated file, it
+ * records the digest of its content together with its size and modification
+ * time, so that the content of a file can be compared with a new content
+ * without reading the file, as long as the file has not been modified since
+ * the digest has been recorded.
+ */
+final class DigestManifest {
+
+  // The io logger
+  private static Logger            ioLogger = FractalADLLogManager
+                                                .getLogger("io");
+
+  private final File               manifestFile;
+  private final Map<String, Entry> entries  = new HashMap<String, Entry>();
+  private boolean                  dirty    = false;
+
+  DigestManifest(final File dir) {
+    manifestFile = new File(dir, SourceFileWriter.DIGEST_MANIFEST_FILE_NAME);
+    load();
+  }
+
+  /**
+   * Returns the recorded digest of the given file, or <code>null</code> if
+   * the file may have been modified since its digest has been recorded.
+   */
+  synchronized String getDigest(final File file) {
+    final Entry entry = entries.get(file.getName());
+    if (entry == null) return null;
+    final long lastModified = file.lastModified();
+    if (lastModified != entry.lastModified || file.length() != entry.size
+        || FileTimestampHelper.isRacy(lastModified, entry.recordTime)) {
+      // the file may have been modified, forget its digest.
+      entries.remove(file.getName());
+      dirty = true;
+      return null;
+    }
+    return entry.digest;
+  }
+
+  /** Records the digest of the current content of the given file. */
+  synchronized void setDigest(final File file, final String digest) {
+    entries.put(file.getName(), new Entry(digest, file.length(), file
+        .lastModified(), System.currentTimeMillis()));
+    dirty = true;
+  }
+
+  /** Stores the manifest in its file, if it has been modified. */
+  synchronized void save() {
+    if (!dirty) return;
+    File tmpFile = null;
+    try {
+      tmpFile = AtomicFileHelper.createTempFile(manifestFile);
+      final PrintWriter pw = new PrintWriter(new FileOutputStream(tmpFile));
+      try {
+        for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+          final Entry entry = e.getValue();
+          pw.println(entry.digest + " " + entry.size + " "
+              + entry.lastModified + " " + entry.recordTime + " " + e.getKey());
+        }
+      } finally {
+        pw.close();
+      }
+      AtomicFileHelper.replace(tmpFile, manifestFile);
+      dirty = false;
+    } catch (final IOException e) {
+      if (tmpFile != null) tmpFile.delete();
+      if (ioLogger.isLoggable(Level.WARNING))
+        ioLogger.warning("Unable to write digest manifest '" + manifestFile
+            + "' : " + e.getMessage());
+    }
+  }
+
+  private void load() {
+    if (!manifestFile.exists()) return;
+    try {
+      final BufferedReader reader = new BufferedReader(new FileReader(
+          manifestFile));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final String[] fields = line.split(" ", 5);
+          if (fields.length != 5) continue;
+          entries.put(fields[4], new Entry(fields[0], Long
+              .parseLong(fields[1]), Long.parseLong(fields[2]), Long
+              .parseLong(fields[3])));
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (final IOException e) {
+      // ignore invalid manifest, digests will be recomputed.
+      entries.clear();
+    } catch (final NumberFormatException e) {
+      // ignore invalid manifest, digests will be recomputed.
+      entries.clear();
+    }
+  }
+
+  /** Returns <code>true</code> if the given file contains the given bytes. */
+  static boolean hasContent(final File file, final byte[] content) {
+    if (file.length() != content.length) return false;
+    try {
+      final FileInputStream is = new FileInputStream(file);
+      try {
+        final byte[] buffer = new byte[8192];
+        int pos = 0;
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+          if (pos + n > content.length) return false;
+          for (int i = 0; i < n; i++) {
+            if (buffer[i] != content[pos + i]) return false;
+          }
+          pos += n;
+        }
+        return pos == content.length;
+      } finally {
+        is.close();
+      }
+    } catch (final IOException e) {
+      // if an exception happen while comparing file content, ignore it an
+      // overwrite the file.
+      return false;
+    }
+  }
+
+  private static final class Entry {
+    final String digest;
+    final long   size;
+    final long   lastModified;
+    final long   recordTime;
+
+    Entry(final String digest, final long size, final long lastModified,
+        final long recordTime) {
+      this.digest = digest;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.recordTime = recordTime;
+    }
+  }
+}
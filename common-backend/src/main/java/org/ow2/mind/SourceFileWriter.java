@@ -23,29 +23,48 @@
 package org.ow2.mind;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
 
 /**
  * Helper class that provides methods to write a string into a generated source
  * file. If the output file already exist, its content is compared with the
  * string to be written to avoid useless timestamp modification.
+ * <p>
+ * Within a compilation, the comparison relies on a manifest that records the
+ * digest of the files generated in each directory (see
+ * {@link #saveDigestManifests(Map)}), so that the content of an output file is
+ * read only if the file has been modified since it has been generated. New
+ * contents are written in a temporary file that is then renamed to the output
+ * file, so that an output file is never partially written.
  */
 public final class SourceFileWriter {
   private SourceFileWriter() {
   }
 
-  // The io logger
-  private static Logger       ioLogger  = FractalADLLogManager.getLogger("io");
+  /**
+   * The name of the file into which the digest manifest of an output directory
+   * is stored.
+   */
+  public static final String  DIGEST_MANIFEST_FILE_NAME    = ".mind-digests";
 
-  private static final int    READ_SIZE = 512;
+  private static final String DIGEST_MANIFESTS_CONTEXT_KEY = "digest-manifests";
 
-  private static final Object LOCK      = new Object();
+  // The io logger
+  private static Logger       ioLogger                     = FractalADLLogManager
+                                                               .getLogger("io");
+
+  private static final Object LOCK                         = new Object();
 
   /**
    * Creates the given output directory. The creation is protected by a global
@@ -76,64 +95,135 @@ public final class SourceFileWriter {
    * @param content the content to write into the file
    * @return <code>true</code> if the file has been actually written.
    * @throws IOException if an error occurs.
+   * @see #writeToFile(File, String, Map)
    */
   public static boolean writeToFile(final File outputFile, final String content)
       throws IOException {
-    if (!outputFile.exists()) {
-      doWrite(outputFile, content);
+    return writeToFile(outputFile, content, null);
+  }
+
+  /**
+   * Write the given content in the given output file. If the output file
+   * already exist, its content is compared with the string to be written to
+   * avoid useless timestamp modification. The digest manifest of the output
+   * directory is used to avoid reading the output file; it is saved by
+   * {@link #saveDigestManifests(Map)}.
+   * 
+   * @param outputFile the output file into which the content will be written.
+   * @param content the content to write into the file
+   * @param context the context of the compilation. May be <code>null</code>,
+   *          in which case the content of the output file is always read.
+   * @return <code>true</code> if the file has been actually written.
+   * @throws IOException if an error occurs.
+   */
+  public static boolean writeToFile(final File outputFile,
+      final String content, final Map<Object, Object> context)
+      throws IOException {
+    final byte[] bytes = content.getBytes();
+    if (context == null) {
+      if (outputFile.exists() && DigestManifest.hasContent(outputFile, bytes)) {
+        if (ioLogger.isLoggable(Level.FINE))
+          ioLogger.fine("Generated source file '" + outputFile
+              + "' is unchanged.");
+        return false;
+      }
+      doWrite(outputFile, bytes);
       return true;
     }
 
-    boolean rewrite = false;
-    FileReader fr = null;
-    try {
-      fr = new FileReader(outputFile);
-      final char[] cs = content.toCharArray();
-      int inPos = 0;
-
-      final char[] fc = new char[READ_SIZE];
-
-      int r;
-      do {
-        r = fr.read(fc);
-        for (int i = 0; i < r && inPos < cs.length; i++, inPos++) {
-          if (cs[inPos] != fc[i]) {
-            break;
-          }
-        }
-      } while (r != -1);
-      if (inPos != cs.length) {
-        rewrite = true;
-      }
+    final String digest = DigestHelper.toHexString(DigestHelper.newDigest()
+        .digest(bytes));
+    final DigestManifest manifest = getManifest(outputFile.getAbsoluteFile()
+        .getParentFile(), context);
 
-    } catch (final IOException e) {
-      // if an exception happen while comparing file content, ignore it an
-      // overwrite the file.
-      rewrite = true;
-    } finally {
-      if (fr != null) fr.close();
+    final String recordedDigest = manifest.getDigest(outputFile);
+    final boolean unchanged;
+    if (recordedDigest != null) {
+      unchanged = recordedDigest.equals(digest);
+    } else if (outputFile.exists()
+        && DigestManifest.hasContent(outputFile, bytes)) {
+      // the file has not been generated by this writer, or has been modified
+      // since, but its content is unchanged: record its digest.
+      manifest.setDigest(outputFile, digest);
+      unchanged = true;
+    } else {
+      unchanged = false;
     }
 
-    if (rewrite) {
-      doWrite(outputFile, content);
-      return true;
-    } else {
+    if (unchanged) {
       if (ioLogger.isLoggable(Level.FINE))
         ioLogger.fine("Generated source file '" + outputFile
             + "' is unchanged.");
       return false;
     }
+
+    doWrite(outputFile, bytes);
+    manifest.setDigest(outputFile, digest);
+    return true;
+  }
+
+  /**
+   * Saves the digest manifests of the directories into which files have been
+   * written in the given context. This method must be called at the end of
+   * the compilation.
+   * 
+   * @param context the context of the compilation.
+   */
+  public static void saveDigestManifests(final Map<Object, Object> context) {
+    for (final DigestManifest manifest : getManifests(context).values()) {
+      manifest.save();
+    }
   }
 
-  private static void doWrite(final File outputFile, final String content)
+  /**
+   * Returns the digest manifests of the given context, indexed by directory.
+   */
+  @SuppressWarnings("unchecked")
+  private static ConcurrentMap<File, DigestManifest> getManifests(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      ConcurrentMap<File, DigestManifest> manifests = (ConcurrentMap<File, DigestManifest>) context
+          .get(DIGEST_MANIFESTS_CONTEXT_KEY);
+      if (manifests == null) {
+        manifests = new ConcurrentHashMap<File, DigestManifest>();
+        context.put(DIGEST_MANIFESTS_CONTEXT_KEY, manifests);
+      }
+      return manifests;
+    }
+  }
+
+  private static DigestManifest getManifest(final File dir,
+      final Map<Object, Object> context) {
+    final ConcurrentMap<File, DigestManifest> manifests = getManifests(context);
+    DigestManifest manifest = manifests.get(dir);
+    if (manifest == null) {
+      manifest = new DigestManifest(dir);
+      final DigestManifest previous = manifests.putIfAbsent(dir, manifest);
+      if (previous != null) manifest = previous;
+    }
+    return manifest;
+  }
+
+  private static void doWrite(final File outputFile, final byte[] content)
       throws IOException {
     if (ioLogger.isLoggable(Level.FINE))
       ioLogger.fine("Write generated source file '" + outputFile + "'.");
-    final FileWriter fw = new FileWriter(outputFile);
+    final File tmpFile = AtomicFileHelper.createTempFile(outputFile);
+    final FileOutputStream fos = new FileOutputStream(tmpFile);
     try {
-      fw.write(content);
+      final FileChannel channel = fos.getChannel();
+      final ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (final IOException e) {
+      fos.close();
+      tmpFile.delete();
+      throw e;
     } finally {
-      fw.close();
+      fos.close();
     }
+    AtomicFileHelper.replace(tmpFile, outputFile);
+    FileStatCache.fileWritten(outputFile);
   }
 }
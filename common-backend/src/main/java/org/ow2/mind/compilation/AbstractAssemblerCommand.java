@@ -29,7 +29,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-public abstract class AbstractAssemblerCommand implements AssemblerCommand {
+public abstract class AbstractAssemblerCommand
+    implements
+      AssemblerCommand,
+      SignedCompilationCommand {
 
   protected final Map<Object, Object> context;
   protected String                    cmd;
@@ -158,6 +161,12 @@ public abstract class AbstractAssemblerCommand implements AssemblerCommand {
     return forced;
   }
 
+  public String getSignature() {
+    return CompilerContextHelper.getStableSignature(context, cmd + " "
+        + flags + " " + defines + " " + includeDir + " " + includeFile + " "
+        + optimizationLevel);
+  }
+
   public void prepare() {
     if (dependencyManaged || dependencyOutputFile != null) {
       forced = false;
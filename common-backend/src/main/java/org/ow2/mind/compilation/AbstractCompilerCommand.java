@@ -29,7 +29,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-public abstract class AbstractCompilerCommand implements CompilerCommand {
+public abstract class AbstractCompilerCommand
+    implements
+      CompilerCommand,
+      SignedCompilationCommand {
 
   protected final Map<Object, Object> context;
   protected String                    cmd;
@@ -157,6 +160,12 @@ public abstract class AbstractCompilerCommand implements CompilerCommand {
     return forced;
   }
 
+  public String getSignature() {
+    return CompilerContextHelper.getStableSignature(context, cmd + " "
+        + flags + " " + defines + " " + includeDir + " " + includeFile + " "
+        + optimizationLevel);
+  }
+
   public void prepare() {
     if (dependencyManaged || dependencyOutputFile != null) {
       forced = false;
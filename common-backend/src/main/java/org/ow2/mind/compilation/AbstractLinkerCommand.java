@@ -29,7 +29,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-public abstract class AbstractLinkerCommand implements LinkerCommand {
+public abstract class AbstractLinkerCommand
+    implements
+      LinkerCommand,
+      SignedCompilationCommand {
 
   protected final Map<Object, Object> context;
   protected String                    cmd;
@@ -127,6 +130,14 @@ public abstract class AbstractLinkerCommand implements LinkerCommand {
     return forced;
   }
 
+  public String getSignature() {
+    // input files are part of the signature since removing an input file must
+    // trigger the re-execution of the linker.
+    return CompilerContextHelper.getStableSignature(context, cmd + " "
+        + flags + " " + inputFiles + " " + libs + " " + linkerScript + " "
+        + optimizationLevel);
+  }
+
   public void prepare() {
     outputFiles = Arrays.asList(outputFile);
   }
@@ -31,7 +31,8 @@ import java.util.Map;
 
 public abstract class AbstractPreprocessorCommand
     implements
-      PreprocessorCommand {
+      PreprocessorCommand,
+      SignedCompilationCommand {
 
   protected final Map<Object, Object> context;
   protected String                    cmd;
@@ -154,6 +155,11 @@ public abstract class AbstractPreprocessorCommand
     return forced;
   }
 
+  public String getSignature() {
+    return CompilerContextHelper.getStableSignature(context, cmd + " "
+        + flags + " " + defines + " " + includeDir + " " + includeFile);
+  }
+
   public void prepare() {
     if (dependencyManaged || dependencyOutputFile != null) {
       forced = false;
@@ -23,8 +23,10 @@
 package org.ow2.mind.compilation;
 
 import java.io.File;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -41,8 +43,13 @@ import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.error.GenericErrors;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.cache.ArtifactCacheHelper;
 import org.ow2.mind.error.ErrorManager;
+import org.ow2.mind.io.BasicOutputFileLocator;
+import org.ow2.mind.plugin.PluginManager;
 
 import com.google.inject.Inject;
 
@@ -57,9 +64,22 @@ public class BasicCompilationCommandExecutor
 
   public static final String FAIL_FAST_CONTEXT_KEY      = "fail-fast";
 
+  /**
+   * Context key of the boolean that enables the hash-check mode. In this mode,
+   * a command is considered up-to-date if the content of its input files and
+   * its command-line are unchanged since its last execution, whatever the
+   * timestamps of the files say. See {@link BuildDatabase}.
+   */
+  public static final String HASH_CHECK_CONTEXT_KEY     = "hash-check";
+
+  private static final String TEMP_DIR                  = "$TEMP_DIR";
+
   @Inject
   protected ErrorManager     errorManagerItf;
 
+  @Inject
+  protected PluginManager    pluginManagerItf;
+
   // ---------------------------------------------------------------------------
   // Implementation of the CompilationCommandExecutor interface
   // ---------------------------------------------------------------------------
@@ -67,39 +87,120 @@ public class BasicCompilationCommandExecutor
   public boolean exec(final Collection<CompilationCommand> commands,
       final Map<Object, Object> context) throws ADLException,
       InterruptedException {
+    // instantiate the shared artifact cache (if any), so that commands can use
+    // it as second level of the object cache. Artifacts are uploaded
+    // asynchronously, exec does not wait for them.
+    if (pluginManagerItf != null)
+      ArtifactCacheHelper.getArtifactCache(pluginManagerItf, context);
+
     final Map<CommandInfo, Collection<CommandInfo>> depGraph = new HashMap<CommandInfo, Collection<CommandInfo>>();
     final LinkedList<CommandInfo> readyTask = new LinkedList<CommandInfo>();
     final boolean force = ForceRegenContextHelper.getForceRegen(context);
-    buildDepGraph(commands, depGraph, readyTask, force);
+    final BuildDatabase buildDatabase = getBuildDatabase(context);
+    final SignatureDatabase signatureDatabase = SignatureDatabase
+        .getSignatureDatabase(context);
+
+    int jobs = 1;
+    Object o = context.get(CONCURENT_JOBS_CONTEXT_KEY);
+    if (o instanceof Integer) {
+      jobs = (Integer) o;
+    }
+    final File tempDir = (File) context
+        .get(BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY);
+    buildDepGraph(commands, depGraph, readyTask, force, buildDatabase,
+        signatureDatabase, FileStatCache.getFileStatCache(context), jobs,
+        tempDir);
 
     if (depGraph.isEmpty() && readyTask.isEmpty()) {
       if (depLogger.isLoggable(Level.INFO))
         depLogger.info("Nothing to be done, compiled files are up-to-dates.");
+      // entries of previous builds may have to be removed.
+      if (buildDatabase != null) buildDatabase.save();
+      signatureDatabase.save();
+      // dependencies may have been recorded while preparing the commands.
+      DependencyDatabase.saveDependencyDatabase(context);
       return true;
     }
 
-    int jobs = 1;
-    Object o = context.get(CONCURENT_JOBS_CONTEXT_KEY);
-    if (o instanceof Integer) {
-      jobs = (Integer) o;
-    }
     boolean failFast = true;
     o = context.get(FAIL_FAST_CONTEXT_KEY);
     if (o instanceof Boolean) {
       failFast = (Boolean) o;
     }
-    return execDepGraph(jobs, depGraph, readyTask, failFast);
+    try {
+      return execDepGraph(jobs, depGraph, readyTask, failFast, context);
+    } finally {
+      if (buildDatabase != null) buildDatabase.save();
+      signatureDatabase.save();
+      DependencyDatabase.saveDependencyDatabase(context);
+    }
+  }
+
+  /**
+   * Returns the {@link BuildDatabase} to use if the hash-check mode is enabled
+   * in the given context, <code>null</code> otherwise.
+   */
+  protected BuildDatabase getBuildDatabase(final Map<Object, Object> context) {
+    final Object hashCheck = context.get(HASH_CHECK_CONTEXT_KEY);
+    if (!(hashCheck instanceof Boolean) || !((Boolean) hashCheck)) return null;
+
+    final BuildDatabase buildDatabase = BuildDatabase
+        .getBuildDatabase(context);
+    // source files may have been generated since the previous execution.
+    if (buildDatabase != null) buildDatabase.invalidateAll();
+    return buildDatabase;
   }
 
   protected void buildDepGraph(final Collection<CompilationCommand> commands,
       final Map<CommandInfo, Collection<CommandInfo>> depGraph,
       final List<CommandInfo> readyTask, final boolean forced) {
+    buildDepGraph(commands, depGraph, readyTask, forced, null);
+  }
+
+  protected void buildDepGraph(final Collection<CompilationCommand> commands,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final List<CommandInfo> readyTask, final boolean forced,
+      final BuildDatabase buildDatabase) {
+    buildDepGraph(commands, depGraph, readyTask, forced, buildDatabase, null,
+        FileStatCache.getFileStatCache(null), 1, null);
+  }
+
+  /**
+   * Builds the dependency graph of the given commands. The existence and the
+   * timestamps of their input and output files are read through the given
+   * {@link FileStatCache} that is first filled using up to <code>jobs</code>
+   * threads. <code>tempDir</code> is the temporary output directory of the
+   * compilation (may be <code>null</code>), files in this directory are
+   * identified relatively to it in the {@link BuildDatabase}. The signatures
+   * of the commands are compared to the ones recorded in the given
+   * {@link SignatureDatabase} (may be <code>null</code>).
+   */
+  protected void buildDepGraph(final Collection<CompilationCommand> commands,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final List<CommandInfo> readyTask, final boolean forced,
+      final BuildDatabase buildDatabase,
+      final SignatureDatabase signatureDatabase, final FileStatCache fileStats,
+      final int jobs, final File tempDir) {
 
     final Map<CompilationCommand, CommandInfo> cmdInfos = new IdentityHashMap<CompilationCommand, CommandInfo>();
+    final Collection<File> files = new ArrayList<File>();
     for (final CompilationCommand cmd : commands) {
       cmd.prepare();
-      cmdInfos.put(cmd, new CommandInfo(cmd));
+      final CommandInfo cmdInfo = new CommandInfo(cmd);
+      cmdInfo.buildDatabase = buildDatabase;
+      cmdInfo.fileStats = fileStats;
+      cmdInfo.tempDir = tempDir;
+      cmdInfo.key = getCommandKey(cmd, tempDir);
+      cmdInfo.signatureDatabase = signatureDatabase;
+      if (signatureDatabase != null) signatureDatabase.markUsed(cmdInfo.key);
+      if (buildDatabase != null)
+        buildDatabase.markUsed(cmdInfo.key, getFileKeys(cmd.getOutputFiles(),
+            tempDir));
+      cmdInfos.put(cmd, cmdInfo);
+      files.addAll(cmd.getInputFiles());
+      files.addAll(cmd.getOutputFiles());
     }
+    fileStats.prefetch(files, jobs);
 
     /*
      * Build the fileProviders map that associates files to the command that
@@ -163,7 +264,7 @@ public class BasicCompilationCommandExecutor
           deps.add(cmdInfo);
           /* Add the provider task as a dependency of the current cmd command. */
           cmdInfo.dependencies.add(provider);
-        } else if (!inputFile.exists()) {
+        } else if (!fileStats.exists(inputFile)) {
           throw new CompilerError(GenericErrors.INTERNAL_ERROR,
               "Missing input-file \"" + inputFile
                   + "\" of compilation command : " + cmd.getDescription() + ".");
@@ -178,9 +279,79 @@ public class BasicCompilationCommandExecutor
       }
     }
 
+    /* Compute the signatures that will be persisted in the database. */
+    for (final CompilationCommand cmd : commands) {
+      getChainedSignature(cmdInfos.get(cmd), fileProducers);
+    }
+
     /* If in forced mode, do not expunge up-to-date tasks, execute all of them. */
     if (forced) return;
 
+    if (buildDatabase != null) {
+      /*
+       * Hash-check mode, expunge tasks whose input file contents and
+       * command-line are unchanged.
+       */
+      final Map<CommandInfo, Boolean> upToDates = new IdentityHashMap<CommandInfo, Boolean>();
+      for (final CompilationCommand cmd : commands) {
+        final CommandInfo cmdInfo = cmdInfos.get(cmd);
+        if (!isUpToDate(cmdInfo, fileProducers, fileConsumers, buildDatabase,
+            upToDates)) {
+          cmdInfo.setMustBeExecuted(depGraph, fileProducers);
+        }
+      }
+    } else {
+      expungeOlderTasks(commands, cmdInfos, depGraph, fileProducers,
+          fileConsumers);
+      expungeChangedSignatureTasks(commands, cmdInfos, depGraph, fileProducers);
+    }
+
+    final Collection<CommandInfo> expungedTasks = new ArrayList<CommandInfo>();
+    for (final CompilationCommand cmd : commands) {
+      final CommandInfo cmdInfo = cmdInfos.get(cmd);
+      if (cmdInfo.mustBeExecuted) {
+        if (depLogger.isLoggable(Level.FINE)) {
+          if (buildDatabase != null)
+            depLogger.fine("Task '" + cmdInfo.command.getDescription()
+                + "' input files or command-line changed, recompile.");
+          else
+            depLogger.fine("Task '" + cmdInfo.command.getDescription()
+                + "' Input file '" + cmdInfo.maxInputFile
+                + "' is more recent than output file '"
+                + cmdInfo.maxOutputFile + "', recompile.");
+        }
+      } else {
+
+        expungedTasks.add(cmdInfo);
+        depGraph.remove(cmdInfo);
+        if (depLogger.isLoggable(Level.FINE))
+          depLogger.fine("Command '" + cmd.getDescription()
+              + "' is up to date, do not recompile.");
+      }
+    }
+
+    for (final CompilationCommand cmd : commands) {
+      final CommandInfo cmdInfo = cmdInfos.get(cmd);
+      cmdInfo.dependencies.removeAll(expungedTasks);
+      if (cmdInfo.dependencies.isEmpty() && !expungedTasks.contains(cmdInfo)) {
+        /*
+         * The current cmd command has no dependency, it is ready to be
+         * executed.
+         */
+        readyTask.add(cmdInfo);
+      }
+    }
+  }
+
+  /**
+   * Marks tasks whose output files are older than their input files as
+   * {@link CommandInfo#mustBeExecuted must be executed}.
+   */
+  protected void expungeOlderTasks(final Collection<CompilationCommand> commands,
+      final Map<CompilationCommand, CommandInfo> cmdInfos,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final Map<File, CommandInfo> fileProducers,
+      final Map<File, Collection<CommandInfo>> fileConsumers) {
     /*
      * Expunge tasks that are up-to-dates. Travel the readyTask list and checks
      * if output files are more recent than input files.
@@ -206,36 +377,280 @@ public class BasicCompilationCommandExecutor
         cmdInfo.setMustBeExecuted(depGraph, fileProducers);
       }
     }
+  }
 
-    final Collection<CommandInfo> expungedTasks = new ArrayList<CommandInfo>();
+  /**
+   * Marks tasks whose {@link #getChainedSignature chained signature} is
+   * different from the one recorded in the {@link SignatureDatabase} as
+   * {@link CommandInfo#mustBeExecuted must be executed}. If no signature is
+   * recorded, the task is considered unchanged.
+   */
+  protected void expungeChangedSignatureTasks(
+      final Collection<CompilationCommand> commands,
+      final Map<CompilationCommand, CommandInfo> cmdInfos,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final Map<File, CommandInfo> fileProducers) {
     for (final CompilationCommand cmd : commands) {
       final CommandInfo cmdInfo = cmdInfos.get(cmd);
-      if (cmdInfo.mustBeExecuted) {
-        if (depLogger.isLoggable(Level.FINE))
-          depLogger.fine("Task '" + cmdInfo.command.getDescription()
-              + "' Input file '" + cmdInfo.maxInputFile
-              + "' is more recent than output file '" + cmdInfo.maxOutputFile
-              + "', recompile.");
-      } else {
+      if (cmdInfo.mustBeExecuted || cmdInfo.signature == null
+          || cmdInfo.signatureDatabase == null) continue;
 
-        expungedTasks.add(cmdInfo);
-        depGraph.remove(cmdInfo);
+      final String previousSignature = cmdInfo.signatureDatabase
+          .getSignature(cmdInfo.key);
+      if (previousSignature != null
+          && !previousSignature.equals(cmdInfo.signature)) {
         if (depLogger.isLoggable(Level.FINE))
-          depLogger.fine("Command '" + cmd.getDescription()
-              + "' is up to date, do not recompile.");
+          depLogger.fine("Task '" + cmd.getDescription()
+              + "' command-line changed, recompile.");
+        cmdInfo.setMustBeExecuted(depGraph, fileProducers);
       }
     }
+  }
 
-    for (final CompilationCommand cmd : commands) {
-      final CommandInfo cmdInfo = cmdInfos.get(cmd);
-      cmdInfo.dependencies.removeAll(expungedTasks);
-      if (cmdInfo.dependencies.isEmpty() && !expungedTasks.contains(cmdInfo)) {
-        /*
-         * The current cmd command has no dependency, it is ready to be
-         * executed.
-         */
-        readyTask.add(cmdInfo);
+  /**
+   * Returns the digest of the {@link #getSignature signature} of the given
+   * command and of the chained signatures of the commands that produce its
+   * input files. Since output files of intermediate commands (preprocessing
+   * for instance) are usually temporary files, the signatures of these
+   * commands are taken into account in the signatures of the commands that
+   * produce the final output files.
+   */
+  protected String getChainedSignature(final CommandInfo cmdInfo,
+      final Map<File, CommandInfo> fileProducers) {
+    if (cmdInfo.signature == null) {
+      final List<String> producerSignatures = new ArrayList<String>();
+      for (final File inputFile : cmdInfo.command.getInputFiles()) {
+        final CommandInfo producer = fileProducers.get(inputFile);
+        if (producer != null)
+          producerSignatures.add(getChainedSignature(producer, fileProducers));
+      }
+      Collections.sort(producerSignatures);
+
+      final MessageDigest digest = DigestHelper.newDigest();
+      DigestHelper.update(digest, getSignature(cmdInfo.command));
+      for (final String producerSignature : producerSignatures) {
+        DigestHelper.update(digest, producerSignature);
       }
+      cmdInfo.signature = DigestHelper.toHexString(digest.digest());
+    }
+    return cmdInfo.signature;
+  }
+
+  /**
+   * Returns the signature of the given command if it is a
+   * {@link SignedCompilationCommand}, <code>null</code> otherwise.
+   */
+  protected String getSignature(final CompilationCommand cmd) {
+    if (cmd instanceof SignedCompilationCommand)
+      return ((SignedCompilationCommand) cmd).getSignature();
+    return null;
+  }
+
+  /**
+   * Records the chained signature of the given command in its
+   * {@link SignatureDatabase} if it has been successfully executed, removes it
+   * otherwise.
+   */
+  protected void writeSignature(final CommandInfo cmdInfo,
+      final boolean execOK) {
+    if (cmdInfo.signatureDatabase == null) return;
+    if (execOK && cmdInfo.signature != null)
+      cmdInfo.signatureDatabase.setSignature(cmdInfo.key, cmdInfo.signature);
+    else
+      cmdInfo.signatureDatabase.removeSignature(cmdInfo.key);
+  }
+
+  /**
+   * Returns <code>true</code> if the given command is up-to-date according to
+   * the given {@link BuildDatabase}. A command is up-to-date if :
+   * <ul>
+   * <li>it is not forced,</li>
+   * <li>the commands that produce its input files are up-to-date,</li>
+   * <li>its output files exist, or are consumed by other commands (i.e. they
+   * are temporary files),</li>
+   * <li>the digest of its command-line and of the content of its input files
+   * is equal to the digest recorded after its last execution.</li>
+   * </ul>
+   */
+  protected boolean isUpToDate(final CommandInfo cmdInfo,
+      final Map<File, CommandInfo> fileProducers,
+      final Map<File, Collection<CommandInfo>> fileConsumers,
+      final BuildDatabase buildDatabase,
+      final Map<CommandInfo, Boolean> upToDates) {
+    Boolean upToDate = upToDates.get(cmdInfo);
+    if (upToDate == null) {
+      upToDate = computeUpToDate(cmdInfo, fileProducers, fileConsumers,
+          buildDatabase, upToDates);
+      upToDates.put(cmdInfo, upToDate);
+    }
+    return upToDate;
+  }
+
+  private boolean computeUpToDate(final CommandInfo cmdInfo,
+      final Map<File, CommandInfo> fileProducers,
+      final Map<File, Collection<CommandInfo>> fileConsumers,
+      final BuildDatabase buildDatabase,
+      final Map<CommandInfo, Boolean> upToDates) {
+    final CompilationCommand cmd = cmdInfo.command;
+    if (cmd.forceExec()) return false;
+
+    for (final File inputFile : cmd.getInputFiles()) {
+      final CommandInfo producer = fileProducers.get(inputFile);
+      if (producer != null
+          && !isUpToDate(producer, fileProducers, fileConsumers,
+              buildDatabase, upToDates)) return false;
+    }
+    for (final File outputFile : cmd.getOutputFiles()) {
+      if (!cmdInfo.fileStats.exists(outputFile)
+          && fileConsumers.get(outputFile) == null)
+        return false;
+    }
+
+    final String digest = computeCommandDigest(cmdInfo, buildDatabase);
+    if (depLogger.isLoggable(Level.FINEST))
+      depLogger.finest("Task '" + cmd.getDescription() + "' digest is "
+          + digest + ".");
+    return digest != null
+        && digest.equals(buildDatabase.getCommandDigest(cmdInfo.key));
+  }
+
+  /**
+   * Returns the key used to identify the given command from one build to the
+   * next, that is the {@link #getFileKey key} of its output files. A command
+   * without output file is identified by its description.
+   */
+  protected String getCommandKey(final CompilationCommand cmd,
+      final File tempDir) {
+    final List<String> paths = getFileKeys(cmd.getOutputFiles(), tempDir);
+    if (paths.isEmpty()) {
+      final String description = cmd.getDescription();
+      return (tempDir == null) ? description : description.replace(
+          tempDir.getAbsolutePath(), TEMP_DIR);
+    }
+    Collections.sort(paths);
+    final StringBuilder sb = new StringBuilder();
+    for (final String path : paths) {
+      if (sb.length() > 0) sb.append(File.pathSeparatorChar);
+      sb.append(path);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the key used to identify the given file from one build to the
+   * next. This is its absolute path, where the path of the temporary output
+   * directory (which is different for each compiler invocation) is replaced by
+   * a constant string.
+   */
+  protected String getFileKey(final File file, final File tempDir) {
+    final String path = file.getAbsolutePath();
+    if (tempDir != null) {
+      final String tempPath = tempDir.getAbsolutePath();
+      if (path.startsWith(tempPath + File.separator))
+        return TEMP_DIR + path.substring(tempPath.length());
+    }
+    return path;
+  }
+
+  protected List<String> getFileKeys(final Collection<File> files,
+      final File tempDir) {
+    final List<String> keys = new ArrayList<String>(files.size());
+    for (final File file : files) {
+      keys.add(getFileKey(file, tempDir));
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the digest of the command-line and of the content of the input
+   * files of the given command, or <code>null</code> if the digest of an input
+   * file can't be determined.
+   */
+  protected String computeCommandDigest(final CommandInfo cmdInfo,
+      final BuildDatabase buildDatabase) {
+    final List<String> entries = new ArrayList<String>();
+    for (final File inputFile : cmdInfo.command.getInputFiles()) {
+      final String fileKey = getFileKey(inputFile, cmdInfo.tempDir);
+      String fileDigest = buildDatabase.getContentDigest(inputFile);
+      if (fileDigest == null) {
+        // temporary file that has been removed, use recorded digest.
+        fileDigest = buildDatabase.getOutputDigest(fileKey);
+        if (fileDigest == null) return null;
+      }
+      entries.add(fileKey + "=" + fileDigest);
+    }
+    Collections.sort(entries);
+
+    final MessageDigest digest = DigestHelper.newDigest();
+    DigestHelper.update(digest, getCommandSignature(cmdInfo.command));
+    for (final String entry : entries) {
+      DigestHelper.update(digest, entry);
+    }
+    return DigestHelper.toHexString(digest.digest());
+  }
+
+  /**
+   * Returns a string that identifies the command-line of the given command.
+   */
+  protected String getCommandSignature(final CompilationCommand cmd) {
+    final String signature = getSignature(cmd);
+    if (signature != null) return signature + " " + cmd.getDescription();
+    return cmd.getCommand() + " " + cmd.getDescription();
+  }
+
+  /**
+   * Executes the given command, persists its signature and, in hash-check
+   * mode, records its digest and the digests of its output files in the
+   * {@link BuildDatabase}.
+   */
+  protected boolean execCommand(final CommandInfo cmdInfo)
+      throws ADLException, InterruptedException {
+    final BuildDatabase buildDatabase = cmdInfo.buildDatabase;
+    if (buildDatabase == null) {
+      boolean execOK = false;
+      try {
+        execOK = cmdInfo.command.exec();
+      } finally {
+        invalidateOutputFiles(cmdInfo);
+        writeSignature(cmdInfo, execOK);
+      }
+      return execOK;
+    }
+
+    final CompilationCommand cmd = cmdInfo.command;
+    // input files are ready, compute digest before execution.
+    final String digest = computeCommandDigest(cmdInfo, buildDatabase);
+    boolean execOK = false;
+    try {
+      execOK = cmd.exec();
+    } finally {
+      for (final File outputFile : cmd.getOutputFiles()) {
+        buildDatabase.invalidate(outputFile);
+        if (execOK) {
+          final String outputDigest = buildDatabase
+              .getContentDigest(outputFile);
+          if (outputDigest != null)
+            buildDatabase.setOutputDigest(
+                getFileKey(outputFile, cmdInfo.tempDir), outputDigest);
+        }
+      }
+      if (execOK && digest != null)
+        buildDatabase.setCommandDigest(cmdInfo.key, digest);
+      else
+        buildDatabase.removeCommandDigest(cmdInfo.key);
+      invalidateOutputFiles(cmdInfo);
+      writeSignature(cmdInfo, execOK);
+    }
+    return execOK;
+  }
+
+  /**
+   * Removes the output files of the given command from its
+   * {@link FileStatCache}, since they have been (re)written by its execution.
+   */
+  protected void invalidateOutputFiles(final CommandInfo cmdInfo) {
+    for (final File outputFile : cmdInfo.command.getOutputFiles()) {
+      cmdInfo.fileStats.invalidate(outputFile);
     }
   }
 
@@ -244,7 +659,7 @@ public class BasicCompilationCommandExecutor
    * outputFile is defines as follow :
    * <ul>
    * <li>If the file exists, its timestamp is the value returned by
-   * {@link File#lastModified()}.</li>
+   * {@link FileStatCache#lastModified(File)}.</li>
    * <li>Otherwise
    * <ul>
    * <li>The timestamp is the maximum timestamp of the consumer commands (the
@@ -259,10 +674,18 @@ public class BasicCompilationCommandExecutor
   protected long getOutputFileTimestamp(final File outputFile,
       final Map<File, Collection<CommandInfo>> fileConsumers,
       final Map<File, Long> outputFileTimestamps) {
+    return getOutputFileTimestamp(outputFile, fileConsumers,
+        outputFileTimestamps, FileStatCache.getFileStatCache(null));
+  }
+
+  protected long getOutputFileTimestamp(final File outputFile,
+      final Map<File, Collection<CommandInfo>> fileConsumers,
+      final Map<File, Long> outputFileTimestamps,
+      final FileStatCache fileStats) {
     Long ts = outputFileTimestamps.get(outputFile);
     if (ts == null) {
-      if (outputFile.exists()) {
-        ts = outputFile.lastModified();
+      if (fileStats.exists(outputFile)) {
+        ts = fileStats.lastModified(outputFile);
         if (depLogger.isLoggable(Level.FINEST))
           depLogger.finest("Output file '" + outputFile
               + "' exists, its timestamp is " + ts + ".");
@@ -318,7 +741,7 @@ public class BasicCompilationCommandExecutor
         for (final File outputFile : cmdInfo.command.getOutputFiles()) {
           /* Get the timestamp of the file. */
           final long outputFileTs = getOutputFileTimestamp(outputFile,
-              fileConsumers, outputFileTimestamps);
+              fileConsumers, outputFileTimestamps, cmdInfo.fileStats);
           if (outputFileTs == 0L) {
             cmdInfo.maxOutputTimestamp = 0L;
             cmdInfo.maxOutputFile = outputFile;
@@ -347,7 +770,7 @@ public class BasicCompilationCommandExecutor
    * is defines as follow :
    * <ul>
    * <li>If the file exists, its timestamp is the value returned by
-   * {@link File#lastModified()}.</li>
+   * {@link FileStatCache#lastModified(File)}.</li>
    * <li>Otherwise the timestamp is the timestamp of the producer commands (the
    * commands that produce this file as output file), as defined in
    * {@link #getInputCommandTimestamp(CommandInfo, Map, Map)}.</li>
@@ -356,10 +779,18 @@ public class BasicCompilationCommandExecutor
   protected long getInputFileTimestamp(final File inputFile,
       final Map<File, CommandInfo> fileProducers,
       final Map<File, Long> inputFileTimestamps) {
+    return getInputFileTimestamp(inputFile, fileProducers,
+        inputFileTimestamps, FileStatCache.getFileStatCache(null));
+  }
+
+  protected long getInputFileTimestamp(final File inputFile,
+      final Map<File, CommandInfo> fileProducers,
+      final Map<File, Long> inputFileTimestamps,
+      final FileStatCache fileStats) {
     Long ts = inputFileTimestamps.get(inputFile);
     if (ts == null) {
-      if (inputFile.exists()) {
-        ts = inputFile.lastModified();
+      if (fileStats.exists(inputFile)) {
+        ts = fileStats.lastModified(inputFile);
         if (depLogger.isLoggable(Level.FINEST))
           depLogger.finest("Input file '" + inputFile
               + "' exists, its timestamp is " + ts + ".");
@@ -394,7 +825,7 @@ public class BasicCompilationCommandExecutor
         for (final File inputFile : cmdInfo.command.getInputFiles()) {
           /* Get the timestamp of the file. */
           final long inputFileTs = getInputFileTimestamp(inputFile,
-              fileProducers, inputFileTimestamps);
+              fileProducers, inputFileTimestamps, cmdInfo.fileStats);
           if (inputFileTs > cmdInfo.maxInputTimestamp) {
             cmdInfo.maxInputTimestamp = inputFileTs;
             cmdInfo.maxInputFile = inputFile;
@@ -409,6 +840,14 @@ public class BasicCompilationCommandExecutor
     return cmdInfo.maxInputTimestamp;
   }
 
+  protected boolean execDepGraph(final int nbJobs,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final LinkedList<CommandInfo> readyTask, final boolean failFast,
+      final Map<Object, Object> context) throws ADLException,
+      InterruptedException {
+    return execDepGraph(nbJobs, depGraph, readyTask, failFast);
+  }
+
   protected boolean execDepGraph(final int nbJobs,
       final Map<CommandInfo, Collection<CommandInfo>> depGraph,
       final LinkedList<CommandInfo> readyTask, final boolean failFast)
@@ -432,7 +871,7 @@ public class BasicCompilationCommandExecutor
 
       boolean execOK;
       try {
-        execOK = cmdInfo.command.exec();
+        execOK = execCommand(cmdInfo);
       } catch (final ADLException e) {
         execOK = false;
       }
@@ -533,7 +972,7 @@ public class BasicCompilationCommandExecutor
 
           boolean execOK;
           try {
-            execOK = cmdInfo.command.exec();
+            execOK = execCommand(cmdInfo);
           } catch (final ADLException e) {
             execOK = false;
           } catch (final Exception e) {
@@ -591,6 +1030,14 @@ public class BasicCompilationCommandExecutor
     File                     maxInputFile;
     long                     maxInputTimestamp  = -1L;
     boolean                  mustBeExecuted     = false;
+    BuildDatabase            buildDatabase;
+    SignatureDatabase        signatureDatabase;
+    FileStatCache            fileStats          = FileStatCache
+                                                    .getFileStatCache(null);
+    File                     tempDir;
+    /** Identifies the command from one build to the next. */
+    String                   key;
+    String                   signature;
 
     CommandInfo(final CompilationCommand command) {
       this.command = command;
@@ -609,7 +1056,7 @@ public class BasicCompilationCommandExecutor
         }
 
         for (final File inputFile : command.getInputFiles()) {
-          if (!inputFile.exists()) {
+          if (!fileStats.exists(inputFile)) {
             /*
              * The inputFile in not present, the task that produces it must be
              * executed also.
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+
+/**
+ * Small persistent database used by the {@link BasicCompilationCommandExecutor}
+ * in hash-check mode. It records, for each compilation command, the digest of
+ * its command-line and of the content of its input files; and for each output
+ * file, the digest of its content when it has been produced. Commands and
+ * files are identified by keys in which the path of the temporary output
+ * directory is replaced by a constant, so that commands producing temporary
+ * files are recognized from one build to the next. Only the entries of the
+ * commands that are part of the current build are saved. This class is
+ * thread-safe.
+ */
+public class BuildDatabase {
+
+  protected static Logger             depLogger                  = FractalADLLogManager
+                                                                     .getLogger("dep");
+
+  /** The name of the database file, relative to the output directory. */
+  public static final String          BUILD_DB_FILE_NAME         = ".mind-build.db";
+
+  /** The context key under which the database of a compilation is stored. */
+  public static final String          BUILD_DATABASE_CONTEXT_KEY = "build-database";
+
+  protected static final int          VERSION                    = 1;
+
+  protected final File                dbFile;
+  protected final Map<String, String> commandDigests             = new ConcurrentHashMap<String, String>();
+  protected final Map<String, String> outputDigests              = new ConcurrentHashMap<String, String>();
+
+  /** Digests of file contents, computed at most once per build. */
+  protected final Map<File, String>   contentDigests             = new ConcurrentHashMap<File, String>();
+
+  /** Keys of the commands and of the output files of the current build. */
+  protected final Set<String>         usedCommands               = Collections
+                                                                     .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  protected final Set<String>         usedOutputs                = Collections
+                                                                     .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  protected volatile boolean          modified                   = false;
+
+  public BuildDatabase(final File dbFile) {
+    this.dbFile = dbFile;
+  }
+
+  /**
+   * Returns the database stored in the given output directory. If the database
+   * file does not exist or can't be read, an empty database is returned.
+   * 
+   * @param outputDir the output directory.
+   * @return the database stored in the given output directory.
+   */
+  public static BuildDatabase load(final File outputDir) {
+    final BuildDatabase db = new BuildDatabase(new File(outputDir,
+        BUILD_DB_FILE_NAME));
+    db.read();
+    return db;
+  }
+
+  /**
+   * Returns the database of the given context. The database is loaded from the
+   * output directory the first time this method is called for a given context,
+   * so that the commands of every execution of the compilation are part of the
+   * same build.
+   * 
+   * @param context the context of the compilation.
+   * @return the database of the given context, or <code>null</code> if no
+   *         output directory is specified in the given context.
+   */
+  public static BuildDatabase getBuildDatabase(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      BuildDatabase db = (BuildDatabase) context
+          .get(BUILD_DATABASE_CONTEXT_KEY);
+      if (db == null) {
+        final File outputDir = (File) context
+            .get(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY);
+        if (outputDir == null) return null;
+        db = load(outputDir);
+        context.put(BUILD_DATABASE_CONTEXT_KEY, db);
+      }
+      return db;
+    }
+  }
+
+  /**
+   * Marks the given command and its output files as part of the current build.
+   * The entries of the commands and of the files that are not marked are not
+   * saved.
+   * 
+   * @param commandKey the key of a command.
+   * @param outputFileKeys the keys of the output files of the command.
+   */
+  public void markUsed(final String commandKey,
+      final Collection<String> outputFileKeys) {
+    usedCommands.add(commandKey);
+    usedOutputs.addAll(outputFileKeys);
+  }
+
+  public String getCommandDigest(final String commandKey) {
+    return commandDigests.get(commandKey);
+  }
+
+  public void setCommandDigest(final String commandKey, final String digest) {
+    commandDigests.put(commandKey, digest);
+    modified = true;
+  }
+
+  public void removeCommandDigest(final String commandKey) {
+    if (commandDigests.remove(commandKey) != null) modified = true;
+  }
+
+  public String getOutputDigest(final String outputFileKey) {
+    return outputDigests.get(outputFileKey);
+  }
+
+  public void setOutputDigest(final String outputFileKey, final String digest) {
+    outputDigests.put(outputFileKey, digest);
+    modified = true;
+  }
+
+  /**
+   * Returns the digest of the content of the given file, or <code>null</code>
+   * if the file does not exist or can't be read. Digests are memorized, use
+   * {@link #invalidate(File)} when the content of a file is changed.
+   * 
+   * @param file a file.
+   * @return the digest of the content of the given file.
+   */
+  public String getContentDigest(final File file) {
+    String digest = contentDigests.get(file);
+    if (digest == null) {
+      if (!file.isFile()) return null;
+      try {
+        digest = DigestHelper.digest(file);
+      } catch (final IOException e) {
+        if (depLogger.isLoggable(Level.FINE))
+          depLogger.log(Level.FINE, "Can't compute digest of file '" + file
+              + "'", e);
+        return null;
+      }
+      contentDigests.put(file, digest);
+    }
+    return digest;
+  }
+
+  public void invalidate(final File file) {
+    contentDigests.remove(file);
+  }
+
+  /**
+   * Forgets every memorized digest of file contents. Source files may be
+   * generated between two executions of the same compilation.
+   */
+  public void invalidateAll() {
+    contentDigests.clear();
+  }
+
+  /**
+   * Writes this database in its file, if it has been modified or if it contains
+   * entries of commands that are not part of the current build. These entries
+   * are not written, but they are kept in memory since the commands of a later
+   * execution of the same compilation may use them.
+   */
+  public synchronized void save() {
+    final Map<String, String> commands = getUsedEntries(commandDigests,
+        usedCommands);
+    final Map<String, String> outputs = getUsedEntries(outputDigests,
+        usedOutputs);
+    if (!modified && commands.size() == commandDigests.size()
+        && outputs.size() == outputDigests.size()) return;
+    try {
+      final File tmpFile = AtomicFileHelper.createTempFile(dbFile);
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(VERSION);
+        writeMap(out, commands);
+        writeMap(out, outputs);
+      } finally {
+        out.close();
+      }
+      AtomicFileHelper.replace(tmpFile, dbFile);
+      modified = false;
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.WARNING))
+        depLogger.log(Level.WARNING, "Can't write build database '" + dbFile
+            + "'", e);
+    }
+  }
+
+  protected void read() {
+    if (!dbFile.isFile()) return;
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(dbFile)));
+      try {
+        if (in.readInt() != VERSION) return;
+        readMap(in, commandDigests);
+        readMap(in, outputDigests);
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      // corrupted database, start with an empty one.
+      if (depLogger.isLoggable(Level.FINE))
+        depLogger.log(Level.FINE, "Can't read build database '" + dbFile
+            + "'", e);
+      commandDigests.clear();
+      outputDigests.clear();
+    }
+  }
+
+  protected static Map<String, String> getUsedEntries(
+      final Map<String, String> map, final Set<String> usedKeys) {
+    final Map<String, String> usedEntries = new HashMap<String, String>();
+    for (final Map.Entry<String, String> entry : map.entrySet()) {
+      if (usedKeys.contains(entry.getKey()))
+        usedEntries.put(entry.getKey(), entry.getValue());
+    }
+    return usedEntries;
+  }
+
+  protected static void writeMap(final DataOutputStream out,
+      final Map<String, String> map) throws IOException {
+    out.writeInt(map.size());
+    for (final Map.Entry<String, String> entry : map.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeUTF(entry.getValue());
+    }
+  }
+
+  protected static void readMap(final DataInputStream in,
+      final Map<String, String> map) throws IOException {
+    final int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      final String key = in.readUTF();
+      map.put(key, in.readUTF());
+    }
+  }
+}
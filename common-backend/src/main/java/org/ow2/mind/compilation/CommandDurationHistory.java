@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+
+/**
+ * Persistent history of the execution durations of compilation commands. It is
+ * used to estimate the duration of commands in order to schedule first the
+ * commands that are on the critical path of the build. Only the durations of
+ * the commands of the current build are saved. This class is thread-safe.
+ */
+public class CommandDurationHistory {
+
+  protected static Logger           depLogger           = FractalADLLogManager
+                                                            .getLogger("dep");
+
+  /** The name of the history file, relative to the output directory. */
+  public static final String        HISTORY_FILE_NAME   = ".mind-durations";
+
+  /** The context key under which the history of a compilation is stored. */
+  public static final String        HISTORY_CONTEXT_KEY = "duration-history";
+
+  protected static final int        VERSION             = 1;
+
+  /**
+   * Estimated duration, in milliseconds, of a command that has never been
+   * executed.
+   */
+  public static final long          DEFAULT_DURATION    = 100L;
+
+  protected final File              historyFile;
+  protected final Map<String, Long> durations           = new ConcurrentHashMap<String, Long>();
+
+  /** Keys of the commands of the current build. */
+  protected final Set<String>       usedKeys            = Collections
+                                                            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  protected volatile boolean        modified            = false;
+
+  /**
+   * @param historyFile the file in which the history is persisted. May be
+   *          <code>null</code>, in which case the history is not persisted.
+   */
+  public CommandDurationHistory(final File historyFile) {
+    this.historyFile = historyFile;
+  }
+
+  /**
+   * Returns the history stored in the given output directory.
+   * 
+   * @param outputDir the output directory. May be <code>null</code>, in which
+   *          case an empty history, that is not persisted, is returned.
+   * @return the history stored in the given output directory.
+   */
+  public static CommandDurationHistory load(final File outputDir) {
+    if (outputDir == null) return new CommandDurationHistory(null);
+    final CommandDurationHistory history = new CommandDurationHistory(
+        new File(outputDir, HISTORY_FILE_NAME));
+    history.read();
+    return history;
+  }
+
+  /**
+   * Returns the history of the given context. The history is loaded from the
+   * output directory the first time this method is called for a given context,
+   * so that the commands of every execution of the compilation are part of the
+   * same build.
+   * 
+   * @param context the context of the compilation.
+   * @return the history of the given context.
+   */
+  public static CommandDurationHistory getCommandDurationHistory(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      CommandDurationHistory history = (CommandDurationHistory) context
+          .get(HISTORY_CONTEXT_KEY);
+      if (history == null) {
+        history = load((File) context
+            .get(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY));
+        context.put(HISTORY_CONTEXT_KEY, history);
+      }
+      return history;
+    }
+  }
+
+  /**
+   * Returns the estimated duration of the command identified by the given key.
+   * 
+   * @param commandKey the key of a command.
+   * @return the estimated duration in milliseconds.
+   */
+  public long getEstimatedDuration(final String commandKey) {
+    usedKeys.add(commandKey);
+    final Long duration = durations.get(commandKey);
+    return (duration == null) ? DEFAULT_DURATION : duration;
+  }
+
+  /**
+   * Records the measured duration of the command identified by the given key.
+   * The estimated duration is the average of the measured duration and of the
+   * previous estimation to smooth variations due to the load of the host.
+   * 
+   * @param commandKey the key of a command.
+   * @param duration the measured duration in milliseconds.
+   */
+  public void record(final String commandKey, final long duration) {
+    usedKeys.add(commandKey);
+    final Long previous = durations.get(commandKey);
+    durations.put(commandKey, (previous == null)
+        ? duration
+        : (previous + duration) / 2);
+    modified = true;
+  }
+
+  /**
+   * Writes the durations of the commands of the current build, if a duration
+   * has been recorded. The durations of the other commands are not written, but
+   * they are kept in memory since the commands of a later execution of the same
+   * compilation may use them.
+   */
+  public synchronized void save() {
+    if (historyFile == null || !modified) return;
+    final Map<String, Long> usedDurations = new HashMap<String, Long>();
+    for (final Map.Entry<String, Long> entry : durations.entrySet()) {
+      if (usedKeys.contains(entry.getKey()))
+        usedDurations.put(entry.getKey(), entry.getValue());
+    }
+    try {
+      final File tmpFile = AtomicFileHelper.createTempFile(historyFile);
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(VERSION);
+        out.writeInt(usedDurations.size());
+        for (final Map.Entry<String, Long> entry : usedDurations.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue());
+        }
+      } finally {
+        out.close();
+      }
+      AtomicFileHelper.replace(tmpFile, historyFile);
+      modified = false;
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.WARNING))
+        depLogger.log(Level.WARNING, "Can't write duration history '"
+            + historyFile + "'", e);
+    }
+  }
+
+  protected void read() {
+    if (!historyFile.isFile()) return;
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(historyFile)));
+      try {
+        if (in.readInt() != VERSION) return;
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+          final String key = in.readUTF();
+          durations.put(key, in.readLong());
+        }
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.FINE))
+        depLogger.log(Level.FINE, "Can't read duration history '"
+            + historyFile + "'", e);
+      durations.clear();
+    }
+  }
+}
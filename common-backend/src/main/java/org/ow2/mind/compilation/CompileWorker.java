@@ -0,0 +1,387 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.ThreadPoolHelper;
+import org.ow2.mind.compilation.ExecutionHelper.ExecutionResult;
+
+/**
+ * Process that compiles translation units sent by a {@link CompileWorkerPool}
+ * (see {@link CompileWorkerProtocol}), in the way of distcc. Translation units
+ * are self-contained (they have already been preprocessed by the client), so
+ * the worker only needs a compiler. Requests are served by a bounded pool of
+ * threads, each one in a temporary directory that is removed once the object
+ * file has been sent back.
+ * <p>
+ * A worker is started with
+ * <code>mindc --compile-worker[=[&lt;address&gt;:]&lt;port&gt;[/&lt;threads&gt;]]
+ * [&lt;compiler&gt;...]</code>. It only executes the compilers it has been
+ * started with (<code>gcc</code> by default), with
+ * {@link CompileWorkerProtocol#isAllowedArgument allowed} arguments, and only
+ * serves clients that know its token (see
+ * {@link CompileWorkerProtocol#TOKEN_ENV_VARIABLE}). It listens on the
+ * loopback interface unless an address is explicitly given.
+ */
+public class CompileWorker {
+
+  protected static Logger      logger           = FractalADLLogManager
+                                                    .getLogger("worker");
+
+  /** The default compiler executed by a worker. */
+  public static final String   DEFAULT_COMPILER = "gcc";
+
+  /**
+   * Timeout, in milliseconds, of the reception of a request. Connections are
+   * closed if a client does not send its request within this delay.
+   */
+  protected static final int   REQUEST_TIMEOUT  = 60 * 1000;
+
+  protected final InetAddress  address;
+  protected final int          port;
+  protected final int          nbThreads;
+  protected final List<String> compilers;
+  protected final String       token;
+  protected final SecureRandom random           = new SecureRandom();
+  protected ServerSocket       serverSocket;
+  protected volatile boolean   running;
+
+  /**
+   * @param address the address to listen on, or <code>null</code> for the
+   *          loopback interface.
+   * @param port the port to listen on, or <code>0</code> for an ephemeral port.
+   * @param nbThreads the maximal number of requests served at the same time.
+   * @param compilers the compiler commands that the worker executes.
+   * @param token the token that clients must know.
+   */
+  public CompileWorker(final InetAddress address, final int port,
+      final int nbThreads, final List<String> compilers, final String token) {
+    if (token == null || token.length() == 0)
+      throw new IllegalArgumentException("Invalid token");
+    this.address = address;
+    this.port = port;
+    this.nbThreads = nbThreads;
+    this.compilers = compilers;
+    this.token = token;
+  }
+
+  /**
+   * Opens the server socket of this worker.
+   * 
+   * @return the port this worker listens on.
+   * @throws IOException if the server socket can't be opened.
+   */
+  public int open() throws IOException {
+    serverSocket = new ServerSocket(port, 50, (address != null)
+        ? address
+        : InetAddress.getByName(null));
+    running = true;
+    if (logger.isLoggable(Level.INFO))
+      logger.info("Compile worker listening on "
+          + serverSocket.getInetAddress().getHostAddress() + ":"
+          + serverSocket.getLocalPort() + " (compilers: " + compilers
+          + ", threads: " + nbThreads + ").");
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Serves requests until this worker is {@link #stop() stopped}. At most
+   * <code>nbThreads</code> requests are served at the same time; other
+   * connections wait in the backlog of the server socket.
+   * 
+   * @throws IOException if the server socket fails.
+   */
+  public void serve() throws IOException {
+    final ExecutorService executor = ThreadPoolHelper.newDaemonThreadPool(
+        "mindc-compile-worker", nbThreads);
+    final Semaphore permits = new Semaphore(nbThreads);
+    try {
+      while (running) {
+        try {
+          permits.acquire();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (final SocketException e) {
+          permits.release();
+          // the server socket has been closed by stop.
+          if (!running) return;
+          throw e;
+        }
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              handleRequest(socket);
+            } catch (final IOException e) {
+              logger.log(Level.WARNING, "Error while serving request", e);
+            } finally {
+              try {
+                socket.close();
+              } catch (final IOException e) {
+                // ignore
+              }
+              permits.release();
+            }
+          }
+        });
+      }
+    } finally {
+      serverSocket.close();
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Stops this worker. Requests that are being served are completed.
+   */
+  public void stop() {
+    running = false;
+    try {
+      if (serverSocket != null) serverSocket.close();
+    } catch (final IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Handles a request.
+   * 
+   * @param socket the socket of the request.
+   * @throws IOException if a communication error occurs.
+   */
+  protected void handleRequest(final Socket socket) throws IOException {
+    socket.setSoTimeout(REQUEST_TIMEOUT);
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        socket.getInputStream()));
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream()));
+
+    if (!authenticate(in, out)) {
+      logger.warning("Authentication of "
+          + socket.getInetAddress().getHostAddress() + " failed.");
+      out.writeInt(CompileWorkerProtocol.REJECTED_STATUS);
+      out.flush();
+      return;
+    }
+    out.writeInt(CompileWorkerProtocol.ACCEPTED_STATUS);
+    out.flush();
+
+    if (in.readByte() != CompileWorkerProtocol.COMPILE_REQUEST) {
+      out.writeInt(CompileWorkerProtocol.REJECTED_STATUS);
+      out.flush();
+      return;
+    }
+
+    final File workDir = createWorkDir();
+    try {
+      final String compiler = in.readUTF();
+      boolean allowed = compilers.contains(compiler);
+      final List<String> cmd = new ArrayList<String>();
+      cmd.add(compiler);
+      cmd.add("-c");
+      final int nbArgs = in.readInt();
+      for (int i = 0; i < nbArgs; i++) {
+        final String arg = in.readUTF();
+        if (!CompileWorkerProtocol.isAllowedArgument(arg)) allowed = false;
+        cmd.add(arg);
+      }
+
+      // the files are read even if the request is rejected, so that the
+      // client receives the rejection once it has sent its request.
+      final int nbFiles = in.readInt();
+      if (nbFiles < 1) throw new IOException("No input file");
+      final List<File> files = new ArrayList<File>(nbFiles + 1);
+      for (int i = 0; i < nbFiles; i++) {
+        // only keep the base name of files, so that they are written in the
+        // working directory.
+        final String name = new File(in.readUTF()).getName();
+        final File file = (i == 0) ? new File(workDir, name) : new File(
+            workDir, "include" + i + "-" + name);
+        CompileWorkerProtocol.readFile(in, file);
+        if (i != 0) {
+          cmd.add("-include");
+          cmd.add(file.getPath());
+        }
+        files.add(file);
+      }
+      if (!allowed) {
+        logger.warning("Rejected request: " + cmd);
+        out.writeInt(CompileWorkerProtocol.REJECTED_STATUS);
+        out.flush();
+        return;
+      }
+      final File inputFile = files.get(0);
+      final File outputFile = new File(workDir, "output.o");
+      files.add(outputFile);
+      cmd.add("-o");
+      cmd.add(outputFile.getPath());
+      cmd.add(inputFile.getPath());
+
+      ExecutionResult result;
+      try {
+        result = ExecutionHelper.exec("Compile " + inputFile.getName(), cmd);
+      } catch (final InterruptedException e) {
+        throw new IOException("Interrupted");
+      } catch (final IOException e) {
+        // the compiler can't be executed, let the client compile locally.
+        logger.log(Level.WARNING, "Can't execute " + cmd.get(0), e);
+        out.writeInt(CompileWorkerProtocol.REJECTED_STATUS);
+        out.flush();
+        return;
+      }
+
+      out.writeInt(result.getExitValue());
+      // send the paths of the files, so that the client can replace them by
+      // its own paths in the output of the compiler.
+      out.writeInt(files.size());
+      for (final File file : files) {
+        out.writeUTF(file.getPath());
+      }
+      CompileWorkerProtocol.writeOutput(out, result.getOutput());
+      if (result.getExitValue() == 0) {
+        CompileWorkerProtocol.writeFile(out, outputFile);
+      }
+      out.flush();
+    } finally {
+      deleteAll(workDir);
+    }
+  }
+
+  /**
+   * Sends a challenge to the client and checks its response.
+   * 
+   * @return <code>true</code> if the client knows the token of this worker.
+   */
+  protected boolean authenticate(final DataInputStream in,
+      final DataOutputStream out) throws IOException {
+    final byte[] challenge = new byte[CompileWorkerProtocol.CHALLENGE_SIZE];
+    random.nextBytes(challenge);
+    out.writeInt(CompileWorkerProtocol.PROTOCOL_VERSION);
+    out.write(challenge);
+    out.flush();
+    final byte[] response = CompileWorkerProtocol.readResponse(in);
+    return MessageDigest.isEqual(response,
+        CompileWorkerProtocol.computeResponse(token, challenge));
+  }
+
+  protected File createWorkDir() throws IOException {
+    final File dir = File.createTempFile("mindc-worker", "");
+    if (!dir.delete() || !dir.mkdir())
+      throw new IOException("Can't create directory \"" + dir + "\"");
+    return dir;
+  }
+
+  protected void deleteAll(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteAll(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Entry point.
+   * 
+   * @param args the first argument is the
+   *          {@link CompileWorkerProtocol#WORKER_OPTION} optionally followed by
+   *          <code>=[&lt;address&gt;:]&lt;port&gt;[/&lt;threads&gt;]</code>,
+   *          the next ones are the compilers the worker executes.
+   */
+  public static void main(final String... args) {
+    InetAddress address = null;
+    int port = CompileWorkerProtocol.DEFAULT_PORT;
+    int nbThreads = Runtime.getRuntime().availableProcessors();
+    final int i = args[0].indexOf('=');
+    if (i != -1) {
+      String value = args[0].substring(i + 1);
+      try {
+        final int k = value.lastIndexOf('/');
+        if (k != -1) {
+          nbThreads = Integer.parseInt(value.substring(k + 1));
+          if (nbThreads <= 0) throw new NumberFormatException();
+          value = value.substring(0, k);
+        }
+        final int j = value.lastIndexOf(':');
+        if (j != -1) address = InetAddress.getByName(value.substring(0, j));
+        port = Integer.parseInt(value.substring(j + 1));
+      } catch (final IOException e) {
+        System.err.println("Invalid compile worker address in '" + args[0]
+            + "'");
+        System.exit(1);
+        return;
+      } catch (final NumberFormatException e) {
+        System.err.println("Invalid compile worker port or number of threads"
+            + " in '" + args[0] + "'");
+        System.exit(1);
+        return;
+      }
+    }
+    final List<String> compilers = (args.length > 1) ? Arrays.asList(args)
+        .subList(1, args.length) : Arrays.asList(DEFAULT_COMPILER);
+
+    final String token = System
+        .getenv(CompileWorkerProtocol.TOKEN_ENV_VARIABLE);
+    if (token == null || token.length() == 0) {
+      System.err.println("The " + CompileWorkerProtocol.TOKEN_ENV_VARIABLE
+          + " environment variable must be set to the token of the worker.");
+      System.exit(1);
+      return;
+    }
+
+    final CompileWorker worker = new CompileWorker(address, port, nbThreads,
+        compilers, token);
+    try {
+      worker.open();
+      worker.serve();
+    } catch (final IOException e) {
+      System.err.println("Can't start compile worker on port " + port + ": "
+          + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
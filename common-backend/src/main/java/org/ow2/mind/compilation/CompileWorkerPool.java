@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.compilation.ExecutionHelper.ExecutionResult;
+import org.ow2.mind.io.AtomicFileHelper;
+
+/**
+ * Pool of execution slots shared by the local host and the
+ * {@link CompileWorker compile workers} specified in the context. A
+ * {@link RemoteCompilerCommand} that is
+ * {@link RemoteCompilerCommand#isRemotable() remotable} is preferably executed
+ * by a worker, other commands are executed locally. A worker that can't be
+ * reached (or that rejects the token of the pool) is disabled for the rest of
+ * the build, and the commands it should have executed are executed locally.
+ */
+public class CompileWorkerPool {
+
+  protected static Logger    depLogger                        = FractalADLLogManager
+                                                                  .getLogger("dep");
+  protected static Logger    ioLogger                         = FractalADLLogManager
+                                                                  .getLogger("io");
+
+  /**
+   * Context key of the compile workers (a {@link List} of
+   * <code>&lt;host&gt;:&lt;port&gt;[/&lt;slots&gt;]</code> strings).
+   */
+  public static final String COMPILE_WORKERS_CONTEXT_KEY      = "compile-workers";
+
+  /**
+   * Context key of the token shared with the compile workers (see
+   * {@link CompileWorkerProtocol#TOKEN_ENV_VARIABLE}).
+   */
+  public static final String COMPILE_WORKER_TOKEN_CONTEXT_KEY = "compile-worker-token";
+
+  /** The number of slots of a worker, if not specified. */
+  public static final int    DEFAULT_SLOTS                    = 4;
+
+  /** Timeout, in milliseconds, of the connection to a worker. */
+  protected static final int CONNECT_TIMEOUT                  = 10000;
+
+  /** Timeout, in milliseconds, of the compilation by a worker. */
+  protected static final int READ_TIMEOUT                     = 10 * 60 * 1000;
+
+  protected final List<Worker> workers;
+  protected int                localSlots;
+  protected int                usedLocalSlots;
+
+  public CompileWorkerPool(final List<Worker> workers) {
+    this.workers = workers;
+  }
+
+  /**
+   * Returns a new {@link CompileWorkerPool} with the workers specified in the
+   * given context, or <code>null</code> if no worker (or no token) is
+   * specified.
+   * 
+   * @param context the context.
+   * @return a new {@link CompileWorkerPool} or <code>null</code>.
+   */
+  @SuppressWarnings("unchecked")
+  public static CompileWorkerPool newCompileWorkerPool(
+      final Map<Object, Object> context) {
+    final List<String> specs = (List<String>) context
+        .get(COMPILE_WORKERS_CONTEXT_KEY);
+    if (specs == null || specs.isEmpty()) return null;
+    final String token = (String) context
+        .get(COMPILE_WORKER_TOKEN_CONTEXT_KEY);
+    if (token == null) {
+      depLogger.warning("No compile worker token, compile workers are not "
+          + "used.");
+      return null;
+    }
+    final List<Worker> workers = new ArrayList<Worker>(specs.size());
+    for (final String spec : specs) {
+      workers.add(parseWorker(spec, token));
+    }
+    return new CompileWorkerPool(workers);
+  }
+
+  /**
+   * Parses a worker specification.
+   * 
+   * @param spec a <code>&lt;host&gt;:&lt;port&gt;[/&lt;slots&gt;]</code>
+   *          string.
+   * @param token the token shared with the worker.
+   * @return the corresponding worker.
+   * @throws IllegalArgumentException if the given string is invalid.
+   */
+  public static Worker parseWorker(final String spec, final String token) {
+    String hostPort = spec;
+    int slots = DEFAULT_SLOTS;
+    final int i = spec.lastIndexOf('/');
+    if (i != -1) {
+      hostPort = spec.substring(0, i);
+      slots = parsePositiveInt(spec.substring(i + 1), spec);
+    }
+    final int j = hostPort.lastIndexOf(':');
+    if (j <= 0)
+      throw new IllegalArgumentException("Invalid compile worker '" + spec
+          + "', expected <host>:<port>[/<slots>]");
+    final int port = parsePositiveInt(hostPort.substring(j + 1), spec);
+    if (port > 0xFFFF)
+      throw new IllegalArgumentException("Invalid port in compile worker '"
+          + spec + "'");
+    return new Worker(hostPort.substring(0, j), port, slots, token);
+  }
+
+  private static int parsePositiveInt(final String s, final String spec) {
+    final int value;
+    try {
+      value = Integer.parseInt(s);
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number '" + s
+          + "' in compile worker '" + spec + "'");
+    }
+    if (value <= 0)
+      throw new IllegalArgumentException("Invalid number '" + s
+          + "' in compile worker '" + spec + "'");
+    return value;
+  }
+
+  /**
+   * Sets the number of commands that can be executed locally at the same time.
+   */
+  public synchronized void setLocalSlots(final int localSlots) {
+    this.localSlots = localSlots;
+  }
+
+  /**
+   * Returns the number of commands that can be executed by workers at the same
+   * time.
+   */
+  public int getRemoteSlots() {
+    int slots = 0;
+    for (final Worker worker : workers) {
+      slots += worker.slots;
+    }
+    return slots;
+  }
+
+  /**
+   * Waits for a free slot. A remotable command is preferably assigned to a
+   * worker, other commands wait for a local slot. Each call to this method must
+   * be followed by a call to {@link #release(Worker)}.
+   * 
+   * @param remotable if the command to execute can be executed by a worker.
+   * @return the worker to which the command is assigned, or <code>null</code>
+   *         if the command must be executed locally.
+   * @throws InterruptedException if the current thread is interrupted.
+   */
+  public synchronized Worker acquire(final boolean remotable)
+      throws InterruptedException {
+    while (true) {
+      if (remotable) {
+        for (final Worker worker : workers) {
+          if (!worker.disabled && worker.used < worker.slots) {
+            worker.used++;
+            return worker;
+          }
+        }
+      }
+      if (usedLocalSlots < localSlots) {
+        usedLocalSlots++;
+        return null;
+      }
+      wait();
+    }
+  }
+
+  /**
+   * Releases a slot acquired by {@link #acquire(boolean)}.
+   * 
+   * @param worker the value returned by {@link #acquire(boolean)}.
+   */
+  public synchronized void release(final Worker worker) {
+    if (worker == null)
+      usedLocalSlots--;
+    else
+      worker.used--;
+    notifyAll();
+  }
+
+  /**
+   * A compile worker.
+   */
+  public static class Worker {
+    protected final String     host;
+    protected final int        port;
+    protected final int        slots;
+    protected final String     token;
+    protected int              used;
+    protected volatile boolean disabled;
+
+    public Worker(final String host, final int port, final int slots,
+        final String token) {
+      this.host = host;
+      this.port = port;
+      this.slots = slots;
+      this.token = token;
+    }
+
+    /**
+     * Compiles the given input file with this worker. The paths of the files
+     * in the worker are replaced by the given local paths in the output of the
+     * compiler, so that reported errors refer to local files.
+     * 
+     * @param description the description of the command.
+     * @param compiler the compiler command.
+     * @param args the arguments of the compiler, excluding input, output and
+     *          included files.
+     * @param inputFile the (preprocessed) input file.
+     * @param includeFiles the files to include before the input file.
+     * @param outputFile the object file.
+     * @return the result of the compilation, or <code>null</code> if the
+     *         worker rejected the request.
+     * @throws IOException if a communication error occurs, or if the worker
+     *           does not accept the token of this worker.
+     */
+    public ExecutionResult compile(final String description,
+        final String compiler, final List<String> args, final File inputFile,
+        final List<File> includeFiles, final File outputFile)
+        throws IOException {
+      if (ioLogger.isLoggable(Level.INFO) && description != null)
+        ioLogger.info(description + " (on " + this + ")");
+      final long start = System.currentTimeMillis();
+      final Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        socket.setSoTimeout(READ_TIMEOUT);
+        final DataInputStream in = new DataInputStream(
+            new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(socket.getOutputStream()));
+        authenticate(in, out);
+
+        out.writeByte(CompileWorkerProtocol.COMPILE_REQUEST);
+        out.writeUTF(compiler);
+        out.writeInt(args.size());
+        for (final String arg : args) {
+          out.writeUTF(arg);
+        }
+        out.writeInt(1 + includeFiles.size());
+        out.writeUTF(inputFile.getName());
+        CompileWorkerProtocol.writeFile(out, inputFile);
+        for (final File includeFile : includeFiles) {
+          out.writeUTF(includeFile.getName());
+          CompileWorkerProtocol.writeFile(out, includeFile);
+        }
+        out.flush();
+
+        final int status = in.readInt();
+        if (status == CompileWorkerProtocol.REJECTED_STATUS) return null;
+        final int nbFiles = in.readInt();
+        if (nbFiles != includeFiles.size() + 2)
+          throw new IOException("Unexpected number of files " + nbFiles);
+        final Map<String, String> paths = new HashMap<String, String>();
+        paths.put(in.readUTF(), inputFile.getPath());
+        for (final File includeFile : includeFiles) {
+          paths.put(in.readUTF(), includeFile.getPath());
+        }
+        paths.put(in.readUTF(), outputFile.getPath());
+        final String output = mapPaths(CompileWorkerProtocol.readOutput(in),
+            paths);
+        if (status == 0) {
+          // write the object file atomically, so that an interrupted transfer
+          // never leaves a truncated object file.
+          final File tmpFile = AtomicFileHelper.createTempFile(outputFile);
+          try {
+            CompileWorkerProtocol.readFile(in, tmpFile);
+            AtomicFileHelper.replace(tmpFile, outputFile);
+          } finally {
+            tmpFile.delete();
+          }
+        }
+        final StringBuilder sb = new StringBuilder();
+        if (output != null) sb.append(output);
+        return new ExecutionResult(status, sb, System.currentTimeMillis()
+            - start);
+      } finally {
+        socket.close();
+      }
+    }
+
+    protected void authenticate(final DataInputStream in,
+        final DataOutputStream out) throws IOException {
+      final int version = in.readInt();
+      if (version != CompileWorkerProtocol.PROTOCOL_VERSION)
+        throw new IOException("Unsupported protocol version " + version);
+      final byte[] challenge = new byte[CompileWorkerProtocol.CHALLENGE_SIZE];
+      in.readFully(challenge);
+      CompileWorkerProtocol.writeResponse(out,
+          CompileWorkerProtocol.computeResponse(token, challenge));
+      out.flush();
+      if (in.readInt() != CompileWorkerProtocol.ACCEPTED_STATUS)
+        throw new IOException("Token rejected");
+    }
+
+    /**
+     * Replaces the given paths in the given output of a worker. Longest paths
+     * are replaced first, in case a path is a prefix of another one.
+     */
+    protected static String mapPaths(final String output,
+        final Map<String, String> paths) {
+      if (output == null) return null;
+      final List<String> remotePaths = new ArrayList<String>(paths.keySet());
+      Collections.sort(remotePaths, new Comparator<String>() {
+        public int compare(final String s1, final String s2) {
+          return s2.length() - s1.length();
+        }
+      });
+      String result = output;
+      for (final String remotePath : remotePaths) {
+        result = result.replace(remotePath, paths.get(remotePath));
+      }
+      return result;
+    }
+
+    public boolean isDisabled() {
+      return disabled;
+    }
+
+    /**
+     * Disables this worker for the rest of the build.
+     */
+    public void disable(final IOException cause) {
+      if (!disabled) {
+        disabled = true;
+        depLogger.log(Level.WARNING, "Compile worker " + this
+            + " is disabled: " + cause.getMessage());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return host + ":" + port;
+    }
+  }
+}
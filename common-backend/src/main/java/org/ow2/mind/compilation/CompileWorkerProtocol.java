@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Constants and helper methods shared by the {@link CompileWorker} and the
+ * {@link CompileWorkerPool}.
+ * <p>
+ * A connection starts with a handshake: the worker sends its protocol version
+ * (an <code>int</code>) and a random challenge of {@link #CHALLENGE_SIZE}
+ * bytes, the client answers with the {@link #computeResponse response} to the
+ * challenge, computed with the token shared by the client and the worker (see
+ * {@link #TOKEN_ENV_VARIABLE}). The worker then sends
+ * {@link #ACCEPTED_STATUS}, or {@link #REJECTED_STATUS} if the response is
+ * wrong, in which case it closes the connection.
+ * <p>
+ * A request is then made of the request kind (a <code>byte</code>). A
+ * {@link #COMPILE_REQUEST} continues with the compiler command (an UTF string),
+ * the number of arguments (an <code>int</code>) followed by the arguments (UTF
+ * strings), and the number of files (an <code>int</code>) followed by the
+ * files. The first file is the input file, the next ones are the files to
+ * include (with the <code>-include</code> option). Each file is made of its
+ * name (an UTF string) and of its content (see {@link #writeFile}).
+ * <p>
+ * The worker answers with {@link #REJECTED_STATUS} if the compiler is not one
+ * of the compilers it has been started with, or if an argument is not
+ * {@link #isAllowedArgument allowed}. Otherwise it answers with the exit status
+ * of the compiler (an <code>int</code>), the paths of the files in the worker
+ * (an <code>int</code> followed by UTF strings, in the order in which the files
+ * have been sent, followed by the path of the object file), the output of the
+ * compiler (an <code>int</code> length followed by the UTF-8 bytes of the
+ * output) and, if the compilation succeeded, the object file (its content, see
+ * {@link #writeFile}).
+ */
+public final class CompileWorkerProtocol {
+  private CompileWorkerProtocol() {
+  }
+
+  /** The command line option that starts a compile worker. */
+  public static final String    WORKER_OPTION               = "--compile-worker";
+
+  /** The default port a compile worker listens on. */
+  public static final int       DEFAULT_PORT                = 4877;
+
+  /**
+   * The environment variable that contains the token shared by a compile
+   * worker and its clients.
+   */
+  public static final String    TOKEN_ENV_VARIABLE          = "MIND_COMPILE_WORKER_TOKEN";
+
+  public static final int       PROTOCOL_VERSION            = 2;
+
+  /** The size, in bytes, of the challenge sent by the worker. */
+  public static final int       CHALLENGE_SIZE              = 16;
+
+  public static final byte      COMPILE_REQUEST             = 1;
+
+  /** Status returned by the worker when the client is authenticated. */
+  public static final int       ACCEPTED_STATUS             = 0;
+
+  /**
+   * Status returned by the worker when it can't serve a request (for instance
+   * if the compiler is not allowed). The command is expected to be compiled
+   * locally in this case.
+   */
+  public static final int       REJECTED_STATUS             = -1;
+
+  /** The maximal size of the files exchanged with a worker. */
+  public static final int       MAX_FILE_SIZE               = 256 * 1024 * 1024;
+
+  private static final String   HMAC_ALGORITHM              = "HmacSHA1";
+
+  /**
+   * The arguments accepted by a worker start with one of these prefixes.
+   * Preprocessor options are not needed since translation units are
+   * preprocessed by the client.
+   */
+  private static final String[] ALLOWED_ARGUMENT_PREFIXES   = {
+      "-D", "-U", "-O", "-g", "-f", "-m", "-W", "-std=", "-pedantic"};
+
+  /**
+   * Arguments that start with one of these prefixes are rejected, even if they
+   * match an allowed prefix, since they pass options to other tools or load
+   * code or files into the compiler.
+   */
+  private static final String[] FORBIDDEN_ARGUMENT_PREFIXES = {
+      "-Wa,", "-Wl,", "-Wp,", "-fplugin", "-fprofile", "-fauto-profile"};
+
+  public static boolean isWorkerOption(final String arg) {
+    return arg.equals(WORKER_OPTION) || arg.startsWith(WORKER_OPTION + "=");
+  }
+
+  /**
+   * Returns <code>true</code> if a worker accepts to execute the compiler with
+   * the given argument.
+   */
+  public static boolean isAllowedArgument(final String arg) {
+    if (arg.equals("-w") || arg.equals("-ansi")) return true;
+    for (final String prefix : FORBIDDEN_ARGUMENT_PREFIXES) {
+      if (arg.startsWith(prefix)) return false;
+    }
+    for (final String prefix : ALLOWED_ARGUMENT_PREFIXES) {
+      if (arg.startsWith(prefix)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Computes the response to the given challenge, i.e. its HMAC computed with
+   * the given token, so that the token itself is never sent.
+   * 
+   * @param token the token shared by the client and the worker.
+   * @param challenge the challenge sent by the worker.
+   * @return the response to the challenge.
+   */
+  public static byte[] computeResponse(final String token,
+      final byte[] challenge) throws IOException {
+    try {
+      final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(new SecretKeySpec(token.getBytes("UTF-8"), HMAC_ALGORITHM));
+      return mac.doFinal(challenge);
+    } catch (final GeneralSecurityException e) {
+      throw new IOException("Can't compute challenge response: "
+          + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads a response to a challenge, as written by the client.
+   */
+  public static byte[] readResponse(final DataInputStream in)
+      throws IOException {
+    final int length = in.readUnsignedByte();
+    final byte[] response = new byte[length];
+    in.readFully(response);
+    return response;
+  }
+
+  /**
+   * Writes a response to a challenge.
+   */
+  public static void writeResponse(final DataOutputStream out,
+      final byte[] response) throws IOException {
+    out.writeByte(response.length);
+    out.write(response);
+  }
+
+  /**
+   * Writes the length of the given file followed by its content.
+   */
+  public static void writeFile(final DataOutputStream out, final File file)
+      throws IOException {
+    final long length = file.length();
+    if (length > MAX_FILE_SIZE)
+      throw new IOException("File \"" + file + "\" is too large");
+    out.writeInt((int) length);
+    final InputStream in = new FileInputStream(file);
+    try {
+      copy(in, out, (int) length);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a file written by {@link #writeFile(DataOutputStream, File)}.
+   */
+  public static void readFile(final DataInputStream in, final File file)
+      throws IOException {
+    final int length = in.readInt();
+    if (length < 0 || length > MAX_FILE_SIZE)
+      throw new IOException("Invalid file length " + length);
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      copy(in, out, length);
+    } finally {
+      out.close();
+    }
+  }
+
+  public static void writeOutput(final DataOutputStream out,
+      final String output) throws IOException {
+    if (output == null) {
+      out.writeInt(0);
+    } else {
+      final byte[] bytes = output.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  public static String readOutput(final DataInputStream in)
+      throws IOException {
+    final int length = in.readInt();
+    if (length < 0 || length > MAX_FILE_SIZE)
+      throw new IOException("Invalid output length " + length);
+    if (length == 0) return null;
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private static void copy(final InputStream in, final OutputStream out,
+      final int length) throws IOException {
+    final byte[] buffer = new byte[8192];
+    int remaining = length;
+    while (remaining > 0) {
+      final int n = in.read(buffer, 0, Math.min(buffer.length, remaining));
+      if (n < 0) throw new IOException("Unexpected end of stream");
+      out.write(buffer, 0, n);
+      remaining -= n;
+    }
+  }
+}
@@ -22,10 +22,13 @@
 
 package org.ow2.mind.compilation;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import org.ow2.mind.io.BasicOutputFileLocator;
+
 public final class CompilerContextHelper {
 
   public static final String LINKER_COMMAND_CONTEXT_KEY    = "linker-command";
@@ -43,6 +46,9 @@ public final class CompilerContextHelper {
   public static final String CPP_FLAGS_CONTEXT_KEY         = "cpp-flags";
   public static final String LD_FLAGS_CONTEXT_KEY          = "ld-flags";
   public static final String LINKER_SCRIPT_CONTEXT_KEY     = "linker-script";
+  public static final String PIPELINE_CONTEXT_KEY          = "pipeline";
+
+  private static final String TEMP_DIR_SIGNATURE           = "$TEMP_DIR";
 
   private CompilerContextHelper() {
   }
@@ -213,4 +219,42 @@ public final class CompilerContextHelper {
   public static String getExecutableName(final Map<Object, Object> context) {
     return (String) context.get(EXECUTABLE_NAME_CONTEXT_KEY);
   }
+
+  public static void setPipeline(final Map<Object, Object> context,
+      final boolean pipeline) {
+    context.put(PIPELINE_CONTEXT_KEY, pipeline);
+  }
+
+  /**
+   * Returns <code>true</code> if the preprocessing, MPP and compilation of a
+   * source file should be pipelined through streams, without intermediate
+   * files.
+   * 
+   * @param context the context.
+   * @return <code>true</code> if pipelining is enabled. Returns
+   *         <code>false</code> by default.
+   */
+  public static boolean getPipeline(final Map<Object, Object> context) {
+    final Boolean pipeline = (Boolean) context.get(PIPELINE_CONTEXT_KEY);
+    return pipeline != null && pipeline;
+  }
+
+  /**
+   * Returns the given command signature where the path of the temporary output
+   * directory (which is different for each compiler invocation) is replaced by
+   * a constant string.
+   * 
+   * @param context the context.
+   * @param signature a command signature.
+   * @return the given signature, independent of the temporary output
+   *         directory.
+   * @see SignedCompilationCommand#getSignature()
+   */
+  public static String getStableSignature(final Map<Object, Object> context,
+      final String signature) {
+    final File tempDir = (File) context
+        .get(BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY);
+    if (tempDir == null) return signature;
+    return signature.replace(tempDir.getPath(), TEMP_DIR_SIGNATURE);
+  }
 }
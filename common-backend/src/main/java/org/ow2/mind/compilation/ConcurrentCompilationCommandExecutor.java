@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.CompilerError;
+import org.objectweb.fractal.adl.error.GenericErrors;
+
+/**
+ * {@link CompilationCommandExecutor} that executes the compilation commands
+ * using a pool of work-stealing workers. Contrary to the
+ * {@link BasicCompilationCommandExecutor}, there is no global lock:
+ * <ul>
+ * <li>each command has an atomic counter of pending dependencies, the command
+ * that decrements it to zero makes it ready,</li>
+ * <li>each worker has its own queue of ready commands. A worker pushes the
+ * commands it unlocks in its own queue, so that consumers of a file are
+ * preferably executed by the worker that just produced it. A worker steals
+ * the command with the highest priority from the queues of the other workers
+ * only when its own queue is empty.</li>
+ * </ul>
+ * The priority of a command is the estimated duration of the longest path
+ * from this command to the end of the build (i.e. the critical path), based on
+ * the durations measured during previous builds (see
+ * {@link CommandDurationHistory}). So long compilations and the commands the
+ * final link depends on are dispatched first.
+ * <p>
+ * If a maximal load or a minimal free memory is specified in the context, the
+ * execution of commands is throttled by a {@link LoadThrottle}.
+ * <p>
+ * If compile workers are specified in the context, remotable compilations are
+ * preferably executed by these workers (see {@link CompileWorkerPool}). In this
+ * case, one additional worker thread is started per remote slot, and the
+ * number of jobs only bounds the number of commands executed locally.
+ */
+public class ConcurrentCompilationCommandExecutor
+    extends
+      BasicCompilationCommandExecutor {
+
+  @Override
+  protected boolean execDepGraph(final int nbJobs,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final LinkedList<CommandInfo> readyTask, final boolean failFast,
+      final Map<Object, Object> context) throws ADLException,
+      InterruptedException {
+    final CompileWorkerPool workerPool = CompileWorkerPool
+        .newCompileWorkerPool(context);
+    if (nbJobs <= 1 && workerPool == null) {
+      return execDepGraphSynchronous(depGraph, readyTask, failFast);
+    }
+    int nbThreads = nbJobs;
+    if (workerPool != null) {
+      workerPool.setLocalSlots(Math.max(1, nbJobs));
+      nbThreads = Math.max(1, nbJobs) + workerPool.getRemoteSlots();
+    }
+    final CommandDurationHistory history = CommandDurationHistory
+        .getCommandDurationHistory(context);
+    try {
+      final WorkStealingState state = new WorkStealingState(depGraph,
+          readyTask, nbThreads, failFast, history,
+          LoadThrottle.newLoadThrottle(context), workerPool);
+      return state.terminate();
+    } finally {
+      history.save();
+    }
+  }
+
+  @Override
+  protected boolean execDepGraph(final int nbJobs,
+      final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+      final LinkedList<CommandInfo> readyTask, final boolean failFast)
+      throws ADLException, InterruptedException {
+    if (nbJobs <= 1) {
+      return execDepGraphSynchronous(depGraph, readyTask, failFast);
+    }
+    final WorkStealingState state = new WorkStealingState(depGraph, readyTask,
+        nbJobs, failFast, CommandDurationHistory.load(null), null, null);
+    return state.terminate();
+  }
+
+  /**
+   * Scheduling information attached to a command.
+   */
+  protected static final class Node {
+    final CommandInfo   cmdInfo;
+    final String        key;
+    final AtomicInteger pendingDependencies;
+    final List<Node>    consumers = new ArrayList<Node>();
+    final AtomicBoolean done      = new AtomicBoolean(false);
+    /** Estimated duration of the critical path starting at this node. */
+    long                priority  = -1L;
+
+    Node(final CommandInfo cmdInfo, final String key) {
+      this.cmdInfo = cmdInfo;
+      this.key = key;
+      this.pendingDependencies = new AtomicInteger(
+          cmdInfo.dependencies.size());
+    }
+  }
+
+  /** Orders nodes by decreasing priority. */
+  protected static final Comparator<Node> PRIORITY_COMPARATOR = new PriorityComparator();
+
+  protected static final class PriorityComparator implements Comparator<Node> {
+    public int compare(final Node n1, final Node n2) {
+      if (n1.priority == n2.priority) return 0;
+      return (n1.priority < n2.priority) ? 1 : -1;
+    }
+  }
+
+  /**
+   * Computes the priority of the given node, that is its estimated duration
+   * plus the maximal priority of its consumers.
+   */
+  protected long computePriority(final Node node,
+      final CommandDurationHistory history) {
+    if (node.priority < 0) {
+      long maxConsumerPriority = 0;
+      for (final Node consumer : node.consumers) {
+        final long consumerPriority = computePriority(consumer, history);
+        if (consumerPriority > maxConsumerPriority)
+          maxConsumerPriority = consumerPriority;
+      }
+      node.priority = history.getEstimatedDuration(node.key)
+          + maxConsumerPriority;
+    }
+    return node.priority;
+  }
+
+  protected final class WorkStealingState {
+    final boolean                    failFast;
+    final CommandDurationHistory     history;
+    final LoadThrottle               throttle;
+    final CompileWorkerPool          workerPool;
+    final BlockingQueue<Node>[]      queues;
+    final Worker[]                   workers;
+
+    /** One permit per ready command. */
+    final Semaphore                  readyPermits = new Semaphore(0);
+    /** Number of commands that are neither executed nor cancelled. */
+    final AtomicInteger              remaining    = new AtomicInteger();
+    final AtomicBoolean              stopped      = new AtomicBoolean(false);
+    final AtomicBoolean              result       = new AtomicBoolean(true);
+    final AtomicReference<Throwable> exception    = new AtomicReference<Throwable>();
+
+    @SuppressWarnings("unchecked")
+    WorkStealingState(final Map<CommandInfo, Collection<CommandInfo>> depGraph,
+        final LinkedList<CommandInfo> readyTask, final int nbJobs,
+        final boolean failFast, final CommandDurationHistory history,
+        final LoadThrottle throttle, final CompileWorkerPool workerPool) {
+      this.failFast = failFast;
+      this.history = history;
+      this.throttle = throttle;
+      this.workerPool = workerPool;
+
+      // build nodes of every command to execute.
+      final Map<CommandInfo, Node> nodes = new IdentityHashMap<CommandInfo, Node>();
+      for (final CommandInfo cmdInfo : readyTask) {
+        getNode(cmdInfo, nodes);
+      }
+      for (final Map.Entry<CommandInfo, Collection<CommandInfo>> entry : depGraph
+          .entrySet()) {
+        final Node node = getNode(entry.getKey(), nodes);
+        for (final CommandInfo consumer : entry.getValue()) {
+          node.consumers.add(getNode(consumer, nodes));
+        }
+      }
+      remaining.set(nodes.size());
+      for (final Node node : nodes.values()) {
+        computePriority(node, history);
+      }
+
+      queues = new BlockingQueue[nbJobs];
+      workers = new Worker[nbJobs];
+      for (int i = 0; i < nbJobs; i++) {
+        queues[i] = new PriorityBlockingQueue<Node>(11, PRIORITY_COMPARATOR);
+      }
+      // distribute initially ready commands in a round-robin way, by
+      // decreasing priority.
+      final List<Node> readyNodes = new ArrayList<Node>(readyTask.size());
+      for (final CommandInfo cmdInfo : readyTask) {
+        readyNodes.add(nodes.get(cmdInfo));
+      }
+      Collections.sort(readyNodes, PRIORITY_COMPARATOR);
+      int i = 0;
+      for (final Node node : readyNodes) {
+        queues[i].add(node);
+        i = (i + 1) % nbJobs;
+      }
+      readyPermits.release(readyNodes.size());
+
+      for (i = 0; i < nbJobs; i++) {
+        workers[i] = new Worker(i);
+        workers[i].start();
+      }
+    }
+
+    private Node getNode(final CommandInfo cmdInfo,
+        final Map<CommandInfo, Node> nodes) {
+      Node node = nodes.get(cmdInfo);
+      if (node == null) {
+        node = new Node(cmdInfo, cmdInfo.key);
+        nodes.put(cmdInfo, node);
+      }
+      return node;
+    }
+
+    Node take(final int workerIndex) throws InterruptedException {
+      readyPermits.acquire();
+      if (stopped.get()) return null;
+      // a permit guarantees that at least one command is available in a queue.
+      while (true) {
+        // pop from own queue first, it holds the consumers of the commands
+        // this worker has just executed.
+        final Node local = queues[workerIndex].poll();
+        if (local != null) return local;
+
+        // own queue is empty, steal the highest priority command of the
+        // other queues.
+        int bestQueue = -1;
+        long bestPriority = -1L;
+        for (int i = 1; i < queues.length; i++) {
+          final int q = (workerIndex + i) % queues.length;
+          final Node head = queues[q].peek();
+          if (head != null && head.priority > bestPriority) {
+            bestQueue = q;
+            bestPriority = head.priority;
+          }
+        }
+        if (bestQueue != -1) {
+          final Node node = queues[bestQueue].poll();
+          if (node != null) {
+            if (depLogger.isLoggable(Level.FINEST))
+              depLogger.finest("Worker " + workerIndex + " steals task '"
+                  + node.cmdInfo.command.getDescription() + "'");
+            return node;
+          }
+        } else {
+          Thread.yield();
+        }
+      }
+    }
+
+    void ended(final int workerIndex, final Node node) {
+      for (final Node consumer : node.consumers) {
+        if (consumer.pendingDependencies.decrementAndGet() == 0) {
+          queues[workerIndex].add(consumer);
+          readyPermits.release();
+        }
+      }
+      finished();
+    }
+
+    void failed(final Node node) {
+      result.set(false);
+      cancel(node.consumers);
+      if (failFast) stop();
+      finished();
+    }
+
+    private void cancel(final List<Node> nodes) {
+      for (final Node node : nodes) {
+        if (node.done.compareAndSet(false, true)) {
+          cancel(node.consumers);
+          finished();
+        }
+      }
+    }
+
+    private void finished() {
+      if (remaining.decrementAndGet() == 0) stop();
+    }
+
+    void stop() {
+      if (stopped.compareAndSet(false, true)) {
+        // wake up every worker.
+        readyPermits.release(workers.length);
+      }
+    }
+
+    boolean terminate() throws ADLException, InterruptedException {
+      for (final Worker worker : workers) {
+        worker.join();
+      }
+      if (exception.get() != null) {
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, exception.get(),
+            "Unexpected error");
+      }
+      return result.get();
+    }
+
+    protected final class Worker extends Thread {
+      final int index;
+
+      Worker(final int index) {
+        super("mindc-worker-" + index);
+        this.index = index;
+        setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+        try {
+          Node node;
+          while ((node = take(index)) != null) {
+            node.done.set(true);
+            boolean execOK;
+            CompileWorkerPool.Worker remoteWorker = null;
+            if (workerPool != null) {
+              final CompilationCommand command = node.cmdInfo.command;
+              remoteWorker = workerPool
+                  .acquire(command instanceof RemoteCompilerCommand
+                      && ((RemoteCompilerCommand) command).isRemotable());
+              if (remoteWorker != null)
+                ((RemoteCompilerCommand) command).setRemoteWorker(remoteWorker);
+            }
+            // only local executions are throttled.
+            if (throttle != null && remoteWorker == null) throttle.beforeExec();
+            final long start = System.currentTimeMillis();
+            try {
+              execOK = execCommand(node.cmdInfo);
+            } catch (final ADLException e) {
+              execOK = false;
+            } finally {
+              if (throttle != null && remoteWorker == null)
+                throttle.afterExec();
+              if (remoteWorker != null)
+                ((RemoteCompilerCommand) node.cmdInfo.command)
+                    .setRemoteWorker(null);
+              if (workerPool != null) workerPool.release(remoteWorker);
+            }
+            if (execOK) {
+              history.record(node.key, System.currentTimeMillis() - start);
+              ended(index, node);
+            } else {
+              failed(node);
+            }
+          }
+        } catch (final Throwable e) {
+          // stop other workers, the error is reported by terminate.
+          exception.compareAndSet(null, e);
+          stop();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+
+/**
+ * Build-wide store of the dependencies of compiled files. It replaces the
+ * parsing of one make-style dependency file per compiled file at the
+ * beginning of each build: the dependencies of every output file are stored in
+ * a single binary file, in which paths are interned in a table and dependency
+ * lists are stored as indexes in this table. This class is thread-safe.
+ */
+public class DependencyDatabase {
+
+  protected static Logger                  depLogger                       = FractalADLLogManager
+                                                                               .getLogger("dep");
+
+  /** The name of the database file, relative to the output directory. */
+  public static final String               DEPENDENCY_DB_FILE_NAME         = ".mind-deps.db";
+
+  /** The context key under which the database of a compilation is stored. */
+  public static final String               DEPENDENCY_DATABASE_CONTEXT_KEY = "dependency-database";
+
+  protected static final int               MAGIC                           = 0x4d444550;
+  protected static final int               VERSION                         = 1;
+
+  protected final File                     dbFile;
+
+  /** The interned path table. */
+  protected final List<String>             paths                           = new ArrayList<String>();
+  protected final Map<String, Integer>     pathIndexes                     = new HashMap<String, Integer>();
+
+  /** Associates the index of an output file to the indexes of its deps. */
+  protected final Map<Integer, int[]>      dependencies                    = new HashMap<Integer, int[]>();
+
+  protected boolean                        modified                        = false;
+
+  /**
+   * @param dbFile the file in which the database is persisted. May be
+   *          <code>null</code> for a database that is never persisted.
+   */
+  public DependencyDatabase(final File dbFile) {
+    this.dbFile = dbFile;
+  }
+
+  /**
+   * Returns the database stored in the given output directory. If the database
+   * file does not exist or can't be read, an empty database is returned.
+   * 
+   * @param outputDir the output directory.
+   * @return the database stored in the given output directory.
+   */
+  public static DependencyDatabase load(final File outputDir) {
+    final DependencyDatabase db = new DependencyDatabase(new File(outputDir,
+        DEPENDENCY_DB_FILE_NAME));
+    db.read();
+    return db;
+  }
+
+  /**
+   * Returns the database of the given context. The database is loaded from the
+   * output directory the first time this method is called for a given context.
+   * 
+   * @param context the context of the compilation.
+   * @return the database of the given context.
+   */
+  public static DependencyDatabase getDependencyDatabase(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      DependencyDatabase db = (DependencyDatabase) context
+          .get(DEPENDENCY_DATABASE_CONTEXT_KEY);
+      if (db == null) {
+        final File outputDir = (File) context
+            .get(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY);
+        if (outputDir != null)
+          db = load(outputDir);
+        else
+          db = new DependencyDatabase(null);
+        context.put(DEPENDENCY_DATABASE_CONTEXT_KEY, db);
+      }
+      return db;
+    }
+  }
+
+  /**
+   * Saves the database of the given context, if it has been used.
+   * 
+   * @param context the context of the compilation.
+   */
+  public static void saveDependencyDatabase(final Map<Object, Object> context) {
+    final DependencyDatabase db;
+    synchronized (context) {
+      db = (DependencyDatabase) context.get(DEPENDENCY_DATABASE_CONTEXT_KEY);
+    }
+    if (db != null) db.save();
+  }
+
+  /**
+   * Returns the dependencies of the given output file, or <code>null</code> if
+   * they are not recorded in this database.
+   * 
+   * @param outputFile the path of an output file.
+   * @return the dependencies of the given output file.
+   */
+  public synchronized List<String> getDependencies(final String outputFile) {
+    final Integer index = pathIndexes.get(outputFile);
+    if (index == null) return null;
+    final int[] deps = dependencies.get(index);
+    if (deps == null) return null;
+    final List<String> result = new ArrayList<String>(deps.length);
+    for (final int dep : deps) {
+      result.add(paths.get(dep));
+    }
+    return result;
+  }
+
+  /**
+   * Records the dependencies of the given output file.
+   * 
+   * @param outputFile the path of an output file.
+   * @param deps the paths of its dependencies.
+   */
+  public synchronized void setDependencies(final String outputFile,
+      final Collection<String> deps) {
+    final int[] indexes = new int[deps.size()];
+    int i = 0;
+    for (final String dep : deps) {
+      indexes[i++] = intern(dep);
+    }
+    dependencies.put(intern(outputFile), indexes);
+    modified = true;
+  }
+
+  /**
+   * Removes the dependencies of the given output file.
+   * 
+   * @param outputFile the path of an output file.
+   */
+  public synchronized void removeDependencies(final String outputFile) {
+    final Integer index = pathIndexes.get(outputFile);
+    if (index != null && dependencies.remove(index) != null) modified = true;
+  }
+
+  /**
+   * Writes this database in its file, if it has been modified. Paths that are
+   * no longer referenced are dropped from the path table.
+   */
+  public synchronized void save() {
+    if (!modified || dbFile == null) return;
+
+    // compact the path table.
+    final Map<Integer, Integer> newIndexes = new HashMap<Integer, Integer>();
+    final List<String> newPaths = new ArrayList<String>();
+    for (final Map.Entry<Integer, int[]> entry : dependencies.entrySet()) {
+      renumber(entry.getKey(), newIndexes, newPaths);
+      for (final int dep : entry.getValue()) {
+        renumber(dep, newIndexes, newPaths);
+      }
+    }
+
+    try {
+      final File tmpFile = AtomicFileHelper.createTempFile(dbFile);
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(newPaths.size());
+        for (final String path : newPaths) {
+          final byte[] bytes = path.getBytes("UTF-8");
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+        out.writeInt(dependencies.size());
+        for (final Map.Entry<Integer, int[]> entry : dependencies.entrySet()) {
+          out.writeInt(newIndexes.get(entry.getKey()));
+          out.writeInt(entry.getValue().length);
+          for (final int dep : entry.getValue()) {
+            out.writeInt(newIndexes.get(dep));
+          }
+        }
+      } finally {
+        out.close();
+      }
+      AtomicFileHelper.replace(tmpFile, dbFile);
+      modified = false;
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.WARNING))
+        depLogger.log(Level.WARNING, "Can't write dependency database '"
+            + dbFile + "'", e);
+    }
+  }
+
+  protected void read() {
+    if (!dbFile.isFile()) return;
+    try {
+      final ByteBuffer buffer;
+      final FileInputStream in = new FileInputStream(dbFile);
+      try {
+        // read the whole database at once; the file is not mapped since a
+        // mapped file can't be replaced on some platforms until it is
+        // garbage-collected.
+        final FileChannel channel = in.getChannel();
+        buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0)
+            throw new IOException("Unexpected end of file");
+        }
+        buffer.flip();
+      } finally {
+        in.close();
+      }
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return;
+
+      final int nbPaths = buffer.getInt();
+      for (int i = 0; i < nbPaths; i++) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        final String path = new String(bytes, "UTF-8");
+        pathIndexes.put(path, paths.size());
+        paths.add(path);
+      }
+      final int nbEntries = buffer.getInt();
+      for (int i = 0; i < nbEntries; i++) {
+        final int outputFile = checkIndex(buffer.getInt());
+        final int[] deps = new int[buffer.getInt()];
+        for (int j = 0; j < deps.length; j++) {
+          deps[j] = checkIndex(buffer.getInt());
+        }
+        dependencies.put(outputFile, deps);
+      }
+    } catch (final IOException e) {
+      readFailed(e);
+    } catch (final RuntimeException e) {
+      // truncated file (BufferUnderflowException), or invalid sizes.
+      readFailed(e);
+    }
+  }
+
+  private void readFailed(final Exception e) {
+    // corrupted database, start with an empty one.
+    if (depLogger.isLoggable(Level.FINE))
+      depLogger.log(Level.FINE, "Can't read dependency database '" + dbFile
+          + "'", e);
+    paths.clear();
+    pathIndexes.clear();
+    dependencies.clear();
+  }
+
+  private int checkIndex(final int index) throws IOException {
+    if (index < 0 || index >= paths.size())
+      throw new IOException("Invalid path index " + index);
+    return index;
+  }
+
+  private int intern(final String path) {
+    Integer index = pathIndexes.get(path);
+    if (index == null) {
+      index = paths.size();
+      paths.add(path);
+      pathIndexes.put(path, index);
+    }
+    return index;
+  }
+
+  private void renumber(final int index, final Map<Integer, Integer> newIndexes,
+      final List<String> newPaths) {
+    if (!newIndexes.containsKey(index)) {
+      newIndexes.put(index, newPaths.size());
+      newPaths.add(paths.get(index));
+    }
+  }
+}
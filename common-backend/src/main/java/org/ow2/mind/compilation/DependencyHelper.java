@@ -37,6 +37,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.ForceRegenContextHelper;
 
 public final class DependencyHelper {
@@ -52,13 +53,14 @@ public final class DependencyHelper {
     if (context != null && ForceRegenContextHelper.getForceRegen(context))
       return true;
 
-    if (!outputFile.exists()) {
+    final FileStatCache fileStats = FileStatCache.getFileStatCache(context);
+    if (!fileStats.exists(outputFile)) {
       if (depLogger.isLoggable(Level.FINE))
         depLogger.fine("Output file '" + outputFile
             + "' does not exist, compile it.");
       return true;
     }
-    final long outputTimestamp = outputFile.lastModified();
+    final long outputTimestamp = fileStats.lastModified(outputFile);
     if (outputTimestamp == 0) {
       if (depLogger.isLoggable(Level.WARNING))
         depLogger.warning("Unable to determine timestamp of file '"
@@ -67,14 +69,15 @@ public final class DependencyHelper {
     }
 
     if (dependencyFile != null) {
-      if (!dependencyFile.exists()) {
+      if (!fileStats.exists(dependencyFile)) {
         if (depLogger.isLoggable(Level.FINE))
           depLogger.fine("Dependency file of '" + outputFile
               + "' does not exist, recompile.");
         return true;
       }
 
-      final Map<File, List<File>> depMap = parseDepFile(dependencyFile);
+      final Map<File, List<File>> depMap = parseDepFile(dependencyFile,
+          context);
       if (depMap == null) {
         if (depLogger.isLoggable(Level.FINE))
           depLogger.fine("Error in dependency file of '" + outputFile
@@ -105,10 +108,11 @@ public final class DependencyHelper {
       }
 
       for (final File depfile : depFiles) {
-        if (!depfile.exists()) {
+        final long depTimestamp = fileStats.lastModified(depfile);
+        if (depTimestamp == 0) {
           if (depLogger.isLoggable(Level.FINE))
             depLogger.fine("Missing input file '" + depfile + "'.");
-        } else if (depfile.lastModified() > outputTimestamp) {
+        } else if (depTimestamp > outputTimestamp) {
           if (depLogger.isLoggable(Level.FINE))
             depLogger.fine("Input file '" + depfile
                 + "' is more recent than output file '" + outputFile
@@ -120,10 +124,11 @@ public final class DependencyHelper {
 
     if (additionalDependencies != null) {
       for (final File depfile : additionalDependencies) {
-        if (!depfile.exists()) {
+        final long depTimestamp = fileStats.lastModified(depfile);
+        if (depTimestamp == 0) {
           if (depLogger.isLoggable(Level.FINE))
             depLogger.fine("Missing input file '" + depfile + "'.");
-        } else if (depfile.lastModified() > outputTimestamp) {
+        } else if (depTimestamp > outputTimestamp) {
           if (depLogger.isLoggable(Level.FINE))
             depLogger.fine("Input file '" + depfile
                 + "' is more recent than output file '" + outputFile
@@ -176,6 +181,20 @@ public final class DependencyHelper {
    * @return
    */
   public static Map<File, List<File>> parseDepFile(final File depfile) {
+    return parseDepFile(depfile, null);
+  }
+
+  /**
+   * Same as {@link #parseDepFile(File)}, but existence of the dependencies is
+   * checked through the {@link FileStatCache} of the given context.
+   * 
+   * @param depfile the dependency file to parse.
+   * @param context the current context (may be <code>null</code>).
+   * @return the parsed rules, or <code>null</code> if the file can't be read.
+   */
+  public static Map<File, List<File>> parseDepFile(final File depfile,
+      final Map<Object, Object> context) {
+    final FileStatCache fileStats = FileStatCache.getFileStatCache(context);
     final Map<File, List<File>> rules = new HashMap<File, List<File>>();
     BufferedReader reader = null;
     try {
@@ -191,12 +210,12 @@ public final class DependencyHelper {
 
           // end of rule, start a new one
           if (ruleLines.size() > 0) {
-            parseRule(ruleLines, rules);
+            parseRule(ruleLines, rules, fileStats);
             ruleLines = new ArrayList<String>();
           }
         }
       }
-      if (ruleLines.size() > 0) parseRule(ruleLines, rules);
+      if (ruleLines.size() > 0) parseRule(ruleLines, rules, fileStats);
     } catch (final IOException e) {
       depLogger.log(Level.WARNING, "An error occurs while reading \"" + depfile
           + "\".", e);
@@ -212,7 +231,7 @@ public final class DependencyHelper {
   }
 
   private static void parseRule(final List<String> ruleLines,
-      final Map<File, List<File>> rules) {
+      final Map<File, List<File>> rules, final FileStatCache fileStats) {
     final String[] line0parts = ruleLines.get(0).split(":\\s+");
     if (line0parts.length > 2) {
       throw new IllegalArgumentException("Erroneous rule target format");
@@ -231,7 +250,7 @@ public final class DependencyHelper {
       dependency = DirectiveHelper.formatOptionString(dependency.replace("$$",
           "$").trim());
       final File depFile = new File(dependency);
-      if (dependency.length() > 0 && depFile.exists())
+      if (dependency.length() > 0 && fileStats.exists(depFile))
         dependencies.add(depFile);
     }
 
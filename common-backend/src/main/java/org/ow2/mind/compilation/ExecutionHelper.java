@@ -22,11 +22,21 @@
 
 package org.ow2.mind.compilation;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,22 +45,43 @@ import org.objectweb.fractal.adl.error.GenericErrors;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
 
 /**
- * This helper class provides method to execute external commands.
+ * This helper class provides method to execute external commands. The output
+ * of a command is read by the thread that executes it; the error stream of
+ * {@link StreamedProcess streamed processes} is read by a shared pool of
+ * threads, so that no thread is created per process.
  */
 public final class ExecutionHelper {
   private ExecutionHelper() {
   }
 
+  /**
+   * The maximal number of characters of the output of a process that are kept
+   * in its {@link ExecutionResult}. The remaining output is read and dropped.
+   */
+  public static final int MAX_OUTPUT_SIZE = 256 * 1024;
+
+  private static final int    BUFFER_SIZE       = 8192;
+  private static final int    MAX_BUILDER_SIZE  = 64 * 1024;
+  private static final long   KEEP_ALIVE_TIME   = 10;
+  private static final String TRUNCATED_MESSAGE = "[output truncated]\n";
+
   public static class ExecutionResult {
     final int    rValue;
     final String output;
+    final long   wallTime;
 
     protected ExecutionResult(final int rValue, final StringBuilder output) {
+      this(rValue, output, -1L);
+    }
+
+    protected ExecutionResult(final int rValue, final StringBuilder output,
+        final long wallTime) {
       this.rValue = rValue;
       if (output.length() == 0)
         this.output = null;
       else
         this.output = output.toString();
+      this.wallTime = wallTime;
     }
 
     public int getExitValue() {
@@ -60,11 +91,58 @@ public final class ExecutionHelper {
     public String getOutput() {
       return output;
     }
+
+    /**
+     * Returns the elapsed time, in milliseconds, between the start and the end
+     * of the process, or <code>-1</code> if it is unknown.
+     */
+    public long getWallTime() {
+      return wallTime;
+    }
   }
 
   // The io logger
   protected static Logger logger = FractalADLLogManager.getLogger("io");
 
+  /** Read buffers, reused by the threads that read process outputs. */
+  private static final ThreadLocal<char[]>        readBuffers    = new ThreadLocal<char[]>() {
+    @Override
+    protected char[] initialValue() {
+      return new char[BUFFER_SIZE];
+    }
+  };
+
+  /** Buffers used to build command lines, reused by each thread. */
+  private static final ThreadLocal<StringBuilder> cmdLineBuffers = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder();
+    }
+  };
+
+  private static ExecutorService                  errorReaders;
+
+  /**
+   * Returns the given command as a string, as it is logged. The returned string
+   * is built in a buffer that is reused by the calling thread.
+   * 
+   * @param cmdList a command.
+   * @return the given command as a string.
+   */
+  public static String toCommandLine(final List<String> cmdList) {
+    StringBuilder sb = cmdLineBuffers.get();
+    if (sb.capacity() > MAX_BUILDER_SIZE) {
+      // do not retain huge buffers.
+      sb = new StringBuilder();
+      cmdLineBuffers.set(sb);
+    }
+    sb.setLength(0);
+    for (final String cmd : cmdList) {
+      sb.append(cmd).append(' ');
+    }
+    return sb.toString();
+  }
+
   /**
    * Executes the given command line and returns the exit value. The given
    * command is splited on space character boundary (this method is equivalent
@@ -114,7 +192,10 @@ public final class ExecutionHelper {
    * This method will issue some messages on the <code>io</code> logger. If the
    * {@link Level#FINE FINE} level is enabled, the full command line will be
    * logged. If the {@link Level#INFO INFO} level is enabled, the given
-   * <code>execTitle</code> will be logged.
+   * <code>execTitle</code> will be logged. If the {@link Level#FINER FINER}
+   * level is enabled, the execution time of the command will be logged.<br>
+   * The output of the process is read by the calling thread, at most
+   * {@link #MAX_OUTPUT_SIZE} characters of it are kept.
    * 
    * @param execTitle the message to be logged as a header of the execution. May
    *          be <code>null</code>.
@@ -136,62 +217,55 @@ public final class ExecutionHelper {
     }
 
     if (logger.isLoggable(Level.FINE)) {
-      String command = "";
-      for (final String cmd : cmdList) {
-        command += cmd + " ";
-      }
-      logger.fine(command);
+      logger.fine(toCommandLine(cmdList));
     }
 
+    final long start = System.nanoTime();
     final Process process;
     process = new ProcessBuilder(cmdList).redirectErrorStream(true).start();
 
+    // The error stream is merged in the output stream, so it can be read by
+    // the current thread without risk of blocking the process.
     final StringBuilder processOutput = new StringBuilder();
-    // Read output produced by process in a parallel thread in order to avoid
-    // the process to block
-    final Thread readerThread = new Thread() {
-      @Override
-      public void run() {
-        // append output and error stream on the processOutput.
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(
-            process.getInputStream()));
-        try {
-          String line = reader.readLine();
-          if (line != null) {
-            // if the title has not been printed yet.
-            if (!titleLogged) {
-              if (execTitle != null) logger.severe(execTitle);
-            }
-
-            // in Log level "FINE" the command was already previously shown,
-            // do not repeat, but display for errors in all other modes
-            // for debug purposes
-            if (!logger.isLoggable(Level.FINE)) {
-              String command = "";
-              for (final String cmd : cmdList) {
-                command += cmd + " ";
-              }
-              logger.severe(command);
-            }
+    try {
+      final Reader reader = new InputStreamReader(process.getInputStream());
+      try {
+        final char[] buffer = readBuffers.get();
+        int n = reader.read(buffer);
+        if (n >= 0) {
+          // if the title has not been printed yet.
+          if (!titleLogged) {
+            if (execTitle != null) logger.severe(execTitle);
+          }
 
-            do {
-              processOutput.append(line).append("\n");
-              line = reader.readLine();
-            } while (line != null);
+          // in Log level "FINE" the command was already previously shown,
+          // do not repeat, but display for errors in all other modes
+          // for debug purposes
+          if (!logger.isLoggable(Level.FINE)) {
+            logger.severe(toCommandLine(cmdList));
           }
-          reader.close();
-        } catch (final IOException e) {
-          throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
-              "Can't read error stream of process");
+
+          do {
+            appendOutput(processOutput, buffer, n);
+            n = reader.read(buffer);
+          } while (n >= 0);
         }
+      } finally {
+        reader.close();
       }
-    };
+    } catch (final IOException e) {
+      process.destroy();
+      throw e;
+    }
 
-    readerThread.start();
     final int rValue = process.waitFor();
-    readerThread.join();
+    final long wallTime = (System.nanoTime() - start) / 1000000L;
+    if (logger.isLoggable(Level.FINER)) {
+      logger.finer(((execTitle != null) ? execTitle : cmdList.get(0))
+          + " executed in " + wallTime + "ms");
+    }
 
-    return new ExecutionResult(rValue, processOutput);
+    return new ExecutionResult(rValue, processOutput, wallTime);
   }
 
   /**
@@ -212,4 +286,166 @@ public final class ExecutionHelper {
       final String[] cmdArray) throws IOException, InterruptedException {
     return exec(execTitle, Arrays.asList(cmdArray));
   }
+
+  /**
+   * A process whose standard input and output are used to stream data, its
+   * error stream is read by a thread of a shared pool.
+   * 
+   * @see ExecutionHelper#start(String, List)
+   */
+  public static class StreamedProcess {
+    protected final Process       process;
+    protected final StringBuilder errorOutput = new StringBuilder();
+    protected final Future<?>     errorReader;
+    protected volatile Future<?>  outputReader;
+    protected final long          start;
+
+    protected StreamedProcess(final Process process) {
+      this.process = process;
+      this.start = System.nanoTime();
+      errorReader = getErrorReaders().submit(
+          newReader(process.getErrorStream()));
+    }
+
+    /**
+     * Reads the standard output of the process in a thread of the shared pool
+     * and appends it to its error output. This method must be called if the
+     * standard output of the process is not consumed by the caller; otherwise
+     * a process that writes more than the capacity of the pipe would be
+     * blocked forever. After this call, {@link #getInputStream()} must not be
+     * used.
+     */
+    public void drainOutput() {
+      if (outputReader == null)
+        outputReader = getErrorReaders().submit(
+            newReader(process.getInputStream()));
+    }
+
+    private Runnable newReader(final InputStream stream) {
+      return new Runnable() {
+        public void run() {
+          final Reader reader = new InputStreamReader(stream);
+          try {
+            final char[] buffer = readBuffers.get();
+            int n;
+            while ((n = reader.read(buffer)) >= 0) {
+              synchronized (errorOutput) {
+                appendOutput(errorOutput, buffer, n);
+              }
+            }
+            reader.close();
+          } catch (final IOException e) {
+            throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+                "Can't read output of process");
+          }
+        }
+      };
+    }
+
+    /** Returns the stream connected to the standard output of the process. */
+    public InputStream getInputStream() {
+      return process.getInputStream();
+    }
+
+    /** Returns the stream connected to the standard input of the process. */
+    public OutputStream getOutputStream() {
+      return process.getOutputStream();
+    }
+
+    /**
+     * Waits for the end of the process.
+     * 
+     * @return the exit value and the error output of the process.
+     * @throws InterruptedException if the calling thread has been interrupted
+     *           while waiting for the process to finish.
+     */
+    public ExecutionResult waitFor() throws InterruptedException {
+      final int rValue = process.waitFor();
+      try {
+        errorReader.get();
+        if (outputReader != null) outputReader.get();
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, e.getCause(),
+            "Can't read error stream of process");
+      }
+      final long wallTime = (System.nanoTime() - start) / 1000000L;
+      synchronized (errorOutput) {
+        return new ExecutionResult(rValue, errorOutput, wallTime);
+      }
+    }
+
+    public void destroy() {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Starts the given command line and returns immediately. Contrary to
+   * {@link #exec(String, List)}, the standard output of the process is not
+   * merged with its error stream, so that it can be used to stream data from
+   * the process (and its standard input to stream data to the process).
+   * 
+   * @param execTitle the message to be logged as a header of the execution. May
+   *          be <code>null</code>.
+   * @param cmdList the command to execute.
+   * @return the started process.
+   * @throws IOException If an error occurs while starting the command.
+   */
+  public static StreamedProcess start(final String execTitle,
+      final List<String> cmdList) throws IOException {
+    if (logger.isLoggable(Level.INFO) && execTitle != null) {
+      logger.info(execTitle);
+    }
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine(toCommandLine(cmdList));
+    }
+    return new StreamedProcess(new ProcessBuilder(cmdList).start());
+  }
+
+  /**
+   * Appends the given characters to the given output, up to
+   * {@link #MAX_OUTPUT_SIZE} characters. Carriage-return characters are
+   * dropped.
+   */
+  private static void appendOutput(final StringBuilder output,
+      final char[] buffer, final int length) {
+    final int limit = MAX_OUTPUT_SIZE - TRUNCATED_MESSAGE.length();
+    for (int i = 0; i < length; i++) {
+      final char c = buffer[i];
+      if (c == '\r') continue;
+      if (output.length() >= limit) {
+        // the output is full, add the truncation message once.
+        if (output.length() == limit) output.append(TRUNCATED_MESSAGE);
+        return;
+      }
+      output.append(c);
+    }
+  }
+
+  /**
+   * Returns the pool of threads that read the error streams of streamed
+   * processes. Since each streamed process needs its reader until it ends, the
+   * pool is not bounded, but idle threads are reused and then terminated after
+   * a while.
+   */
+  private static synchronized ExecutorService getErrorReaders() {
+    if (errorReaders == null) {
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(0,
+          Integer.MAX_VALUE, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(final Runnable r) {
+              final Thread t = new Thread(r, "mindc-exec-"
+                  + threadNumber.getAndIncrement());
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      errorReaders = executor;
+    }
+    return errorReaders;
+  }
 }
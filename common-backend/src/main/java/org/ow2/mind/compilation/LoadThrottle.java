@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+
+/**
+ * Throttles the execution of compilation commands when the system is
+ * overloaded. Before executing a command, {@link #beforeExec()} waits while
+ * the system load average is above {@link #MAX_LOAD_CONTEXT_KEY the maximal
+ * load} or while the available physical memory is below
+ * {@link #MIN_FREE_MEMORY_CONTEXT_KEY the minimal free memory}. At least one
+ * command is always allowed to run, so that the build progresses. This class
+ * also provides helper methods to size the pool of jobs.
+ * <p>
+ * System information is obtained through a {@link SystemInfo}, so that tests
+ * can provide their own load and memory values.
+ */
+public class LoadThrottle {
+
+  protected static Logger       depLogger                   = FractalADLLogManager
+                                                                .getLogger("dep");
+
+  /** Context key of the maximal system load average (a {@link Double}). */
+  public static final String    MAX_LOAD_CONTEXT_KEY        = "max-load";
+
+  /**
+   * Context key of the minimal available physical memory in bytes (a
+   * {@link Long}).
+   */
+  public static final String    MIN_FREE_MEMORY_CONTEXT_KEY = "min-free-memory";
+
+  /** The physical memory reserved for each job when sizing the pool of jobs. */
+  public static final long      MEMORY_PER_JOB              = 256L * 1024 * 1024;
+
+  /** Period, in milliseconds, of the sampling of the system load. */
+  protected static final int    SAMPLING_PERIOD             = 200;
+
+  protected final double        maxLoad;
+  protected final long          minFreeMemory;
+  protected final SystemInfo    systemInfo;
+  protected final AtomicInteger running                     = new AtomicInteger();
+
+  public LoadThrottle(final double maxLoad, final long minFreeMemory) {
+    this(maxLoad, minFreeMemory, new DefaultSystemInfo());
+  }
+
+  public LoadThrottle(final double maxLoad, final long minFreeMemory,
+      final SystemInfo systemInfo) {
+    this.maxLoad = maxLoad;
+    this.minFreeMemory = minFreeMemory;
+    this.systemInfo = systemInfo;
+  }
+
+  /**
+   * Returns a new {@link LoadThrottle} configured with the bounds specified in
+   * the given context, or <code>null</code> if no bound is specified.
+   * 
+   * @param context the context.
+   * @return a new {@link LoadThrottle} or <code>null</code>.
+   */
+  public static LoadThrottle newLoadThrottle(final Map<Object, Object> context) {
+    final Double maxLoad = (Double) context.get(MAX_LOAD_CONTEXT_KEY);
+    final Long minFreeMemory = (Long) context.get(MIN_FREE_MEMORY_CONTEXT_KEY);
+    if (maxLoad == null && minFreeMemory == null) return null;
+    return new LoadThrottle((maxLoad == null) ? -1 : maxLoad,
+        (minFreeMemory == null) ? -1 : minFreeMemory);
+  }
+
+  /**
+   * Waits until a command can be executed. Each call to this method must be
+   * followed by a call to {@link #afterExec()}.
+   * 
+   * @throws InterruptedException if the current thread is interrupted.
+   */
+  public void beforeExec() throws InterruptedException {
+    while (true) {
+      final int n = running.get();
+      if (n == 0 || !isOverloaded()) {
+        if (running.compareAndSet(n, n + 1)) return;
+      } else {
+        if (depLogger.isLoggable(Level.FINEST))
+          depLogger.finest("System overloaded, delay execution (running="
+              + n + ").");
+        Thread.sleep(SAMPLING_PERIOD);
+      }
+    }
+  }
+
+  public void afterExec() {
+    running.decrementAndGet();
+  }
+
+  protected boolean isOverloaded() {
+    if (maxLoad > 0) {
+      final double load = systemInfo.getSystemLoadAverage();
+      if (load >= 0 && load > maxLoad) return true;
+    }
+    if (minFreeMemory > 0) {
+      long freeMemory = systemInfo.getAvailableMemory();
+      if (freeMemory < 0) freeMemory = systemInfo.getFreePhysicalMemory();
+      if (freeMemory >= 0 && freeMemory < minFreeMemory) return true;
+    }
+    return false;
+  }
+
+  // ---------------------------------------------------------------------------
+  // System information helper methods
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Returns the number of jobs that fits the host (see
+   * {@link #getAutoJobs(SystemInfo)}).
+   * 
+   * @return the number of jobs that fits the host.
+   */
+  public static int getAutoJobs() {
+    return getAutoJobs(new DefaultSystemInfo());
+  }
+
+  /**
+   * Returns the number of jobs that fits the host: the number of available
+   * processors, limited by the available physical memory (see
+   * {@link #MEMORY_PER_JOB}). If the available memory is unknown, the total
+   * physical memory is used instead. The free memory is not used, since on
+   * most systems it excludes the page cache and is therefore far below the
+   * memory that jobs can actually use.
+   * 
+   * @param systemInfo the source of system information.
+   * @return the number of jobs that fits the host.
+   */
+  public static int getAutoJobs(final SystemInfo systemInfo) {
+    int jobs = systemInfo.getAvailableProcessors();
+    long memory = systemInfo.getAvailableMemory();
+    if (memory < 0) memory = systemInfo.getTotalPhysicalMemory();
+    if (memory > 0) {
+      jobs = (int) Math.min(jobs, Math.max(1, memory / MEMORY_PER_JOB));
+    }
+    return Math.max(1, jobs);
+  }
+
+  /**
+   * Source of the system information used by {@link LoadThrottle}. Methods
+   * return a negative value if the information is not available.
+   */
+  public interface SystemInfo {
+    int getAvailableProcessors();
+
+    double getSystemLoadAverage();
+
+    /**
+     * Returns the physical memory, in bytes, that can be used by new processes
+     * without swapping, including reclaimable caches.
+     */
+    long getAvailableMemory();
+
+    long getFreePhysicalMemory();
+
+    long getTotalPhysicalMemory();
+  }
+
+  /**
+   * {@link SystemInfo} of the host. The available memory is read from the
+   * <code>MemAvailable</code> field of <code>/proc/meminfo</code>, which is
+   * provided by Linux kernels since 3.14. Free and total physical memories are
+   * provided by the {@link OperatingSystemMXBean} of Sun/Oracle and compatible
+   * JVMs.
+   */
+  public static class DefaultSystemInfo implements SystemInfo {
+
+    protected static final String MEM_AVAILABLE = "MemAvailable:";
+
+    protected final File          memInfoFile;
+
+    public DefaultSystemInfo() {
+      this(new File("/proc/meminfo"));
+    }
+
+    public DefaultSystemInfo(final File memInfoFile) {
+      this.memInfoFile = memInfoFile;
+    }
+
+    public int getAvailableProcessors() {
+      return Runtime.getRuntime().availableProcessors();
+    }
+
+    public double getSystemLoadAverage() {
+      return ManagementFactory.getOperatingSystemMXBean()
+          .getSystemLoadAverage();
+    }
+
+    public long getAvailableMemory() {
+      if (!memInfoFile.isFile()) return -1L;
+      try {
+        final BufferedReader reader = new BufferedReader(new FileReader(
+            memInfoFile));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(MEM_AVAILABLE)) continue;
+            // the line looks like "MemAvailable:   1234567 kB"
+            final String[] fields = line.substring(MEM_AVAILABLE.length())
+                .trim().split("\\s+");
+            long value = Long.parseLong(fields[0]);
+            if (fields.length > 1 && fields[1].equalsIgnoreCase("kB"))
+              value *= 1024;
+            return value;
+          }
+        } finally {
+          reader.close();
+        }
+      } catch (final IOException e) {
+        // ignore
+      } catch (final NumberFormatException e) {
+        // ignore
+      }
+      return -1L;
+    }
+
+    public long getFreePhysicalMemory() {
+      return getOperatingSystemValue("getFreePhysicalMemorySize");
+    }
+
+    public long getTotalPhysicalMemory() {
+      return getOperatingSystemValue("getTotalPhysicalMemorySize");
+    }
+
+    protected long getOperatingSystemValue(final String methodName) {
+      final OperatingSystemMXBean os = ManagementFactory
+          .getOperatingSystemMXBean();
+      try {
+        // these methods are only available on Sun/Oracle and compatible JVMs.
+        final Method method = Class.forName(
+            "com.sun.management.OperatingSystemMXBean").getMethod(methodName);
+        return (Long) method.invoke(os);
+      } catch (final Exception e) {
+        return -1L;
+      }
+    }
+  }
+}
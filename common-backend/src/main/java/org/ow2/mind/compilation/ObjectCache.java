@@ -0,0 +1,704 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.ClassLoaderHelper;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.cache.ArtifactCache;
+import org.ow2.mind.cache.ArtifactCacheHelper;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+
+/**
+ * Local content-addressed cache of the files produced by compiler and
+ * assembler commands. It can be shared between builds, branches and
+ * workspaces.
+ * <p>
+ * The key of a command is the digest of the identity of the compiler, of the
+ * {@link SignedCompilationCommand#getSignature() signature} of the command and
+ * of the content of its explicit input files. In the signature and in the
+ * paths of the files, the directories of the source path, the output directory
+ * and the temporary output directory are replaced by symbolic names, so that a
+ * workspace can use the results of another workspace whose directories are
+ * located elsewhere. Note that compilers may embed absolute paths in the
+ * objects they produce (debug information, <code>__FILE__</code> macros) and
+ * in their warnings; such objects are reused as they are, so they refer to the
+ * directories of the workspace that produced them. Builds that need exact
+ * paths in these places must not share a cache directory between
+ * workspaces. For commands whose dependencies
+ * are only known after their execution (through a dependency file), the
+ * cache records, for each key, a manifest of the dependencies with the digest
+ * of their content; a cached object matches if the current content of these
+ * dependencies is unchanged.
+ * <p>
+ * The cache directory is bounded in size; when it grows larger than its
+ * maximal size, the least recently used files are removed. This class is
+ * thread-safe.
+ * <p>
+ * If a shared {@link ArtifactCache} is {@link ArtifactCacheHelper available},
+ * it is used as a second level: results that are not found locally are
+ * fetched from it and new results are uploaded to it.
+ */
+public class ObjectCache {
+
+  protected static Logger                       depLogger                     = FractalADLLogManager
+                                                                                  .getLogger("dep");
+
+  /** The context key of the directory of the object cache. */
+  public static final String                    OBJECT_CACHE_DIR_CONTEXT_KEY  = "object-cache-dir";
+
+  /** The context key of the maximal size of the object cache, in bytes. */
+  public static final String                    OBJECT_CACHE_SIZE_CONTEXT_KEY = "object-cache-size";
+
+  /** The default maximal size of the object cache: 1 GiB. */
+  public static final long                      DEFAULT_MAX_SIZE              = 1024L * 1024L * 1024L;
+
+  /** The maximal number of results recorded for a given key. */
+  protected static final int                    MAX_MANIFEST_ENTRIES          = 16;
+
+  protected static final String                 MANIFEST_EXTENSION            = ".manifest";
+  protected static final String                 OBJECT_EXTENSION              = ".o";
+  protected static final String                 OUTPUT_EXTENSION              = ".out";
+
+  /** The prefix of the keys of the files in the shared artifact cache. */
+  protected static final String                 REMOTE_KEY_PREFIX             = "obj/";
+
+  private static final String                   TEMP_DIR                      = "$TEMP_DIR";
+  private static final String                   OUTPUT_DIR                    = "$OUTPUT_DIR";
+  private static final String                   SRC_DIR                       = "$SRC_DIR";
+
+  private static final Map<File, ObjectCache>   caches                        = new HashMap<File, ObjectCache>();
+
+  protected final File                          cacheDir;
+  protected volatile long                       maxSize                       = DEFAULT_MAX_SIZE;
+
+  /** Approximate size of the cache directory, -1 if not computed yet. */
+  protected long                                size                          = -1;
+
+  /** Identities of the compilers, computed once per compiler command. */
+  protected final Map<String, String>           compilerIdentities            = new ConcurrentHashMap<String, String>();
+
+  /** Memorized digests of file contents. */
+  protected final Map<File, FileDigest>         fileDigests                   = new ConcurrentHashMap<File, FileDigest>();
+
+  protected ObjectCache(final File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Context helper methods
+  // ---------------------------------------------------------------------------
+
+  public static void setObjectCacheDir(final Map<Object, Object> context,
+      final File cacheDir) {
+    context.put(OBJECT_CACHE_DIR_CONTEXT_KEY, cacheDir);
+  }
+
+  public static File getObjectCacheDir(final Map<Object, Object> context) {
+    return (File) context.get(OBJECT_CACHE_DIR_CONTEXT_KEY);
+  }
+
+  public static void setObjectCacheMaxSize(final Map<Object, Object> context,
+      final long maxSize) {
+    context.put(OBJECT_CACHE_SIZE_CONTEXT_KEY, maxSize);
+  }
+
+  public static long getObjectCacheMaxSize(final Map<Object, Object> context) {
+    final Object maxSize = context.get(OBJECT_CACHE_SIZE_CONTEXT_KEY);
+    return (maxSize instanceof Long) ? (Long) maxSize : DEFAULT_MAX_SIZE;
+  }
+
+  /**
+   * Returns the object cache of the given context, or <code>null</code> if no
+   * object cache directory is {@link #setObjectCacheDir specified}. A single
+   * instance is used for a given directory.
+   * 
+   * @param context the context.
+   * @return the object cache of the given context.
+   */
+  public static ObjectCache getObjectCache(final Map<Object, Object> context) {
+    final File dir = getObjectCacheDir(context);
+    if (dir == null) return null;
+    final ObjectCache cache;
+    synchronized (caches) {
+      final File key = dir.getAbsoluteFile();
+      ObjectCache c = caches.get(key);
+      if (c == null) {
+        c = new ObjectCache(key);
+        caches.put(key, c);
+      }
+      cache = c;
+    }
+    cache.maxSize = getObjectCacheMaxSize(context);
+    return cache;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Cache methods
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Returns the key of a command.
+   * 
+   * @param compiler the compiler command (i.e.
+   *          {@link CompilationCommand#getCommand()}).
+   * @param signature the signature of the command.
+   * @param inputFiles the explicit input files of the command.
+   * @param context the context.
+   * @return the key of the command.
+   * @throws IOException if an input file can't be read.
+   */
+  public String getKey(final String compiler, final String signature,
+      final Collection<File> inputFiles, final Map<Object, Object> context)
+      throws IOException {
+    final MessageDigest digest = DigestHelper.newDigest();
+    DigestHelper.update(digest, getCompilerIdentity(compiler));
+    final Map<String, String> stableDirs = getStableDirs(context);
+    DigestHelper.update(digest, toStableString(signature, stableDirs));
+    for (final File inputFile : inputFiles) {
+      DigestHelper.update(digest, toStablePath(inputFile, stableDirs));
+      DigestHelper.update(digest, getDigest(inputFile));
+    }
+    return DigestHelper.toHexString(digest.digest());
+  }
+
+  /**
+   * Looks for a result of the command with the given key, whose dependencies
+   * are unchanged.
+   * 
+   * @param key the key of a command, as returned by {@link #getKey}.
+   * @param context the context.
+   * @return the cached result, or <code>null</code> if there is no matching
+   *         result in the cache.
+   */
+  public Entry lookup(final String key, final Map<Object, Object> context) {
+    final File manifestFile = getFile(key, MANIFEST_EXTENSION);
+    Entry result = lookup(manifestFile, null, context);
+    final ArtifactCache remote = ArtifactCacheHelper.getArtifactCache(context);
+    if (result == null && remote != null
+        && fetch(remote, key, MANIFEST_EXTENSION)) {
+      // look for results produced by other hosts. The fetched manifest
+      // replaces the local one, whose entries did not match anyway.
+      result = lookup(manifestFile, remote, context);
+    }
+    if (depLogger.isLoggable(Level.FINE))
+      depLogger.fine("Object cache " + ((result != null) ? "hit" : "miss")
+          + " for key " + key + ".");
+    return result;
+  }
+
+  protected Entry lookup(final File manifestFile, final ArtifactCache remote,
+      final Map<Object, Object> context) {
+    final List<ManifestEntry> entries = readManifest(manifestFile);
+    for (final ManifestEntry entry : entries) {
+      if (!isUnchanged(entry, context)) continue;
+      final File objectFile = getFile(entry.resultKey, OBJECT_EXTENSION);
+      if (!objectFile.isFile()) {
+        if (remote == null
+            || !fetch(remote, entry.resultKey, OBJECT_EXTENSION)) continue;
+        // the output of the command is stored only if it is not empty.
+        fetch(remote, entry.resultKey, OUTPUT_EXTENSION);
+      }
+
+      // mark the entry as recently used.
+      final long now = System.currentTimeMillis();
+      objectFile.setLastModified(now);
+      manifestFile.setLastModified(now);
+
+      String output = null;
+      final File outputFile = getFile(entry.resultKey, OUTPUT_EXTENSION);
+      if (outputFile.isFile()) {
+        try {
+          output = readFile(outputFile);
+        } catch (final IOException e) {
+          continue;
+        }
+      }
+      final Map<String, String> stableDirs = getStableDirs(context);
+      final List<File> dependencies = new ArrayList<File>(entry.paths.size());
+      for (final String path : entry.paths) {
+        dependencies.add(fromStablePath(path, stableDirs));
+      }
+      return new Entry(objectFile, output, dependencies);
+    }
+    return null;
+  }
+
+  /**
+   * Stores the result of the command with the given key.
+   * 
+   * @param key the key of the command, as returned by {@link #getKey}.
+   * @param objectFile the file produced by the command.
+   * @param output the output of the command (i.e. its warnings). May be
+   *          <code>null</code>.
+   * @param dependencies the implicit dependencies of the command (i.e. those
+   *          that are not taken into account in the key).
+   * @param context the context.
+   */
+  public void store(final String key, final File objectFile,
+      final String output, final Collection<File> dependencies,
+      final Map<Object, Object> context) {
+    try {
+      final ManifestEntry newEntry = new ManifestEntry();
+      final MessageDigest digest = DigestHelper.newDigest();
+      DigestHelper.update(digest, key);
+      final Map<String, String> stableDirs = getStableDirs(context);
+      for (final File dependency : dependencies) {
+        final String path = toStablePath(dependency, stableDirs);
+        final String depDigest = getDigest(dependency);
+        newEntry.paths.add(path);
+        newEntry.digests.add(depDigest);
+        DigestHelper.update(digest, path);
+        DigestHelper.update(digest, depDigest);
+      }
+      newEntry.resultKey = DigestHelper.toHexString(digest.digest());
+
+      long added = 0;
+      final File cachedObject = getFile(newEntry.resultKey, OBJECT_EXTENSION);
+      if (!cachedObject.isFile()) {
+        AtomicFileHelper.copy(objectFile, cachedObject);
+        added += cachedObject.length();
+      }
+      File outputFile = null;
+      if (output != null) {
+        outputFile = getFile(newEntry.resultKey, OUTPUT_EXTENSION);
+        writeFile(outputFile, output);
+        added += outputFile.length();
+      }
+
+      final File manifestFile = getFile(key, MANIFEST_EXTENSION);
+      final List<ManifestEntry> entries = readManifest(manifestFile);
+      final Iterator<ManifestEntry> iter = entries.iterator();
+      while (iter.hasNext()) {
+        if (iter.next().resultKey.equals(newEntry.resultKey)) iter.remove();
+      }
+      entries.add(0, newEntry);
+      while (entries.size() > MAX_MANIFEST_ENTRIES) {
+        entries.remove(entries.size() - 1);
+      }
+      final long previousLength = manifestFile.length();
+      writeManifest(manifestFile, entries);
+      added += manifestFile.length() - previousLength;
+
+      addSize(added);
+
+      // share the result with other hosts. Uploads are asynchronous.
+      final ArtifactCache remote = ArtifactCacheHelper
+          .getArtifactCache(context);
+      if (remote != null) {
+        remote.store(getRemoteKey(newEntry.resultKey, OBJECT_EXTENSION),
+            cachedObject);
+        if (outputFile != null)
+          remote.store(getRemoteKey(newEntry.resultKey, OUTPUT_EXTENSION),
+              outputFile);
+        remote.store(getRemoteKey(key, MANIFEST_EXTENSION), manifestFile);
+      }
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.WARNING))
+        depLogger.log(Level.WARNING, "Can't store '" + objectFile
+            + "' in object cache", e);
+    }
+  }
+
+
+  /**
+   * Result of a command retrieved from the cache.
+   */
+  public static final class Entry {
+    /** The cached object file, it must be copied to the output file. */
+    public final File       objectFile;
+    /** The output of the command, may be <code>null</code>. */
+    public final String     output;
+    /** The implicit dependencies of the command. */
+    public final List<File> dependencies;
+
+    Entry(final File objectFile, final String output,
+        final List<File> dependencies) {
+      this.objectFile = objectFile;
+      this.output = output;
+      this.dependencies = dependencies;
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Implementation
+  // ---------------------------------------------------------------------------
+
+  protected static final class ManifestEntry {
+    String             resultKey;
+    final List<String> paths   = new ArrayList<String>();
+    final List<String> digests = new ArrayList<String>();
+  }
+
+  protected static final class FileDigest {
+    final long   timestamp;
+    final long   length;
+    final String digest;
+
+    FileDigest(final long timestamp, final long length, final String digest) {
+      this.timestamp = timestamp;
+      this.length = length;
+      this.digest = digest;
+    }
+  }
+
+  protected File getFile(final String key, final String extension) {
+    return new File(new File(cacheDir, key.substring(0, 2)), key + extension);
+  }
+
+  /**
+   * Returns the key, in the shared {@link ArtifactCache}, of the file with the
+   * given key and extension.
+   */
+  protected String getRemoteKey(final String key, final String extension) {
+    return REMOTE_KEY_PREFIX + key.substring(0, 2) + "/" + key + extension;
+  }
+
+  /**
+   * Fetches the file with the given key and extension from the shared
+   * artifact cache.
+   * 
+   * @return <code>true</code> if the file has been fetched.
+   */
+  protected boolean fetch(final ArtifactCache remote, final String key,
+      final String extension) {
+    final File file = getFile(key, extension);
+    try {
+      if (!remote.fetch(getRemoteKey(key, extension), file)) return false;
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.FINE))
+        depLogger.log(Level.FINE, "Can't fetch '" + file.getName()
+            + "' from artifact cache", e);
+      return false;
+    }
+    addSize(file.length());
+    return true;
+  }
+
+  protected boolean isUnchanged(final ManifestEntry entry,
+      final Map<Object, Object> context) {
+    final Map<String, String> stableDirs = getStableDirs(context);
+    for (int i = 0; i < entry.paths.size(); i++) {
+      final File file = fromStablePath(entry.paths.get(i), stableDirs);
+      try {
+        if (!getDigest(file).equals(entry.digests.get(i))) return false;
+      } catch (final IOException e) {
+        // the dependency does not exist anymore.
+        return false;
+      }
+    }
+    return true;
+  }
+
+  protected String getDigest(final File file) throws IOException {
+    final long timestamp = file.lastModified();
+    final long length = file.length();
+    final FileDigest fileDigest = fileDigests.get(file);
+    if (fileDigest != null && fileDigest.timestamp == timestamp
+        && fileDigest.length == length) {
+      return fileDigest.digest;
+    }
+    final String digest = DigestHelper.digest(file);
+    fileDigests.put(file, new FileDigest(timestamp, length, digest));
+    return digest;
+  }
+
+  /**
+   * Returns a string that identifies the given compiler: its path, size and
+   * timestamp, so that the cache is not used across compiler upgrades.
+   */
+  protected String getCompilerIdentity(final String compiler) {
+    String identity = compilerIdentities.get(compiler);
+    if (identity == null) {
+      File compilerFile = new File(compiler);
+      if (!compilerFile.isAbsolute()) {
+        compilerFile = null;
+        final String path = System.getenv("PATH");
+        if (path != null) {
+          for (final String dir : path.split(File.pathSeparator)) {
+            File f = new File(dir, compiler);
+            if (!f.isFile()) f = new File(dir, compiler + ".exe");
+            if (f.isFile()) {
+              compilerFile = f;
+              break;
+            }
+          }
+        }
+      }
+      if (compilerFile != null && compilerFile.isFile())
+        identity = compilerFile.getAbsolutePath() + " "
+            + compilerFile.length() + " " + compilerFile.lastModified();
+      else
+        identity = compiler;
+      compilerIdentities.put(compiler, identity);
+    }
+    return identity;
+  }
+
+  /**
+   * Returns the directories that are replaced by symbolic names in keys and
+   * manifests: the temporary output directory, the output directory and the
+   * directories of the source path. The returned map associates the absolute
+   * paths of these directories to their names; longest paths come first, so
+   * that a directory contained in another one is replaced first.
+   */
+  protected Map<String, String> getStableDirs(
+      final Map<Object, Object> context) {
+    final List<String[]> dirs = new ArrayList<String[]>();
+    final File tempDir = (File) context
+        .get(BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY);
+    if (tempDir != null)
+      dirs.add(new String[]{tempDir.getAbsolutePath(), TEMP_DIR});
+    final File outDir = (File) context
+        .get(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY);
+    if (outDir != null)
+      dirs.add(new String[]{outDir.getAbsolutePath(), OUTPUT_DIR});
+    final ClassLoader srcLoader = ClassLoaderHelper.getClassLoader(this,
+        context);
+    if (srcLoader instanceof URLClassLoader) {
+      final URL[] urls = ((URLClassLoader) srcLoader).getURLs();
+      for (int i = 0; i < urls.length; i++) {
+        if (!"file".equals(urls[i].getProtocol())) continue;
+        try {
+          final File srcDir = new File(urls[i].toURI());
+          if (srcDir.isDirectory())
+            dirs.add(new String[]{srcDir.getAbsolutePath(), SRC_DIR + i});
+        } catch (final URISyntaxException e) {
+          // ignore this source directory.
+        } catch (final IllegalArgumentException e) {
+          // ignore this source directory.
+        }
+      }
+    }
+    Collections.sort(dirs, new Comparator<String[]>() {
+      public int compare(final String[] o1, final String[] o2) {
+        return o2[0].length() - o1[0].length();
+      }
+    });
+    final Map<String, String> stableDirs = new LinkedHashMap<String, String>();
+    for (final String[] dir : dirs) {
+      if (!stableDirs.containsKey(dir[0])) stableDirs.put(dir[0], dir[1]);
+    }
+    return stableDirs;
+  }
+
+  protected static String toStableString(String s,
+      final Map<String, String> stableDirs) {
+    for (final Map.Entry<String, String> dir : stableDirs.entrySet()) {
+      s = s.replace(dir.getKey(), dir.getValue());
+    }
+    return s;
+  }
+
+  protected static String toStablePath(final File file,
+      final Map<String, String> stableDirs) {
+    final String path = file.getAbsolutePath();
+    for (final Map.Entry<String, String> dir : stableDirs.entrySet()) {
+      final String dirPath = dir.getKey();
+      if (path.startsWith(dirPath)
+          && (path.length() == dirPath.length() || path.charAt(dirPath
+              .length()) == File.separatorChar))
+        return dir.getValue() + path.substring(dirPath.length());
+    }
+    return file.getPath();
+  }
+
+  protected static File fromStablePath(final String path,
+      final Map<String, String> stableDirs) {
+    if (path.startsWith("$")) {
+      for (final Map.Entry<String, String> dir : stableDirs.entrySet()) {
+        final String name = dir.getValue();
+        if (path.startsWith(name)
+            && (path.length() == name.length() || path
+                .charAt(name.length()) == File.separatorChar))
+          return new File(dir.getKey() + path.substring(name.length()));
+      }
+    }
+    return new File(path);
+  }
+
+  protected List<ManifestEntry> readManifest(final File manifestFile) {
+    final List<ManifestEntry> entries = new ArrayList<ManifestEntry>();
+    if (!manifestFile.isFile()) return entries;
+    try {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(manifestFile), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final ManifestEntry entry = new ManifestEntry();
+          entry.resultKey = line;
+          final int nbDeps = Integer.parseInt(reader.readLine());
+          for (int i = 0; i < nbDeps; i++) {
+            final String dep = reader.readLine();
+            final int sep = dep.indexOf(' ');
+            entry.digests.add(dep.substring(0, sep));
+            entry.paths.add(dep.substring(sep + 1));
+          }
+          entries.add(entry);
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (final IOException e) {
+      entries.clear();
+    } catch (final RuntimeException e) {
+      // corrupted manifest (NumberFormatException, NullPointerException...)
+      entries.clear();
+    }
+    return entries;
+  }
+
+  protected void writeManifest(final File manifestFile,
+      final List<ManifestEntry> entries) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    for (final ManifestEntry entry : entries) {
+      sb.append(entry.resultKey).append('\n');
+      sb.append(entry.paths.size()).append('\n');
+      for (int i = 0; i < entry.paths.size(); i++) {
+        sb.append(entry.digests.get(i)).append(' ').append(entry.paths.get(i))
+            .append('\n');
+      }
+    }
+    writeFile(manifestFile, sb.toString());
+  }
+
+  protected static String readFile(final File file) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final InputStreamReader reader = new InputStreamReader(new FileInputStream(
+        file), "UTF-8");
+    try {
+      final char[] buffer = new char[4096];
+      int n;
+      while ((n = reader.read(buffer)) >= 0) {
+        sb.append(buffer, 0, n);
+      }
+    } finally {
+      reader.close();
+    }
+    return sb.toString();
+  }
+
+  protected static void writeFile(final File file, final String content)
+      throws IOException {
+    final File tmpFile = AtomicFileHelper.createTempFile(file);
+    try {
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(
+          tmpFile), "UTF-8");
+      try {
+        writer.write(content);
+      } finally {
+        writer.close();
+      }
+      AtomicFileHelper.replace(tmpFile, file);
+    } catch (final IOException e) {
+      tmpFile.delete();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Adds the given number of bytes to the size of the cache and evicts the
+   * least recently used files if the cache is larger than its maximal size.
+   */
+  protected synchronized void addSize(final long added) {
+    if (size < 0) {
+      size = 0;
+      for (final File file : listCacheFiles()) {
+        size += file.length();
+      }
+    } else {
+      size += added;
+    }
+    if (size > maxSize) evict();
+  }
+
+  /**
+   * Removes the least recently used files until the size of the cache is lower
+   * than 90% of its maximal size.
+   */
+  protected void evict() {
+    final List<File> files = listCacheFiles();
+    final Map<File, Long> timestamps = new HashMap<File, Long>();
+    size = 0;
+    for (final File file : files) {
+      timestamps.put(file, file.lastModified());
+      size += file.length();
+    }
+    Collections.sort(files, new Comparator<File>() {
+      public int compare(final File o1, final File o2) {
+        final long t1 = timestamps.get(o1);
+        final long t2 = timestamps.get(o2);
+        return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+      }
+    });
+    final long targetSize = maxSize / 10 * 9;
+    for (final File file : files) {
+      if (size <= targetSize) break;
+      final long length = file.length();
+      if (file.delete()) size -= length;
+    }
+    if (depLogger.isLoggable(Level.FINE))
+      depLogger.fine("Object cache '" + cacheDir + "' evicted, size is now "
+          + size + " bytes.");
+  }
+
+  protected List<File> listCacheFiles() {
+    final List<File> files = new ArrayList<File>();
+    final File[] subDirs = cacheDir.listFiles();
+    if (subDirs == null) return files;
+    for (final File subDir : subDirs) {
+      final File[] subFiles = subDir.listFiles();
+      if (subFiles != null) files.addAll(Arrays.asList(subFiles));
+    }
+    return files;
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.IOException;
+
+import org.ow2.mind.compilation.ExecutionHelper.StreamedProcess;
+
+/**
+ * A {@link PreprocessorCommand} that can write its output on the standard
+ * output of the preprocessor process instead of the {@link #getOutputFile()
+ * output file}.
+ */
+public interface PipeablePreprocessorCommand extends PreprocessorCommand {
+
+  /**
+   * Starts the preprocessor so that the preprocessed code is written on the
+   * {@link StreamedProcess#getInputStream() output} of the returned process.
+   * 
+   * @return the started process.
+   * @throws IOException if the process can't be started.
+   */
+  StreamedProcess startPipedExec() throws IOException;
+
+  /**
+   * Waits for the end of a process started by {@link #startPipedExec()} and
+   * reports its errors and warnings.
+   * 
+   * @param process the process returned by {@link #startPipedExec()}.
+   * @return <code>true</code> if the execution succeeded.
+   * @throws InterruptedException if the calling thread has been interrupted.
+   */
+  boolean endPipedExec(StreamedProcess process) throws InterruptedException;
+}
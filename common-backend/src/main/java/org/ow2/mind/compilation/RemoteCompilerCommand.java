@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+/**
+ * A {@link CompilerCommand} that can be executed by a {@link CompileWorker},
+ * possibly running on another host. The
+ * {@link ConcurrentCompilationCommandExecutor executor} assigns a worker to
+ * {@link #isRemotable() remotable} commands when a slot of a worker of the
+ * {@link CompileWorkerPool} is free.
+ */
+public interface RemoteCompilerCommand extends CompilerCommand {
+
+  /**
+   * Returns <code>true</code> if this command can be executed by a
+   * {@link CompileWorker}, i.e. if its input file and its include files are
+   * self-contained (they have already been preprocessed).
+   * 
+   * @return <code>true</code> if this command can be executed by a worker.
+   */
+  boolean isRemotable();
+
+  /**
+   * Sets the worker that executes this command. If the command can't be
+   * executed by this worker, it is executed locally.
+   * 
+   * @param worker a worker, or <code>null</code> to execute the command
+   *          locally.
+   */
+  void setRemoteWorker(CompileWorkerPool.Worker worker);
+}
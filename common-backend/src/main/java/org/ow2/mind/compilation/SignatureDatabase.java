@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+
+/**
+ * Persistent store of the signatures of the compilation commands of a build
+ * (see {@link SignedCompilationCommand}). It records, for each command, the
+ * signature of its last successful execution, so that a change of its
+ * command-line can be detected. Signatures are stored in a single file in the
+ * output directory, and only the signatures of the commands of the current
+ * build are saved. This class is thread-safe.
+ */
+public class SignatureDatabase {
+
+  protected static Logger             depLogger                      = FractalADLLogManager
+                                                                         .getLogger("dep");
+
+  /** The name of the database file, relative to the output directory. */
+  public static final String          SIGNATURE_DB_FILE_NAME         = ".mind-signatures";
+
+  /** The context key under which the database of a compilation is stored. */
+  public static final String          SIGNATURE_DATABASE_CONTEXT_KEY = "signature-database";
+
+  protected static final int          VERSION                        = 1;
+
+  protected final File                dbFile;
+  protected final Map<String, String> signatures                     = new ConcurrentHashMap<String, String>();
+
+  /** Keys of the commands of the current build. */
+  protected final Set<String>         usedKeys                       = Collections
+                                                                         .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  protected volatile boolean          modified                       = false;
+
+  /**
+   * @param dbFile the file in which the database is persisted. May be
+   *          <code>null</code> for a database that is never persisted.
+   */
+  public SignatureDatabase(final File dbFile) {
+    this.dbFile = dbFile;
+  }
+
+  /**
+   * Returns the database stored in the given output directory. If the database
+   * file does not exist or can't be read, an empty database is returned.
+   * 
+   * @param outputDir the output directory.
+   * @return the database stored in the given output directory.
+   */
+  public static SignatureDatabase load(final File outputDir) {
+    final SignatureDatabase db = new SignatureDatabase(new File(outputDir,
+        SIGNATURE_DB_FILE_NAME));
+    db.read();
+    return db;
+  }
+
+  /**
+   * Returns the database of the given context. The database is loaded from the
+   * output directory the first time this method is called for a given context,
+   * so that the commands of every execution of the compilation are part of the
+   * same build.
+   * 
+   * @param context the context of the compilation.
+   * @return the database of the given context.
+   */
+  public static SignatureDatabase getSignatureDatabase(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      SignatureDatabase db = (SignatureDatabase) context
+          .get(SIGNATURE_DATABASE_CONTEXT_KEY);
+      if (db == null) {
+        final File outputDir = (File) context
+            .get(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY);
+        if (outputDir != null)
+          db = load(outputDir);
+        else
+          db = new SignatureDatabase(null);
+        context.put(SIGNATURE_DATABASE_CONTEXT_KEY, db);
+      }
+      return db;
+    }
+  }
+
+  /**
+   * Marks the given command as part of the current build. The signatures of
+   * the commands that are not marked are not saved.
+   * 
+   * @param commandKey the key of a command.
+   */
+  public void markUsed(final String commandKey) {
+    usedKeys.add(commandKey);
+  }
+
+  /**
+   * Returns the signature recorded for the given command, or <code>null</code>
+   * if no signature is recorded.
+   * 
+   * @param commandKey the key of a command.
+   * @return the signature recorded for the given command.
+   */
+  public String getSignature(final String commandKey) {
+    return signatures.get(commandKey);
+  }
+
+  public void setSignature(final String commandKey, final String signature) {
+    if (!signature.equals(signatures.put(commandKey, signature)))
+      modified = true;
+  }
+
+  public void removeSignature(final String commandKey) {
+    if (signatures.remove(commandKey) != null) modified = true;
+  }
+
+  /**
+   * Writes the signatures of the commands of the current build in the file of
+   * this database, if it has been modified or if it contains signatures of
+   * other commands. These signatures are not written, but they are kept in
+   * memory since the commands of a later execution of the same compilation may
+   * use them.
+   */
+  public synchronized void save() {
+    if (dbFile == null) return;
+    final Map<String, String> usedSignatures = new HashMap<String, String>();
+    for (final Map.Entry<String, String> entry : signatures.entrySet()) {
+      if (usedKeys.contains(entry.getKey()))
+        usedSignatures.put(entry.getKey(), entry.getValue());
+    }
+    if (!modified && usedSignatures.size() == signatures.size()) return;
+    try {
+      final File tmpFile = AtomicFileHelper.createTempFile(dbFile);
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(VERSION);
+        out.writeInt(usedSignatures.size());
+        for (final Map.Entry<String, String> entry : usedSignatures.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue());
+        }
+      } finally {
+        out.close();
+      }
+      AtomicFileHelper.replace(tmpFile, dbFile);
+      modified = false;
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.WARNING))
+        depLogger.log(Level.WARNING, "Can't write signature database '"
+            + dbFile + "'", e);
+    }
+  }
+
+  protected void read() {
+    if (!dbFile.isFile()) return;
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(dbFile)));
+      try {
+        if (in.readInt() != VERSION) return;
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+          final String key = in.readUTF();
+          signatures.put(key, in.readUTF());
+        }
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      // corrupted database, start with an empty one.
+      if (depLogger.isLoggable(Level.FINE))
+        depLogger.log(Level.FINE, "Can't read signature database '" + dbFile
+            + "'", e);
+      signatures.clear();
+    }
+  }
+}
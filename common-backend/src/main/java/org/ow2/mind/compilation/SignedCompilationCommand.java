@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+/**
+ * Optional interface of {@link CompilationCommand} whose command-line can be
+ * identified by a signature. When the signature of a command changes, the
+ * {@link BasicCompilationCommandExecutor} re-executes it even if its output
+ * files are more recent than its input files.
+ */
+public interface SignedCompilationCommand extends CompilationCommand {
+
+  /**
+   * Returns a string that identifies the command-line of this command (i.e.
+   * the tool, flags, defines, include directories and files, etc), but not its
+   * input and output files.
+   * 
+   * @return the signature of this command. May be <code>null</code>.
+   */
+  String getSignature();
+}
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -34,21 +36,32 @@ import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
+import org.ow2.mind.ForceRegenContextHelper;
 import org.ow2.mind.compilation.AbstractAssemblerCommand;
 import org.ow2.mind.compilation.AbstractCompilerCommand;
 import org.ow2.mind.compilation.AbstractLinkerCommand;
 import org.ow2.mind.compilation.AbstractPreprocessorCommand;
 import org.ow2.mind.compilation.AssemblerCommand;
+import org.ow2.mind.compilation.CompileWorkerPool;
 import org.ow2.mind.compilation.CompilerCommand;
 import org.ow2.mind.compilation.CompilerContextHelper;
 import org.ow2.mind.compilation.CompilerErrors;
 import org.ow2.mind.compilation.CompilerWrapper;
+import org.ow2.mind.compilation.DependencyDatabase;
 import org.ow2.mind.compilation.DependencyHelper;
 import org.ow2.mind.compilation.ExecutionHelper;
 import org.ow2.mind.compilation.ExecutionHelper.ExecutionResult;
+import org.ow2.mind.compilation.ExecutionHelper.StreamedProcess;
 import org.ow2.mind.compilation.LinkerCommand;
+import org.ow2.mind.compilation.ObjectCache;
+import org.ow2.mind.compilation.PipeableCompilerCommand;
+import org.ow2.mind.compilation.PipeablePreprocessorCommand;
 import org.ow2.mind.compilation.PreprocessorCommand;
+import org.ow2.mind.compilation.RemoteCompilerCommand;
+import org.ow2.mind.compilation.SignedCompilationCommand;
 import org.ow2.mind.error.ErrorManager;
+import org.ow2.mind.io.AtomicFileHelper;
 import org.ow2.mind.io.OutputFileLocator;
 
 import com.google.inject.Inject;
@@ -87,7 +100,9 @@ public class GccCompilerWrapper implements CompilerWrapper {
     return new GccLinkerCommand(context);
   }
 
-  protected class GccPreprocessorCommand extends AbstractPreprocessorCommand {
+  protected class GccPreprocessorCommand extends AbstractPreprocessorCommand
+      implements
+        PipeablePreprocessorCommand {
 
     protected GccPreprocessorCommand(final Map<Object, Object> context) {
       super(CompilerContextHelper.getCompilerCommand(context), context);
@@ -104,6 +119,29 @@ public class GccCompilerWrapper implements CompilerWrapper {
     }
 
     public boolean exec() throws ADLException, InterruptedException {
+      final List<String> cmd = getCommandLine(false);
+
+      // execute command
+      ExecutionResult result;
+      try {
+        result = ExecutionHelper.exec(getDescription(), cmd);
+      } catch (final IOException e) {
+        errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR, this.cmd);
+        return false;
+      }
+      return checkResult(result);
+    }
+
+    public StreamedProcess startPipedExec() throws IOException {
+      return ExecutionHelper.start(getDescription(), getCommandLine(true));
+    }
+
+    public boolean endPipedExec(final StreamedProcess process)
+        throws InterruptedException {
+      return checkResult(process.waitFor());
+    }
+
+    protected List<String> getCommandLine(final boolean piped) {
       final List<String> cmd = new ArrayList<String>();
       cmd.add(this.cmd);
       cmd.add("-E");
@@ -131,29 +169,23 @@ public class GccCompilerWrapper implements CompilerWrapper {
         cmd.add(outputFile.getPath());
       }
 
-      cmd.add("-o");
-      cmd.add(outputFile.getPath());
+      if (!piped) {
+        // when piped, the preprocessed code is written on the standard output
+        cmd.add("-o");
+        cmd.add(outputFile.getPath());
+      }
 
       cmd.add(inputFile.getPath());
 
       // save full command for debug and log purposes
-      final StringBuilder sb = new StringBuilder();
-      for (final String str : cmd) {
-        sb.append(str);
-        sb.append(" ");
-      }
-      fullCmd = sb.toString();
+      fullCmd = ExecutionHelper.toCommandLine(cmd);
+      return cmd;
+    }
 
-      // execute command
-      ExecutionResult result;
-      try {
-        result = ExecutionHelper.exec(getDescription(), cmd);
-      } catch (final IOException e) {
-        errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR, this.cmd);
-        return false;
-      }
+    protected boolean checkResult(final ExecutionResult result) {
       if (dependencyOutputFile != null && dependencyOutputFile.exists()) {
-        processDependencyOutputFile(dependencyOutputFile, context);
+        processDependencyOutputFile(dependencyOutputFile, outputFile,
+            context);
       }
 
       if (result.getExitValue() != 0) {
@@ -182,7 +214,12 @@ public class GccCompilerWrapper implements CompilerWrapper {
     }
   }
 
-  protected class GccCompilerCommand extends AbstractCompilerCommand {
+  protected class GccCompilerCommand extends AbstractCompilerCommand
+      implements
+        PipeableCompilerCommand,
+        RemoteCompilerCommand {
+
+    protected CompileWorkerPool.Worker remoteWorker;
 
     protected GccCompilerCommand(final Map<Object, Object> context) {
       super(CompilerContextHelper.getCompilerCommand(context), context);
@@ -198,8 +235,89 @@ public class GccCompilerWrapper implements CompilerWrapper {
       return readDeps(dependencyOutputFile, outputFile, context);
     }
 
+    public boolean isRemotable() {
+      // the input file and the included files are self-contained only if they
+      // have been preprocessed, i.e. if every dependency is managed.
+      return dependencyManaged && dependencyOutputFile == null;
+    }
+
+    public void setRemoteWorker(final CompileWorkerPool.Worker worker) {
+      this.remoteWorker = worker;
+    }
+
     public boolean exec() throws ADLException, InterruptedException {
+      // the object cache can be used only if every dependency is known.
+      final ObjectCache cache = ObjectCache.getObjectCache(context);
+      String cacheKey = null;
+      if (cache != null && (dependencyManaged || dependencyOutputFile != null)) {
+        cacheKey = getObjectCacheKey(cache, this, inputFile, includeFile,
+            dependencies, context);
+        if (cacheKey != null
+            && restoreFromObjectCache(cache, cacheKey, getDescription(),
+                outputFile, dependencyOutputFile, context)) return true;
+      }
+
+      final List<String> cmd = getCommandLine(false);
+
+      // execute command
+      ExecutionResult result = null;
+      if (remoteWorker != null && isRemotable()) {
+        // the input file is compiled locally only if the worker can't compile
+        // it. Errors reported by the worker already refer to local files.
+        result = execRemote(remoteWorker);
+      }
+      if (result == null) {
+        try {
+          result = ExecutionHelper.exec(getDescription(), cmd);
+        } catch (final IOException e) {
+          errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR, this.cmd);
+          return false;
+        }
+      }
+      if (!checkResult(result)) return false;
+
+      if (cacheKey != null)
+        storeInObjectCache(cache, cacheKey, outputFile, result.getOutput(),
+            dependencyOutputFile, context);
+      return true;
+    }
+
+    /**
+     * Compiles the input file with the given worker.
+     * 
+     * @return the result of the compilation, or <code>null</code> if the input
+     *         file must be compiled locally (i.e. if the worker can't be
+     *         reached or rejects the compilation).
+     */
+    protected ExecutionResult execRemote(
+        final CompileWorkerPool.Worker worker) {
+      // include directories are not sent since the input file is preprocessed.
+      final List<String> args = new ArrayList<String>(flags.size());
+      for (final String flag : flags) {
+        if (!flag.startsWith("-I")) args.add(flag);
+      }
+      for (final String def : defines) {
+        args.add("-D" + def);
+      }
+      try {
+        return worker.compile(getDescription(), this.cmd, args, inputFile,
+            includeFile, outputFile);
+      } catch (final IOException e) {
+        worker.disable(e);
+        return null;
+      }
+    }
+
+    public StreamedProcess startPipedExec() throws IOException {
+      return ExecutionHelper.start(getDescription(), getCommandLine(true));
+    }
 
+    public boolean endPipedExec(final StreamedProcess process)
+        throws InterruptedException {
+      return checkResult(process.waitFor());
+    }
+
+    protected List<String> getCommandLine(final boolean piped) {
       final List<String> cmd = new ArrayList<String>();
       cmd.add(this.cmd);
       cmd.add("-c");
@@ -229,26 +347,24 @@ public class GccCompilerWrapper implements CompilerWrapper {
       cmd.add("-o");
       cmd.add(outputFile.getPath());
 
-      cmd.add(inputFile.getPath());
+      if (piped) {
+        // when piped, the code to compile is read on the standard input
+        cmd.add("-x");
+        cmd.add("c");
+        cmd.add("-");
+      } else {
+        cmd.add(inputFile.getPath());
+      }
 
       // save full command for debug and log purposes
-      final StringBuilder sb = new StringBuilder();
-      for (final String str : cmd) {
-        sb.append(str);
-        sb.append(" ");
-      }
-      fullCmd = sb.toString();
+      fullCmd = ExecutionHelper.toCommandLine(cmd);
+      return cmd;
+    }
 
-      // execute command
-      ExecutionResult result;
-      try {
-        result = ExecutionHelper.exec(getDescription(), cmd);
-      } catch (final IOException e) {
-        errorManagerItf.logError(CompilerErrors.EXECUTION_ERROR, this.cmd);
-        return false;
-      }
+    protected boolean checkResult(final ExecutionResult result) {
       if (dependencyOutputFile != null && dependencyOutputFile.exists()) {
-        processDependencyOutputFile(dependencyOutputFile, context);
+        processDependencyOutputFile(dependencyOutputFile, outputFile,
+            context);
       }
 
       if (result.getExitValue() != 0) {
@@ -295,6 +411,16 @@ public class GccCompilerWrapper implements CompilerWrapper {
     }
 
     public boolean exec() throws ADLException, InterruptedException {
+      // the object cache can be used only if every dependency is known.
+      final ObjectCache cache = ObjectCache.getObjectCache(context);
+      String cacheKey = null;
+      if (cache != null && dependencyManaged) {
+        cacheKey = getObjectCacheKey(cache, this, inputFile, includeFile,
+            dependencies, context);
+        if (cacheKey != null
+            && restoreFromObjectCache(cache, cacheKey, getDescription(),
+                outputFile, null, context)) return true;
+      }
 
       final List<String> cmd = new ArrayList<String>();
       cmd.add(this.cmd);
@@ -319,12 +445,7 @@ public class GccCompilerWrapper implements CompilerWrapper {
       cmd.add(inputFile.getPath());
 
       // save full command for debug and log purposes
-      final StringBuilder sb = new StringBuilder();
-      for (final String str : cmd) {
-        sb.append(str);
-        sb.append(" ");
-      }
-      fullCmd = sb.toString();
+      fullCmd = ExecutionHelper.toCommandLine(cmd);
 
       // execute command
       ExecutionResult result;
@@ -345,6 +466,10 @@ public class GccCompilerWrapper implements CompilerWrapper {
         errorManagerItf.logWarning(CompilerErrors.COMPILER_WARNING,
             outputFile.getPath(), result.getOutput());
       }
+
+      if (cacheKey != null)
+        storeInObjectCache(cache, cacheKey, outputFile, result.getOutput(),
+            null, context);
       return true;
     }
 
@@ -406,12 +531,7 @@ public class GccCompilerWrapper implements CompilerWrapper {
       cmd.addAll(flags);
 
       // save full command for debug and log purposes
-      final StringBuilder sb = new StringBuilder();
-      for (final String str : cmd) {
-        sb.append(str);
-        sb.append(" ");
-      }
-      fullCmd = sb.toString();
+      fullCmd = ExecutionHelper.toCommandLine(cmd);
 
       // execute command
       ExecutionResult result;
@@ -448,50 +568,163 @@ public class GccCompilerWrapper implements CompilerWrapper {
     }
   }
 
-  protected void processDependencyOutputFile(final File dependencyOutputFile,
-      final Map<Object, Object> context) throws ADLException {
+  /**
+   * Returns the key of the given command in the object cache, or
+   * <code>null</code> if one of its input files can't be read.
+   */
+  protected String getObjectCacheKey(final ObjectCache cache,
+      final SignedCompilationCommand command, final File inputFile,
+      final Collection<File> includeFiles, final Collection<File> dependencies,
+      final Map<Object, Object> context) {
+    final List<File> inputFiles = new ArrayList<File>();
+    inputFiles.add(inputFile);
+    inputFiles.addAll(includeFiles);
+    if (dependencies != null) inputFiles.addAll(dependencies);
     try {
-      final String tempDir = outputFileLocatorItf.getCSourceTemporaryOutputDir(
-          context).getCanonicalPath();
-
-      final Map<File, List<File>> deps = DependencyHelper
-          .parseDepFile(dependencyOutputFile);
-      final Map<File, List<File>> newDeps = new HashMap<File, List<File>>(
-          deps.size());
-      for (final Map.Entry<File, List<File>> dep : deps.entrySet()) {
-        final File target = new File(dep.getKey().getCanonicalPath()
-            .replace(tempDir, TEMP_DIR));
-        final List<File> depFiles = new ArrayList<File>(dep.getValue().size());
-        for (final File depFile : dep.getValue()) {
-          depFiles.add(new File(depFile.getCanonicalPath().replace(tempDir,
-              TEMP_DIR)));
-        }
-        newDeps.put(target, depFiles);
-      }
-      DependencyHelper.writeDepFile(dependencyOutputFile, newDeps);
-    } catch (final IOException ioe) {
-      if (depLogger.isLoggable(Level.WARNING))
-        depLogger
-            .warning("Error while processing dependency file '"
-                + dependencyOutputFile
-                + "' remove it to force future compilation.");
+      return cache.getKey(command.getCommand(), command.getSignature(),
+          inputFiles, context);
+    } catch (final IOException e) {
       if (depLogger.isLoggable(Level.FINE))
-        depLogger.log(Level.FINE, "Error while processing dependency file '"
-            + dependencyOutputFile + ":", ioe);
+        depLogger.log(Level.FINE, "Can't compute object cache key of '"
+            + command.getDescription() + "'", e);
+      return null;
+    }
+  }
+
+  /**
+   * Restores the output file (and the dependency file) of a command from the
+   * object cache. If the cached command produced warnings, they are reported
+   * again. The cache is not used if the recompilation is forced.
+   * 
+   * @return <code>true</code> if the output file has been restored.
+   */
+  protected boolean restoreFromObjectCache(final ObjectCache cache,
+      final String key, final String description, final File outputFile,
+      final File dependencyOutputFile, final Map<Object, Object> context) {
+    if (ForceRegenContextHelper.getForceRegen(context)) return false;
+    final ObjectCache.Entry entry = cache.lookup(key, context);
+    if (entry == null) return false;
+
+    try {
+      AtomicFileHelper.copy(entry.objectFile, outputFile);
+      if (dependencyOutputFile != null) {
+        final Map<File, List<File>> deps = new HashMap<File, List<File>>();
+        deps.put(outputFile, entry.dependencies);
+        DependencyHelper.writeDepFile(dependencyOutputFile, deps);
+        processDependencyOutputFile(dependencyOutputFile, outputFile, context);
+      }
+    } catch (final IOException e) {
+      if (ioLogger.isLoggable(Level.FINE))
+        ioLogger.log(Level.FINE, "Can't restore '" + outputFile
+            + "' from object cache", e);
+      return false;
+    }
+
+    if (ioLogger.isLoggable(Level.INFO))
+      ioLogger.info(description + " (cached)");
+    if (entry.output != null) {
+      errorManagerItf.logWarning(CompilerErrors.COMPILER_WARNING,
+          outputFile.getPath(), entry.output);
+    }
+    return true;
+  }
+
+  /**
+   * Stores the output file of a command that has been successfully executed in
+   * the object cache, with the dependencies listed in its dependency file.
+   */
+  protected void storeInObjectCache(final ObjectCache cache, final String key,
+      final File outputFile, final String output,
+      final File dependencyOutputFile, final Map<Object, Object> context) {
+    final Collection<File> deps;
+    if (dependencyOutputFile != null) {
+      // the dependency file has just been written by the command.
+      FileStatCache.getFileStatCache(context).invalidate(dependencyOutputFile);
+      deps = readDeps(dependencyOutputFile, outputFile, context);
+      if (deps == null) return;
+    } else {
+      deps = Collections.<File> emptyList();
+    }
+    cache.store(key, outputFile, output, deps, context);
+  }
+
+  /**
+   * Records the dependencies listed in the given dependency file, as produced
+   * by GCC, in the {@link DependencyDatabase} of the given context. Paths in the
+   * temporary output directory are recorded relatively to {@link #TEMP_DIR}.
+   */
+  protected void processDependencyOutputFile(final File dependencyOutputFile,
+      final File outputFile, final Map<Object, Object> context) {
+    final DependencyDatabase db = DependencyDatabase
+        .getDependencyDatabase(context);
+    final Collection<File> depFiles = selectRule(
+        DependencyHelper.parseDepFile(dependencyOutputFile, context),
+        dependencyOutputFile, outputFile);
+    if (depFiles == null) {
+      db.removeDependencies(outputFile.getAbsolutePath());
+      return;
+    }
+
+    final Collection<String> tempDirs = getTemporaryOutputDirPaths(context);
+    final List<String> deps = new ArrayList<String>(depFiles.size());
+    for (final File depFile : depFiles) {
+      deps.add(toTempDirPath(depFile.getPath(), tempDirs));
     }
+    db.setDependencies(outputFile.getAbsolutePath(), deps);
   }
 
   private Collection<File> readDeps(final File dependencyOutputFile,
       final File outputFile, final Map<Object, Object> context) {
-    if (!dependencyOutputFile.exists()) {
+    final FileStatCache fileStats = FileStatCache.getFileStatCache(context);
+    if (!fileStats.exists(dependencyOutputFile)) {
       if (depLogger.isLoggable(Level.FINE))
         depLogger.fine("Dependency file '" + dependencyOutputFile
             + "' does not exist, force compilation.");
       return null;
     }
 
-    final Map<File, List<File>> depMap = DependencyHelper
-        .parseDepFile(dependencyOutputFile);
+    final DependencyDatabase db = DependencyDatabase
+        .getDependencyDatabase(context);
+    List<String> deps = db.getDependencies(outputFile.getAbsolutePath());
+    if (deps == null) {
+      // dependencies not recorded yet, read the dependency file.
+      final Collection<File> depFiles = selectRule(
+          DependencyHelper.parseDepFile(dependencyOutputFile, context),
+          dependencyOutputFile, outputFile);
+      if (depFiles == null) return null;
+      // record them as processDependencyOutputFile does, so that they are
+      // mapped back below.
+      final Collection<String> tempDirs = getTemporaryOutputDirPaths(context);
+      deps = new ArrayList<String>(depFiles.size());
+      for (final File depFile : depFiles) {
+        deps.add(toTempDirPath(depFile.getPath(), tempDirs));
+      }
+      db.setDependencies(outputFile.getAbsolutePath(), deps);
+    }
+
+    // replace $TEMP_DIR occurrences
+    final File tempDir = outputFileLocatorItf
+        .getCSourceTemporaryOutputDir(context);
+    final List<File> depFiles = new ArrayList<File>(deps.size());
+    for (final String dep : deps) {
+      final File depFile;
+      if (tempDir != null && dep.startsWith(TEMP_DIR))
+        depFile = new File(tempDir.getPath()
+            + dep.substring(TEMP_DIR.length()));
+      else
+        depFile = new File(dep);
+
+      if (fileStats.exists(depFile)) {
+        depFiles.add(depFile);
+      } else if (depLogger.isLoggable(Level.FINE)) {
+        depLogger.fine("Missing input file '" + depFile + "'.");
+      }
+    }
+    return depFiles;
+  }
+
+  private Collection<File> selectRule(final Map<File, List<File>> depMap,
+      final File dependencyOutputFile, final File outputFile) {
     if (depMap == null) {
       if (depLogger.isLoggable(Level.FINE))
         depLogger.fine("Error in dependency file of '" + outputFile
@@ -499,43 +732,19 @@ public class GccCompilerWrapper implements CompilerWrapper {
       return null;
     }
 
-    // process depMap to replace $TEMP_DIR occurrences
-    final Map<File, List<File>> filteredDepMap;
-    final String tempDir = outputFileLocatorItf.getCSourceTemporaryOutputDir(
-        context).getPath();
-    if (tempDir != null) {
-      filteredDepMap = new HashMap<File, List<File>>(depMap.size());
-      for (final Map.Entry<File, List<File>> entry : depMap.entrySet()) {
-        File key = entry.getKey();
-        if (key.getPath().contains(TEMP_DIR)) {
-          key = new File(key.getPath().replace(TEMP_DIR, tempDir));
-        }
-        final List<File> value = new ArrayList<File>(entry.getValue().size());
-        for (File dep : entry.getValue()) {
-          if (dep.getPath().contains(TEMP_DIR)) {
-            dep = new File(dep.getPath().replace(TEMP_DIR, tempDir));
-          }
-          value.add(dep);
-        }
-        filteredDepMap.put(key, value);
-      }
-    } else {
-      filteredDepMap = depMap;
-    }
-
-    if (filteredDepMap.size() == 1) {
+    if (depMap.size() == 1) {
       // Only one rule, assume is it the right one
-      return filteredDepMap.values().iterator().next();
+      return depMap.values().iterator().next();
     }
 
-    Collection<File> depFiles = filteredDepMap.get(outputFile);
+    Collection<File> depFiles = depMap.get(outputFile);
     if (depFiles == null) {
       // try with absolute path
-      depFiles = filteredDepMap.get(outputFile.getAbsoluteFile());
+      depFiles = depMap.get(outputFile.getAbsoluteFile());
 
       if (depFiles == null) {
         // try with single file name
-        depFiles = filteredDepMap.get(new File(outputFile.getName()));
+        depFiles = depMap.get(new File(outputFile.getName()));
 
         if (depFiles == null) {
           // if depFiles is null (i.e. the dependencyFile is invalid),
@@ -551,4 +760,40 @@ public class GccCompilerWrapper implements CompilerWrapper {
 
     return depFiles;
   }
+
+  /**
+   * Returns the paths under which the temporary output directory may appear in
+   * dependency files. The canonical path is computed once per dependency file
+   * rather than once per dependency.
+   */
+  private Collection<String> getTemporaryOutputDirPaths(
+      final Map<Object, Object> context) {
+    final Collection<String> paths = new LinkedHashSet<String>();
+    final File tempDir = outputFileLocatorItf
+        .getCSourceTemporaryOutputDir(context);
+    if (tempDir == null) return paths;
+    paths.add(tempDir.getPath());
+    paths.add(tempDir.getAbsolutePath());
+    try {
+      paths.add(tempDir.getCanonicalPath());
+    } catch (final IOException e) {
+      if (depLogger.isLoggable(Level.FINE))
+        depLogger.log(Level.FINE, "Can't compute canonical path of '"
+            + tempDir + "'", e);
+    }
+    return paths;
+  }
+
+  private static String toTempDirPath(final String path,
+      final Collection<String> tempDirs) {
+    for (final String tempDir : tempDirs) {
+      if (path.startsWith(tempDir)
+          && path.length() > tempDir.length()
+          && (path.charAt(tempDir.length()) == File.separatorChar || path
+              .charAt(tempDir.length()) == '/')) {
+        return TEMP_DIR + path.substring(tempDir.length());
+      }
+    }
+    return path;
+  }
 }
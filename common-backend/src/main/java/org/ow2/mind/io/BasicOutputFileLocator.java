@@ -26,7 +26,12 @@ import static org.ow2.mind.PathHelper.isRelative;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.error.GenericErrors;
@@ -34,16 +39,23 @@ import org.ow2.mind.ForceRegenContextHelper;
 
 public class BasicOutputFileLocator implements OutputFileLocator {
 
-  public static final String OUTPUT_DIR_CONTEXT_KEY           = "outputdir";
-  public static final String DEFAULT_OUTPUT_DIR               = "build";
-  public static final String TEMPORARY_OUTPUT_DIR_CONTEXT_KEY = "temporaryOutputDir";
+  public static final String  OUTPUT_DIR_CONTEXT_KEY           = "outputdir";
+  public static final String  DEFAULT_OUTPUT_DIR               = "build";
+  public static final String  TEMPORARY_OUTPUT_DIR_CONTEXT_KEY = "temporaryOutputDir";
+
+  /**
+   * Context key of the set of the output directories that are known to exist.
+   * The existence of these directories is not checked again, so that output
+   * file lookups do not cost any file system access.
+   */
+  private static final String VERIFIED_DIRS_CONTEXT_KEY        = "verified-output-dirs";
 
   public File getCSourceOutputFile(final String path,
       final Map<Object, Object> context) {
     if (isRelative(path))
       throw new IllegalArgumentException("path must be absolute");
     final File outDir = getOutputDir(context);
-    return mkdirs(new File(outDir, path));
+    return mkdirs(new File(outDir, path), context);
   }
 
   public File getCSourceOutputDir(final Map<Object, Object> context) {
@@ -66,7 +78,7 @@ public class BasicOutputFileLocator implements OutputFileLocator {
     if (isRelative(path))
       throw new IllegalArgumentException("path must be absolute");
     final File outDir = getOutputDir(context);
-    return mkdirs(new File(outDir, path));
+    return mkdirs(new File(outDir, path), context);
   }
 
   public File getCExecutableOutputFile(String path,
@@ -79,7 +91,7 @@ public class BasicOutputFileLocator implements OutputFileLocator {
       path = path + ".exe";
     }
 
-    return mkdirs(new File(outDir, path));
+    return mkdirs(new File(outDir, path), context);
   }
 
   public File getCCompiledOutputDir(final Map<Object, Object> context) {
@@ -102,7 +114,7 @@ public class BasicOutputFileLocator implements OutputFileLocator {
     if (isRelative(path))
       throw new IllegalArgumentException("path must be absolute");
     final File outDir = getOutputDir(context);
-    return mkdirs(new File(outDir, path));
+    return mkdirs(new File(outDir, path), context);
   }
 
   protected File getTemporaryOutputFile(final String path,
@@ -110,19 +122,50 @@ public class BasicOutputFileLocator implements OutputFileLocator {
     if (isRelative(path))
       throw new IllegalArgumentException("path must be absolute");
     final File outDir = getTemporaryOutputDir(context);
-    return mkdirs(new File(outDir, path));
+    return mkdirs(new File(outDir, path), context);
   }
 
-  protected File mkdirs(final File outputFile) {
-    final File parent = outputFile.getParentFile();
-    if (parent.exists()) {
-      if (!parent.isDirectory()) {
+  /**
+   * Creates the given output directories, if they do not exist yet. The
+   * directories are created in a single pass, parents first, and are recorded
+   * in the given context as existing, so that later output file lookups in
+   * these directories do not access the file system.
+   * 
+   * @param dirs the directories to create.
+   * @param context the context.
+   */
+  public void createOutputDirs(final Collection<File> dirs,
+      final Map<Object, Object> context) {
+    final Set<File> verifiedDirs = getVerifiedDirs(context);
+    // sorted set, so that parent directories are created before their children
+    for (final File dir : new TreeSet<File>(dirs)) {
+      if (verifiedDirs.contains(dir)) continue;
+      if (!createDir(dir)) {
         throw new CompilerError(GenericErrors.GENERIC_ERROR,
-            "IO Error: cannot create directory \"" + parent.getPath()
+            "IO Error: cannot create directory \"" + dir.getPath()
                 + "\". File exists but is not a directory.");
       }
-    } else {
-      parent.mkdirs();
+      verifiedDirs.add(dir);
+    }
+  }
+
+  protected File mkdirs(final File outputFile,
+      final Map<Object, Object> context) {
+    final File parent = outputFile.getParentFile();
+    final Set<File> verifiedDirs = getVerifiedDirs(context);
+    if (verifiedDirs.contains(parent)) return outputFile;
+
+    mkdirs(outputFile);
+    verifiedDirs.add(parent);
+    return outputFile;
+  }
+
+  protected File mkdirs(final File outputFile) {
+    final File parent = outputFile.getParentFile();
+    if (!createDir(parent)) {
+      throw new CompilerError(GenericErrors.GENERIC_ERROR,
+          "IO Error: cannot create directory \"" + parent.getPath()
+              + "\". File exists but is not a directory.");
     }
     return outputFile;
   }
@@ -130,65 +173,95 @@ public class BasicOutputFileLocator implements OutputFileLocator {
   protected File getOutputDir(final Map<Object, Object> context) {
     File outDir = (File) context.get(OUTPUT_DIR_CONTEXT_KEY);
     if (outDir == null) outDir = new File(DEFAULT_OUTPUT_DIR);
-    if (outDir.exists()) {
-      if (!outDir.isDirectory()) {
-        throw new CompilerError(IOErrors.INVALID_OUTPUT_DIR, outDir);
-      }
-    } else {
-      outDir.mkdirs();
+    final Set<File> verifiedDirs = getVerifiedDirs(context);
+    if (verifiedDirs.contains(outDir)) return outDir;
+
+    if (!createDir(outDir)) {
+      throw new CompilerError(IOErrors.INVALID_OUTPUT_DIR, outDir);
     }
+    verifiedDirs.add(outDir);
     return outDir;
   }
 
-  protected File getTemporaryOutputDir(final Map<Object, Object> context) {
-    File tempOutDir = (File) context.get(TEMPORARY_OUTPUT_DIR_CONTEXT_KEY);
-    if (tempOutDir == null) {
-      for (int i = 0; i < 10; i++) {
-        File tempFile;
-        try {
-          tempFile = File.createTempFile("mindc", null);
-        } catch (final IOException e) {
-          // fail to create temp file, retry.
-          continue;
-        }
-        if (!tempFile.delete()) {
-          // fail to delete temp file, retry
-          continue;
-        }
-        if (!tempFile.mkdir()) {
-          // fail to create directory, retry
-          continue;
-        }
+  /**
+   * Creates the given directory if it does not exist.
+   * 
+   * @return <code>false</code> if the given file exists but is not a
+   *         directory.
+   */
+  private static boolean createDir(final File dir) {
+    if (dir.exists()) return dir.isDirectory();
+    // mkdirs may fail if the directory is created concurrently.
+    return dir.mkdirs() || dir.isDirectory();
+  }
 
-        // succesfully create temp directory.
-        tempOutDir = tempFile;
-        break;
+  @SuppressWarnings("unchecked")
+  private static Set<File> getVerifiedDirs(final Map<Object, Object> context) {
+    synchronized (context) {
+      Set<File> verifiedDirs = (Set<File>) context
+          .get(VERIFIED_DIRS_CONTEXT_KEY);
+      if (verifiedDirs == null) {
+        verifiedDirs = Collections
+            .newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+        context.put(VERIFIED_DIRS_CONTEXT_KEY, verifiedDirs);
       }
+      return verifiedDirs;
+    }
+  }
 
+  protected File getTemporaryOutputDir(final Map<Object, Object> context) {
+    // the temporary directory is created lazily and may be requested by
+    // concurrent threads, so its creation is protected by the context.
+    synchronized (context) {
+      File tempOutDir = (File) context.get(TEMPORARY_OUTPUT_DIR_CONTEXT_KEY);
       if (tempOutDir == null) {
-        throw new CompilerError(GenericErrors.GENERIC_ERROR,
-            "IO Error: fail to create temporary directory.");
-      }
-      context.put(TEMPORARY_OUTPUT_DIR_CONTEXT_KEY, tempOutDir);
-
-      // Add a shutdown hook to delete temporary directory.
-      final File temporaryOutputDir = tempOutDir;
-      Runtime.getRuntime().addShutdownHook(new Thread() {
-        @Override
-        public void run() {
-          delete(temporaryOutputDir);
+        for (int i = 0; i < 10; i++) {
+          File tempFile;
+          try {
+            tempFile = File.createTempFile("mindc", null);
+          } catch (final IOException e) {
+            // fail to create temp file, retry.
+            continue;
+          }
+          if (!tempFile.delete()) {
+            // fail to delete temp file, retry
+            continue;
+          }
+          if (!tempFile.mkdir()) {
+            // fail to create directory, retry
+            continue;
+          }
+
+          // succesfully create temp directory.
+          tempOutDir = tempFile;
+          break;
         }
 
-        public void delete(final File f) {
-          if (f.isDirectory()) {
-            for (final File subFile : f.listFiles())
-              delete(subFile);
-          }
-          f.delete();
+        if (tempOutDir == null) {
+          throw new CompilerError(GenericErrors.GENERIC_ERROR,
+              "IO Error: fail to create temporary directory.");
         }
-      });
+        context.put(TEMPORARY_OUTPUT_DIR_CONTEXT_KEY, tempOutDir);
 
+        // Add a shutdown hook to delete temporary directory.
+        final File temporaryOutputDir = tempOutDir;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          @Override
+          public void run() {
+            delete(temporaryOutputDir);
+          }
+
+          public void delete(final File f) {
+            if (f.isDirectory()) {
+              for (final File subFile : f.listFiles())
+                delete(subFile);
+            }
+            f.delete();
+          }
+        });
+
+      }
+      return tempOutDir;
     }
-    return tempOutDir;
   }
 }
@@ -23,6 +23,7 @@
 package org.ow2.mind.io;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Map;
 
 public interface OutputFileLocator {
@@ -46,4 +47,6 @@ public interface OutputFileLocator {
   File getCCompiledTemporaryOutputDir(Map<Object, Object> context);
 
   File getMetadataOutputFile(String path, Map<Object, Object> context);
+
+  void createOutputDirs(Collection<File> dirs, Map<Object, Object> context);
 }
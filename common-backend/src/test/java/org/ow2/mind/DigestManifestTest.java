@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DigestManifestTest {
+
+  File testDir;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    testDir = new File("target/test/digest-manifest");
+    deleteAll(testDir);
+    testDir.mkdirs();
+  }
+
+  @Test(groups = {"functional"})
+  public void testRacyFile() throws Exception {
+    final File file = writeFile("racy.c", "int a;");
+    final DigestManifest manifest = new DigestManifest(testDir);
+
+    // the file has just been written, so it may be modified again in the same
+    // timestamp granule without its modification time being changed.
+    manifest.setDigest(file, "digest");
+    assertNull(manifest.getDigest(file));
+  }
+
+  @Test(groups = {"functional"})
+  public void testTrustedFile() throws Exception {
+    final File file = writeFile("old.c", "int a;");
+    file.setLastModified(System.currentTimeMillis() - 10000);
+    final DigestManifest manifest = new DigestManifest(testDir);
+
+    manifest.setDigest(file, "digest");
+    assertEquals(manifest.getDigest(file), "digest");
+
+    // a modified file is not trusted anymore.
+    writeFile("old.c", "int ab;");
+    assertNull(manifest.getDigest(file));
+    // even if it is set back to its previous state.
+    writeFile("old.c", "int a;");
+    file.setLastModified(System.currentTimeMillis() - 20000);
+    assertNull(manifest.getDigest(file));
+  }
+
+  @Test(groups = {"functional"})
+  public void testSaveAndLoad() throws Exception {
+    final File file = writeFile("saved.c", "int a;");
+    file.setLastModified(System.currentTimeMillis() - 10000);
+    final DigestManifest manifest = new DigestManifest(testDir);
+    manifest.setDigest(file, "digest");
+    manifest.save();
+    assertTrue(new File(testDir, SourceFileWriter.DIGEST_MANIFEST_FILE_NAME)
+        .exists());
+
+    assertEquals(new DigestManifest(testDir).getDigest(file), "digest");
+  }
+
+  @Test(groups = {"functional"})
+  public void testWriteToFile() throws Exception {
+    final Map<Object, Object> context = new HashMap<Object, Object>();
+    final File file = new File(testDir, "gen.c");
+    assertTrue(SourceFileWriter.writeToFile(file, "int a;", context));
+    assertEquals(readFile(file), "int a;");
+
+    // same content: the file is not rewritten.
+    final long lastModified = System.currentTimeMillis() - 10000;
+    file.setLastModified(lastModified);
+    assertFalse(SourceFileWriter.writeToFile(file, "int a;", context));
+    assertEquals(file.lastModified() / 1000, lastModified / 1000);
+
+    // new content: the file is rewritten.
+    assertTrue(SourceFileWriter.writeToFile(file, "int b;", context));
+    assertEquals(readFile(file), "int b;");
+
+    // the file is modified by someone else: it is rewritten even if the
+    // content to write is the one that has been written previously.
+    writeFile("gen.c", "int c;");
+    assertTrue(SourceFileWriter.writeToFile(file, "int b;", context));
+    assertEquals(readFile(file), "int b;");
+
+    // the manifest is saved explicitly at the end of the compilation.
+    final File manifestFile = new File(testDir,
+        SourceFileWriter.DIGEST_MANIFEST_FILE_NAME);
+    assertFalse(manifestFile.exists());
+    SourceFileWriter.saveDigestManifests(context);
+    assertTrue(manifestFile.exists());
+
+    // no temporary file is left.
+    for (final String name : testDir.list()) {
+      assertFalse(name.endsWith(".tmp"), name);
+    }
+  }
+
+  @Test(groups = {"functional"})
+  public void testWriteToFileWithoutContext() throws Exception {
+    final File file = new File(testDir, "gen.c");
+    assertTrue(SourceFileWriter.writeToFile(file, "int a;"));
+    assertEquals(readFile(file), "int a;");
+
+    final long lastModified = System.currentTimeMillis() - 10000;
+    file.setLastModified(lastModified);
+    assertFalse(SourceFileWriter.writeToFile(file, "int a;"));
+    assertEquals(file.lastModified() / 1000, lastModified / 1000);
+
+    assertTrue(SourceFileWriter.writeToFile(file, "int b;"));
+    assertEquals(readFile(file), "int b;");
+    // without context, no manifest is recorded.
+    assertFalse(new File(testDir, SourceFileWriter.DIGEST_MANIFEST_FILE_NAME)
+        .exists());
+  }
+
+  File writeFile(final String name, final String content) throws IOException {
+    final File f = new File(testDir, name);
+    final FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  String readFile(final File f) throws IOException {
+    final byte[] content = new byte[(int) f.length()];
+    final FileInputStream in = new FileInputStream(f);
+    try {
+      int off = 0;
+      while (off < content.length) {
+        final int n = in.read(content, off, content.length - off);
+        if (n < 0) break;
+        off += n;
+      }
+    } finally {
+      in.close();
+    }
+    return new String(content, "UTF-8");
+  }
+
+  void deleteAll(final File f) {
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteAll(child);
+      }
+    }
+    f.delete();
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ow2.mind.compilation.BasicCompilationCommandExecutor.CommandInfo;
+import org.ow2.mind.compilation.ConcurrentCompilationCommandExecutor.Node;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CommandDurationHistoryTest {
+
+  File outputDir;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    outputDir = new File("target/test/duration-history");
+    outputDir.mkdirs();
+    new File(outputDir, CommandDurationHistory.HISTORY_FILE_NAME).delete();
+  }
+
+  @Test(groups = {"functional"})
+  public void testSaveAndLoad() {
+    final CommandDurationHistory history = CommandDurationHistory
+        .load(outputDir);
+    assertEquals(history.getEstimatedDuration("gcc foo.c"),
+        CommandDurationHistory.DEFAULT_DURATION);
+    history.record("gcc foo.c", 1200);
+    history.record("gcc bar.c", 30);
+    history.save();
+    assertTrue(new File(outputDir, CommandDurationHistory.HISTORY_FILE_NAME)
+        .isFile());
+
+    final CommandDurationHistory loaded = CommandDurationHistory
+        .load(outputDir);
+    assertEquals(loaded.getEstimatedDuration("gcc foo.c"), 1200);
+    assertEquals(loaded.getEstimatedDuration("gcc bar.c"), 30);
+    assertEquals(loaded.getEstimatedDuration("gcc baz.c"),
+        CommandDurationHistory.DEFAULT_DURATION);
+  }
+
+  @Test(groups = {"functional"})
+  public void testRecordSmoothsDuration() {
+    final CommandDurationHistory history = CommandDurationHistory
+        .load(outputDir);
+    history.record("gcc foo.c", 1000);
+    history.record("gcc foo.c", 200);
+    assertEquals(history.getEstimatedDuration("gcc foo.c"), 600);
+    history.save();
+    assertEquals(CommandDurationHistory.load(outputDir).getEstimatedDuration(
+        "gcc foo.c"), 600);
+  }
+
+  @Test(groups = {"functional"})
+  public void testUnmodifiedHistoryIsNotWritten() {
+    CommandDurationHistory.load(outputDir).save();
+    assertFalse(new File(outputDir, CommandDurationHistory.HISTORY_FILE_NAME)
+        .exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testOnlyCurrentBuildIsSaved() {
+    final CommandDurationHistory previous = CommandDurationHistory
+        .load(outputDir);
+    previous.record("gcc old.c", 1200);
+    previous.record("gcc foo.c", 1000);
+    previous.save();
+
+    // "gcc old.c" is not part of the next build.
+    final CommandDurationHistory history = CommandDurationHistory
+        .load(outputDir);
+    history.getEstimatedDuration("gcc foo.c");
+    history.record("gcc bar.c", 30);
+    history.save();
+
+    final CommandDurationHistory loaded = CommandDurationHistory
+        .load(outputDir);
+    assertEquals(loaded.getEstimatedDuration("gcc old.c"),
+        CommandDurationHistory.DEFAULT_DURATION);
+    assertEquals(loaded.getEstimatedDuration("gcc foo.c"), 1000);
+    assertEquals(loaded.getEstimatedDuration("gcc bar.c"), 30);
+  }
+
+  @Test(groups = {"functional"})
+  public void testUnknownVersionIgnored() throws IOException {
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(
+        new File(outputDir, CommandDurationHistory.HISTORY_FILE_NAME)));
+    try {
+      out.writeInt(CommandDurationHistory.VERSION + 1);
+      out.writeInt(1);
+      out.writeUTF("gcc foo.c");
+      out.writeLong(1200);
+    } finally {
+      out.close();
+    }
+    assertEquals(CommandDurationHistory.load(outputDir).getEstimatedDuration(
+        "gcc foo.c"), CommandDurationHistory.DEFAULT_DURATION);
+  }
+
+  @Test(groups = {"functional"})
+  public void testTruncatedFileIgnored() throws IOException {
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(
+        new File(outputDir, CommandDurationHistory.HISTORY_FILE_NAME)));
+    try {
+      out.writeInt(CommandDurationHistory.VERSION);
+      out.writeInt(2);
+      out.writeUTF("gcc foo.c");
+      out.writeLong(1200);
+    } finally {
+      out.close();
+    }
+    // partially read entries must be dropped.
+    assertEquals(CommandDurationHistory.load(outputDir).getEstimatedDuration(
+        "gcc foo.c"), CommandDurationHistory.DEFAULT_DURATION);
+  }
+
+  @Test(groups = {"functional"})
+  public void testCriticalPathOrdering() {
+    final CommandDurationHistory history = CommandDurationHistory
+        .load(outputDir);
+    history.record("cpp long.c", 100);
+    history.record("gcc long.c", 5000);
+    history.record("cpp short.c", 300);
+    history.record("gcc short.c", 200);
+    history.save();
+
+    final CommandDurationHistory loaded = CommandDurationHistory
+        .load(outputDir);
+    final Node cppLong = newNode("cpp long.c");
+    final Node gccLong = newNode("gcc long.c");
+    final Node cppShort = newNode("cpp short.c");
+    final Node gccShort = newNode("gcc short.c");
+    final Node unknown = newNode("cpp unknown.c");
+    cppLong.consumers.add(gccLong);
+    cppShort.consumers.add(gccShort);
+
+    final ConcurrentCompilationCommandExecutor executor = new ConcurrentCompilationCommandExecutor();
+    final List<Node> ready = new ArrayList<Node>();
+    ready.add(unknown);
+    ready.add(cppShort);
+    ready.add(cppLong);
+    for (final Node node : ready) {
+      executor.computePriority(node, loaded);
+    }
+    assertEquals(cppLong.priority, 5100);
+    assertEquals(cppShort.priority, 500);
+    assertEquals(unknown.priority, CommandDurationHistory.DEFAULT_DURATION);
+
+    // the command that starts the longest path must be scheduled first, even
+    // if it is itself shorter than the others.
+    Collections.sort(ready,
+        ConcurrentCompilationCommandExecutor.PRIORITY_COMPARATOR);
+    assertEquals(ready.get(0), cppLong);
+    assertEquals(ready.get(1), cppShort);
+    assertEquals(ready.get(2), unknown);
+  }
+
+  protected Node newNode(final String key) {
+    return new Node(new CommandInfo(null), key);
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ow2.mind.compilation.ExecutionHelper.ExecutionResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CompileWorkerTest {
+
+  static final String TOKEN = "secret";
+
+  File                testDir;
+  CompileWorker       worker;
+  int                 port;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    testDir = new File("target/test/compile-worker");
+    deleteAll(testDir);
+    testDir.mkdirs();
+    worker = new CompileWorker(null, 0, 2, Arrays.asList("gcc"), TOKEN);
+    port = worker.open();
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          worker.serve();
+        } catch (final IOException e) {
+          // ignore
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void tearDown() {
+    worker.stop();
+  }
+
+  @Test(groups = {"functional"})
+  public void testCompile() throws Exception {
+    final File src = writeFile("foo.c", "int foo = FOO_VALUE + BAR_VALUE;\n");
+    final File macros = writeFile("macros.h", "#define FOO_VALUE 1\n");
+    final File obj = new File(testDir, "foo.o");
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+
+    final ExecutionResult result = remote.compile("Compile foo.c", "gcc",
+        Arrays.asList("-O2", "-DBAR_VALUE=2"), src, Arrays.asList(macros),
+        obj);
+    assertNotNull(result);
+    assertEquals(result.getExitValue(), 0, result.getOutput());
+    assertTrue(obj.length() > 0);
+  }
+
+  @Test(groups = {"functional"})
+  public void testCompileError() throws Exception {
+    final File src = writeFile("bar.c", "int bar = UNDEFINED;\n");
+    final File obj = new File(testDir, "bar.o");
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+
+    final ExecutionResult result = remote.compile("Compile bar.c", "gcc",
+        new ArrayList<String>(), src, Collections.<File>emptyList(), obj);
+    assertNotNull(result);
+    assertFalse(result.getExitValue() == 0);
+    assertNotNull(result.getOutput());
+    assertFalse(obj.exists());
+    // the paths of the worker are replaced by the local ones.
+    assertTrue(result.getOutput().contains(src.getPath()), result.getOutput());
+    assertFalse(result.getOutput().contains("mindc-worker"),
+        result.getOutput());
+  }
+
+  @Test(groups = {"functional"})
+  public void testRejectedCompiler() throws Exception {
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+
+    assertNull(remote.compile("Compile foo.c", "/tmp/not-a-compiler",
+        new ArrayList<String>(), src, Collections.<File>emptyList(), obj));
+    assertFalse(obj.exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testRejectedArgument() throws Exception {
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+
+    assertNull(remote.compile("Compile foo.c", "gcc",
+        Arrays.asList("-O2", "-fplugin=/tmp/plugin.so"), src,
+        Collections.<File>emptyList(), obj));
+    assertFalse(obj.exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testAllowedArguments() {
+    for (final String arg : new String[]{"-O2", "-g", "-DFOO=1", "-UBAR",
+        "-Wall", "-Werror", "-std=c99", "-fPIC", "-m32", "-w", "-ansi",
+        "-pedantic-errors"}) {
+      assertTrue(CompileWorkerProtocol.isAllowedArgument(arg), arg);
+    }
+    for (final String arg : new String[]{"-B/tmp", "-wrapper", "-specs=foo",
+        "-Wl,-rpath", "-Wa,-a=foo", "-Wp,-MD,foo", "-fplugin=foo.so",
+        "-fprofile-use=foo", "-o", "-include", "-I/tmp", "@args", "foo.c",
+        "-save-temps"}) {
+      assertFalse(CompileWorkerProtocol.isAllowedArgument(arg), arg);
+    }
+  }
+
+  @Test(groups = {"functional"})
+  public void testWrongToken() throws Exception {
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, "wrong");
+    try {
+      remote.compile("Compile foo.c", "gcc", new ArrayList<String>(), src,
+          Collections.<File>emptyList(), obj);
+      fail("IOException expected");
+    } catch (final IOException e) {
+      // expected
+    }
+    assertFalse(obj.exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testConcurrentRequests() throws Exception {
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+    final int nbRequests = 8;
+    final ExecutionResult[] results = new ExecutionResult[nbRequests];
+    final Thread[] threads = new Thread[nbRequests];
+    for (int i = 0; i < nbRequests; i++) {
+      final int index = i;
+      final File src = writeFile("src" + i + ".c", "int src" + i + ";\n");
+      final File obj = new File(testDir, "src" + i + ".o");
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            results[index] = remote.compile(null, "gcc",
+                new ArrayList<String>(), src, Collections.<File>emptyList(),
+                obj);
+          } catch (final IOException e) {
+            // results[index] stays null
+          }
+        }
+      };
+      threads[i].start();
+    }
+    // the requests are served by the two threads of the worker.
+    for (int i = 0; i < nbRequests; i++) {
+      threads[i].join();
+      assertNotNull(results[i]);
+      assertEquals(results[i].getExitValue(), 0, results[i].getOutput());
+    }
+  }
+
+  @Test(groups = {"functional"})
+  public void testAcquire() throws Exception {
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port + "/1", TOKEN);
+    final List<CompileWorkerPool.Worker> workers = Arrays.asList(remote);
+    final CompileWorkerPool pool = new CompileWorkerPool(workers);
+    pool.setLocalSlots(1);
+    assertEquals(pool.getRemoteSlots(), 1);
+
+    // remotable commands are preferably executed remotely.
+    assertSame(pool.acquire(true), remote);
+    assertNull(pool.acquire(true));
+    pool.release(remote);
+    pool.release(null);
+    // other commands are executed locally.
+    assertNull(pool.acquire(false));
+    pool.release(null);
+
+    // a disabled worker is not used anymore.
+    remote.disable(new IOException("test"));
+    assertNull(pool.acquire(true));
+    pool.release(null);
+  }
+
+  @Test(groups = {"functional"})
+  public void testInvalidWorker() {
+    for (final String spec : new String[]{"localhost", ":4877",
+        "localhost:port", "localhost:4877/0", "localhost:70000"}) {
+      try {
+        CompileWorkerPool.parseWorker(spec, TOKEN);
+        fail("IllegalArgumentException expected for '" + spec + "'");
+      } catch (final IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  File writeFile(final String name, final String content) throws IOException {
+    final File f = new File(testDir, name);
+    final FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  void deleteAll(final File f) {
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteAll(child);
+      }
+    }
+    f.delete();
+  }
+}
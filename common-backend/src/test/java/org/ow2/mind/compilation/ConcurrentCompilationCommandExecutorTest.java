@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.ow2.mind.ForceRegenContextHelper;
+import org.ow2.mind.error.ErrorManagerFactory;
+import org.ow2.mind.io.BasicOutputFileLocator;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ConcurrentCompilationCommandExecutorTest {
+
+  ConcurrentCompilationCommandExecutor executor;
+  Map<Object, Object>                  context;
+  File                                 dir;
+  Set<File>                            createdFiles;
+  List<String>                         executed;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    dir = new File("target/test/concurrent-executor");
+    dir.mkdirs();
+    executor = new ConcurrentCompilationCommandExecutor();
+    executor.errorManagerItf = ErrorManagerFactory.newSimpleErrorManager();
+    context = new HashMap<Object, Object>();
+    context.put(BasicCompilationCommandExecutor.CONCURENT_JOBS_CONTEXT_KEY, 8);
+    context.put(BasicCompilationCommandExecutor.FAIL_FAST_CONTEXT_KEY, false);
+    createdFiles = Collections.synchronizedSet(new HashSet<File>());
+    executed = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testDependencies() throws Exception {
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    final List<File> objects = new ArrayList<File>();
+    for (int i = 0; i < 50; i++) {
+      cmds.add(new Task("cpp" + i, "src" + i + ".c", "src" + i + ".i"));
+      cmds.add(new Task("mpp" + i, "src" + i + ".i", "src" + i + ".mpp"));
+      cmds.add(new Task("gcc" + i, "src" + i + ".mpp", "src" + i + ".o"));
+      objects.add(new File(dir, "src" + i + ".o"));
+    }
+    final Task link = new Task("ld", null, "exec");
+    link.inputFiles.addAll(objects);
+    cmds.add(link);
+
+    assertTrue(executor.exec(cmds, context));
+    assertEquals(executed.size(), cmds.size());
+    assertEquals(executed.get(executed.size() - 1), "ld");
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testFailure() throws Exception {
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    final Task cpp0 = new Task("cpp0", "src0.c", "src0.i");
+    cpp0.fail = true;
+    cmds.add(cpp0);
+    cmds.add(new Task("mpp0", "src0.i", "src0.mpp"));
+    cmds.add(new Task("cpp1", "src1.c", "src1.i"));
+    cmds.add(new Task("mpp1", "src1.i", "src1.mpp"));
+
+    assertFalse(executor.exec(cmds, context));
+    assertFalse(executed.contains("mpp0"));
+    assertTrue(executed.contains("mpp1"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testConcurrentExecution() throws Exception {
+    // each task waits for the others, so they must all run at the same time.
+    final CountDownLatch barrier = new CountDownLatch(4);
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    for (int i = 0; i < 4; i++) {
+      final Task task = new Task("cpp" + i, "src" + i + ".c", "src" + i + ".i");
+      task.barrier = barrier;
+      cmds.add(task);
+    }
+    assertTrue(executor.exec(cmds, context));
+    assertEquals(executed.size(), 4);
+  }
+
+  @Test(groups = {"functional"})
+  public void testWorkStealing() throws Exception {
+    // the consumers of "gen.i" are made ready by the worker that executes
+    // "gen", the other workers must steal them to run them concurrently.
+    final CountDownLatch barrier = new CountDownLatch(4);
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    cmds.add(new Task("gen", "gen.c", "gen.i"));
+    for (int i = 0; i < 4; i++) {
+      final Task task = new Task("gcc" + i, "gen.i", "gen" + i + ".o");
+      task.barrier = barrier;
+      cmds.add(task);
+    }
+    assertTrue(executor.exec(cmds, context));
+    assertEquals(executed.size(), 5);
+    assertEquals(executed.get(0), "gen");
+  }
+
+  @Test(groups = {"functional"})
+  public void testFailFastStopsQueuedCommands() throws Exception {
+    context.put(BasicCompilationCommandExecutor.CONCURENT_JOBS_CONTEXT_KEY, 2);
+    context.put(BasicCompilationCommandExecutor.FAIL_FAST_CONTEXT_KEY, true);
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    final Task fail = new Task("fail", "fail.c", "fail.o");
+    fail.fail = true;
+    cmds.add(fail);
+    for (int i = 0; i < 20; i++) {
+      final Task task = new Task("gcc" + i, "src" + i + ".c", "src" + i + ".o");
+      task.duration = 100;
+      cmds.add(task);
+    }
+
+    assertFalse(executor.exec(cmds, context));
+    assertTrue(executed.contains("fail"));
+    // only the commands that were running when "fail" failed are executed.
+    assertTrue(executed.size() <= 3, "Executed commands: " + executed);
+  }
+
+  @Test(groups = {"functional"})
+  public void testChangedSignatureRebuilds() throws Exception {
+    deleteOutputs("sig0.o");
+    assertTrue(executor.exec(signedTasks("-O0", null), newBuildContext()));
+    assertEquals(executed, Arrays.asList("gcc"));
+
+    // same inputs and same flags, the object file is up to date.
+    executed.clear();
+    assertTrue(executor.exec(signedTasks("-O0", null), newBuildContext()));
+    assertTrue(executed.isEmpty());
+
+    // same inputs but other flags, the object file must be rebuilt.
+    assertTrue(executor.exec(signedTasks("-O2", null), newBuildContext()));
+    assertEquals(executed, Arrays.asList("gcc"));
+
+    // signatures are not stored next to the output files.
+    assertFalse(new File(dir, "sig0.o.sig").exists());
+    assertTrue(new File(dir, SignatureDatabase.SIGNATURE_DB_FILE_NAME)
+        .isFile());
+  }
+
+  @Test(groups = {"functional"})
+  public void testChangedProducerSignatureRebuilds() throws Exception {
+    deleteOutputs("sig0.i", "sig0.o");
+    assertTrue(executor.exec(signedTasks("-O0", "-DFOO"), newBuildContext()));
+    assertEquals(executed, Arrays.asList("cpp", "gcc"));
+
+    executed.clear();
+    assertTrue(executor.exec(signedTasks("-O0", "-DFOO"), newBuildContext()));
+    assertTrue(executed.isEmpty());
+
+    // only the flags of the preprocessor change, its consumer is rebuilt too.
+    assertTrue(executor.exec(signedTasks("-O0", "-DBAR"), newBuildContext()));
+    assertEquals(executed, Arrays.asList("cpp", "gcc"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testHashCheckTemporaryFiles() throws Exception {
+    new File(dir, "hash0.o").delete();
+    // entry of a command that is not part of the following builds.
+    final BuildDatabase staleDatabase = new BuildDatabase(new File(dir,
+        BuildDatabase.BUILD_DB_FILE_NAME));
+    staleDatabase.markUsed("stale", Arrays.asList("stale.o"));
+    staleDatabase.setCommandDigest("stale", "0");
+    staleDatabase.setOutputDigest("stale.o", "0");
+    staleDatabase.save();
+
+    final File tempDir1 = newTempDir("hash-tmp1");
+    assertTrue(executor.exec(hashCheckTasks(tempDir1),
+        newHashCheckContext(tempDir1)));
+    assertEquals(executed, Arrays.asList("cpp", "gcc"));
+
+    // new invocation with an other temporary directory, the preprocessed file
+    // of the previous invocation has been removed with its directory.
+    new File(tempDir1, "hash0.i").delete();
+    executed.clear();
+    final File tempDir2 = newTempDir("hash-tmp2");
+    assertTrue(executor.exec(hashCheckTasks(tempDir2),
+        newHashCheckContext(tempDir2)));
+    assertTrue(executed.isEmpty());
+
+    // only the entries of the commands of the last build are saved.
+    final BuildDatabase database = BuildDatabase.load(dir);
+    assertEquals(database.commandDigests.size(), 2);
+    assertEquals(database.outputDigests.size(), 2);
+    assertTrue(database.getCommandDigest("stale") == null);
+  }
+
+  @Test(groups = {"functional"})
+  public void testDurationHistoryTemporaryFiles() throws Exception {
+    new File(dir, CommandDurationHistory.HISTORY_FILE_NAME).delete();
+    for (final String name : Arrays.asList("duration-tmp1", "duration-tmp2")) {
+      final File tempDir = newTempDir(name);
+      final Map<Object, Object> buildContext = new HashMap<Object, Object>(
+          context);
+      buildContext.put(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY, dir);
+      buildContext.put(
+          BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY, tempDir);
+      assertTrue(executor.exec(hashCheckTasks(tempDir), buildContext));
+    }
+    // both builds measured the same two commands.
+    assertEquals(executed.size(), 4);
+    assertEquals(CommandDurationHistory.load(dir).durations.size(), 2);
+  }
+
+  /**
+   * Returns the preprocessing of "hash0.c" in the given temporary directory,
+   * followed by the compilation of the preprocessed file.
+   */
+  protected Collection<CompilationCommand> hashCheckTasks(final File tempDir)
+      throws IOException {
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    final File preprocessedFile = new File(tempDir, "hash0.i");
+    final Task cpp = new Task("cpp", new File(dir, "hash0.c"),
+        preprocessedFile);
+    cpp.writeOutputs = true;
+    cmds.add(cpp);
+    final Task gcc = new Task("gcc", preprocessedFile,
+        new File(dir, "hash0.o"));
+    gcc.writeOutputs = true;
+    cmds.add(gcc);
+    return cmds;
+  }
+
+  protected Map<Object, Object> newHashCheckContext(final File tempDir) {
+    final Map<Object, Object> buildContext = newBuildContext();
+    buildContext.put(BasicCompilationCommandExecutor.HASH_CHECK_CONTEXT_KEY,
+        true);
+    buildContext.put(
+        BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY, tempDir);
+    return buildContext;
+  }
+
+  protected File newTempDir(final String name) {
+    final File tempDir = new File(dir, name);
+    tempDir.mkdirs();
+    return tempDir;
+  }
+
+  /**
+   * Returns a compilation of "sig0.c" with the given compiler flags. If
+   * <code>cppFlags</code> is not <code>null</code>, the source file is first
+   * preprocessed with these flags.
+   */
+  protected Collection<CompilationCommand> signedTasks(final String gccFlags,
+      final String cppFlags) throws IOException {
+    final Collection<CompilationCommand> cmds = new ArrayList<CompilationCommand>();
+    final Task gcc;
+    if (cppFlags != null) {
+      final Task cpp = new Task("cpp", "sig0.c", "sig0.i");
+      cpp.signature = "cpp " + cppFlags;
+      cpp.writeOutputs = true;
+      cmds.add(cpp);
+      gcc = new Task("gcc", "sig0.i", "sig0.o");
+    } else {
+      gcc = new Task("gcc", "sig0.c", "sig0.o");
+    }
+    gcc.signature = "gcc " + gccFlags;
+    gcc.writeOutputs = true;
+    cmds.add(gcc);
+    return cmds;
+  }
+
+  /**
+   * Returns a context in timestamp mode, without the file stats and the
+   * databases cached by a previous execution, as for a new invocation of the
+   * compiler.
+   */
+  protected Map<Object, Object> newBuildContext() {
+    final Map<Object, Object> buildContext = new HashMap<Object, Object>(
+        context);
+    ForceRegenContextHelper.setForceRegen(buildContext, false);
+    buildContext.put(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY, dir);
+    return buildContext;
+  }
+
+  protected void deleteOutputs(final String... names) {
+    for (final String name : names) {
+      new File(dir, name).delete();
+    }
+    new File(dir, SignatureDatabase.SIGNATURE_DB_FILE_NAME).delete();
+  }
+
+  class Task implements SignedCompilationCommand {
+
+    final Collection<File> inputFiles = new ArrayList<File>();
+    final Collection<File> outputFiles;
+    final String           name;
+    boolean                fail;
+    String                 signature;
+    boolean                writeOutputs;
+    /** Tasks that share a barrier wait for each other before completing. */
+    CountDownLatch         barrier;
+    long                   duration;
+
+    Task(final String name, final String input, final String output)
+        throws IOException {
+      this(name, (input != null) ? new File(dir, input) : null, new File(dir,
+          output));
+    }
+
+    Task(final String name, final File inputFile, final File outputFile)
+        throws IOException {
+      this.name = name;
+      if (inputFile != null) {
+        inputFiles.add(inputFile);
+        if (inputFile.getName().endsWith(".c")) {
+          // source files must exist.
+          inputFile.createNewFile();
+          createdFiles.add(inputFile);
+        }
+      }
+      outputFiles = Arrays.asList(outputFile);
+    }
+
+    public String getCommand() {
+      return name;
+    }
+
+    public void setCommand(final String command) {
+    }
+
+    public Collection<File> getInputFiles() {
+      return inputFiles;
+    }
+
+    public Collection<File> getOutputFiles() {
+      return outputFiles;
+    }
+
+    public String getDescription() {
+      return name;
+    }
+
+    public String getSignature() {
+      return signature;
+    }
+
+    public boolean forceExec() {
+      return false;
+    }
+
+    public void prepare() {
+    }
+
+    public boolean exec() throws ADLException, InterruptedException {
+      assertTrue(createdFiles.containsAll(inputFiles));
+      executed.add(name);
+      if (barrier != null) {
+        barrier.countDown();
+        if (!barrier.await(10, TimeUnit.SECONDS)) return false;
+      }
+      if (duration > 0) Thread.sleep(duration);
+      if (fail) return false;
+      createdFiles.addAll(outputFiles);
+      if (writeOutputs) {
+        for (final File outputFile : outputFiles) {
+          try {
+            new FileOutputStream(outputFile).close();
+          } catch (final IOException e) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  }
+}
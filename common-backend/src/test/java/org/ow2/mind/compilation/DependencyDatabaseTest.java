@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ow2.mind.io.BasicOutputFileLocator;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DependencyDatabaseTest {
+
+  File outputDir;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    outputDir = new File("target/test/dependency-database");
+    outputDir.mkdirs();
+    new File(outputDir, DependencyDatabase.DEPENDENCY_DB_FILE_NAME).delete();
+  }
+
+  @Test(groups = {"functional"})
+  public void testSaveAndLoad() {
+    DependencyDatabase db = DependencyDatabase.load(outputDir);
+    assertNull(db.getDependencies("/out/foo.o"));
+
+    db.setDependencies("/out/foo.o",
+        Arrays.asList("/src/foo.c", "/src/common.h"));
+    db.setDependencies("/out/bar.o",
+        Arrays.asList("/src/bar.c", "/src/common.h", "$TEMP_DIR/bar.h"));
+    db.save();
+    assertTrue(new File(outputDir, DependencyDatabase.DEPENDENCY_DB_FILE_NAME)
+        .isFile());
+
+    db = DependencyDatabase.load(outputDir);
+    assertEquals(db.getDependencies("/out/foo.o"),
+        Arrays.asList("/src/foo.c", "/src/common.h"));
+    assertEquals(db.getDependencies("/out/bar.o"),
+        Arrays.asList("/src/bar.c", "/src/common.h", "$TEMP_DIR/bar.h"));
+    assertNull(db.getDependencies("/src/common.h"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testRemoveDependencies() {
+    DependencyDatabase db = DependencyDatabase.load(outputDir);
+    db.setDependencies("/out/foo.o", Arrays.asList("/src/foo.c"));
+    db.setDependencies("/out/bar.o", Arrays.asList("/src/bar.c"));
+    db.save();
+
+    db = DependencyDatabase.load(outputDir);
+    db.removeDependencies("/out/foo.o");
+    db.save();
+
+    db = DependencyDatabase.load(outputDir);
+    assertNull(db.getDependencies("/out/foo.o"));
+    assertEquals(db.getDependencies("/out/bar.o"), Arrays.asList("/src/bar.c"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testCorruptedDatabase() throws IOException {
+    final DependencyDatabase db = DependencyDatabase.load(outputDir);
+    db.setDependencies("/out/foo.o", Arrays.asList("/src/foo.c"));
+    db.save();
+
+    // truncate the database file
+    final FileOutputStream out = new FileOutputStream(new File(outputDir,
+        DependencyDatabase.DEPENDENCY_DB_FILE_NAME));
+    out.write(new byte[]{0x4d, 0x44, 0x45, 0x50, 0, 0, 0, 1, 0, 0, 0, 5});
+    out.close();
+
+    assertNull(DependencyDatabase.load(outputDir).getDependencies(
+        "/out/foo.o"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testContextDatabase() {
+    final Map<Object, Object> context = new HashMap<Object, Object>();
+    context.put(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY, outputDir);
+    final DependencyDatabase db = DependencyDatabase
+        .getDependencyDatabase(context);
+    assertSame(DependencyDatabase.getDependencyDatabase(context), db);
+
+    db.setDependencies("/out/foo.o", Arrays.asList("/src/foo.c"));
+    DependencyDatabase.saveDependencyDatabase(context);
+    assertEquals(DependencyDatabase.load(outputDir).getDependencies(
+        "/out/foo.o"), Arrays.asList("/src/foo.c"));
+  }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.ow2.mind.compilation.LoadThrottle.DefaultSystemInfo;
+import org.ow2.mind.compilation.LoadThrottle.SystemInfo;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LoadThrottleTest {
+
+  static final long MB = 1024L * 1024;
+
+  File              testDir;
+  TestSystemInfo    systemInfo;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    testDir = new File("target/test/load-throttle");
+    testDir.mkdirs();
+    systemInfo = new TestSystemInfo();
+  }
+
+  @Test(groups = {"functional"})
+  public void testAutoJobsLimitedByAvailableMemory() {
+    systemInfo.processors = 8;
+    systemInfo.availableMemory = 3 * LoadThrottle.MEMORY_PER_JOB + MB;
+    systemInfo.freeMemory = 100 * MB;
+    systemInfo.totalMemory = 64 * 1024 * MB;
+    assertEquals(LoadThrottle.getAutoJobs(systemInfo), 3);
+
+    systemInfo.availableMemory = 100 * MB;
+    assertEquals(LoadThrottle.getAutoJobs(systemInfo), 1);
+
+    systemInfo.availableMemory = 64 * 1024 * MB;
+    assertEquals(LoadThrottle.getAutoJobs(systemInfo), 8);
+  }
+
+  @Test(groups = {"functional"})
+  public void testAutoJobsWithoutAvailableMemory() {
+    // the free memory, which excludes caches, is not used to size the pool.
+    systemInfo.processors = 8;
+    systemInfo.freeMemory = 100 * MB;
+    systemInfo.totalMemory = 2 * LoadThrottle.MEMORY_PER_JOB;
+    assertEquals(LoadThrottle.getAutoJobs(systemInfo), 2);
+
+    systemInfo.totalMemory = -1;
+    assertEquals(LoadThrottle.getAutoJobs(systemInfo), 8);
+  }
+
+  @Test(groups = {"functional"})
+  public void testMemInfo() throws Exception {
+    final File memInfo = new File(testDir, "meminfo");
+    writeFile(memInfo, "MemTotal:       16314372 kB\n"
+        + "MemFree:          512000 kB\n" + "MemAvailable:    8157186 kB\n"
+        + "Buffers:          301532 kB\n");
+    assertEquals(new DefaultSystemInfo(memInfo).getAvailableMemory(),
+        8157186L * 1024);
+
+    // kernels older than 3.14 do not provide MemAvailable.
+    writeFile(memInfo, "MemTotal:       16314372 kB\n"
+        + "MemFree:          512000 kB\n");
+    assertEquals(new DefaultSystemInfo(memInfo).getAvailableMemory(), -1L);
+
+    assertEquals(new DefaultSystemInfo(new File(testDir, "none"))
+        .getAvailableMemory(), -1L);
+  }
+
+  @Test(groups = {"functional"})
+  public void testLoadThreshold() {
+    final LoadThrottle throttle = new LoadThrottle(4.0, -1, systemInfo);
+    systemInfo.load = 2.0;
+    assertFalse(throttle.isOverloaded());
+    systemInfo.load = 4.5;
+    assertTrue(throttle.isOverloaded());
+    // unknown load.
+    systemInfo.load = -1;
+    assertFalse(throttle.isOverloaded());
+  }
+
+  @Test(groups = {"functional"})
+  public void testMemoryThreshold() {
+    final LoadThrottle throttle = new LoadThrottle(-1, 500 * MB, systemInfo);
+    systemInfo.load = 100;
+    systemInfo.availableMemory = 1024 * MB;
+    systemInfo.freeMemory = 100 * MB;
+    assertFalse(throttle.isOverloaded());
+    systemInfo.availableMemory = 400 * MB;
+    assertTrue(throttle.isOverloaded());
+
+    // without available memory, the free memory is used.
+    systemInfo.availableMemory = -1;
+    assertTrue(throttle.isOverloaded());
+    systemInfo.freeMemory = 1024 * MB;
+    assertFalse(throttle.isOverloaded());
+  }
+
+  @Test(groups = {"functional"})
+  public void testBeforeExec() throws Exception {
+    final LoadThrottle throttle = new LoadThrottle(4.0, -1, systemInfo);
+    systemInfo.load = 10.0;
+
+    // a command is always allowed to run when no other is running.
+    throttle.beforeExec();
+
+    final Thread second = new Thread() {
+      @Override
+      public void run() {
+        try {
+          throttle.beforeExec();
+        } catch (final InterruptedException e) {
+          // ignore
+        }
+      }
+    };
+    second.start();
+    second.join(1000);
+    assertTrue(second.isAlive(), "Second command has not been delayed");
+
+    systemInfo.load = 1.0;
+    second.join(5000);
+    assertFalse(second.isAlive(), "Second command is still delayed");
+    throttle.afterExec();
+    throttle.afterExec();
+  }
+
+  void writeFile(final File file, final String content) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  static final class TestSystemInfo implements SystemInfo {
+    int             processors      = 1;
+    volatile double load            = -1;
+    long            availableMemory = -1;
+    long            freeMemory      = -1;
+    long            totalMemory     = -1;
+
+    public int getAvailableProcessors() {
+      return processors;
+    }
+
+    public double getSystemLoadAverage() {
+      return load;
+    }
+
+    public long getAvailableMemory() {
+      return availableMemory;
+    }
+
+    public long getFreePhysicalMemory() {
+      return freeMemory;
+    }
+
+    public long getTotalPhysicalMemory() {
+      return totalMemory;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.io.BasicOutputFileLocator;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ObjectCacheTest {
+
+  File                cacheDir;
+  File                srcDir;
+  Map<Object, Object> context;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    final File testDir = new File("target/test/object-cache");
+    deleteAll(testDir);
+    cacheDir = new File(testDir, "cache");
+    srcDir = new File(testDir, "src");
+    cacheDir.mkdirs();
+    srcDir.mkdirs();
+    context = new HashMap<Object, Object>();
+    ObjectCache.setObjectCacheDir(context, cacheDir);
+  }
+
+  @Test(groups = {"functional"})
+  public void testStoreAndLookup() throws Exception {
+    final File src = writeFile("foo.c", "int foo;");
+    final File header = writeFile("foo.h", "extern int foo;");
+    final File obj = writeFile("foo.o", "object");
+    final ObjectCache cache = ObjectCache.getObjectCache(context);
+
+    final String key = cache.getKey("cc", "-O2", Arrays.asList(src), context);
+    assertNull(cache.lookup(key, context));
+
+    cache.store(key, obj, "warning", Arrays.asList(header), context);
+    final ObjectCache.Entry entry = cache.lookup(key, context);
+    assertNotNull(entry);
+    assertEquals(entry.output, "warning");
+    assertEquals(entry.dependencies.size(), 1);
+    assertEquals(entry.dependencies.get(0).getAbsoluteFile(),
+        header.getAbsoluteFile());
+
+    final File restored = new File(srcDir, "restored.o");
+    AtomicFileHelper.copy(entry.objectFile, restored);
+    assertEquals(readFile(restored), "object");
+
+    // a different signature gives a different key.
+    assertFalse(key.equals(cache.getKey("cc", "-O0", Arrays.asList(src),
+        context)));
+  }
+
+  @Test(groups = {"functional"})
+  public void testChangedDependency() throws Exception {
+    final File src = writeFile("foo.c", "int foo;");
+    final File header = writeFile("foo.h", "extern int foo;");
+    final File obj = writeFile("foo.o", "object");
+    final ObjectCache cache = ObjectCache.getObjectCache(context);
+
+    final String key = cache.getKey("cc", "", Arrays.asList(src), context);
+    cache.store(key, obj, null, Arrays.asList(header), context);
+    assertNotNull(cache.lookup(key, context));
+
+    writeFile("foo.h", "extern long foo;");
+    header.setLastModified(header.lastModified() + 2000);
+    assertNull(cache.lookup(key, context));
+
+    // an input file change gives a different key.
+    writeFile("foo.c", "long foo;");
+    src.setLastModified(src.lastModified() + 2000);
+    assertFalse(key.equals(cache.getKey("cc", "", Arrays.asList(src),
+        context)));
+  }
+
+  @Test(groups = {"functional"})
+  public void testRelocatedWorkspace() throws Exception {
+    final File ws1 = new File(srcDir, "ws1");
+    final File ws2 = new File(srcDir, "ws2");
+    final Map<Object, Object> context1 = newWorkspaceContext(ws1);
+    final Map<Object, Object> context2 = newWorkspaceContext(ws2);
+    final File src1 = writeFile("ws1/src/foo.c", "int foo;");
+    final File header1 = writeFile("ws1/src/foo.h", "extern int foo;");
+    final File src2 = writeFile("ws2/src/foo.c", "int foo;");
+    final File header2 = writeFile("ws2/src/foo.h", "extern int foo;");
+    final File obj = writeFile("foo.o", "object");
+    final ObjectCache cache = ObjectCache.getObjectCache(context1);
+
+    final String key1 = cache.getKey("cc", "-I"
+        + new File(ws1, "src").getAbsolutePath() + " -I"
+        + new File(ws1, "build").getAbsolutePath(), Arrays.asList(src1),
+        context1);
+    cache.store(key1, obj, null, Arrays.asList(header1), context1);
+
+    // the same command in another workspace has the same key.
+    final String key2 = cache.getKey("cc", "-I"
+        + new File(ws2, "src").getAbsolutePath() + " -I"
+        + new File(ws2, "build").getAbsolutePath(), Arrays.asList(src2),
+        context2);
+    assertEquals(key2, key1);
+
+    // and its dependencies are resolved in the other workspace.
+    final ObjectCache.Entry entry = cache.lookup(key2, context2);
+    assertNotNull(entry);
+    assertEquals(entry.dependencies.size(), 1);
+    assertEquals(entry.dependencies.get(0).getAbsoluteFile(),
+        header2.getAbsoluteFile());
+
+    // a dependency that differs in the other workspace is detected.
+    writeFile("ws2/src/foo.h", "extern long foo;");
+    header2.setLastModified(header2.lastModified() + 2000);
+    assertNull(cache.lookup(key2, context2));
+  }
+
+  @Test(groups = {"functional"})
+  public void testEviction() throws Exception {
+    ObjectCache.setObjectCacheMaxSize(context, 4096);
+    final ObjectCache cache = ObjectCache.getObjectCache(context);
+    final char[] content = new char[1024];
+    Arrays.fill(content, 'x');
+    final List<File> noDeps = Collections.emptyList();
+
+    String firstKey = null;
+    for (int i = 0; i < 8; i++) {
+      final File src = writeFile("src" + i + ".c", "int i" + i + ";");
+      final File obj = writeFile("obj" + i + ".o", new String(content) + i);
+      final String key = cache.getKey("cc", "", Arrays.asList(src), context);
+      if (firstKey == null) firstKey = key;
+      cache.store(key, obj, null, noDeps, context);
+    }
+    assertTrue(sizeOf(cacheDir) <= 4096);
+    assertNull(cache.lookup(firstKey, context));
+  }
+
+  Map<Object, Object> newWorkspaceContext(final File workspace)
+      throws Exception {
+    final File wsSrcDir = new File(workspace, "src");
+    final File wsBuildDir = new File(workspace, "build");
+    wsSrcDir.mkdirs();
+    wsBuildDir.mkdirs();
+    final Map<Object, Object> wsContext = new HashMap<Object, Object>(context);
+    wsContext.put("classloader", new URLClassLoader(new URL[]{wsSrcDir
+        .toURI().toURL()}, null));
+    wsContext.put(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY, wsBuildDir);
+    return wsContext;
+  }
+
+  File writeFile(final String name, final String content) throws IOException {
+    final File f = new File(srcDir, name);
+    final FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  String readFile(final File f) throws IOException {
+    final byte[] content = new byte[(int) f.length()];
+    final FileInputStream in = new FileInputStream(f);
+    try {
+      int off = 0;
+      while (off < content.length) {
+        final int n = in.read(content, off, content.length - off);
+        if (n < 0) break;
+        off += n;
+      }
+    } finally {
+      in.close();
+    }
+    return new String(content, "UTF-8");
+  }
+
+  long sizeOf(final File f) {
+    if (f.isFile()) return f.length();
+    long size = 0;
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        size += sizeOf(child);
+      }
+    }
+    return size;
+  }
+
+  void deleteAll(final File f) {
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteAll(child);
+      }
+    }
+    f.delete();
+  }
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.compilation.gcc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.fractal.adl.error.Error;
+import org.ow2.mind.compilation.CompileWorker;
+import org.ow2.mind.compilation.CompileWorkerPool;
+import org.ow2.mind.compilation.DependencyDatabase;
+import org.ow2.mind.error.ErrorManagerFactory;
+import org.ow2.mind.io.BasicOutputFileLocator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GccCompilerWrapperTest {
+
+  static final String TOKEN      = "secret";
+
+  File                testDir;
+  GccCompilerWrapper  wrapper;
+  Map<Object, Object> context;
+  CompileWorker       worker;
+  final AtomicInteger nbRequests = new AtomicInteger();
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    testDir = new File("target/test/gcc-compiler-wrapper");
+    deleteAll(testDir);
+    testDir.mkdirs();
+    wrapper = new GccCompilerWrapper();
+    wrapper.errorManagerItf = ErrorManagerFactory.newSimpleErrorManager();
+    context = new HashMap<Object, Object>();
+    nbRequests.set(0);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void tearDown() {
+    if (worker != null) worker.stop();
+    worker = null;
+  }
+
+  @Test(groups = {"functional"})
+  public void testRemoteCompile() throws Exception {
+    final CompileWorkerPool.Worker remote = startWorker("gcc");
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+
+    assertTrue(exec(src, obj, remote));
+    assertTrue(obj.length() > 0);
+    assertEquals(nbRequests.get(), 1);
+    assertFalse(remote.isDisabled());
+  }
+
+  @Test(groups = {"functional"})
+  public void testRemoteCompileError() throws Exception {
+    final CompileWorkerPool.Worker remote = startWorker("gcc");
+    final File src = writeFile("bar.c", "int bar = UNDEFINED;\n");
+    final File obj = new File(testDir, "bar.o");
+
+    assertFalse(exec(src, obj, remote));
+    assertFalse(obj.exists());
+    assertEquals(nbRequests.get(), 1);
+    assertFalse(remote.isDisabled());
+    // the error reported by the worker refers to the local input file.
+    final List<Error> errors = wrapper.errorManagerItf.getErrors();
+    assertEquals(errors.size(), 1);
+    final String message = errors.get(0).getMessage();
+    assertTrue(message.contains(src.getPath()), message);
+    assertFalse(message.contains("mindc-worker"), message);
+  }
+
+  @Test(groups = {"functional"})
+  public void testRejectedFallback() throws Exception {
+    // the worker does not accept the compiler of the command, which is then
+    // compiled locally.
+    final CompileWorkerPool.Worker remote = startWorker("/tmp/other-gcc");
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+
+    assertTrue(exec(src, obj, remote));
+    assertTrue(obj.length() > 0);
+    assertEquals(nbRequests.get(), 1);
+    // a rejected request does not disable the worker.
+    assertFalse(remote.isDisabled());
+    assertTrue(wrapper.errorManagerItf.getErrors().isEmpty());
+  }
+
+  @Test(groups = {"functional"})
+  public void testUnreachableFallback() throws Exception {
+    // find a port on which nothing listens.
+    final ServerSocket socket = new ServerSocket(0);
+    final int port = socket.getLocalPort();
+    socket.close();
+    final CompileWorkerPool.Worker remote = CompileWorkerPool.parseWorker(
+        "localhost:" + port, TOKEN);
+    final File src = writeFile("foo.c", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+
+    assertTrue(exec(src, obj, remote));
+    assertTrue(obj.length() > 0);
+    // an unreachable worker is disabled for the rest of the build.
+    assertTrue(remote.isDisabled());
+    assertTrue(wrapper.errorManagerItf.getErrors().isEmpty());
+  }
+
+  @Test(groups = {"functional"})
+  public void testReadDepsMapsTempDir() throws Exception {
+    final File tempDir = new File(testDir, "tmp").getAbsoluteFile();
+    final File otherTempDir = new File(testDir, "tmp2").getAbsoluteFile();
+    tempDir.mkdirs();
+    otherTempDir.mkdirs();
+    wrapper.outputFileLocatorItf = new BasicOutputFileLocator();
+    context.put(BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY,
+        tempDir);
+
+    final File src = writeFile("foo.c", "#include \"gen.h\"\n");
+    final File header = writeFile("tmp/gen.h", "int foo;\n")
+        .getAbsoluteFile();
+    writeFile("tmp2/gen.h", "int foo;\n");
+    final File obj = new File(testDir, "foo.o");
+    final File depFile = writeFile("foo.d", obj.getPath() + ": "
+        + src.getPath() + " \\\n " + header.getPath() + "\n");
+
+    // the dependencies are not recorded yet, so they are read from the
+    // dependency file.
+    final Collection<File> deps = readDependencies(obj, depFile);
+    assertTrue(deps.contains(header), deps.toString());
+
+    // the generated header is recorded relatively to the temporary directory.
+    final List<String> recorded = DependencyDatabase.getDependencyDatabase(
+        context).getDependencies(obj.getAbsolutePath());
+    assertTrue(recorded.contains("$TEMP_DIR" + File.separator + "gen.h"),
+        recorded.toString());
+
+    // so that it is found in the temporary directory of the next build.
+    context.put(BasicOutputFileLocator.TEMPORARY_OUTPUT_DIR_CONTEXT_KEY,
+        otherTempDir);
+    final Collection<File> otherDeps = readDependencies(obj, depFile);
+    assertTrue(otherDeps.contains(new File(otherTempDir, "gen.h")),
+        otherDeps.toString());
+    assertFalse(otherDeps.contains(header), otherDeps.toString());
+  }
+
+  Collection<File> readDependencies(final File obj, final File depFile) {
+    final GccCompilerWrapper.GccCompilerCommand command = (GccCompilerWrapper.GccCompilerCommand) wrapper
+        .newCompilerCommand(context);
+    command.setOutputFile(obj);
+    command.setDependencyOutputFile(depFile);
+    return command.readDependencies();
+  }
+
+  CompileWorkerPool.Worker startWorker(final String compiler)
+      throws IOException {
+    worker = new CompileWorker(null, 0, 1, Arrays.asList(compiler), TOKEN) {
+      @Override
+      protected void handleRequest(final Socket socket) throws IOException {
+        nbRequests.incrementAndGet();
+        super.handleRequest(socket);
+      }
+    };
+    final int port = worker.open();
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          worker.serve();
+        } catch (final IOException e) {
+          // ignore
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    return CompileWorkerPool.parseWorker("localhost:" + port, TOKEN);
+  }
+
+  boolean exec(final File src, final File obj,
+      final CompileWorkerPool.Worker remote) throws Exception {
+    final GccCompilerWrapper.GccCompilerCommand command = (GccCompilerWrapper.GccCompilerCommand) wrapper
+        .newCompilerCommand(context);
+    command.setInputFile(src);
+    command.setOutputFile(obj);
+    command.setAllDependenciesManaged(true);
+    assertTrue(command.isRemotable());
+    command.setRemoteWorker(remote);
+    return command.exec();
+  }
+
+  File writeFile(final String name, final String content) throws IOException {
+    final File f = new File(testDir, name);
+    final FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  void deleteAll(final File f) {
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteAll(child);
+      }
+    }
+    f.delete();
+  }
+}
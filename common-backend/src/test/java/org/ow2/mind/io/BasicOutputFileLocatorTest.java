@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.io;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BasicOutputFileLocatorTest {
+
+  BasicOutputFileLocator locator;
+  File                   outputDir;
+  Map<Object, Object>    context;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    outputDir = new File("target/test/output-file-locator");
+    rm(outputDir);
+    locator = new BasicOutputFileLocator();
+    context = new HashMap<Object, Object>();
+    context.put(BasicOutputFileLocator.OUTPUT_DIR_CONTEXT_KEY, outputDir);
+  }
+
+  @Test(groups = {"functional"})
+  public void testOutputFile() {
+    final File file = locator.getCSourceOutputFile("/foo/bar/Baz.c", context);
+    assertEquals(file, new File(outputDir, "foo/bar/Baz.c"));
+    assertTrue(file.getParentFile().isDirectory());
+
+    // a second lookup in the same directory returns the same file
+    assertEquals(locator.getCCompiledOutputFile("/foo/bar/Baz.c", context),
+        file);
+  }
+
+  @Test(groups = {"functional"})
+  public void testCreateOutputDirs() {
+    final File dir1 = new File(outputDir, "foo/bar");
+    final File dir2 = new File(outputDir, "foo");
+    final File dir3 = new File(outputDir, "other");
+    locator.createOutputDirs(Arrays.asList(dir1, dir2, dir3), context);
+    assertTrue(dir1.isDirectory());
+    assertTrue(dir2.isDirectory());
+    assertTrue(dir3.isDirectory());
+
+    assertEquals(locator.getMetadataOutputFile("/other/Baz.def", context),
+        new File(dir3, "Baz.def"));
+  }
+
+  protected static void rm(final File file) {
+    if (file.isDirectory()) {
+      for (final File subFile : file.listFiles()) {
+        rm(subFile);
+      }
+    }
+    file.delete();
+  }
+}
@@ -130,7 +130,8 @@ public class BasicInputResourceLocator implements InputResourceLocator {
       final Collection<InputResource> inputs, final Map<Object, Object> context) {
     if (logger.isLoggable(Level.FINEST))
       logger.log(Level.FINEST, "Checks if file \"" + file + "\" is up-to-date");
-    return isUpToDate(file.lastModified(), inputs, context);
+    return isUpToDate(FileStatCache.getFileStatCache(context)
+        .lastModified(file), inputs, context);
   }
 
   public boolean isUpToDate(final URL url,
@@ -138,7 +139,8 @@ public class BasicInputResourceLocator implements InputResourceLocator {
       throws MalformedURLException {
     if (logger.isLoggable(Level.FINEST))
       logger.log(Level.FINEST, "Checks if URL \"" + url + "\" is up-to-date");
-    return isUpToDate(InputResourcesHelper.getTimestamp(url), inputs, context);
+    return isUpToDate(InputResourcesHelper.getTimestamp(url, context), inputs,
+        context);
   }
 
   // ---------------------------------------------------------------------------
@@ -151,7 +153,7 @@ public class BasicInputResourceLocator implements InputResourceLocator {
     if (timestamp == -1) {
       final URL url = findResource(resource, context);
       if (url != null)
-        timestamp = InputResourcesHelper.getTimestamp(url);
+        timestamp = InputResourcesHelper.getTimestamp(url, context);
       else
         timestamp = 0L;
       resource.setTimestamp(timestamp);
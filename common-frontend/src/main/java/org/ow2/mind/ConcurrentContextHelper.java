@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Helper methods for compilation contexts that are shared by several threads.
+ * Loaders and compilers store their state in the context, so a compilation
+ * phase can be executed concurrently only if its context is thread-safe.
+ * Contexts created by {@link #newContext(Map)} are synchronized maps; since
+ * such a map synchronizes on itself, compound operations can be made atomic by
+ * synchronizing on the context.
+ */
+public final class ConcurrentContextHelper {
+  private ConcurrentContextHelper() {
+  }
+
+  private static final Class<?> SYNCHRONIZED_MAP_CLASS;
+  static {
+    SYNCHRONIZED_MAP_CLASS = Collections.synchronizedMap(
+        new HashMap<Object, Object>()).getClass();
+  }
+
+  /**
+   * Returns a new empty thread-safe context.
+   * 
+   * @return a new thread-safe context.
+   */
+  public static Map<Object, Object> newContext() {
+    return Collections.synchronizedMap(new HashMap<Object, Object>());
+  }
+
+  /**
+   * Returns a new thread-safe context that contains the entries of the given
+   * context.
+   * 
+   * @param context the initial entries of the new context.
+   * @return a new thread-safe context.
+   */
+  public static Map<Object, Object> newContext(
+      final Map<Object, Object> context) {
+    return Collections.synchronizedMap(new HashMap<Object, Object>(context));
+  }
+
+  /**
+   * Returns <code>true</code> if the given context can be accessed
+   * concurrently by several threads.
+   * 
+   * @param context a context.
+   * @return <code>true</code> if the given context is thread-safe.
+   */
+  public static boolean isThreadSafe(final Map<Object, Object> context) {
+    return context instanceof ConcurrentMap
+        || context.getClass() == SYNCHRONIZED_MAP_CLASS;
+  }
+}
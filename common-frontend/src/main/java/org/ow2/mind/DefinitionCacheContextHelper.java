@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Helper class to manage the directory of the content-addressed definition
+ * cache. This cache is shared across compiler invocations (and possibly across
+ * workspaces); definitions are stored under a key computed from the content of
+ * their input resources rather than from file timestamps.
+ */
+public final class DefinitionCacheContextHelper {
+  private DefinitionCacheContextHelper() {
+  }
+
+  public static final String DEFINITION_CACHE_DIR_CONTEXT_KEY = "definition-cache-dir";
+
+  /**
+   * Returns the directory of the content-addressed definition cache, or
+   * <code>null</code> if this cache is disabled.
+   * 
+   * @param context the compilation context.
+   * @return the directory of the definition cache. May be <code>null</code>.
+   */
+  public static File getDefinitionCacheDir(final Map<Object, Object> context) {
+    if (context == null) return null;
+    return (File) context.get(DEFINITION_CACHE_DIR_CONTEXT_KEY);
+  }
+
+  public static void setDefinitionCacheDir(final Map<Object, Object> context,
+      final File cacheDir) {
+    context.put(DEFINITION_CACHE_DIR_CONTEXT_KEY, cacheDir);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.objectweb.fractal.adl.CompilerError;
+import org.objectweb.fractal.adl.error.GenericErrors;
+
+/**
+ * Helper class to compute content digests of files and strings. Digests are
+ * used to detect content modifications independently of file timestamps.
+ */
+public final class DigestHelper {
+  private DigestHelper() {
+  }
+
+  /** The digest algorithm. */
+  public static final String DIGEST_ALGORITHM = "SHA-1";
+
+  private static final char[] HEX_DIGITS       = "0123456789abcdef"
+                                                   .toCharArray();
+
+  /**
+   * Returns a new {@link MessageDigest} that implements the
+   * {@link #DIGEST_ALGORITHM}.
+   * 
+   * @return a new {@link MessageDigest}.
+   */
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+          "Digest algorithm " + DIGEST_ALGORITHM + " is not available");
+    }
+  }
+
+  /**
+   * Updates the given digest with the UTF-8 encoding of the given string. The
+   * string is followed by a zero byte, so that the concatenation of several
+   * strings is not ambiguous.
+   * 
+   * @param digest the digest to update.
+   * @param s a string. May be <code>null</code>.
+   */
+  public static void update(final MessageDigest digest, final String s) {
+    if (s != null) {
+      try {
+        digest.update(s.getBytes("UTF-8"));
+      } catch (final UnsupportedEncodingException e) {
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, e,
+            "UTF-8 encoding is not supported");
+      }
+    }
+    digest.update((byte) 0);
+  }
+
+  /**
+   * Updates the given digest with the content of the given stream. The stream
+   * is not closed by this method.
+   * 
+   * @param digest the digest to update.
+   * @param is an input stream.
+   * @throws IOException if an error occurs while reading the stream.
+   */
+  public static void update(final MessageDigest digest, final InputStream is)
+      throws IOException {
+    final byte[] buffer = new byte[8192];
+    int n;
+    while ((n = is.read(buffer)) != -1) {
+      digest.update(buffer, 0, n);
+    }
+  }
+
+  /**
+   * Returns the hexadecimal representation of the digest of the content of the
+   * given file.
+   * 
+   * @param file a file.
+   * @return the digest of the content of the given file.
+   * @throws IOException if an error occurs while reading the file.
+   */
+  public static String digest(final File file) throws IOException {
+    final InputStream is = new FileInputStream(file);
+    try {
+      final MessageDigest digest = newDigest();
+      update(digest, is);
+      return toHexString(digest.digest());
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Returns the hexadecimal representation of the digest of the content of the
+   * given URL.
+   * 
+   * @param url an URL.
+   * @return the digest of the content of the given URL.
+   * @throws IOException if an error occurs while reading the URL.
+   */
+  public static String digest(final URL url) throws IOException {
+    final InputStream is = url.openStream();
+    try {
+      final MessageDigest digest = newDigest();
+      update(digest, is);
+      return toHexString(digest.digest());
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Returns the hexadecimal representation of the digest of the given string.
+   * 
+   * @param s a string.
+   * @return the digest of the given string.
+   */
+  public static String digest(final String s) {
+    final MessageDigest digest = newDigest();
+    update(digest, s);
+    return toHexString(digest.digest());
+  }
+
+  /**
+   * Returns the hexadecimal representation of the given bytes.
+   * 
+   * @param bytes an array of bytes.
+   * @return the hexadecimal representation of the given bytes.
+   */
+  public static String toHexString(final byte[] bytes) {
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
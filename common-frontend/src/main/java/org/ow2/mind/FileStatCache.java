@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import org.objectweb.fractal.adl.CompilerError;
+import org.objectweb.fractal.adl.error.GenericErrors;
+
+/**
+ * Cache of the metadata (existence and modification time) of the files that
+ * are checked by the up-to-date checks of a compilation. A cache is stored in
+ * the compilation context (see {@link #getFileStatCache(Map)}), so that each
+ * file is stat'ed at most once per compilation.
+ * <p>
+ * Files that are written by the compiler must be {@link #fileWritten(File)
+ * reported}, so that their entries are invalidated in every cache.
+ */
+public final class FileStatCache {
+
+  /** The context key used to store the cache of a compilation. */
+  public static final String                       FILE_STAT_CACHE_CONTEXT_KEY = "file-stat-cache";
+
+  /**
+   * Minimal number of files to prefetch for which the directories are stat'ed
+   * concurrently.
+   */
+  private static final int                         PARALLEL_PREFETCH_THRESHOLD = 64;
+
+  /** Value stored in the cache for files that do not exist. */
+  private static final Long                        MISSING                     = -1L;
+
+  /** The live caches, in which written files are invalidated. */
+  private static final Map<FileStatCache, Boolean> caches                      = new WeakHashMap<FileStatCache, Boolean>();
+
+  private final boolean                            enabled;
+  private final ConcurrentMap<File, Long>          timestamps                  = new ConcurrentHashMap<File, Long>();
+  private ExecutorService                          executor;
+
+  private FileStatCache(final boolean enabled) {
+    this.enabled = enabled;
+    if (enabled) {
+      synchronized (caches) {
+        caches.put(this, Boolean.TRUE);
+      }
+    }
+  }
+
+  /**
+   * Returns the cache of the given context. If the context is
+   * <code>null</code>, returns a cache that stat's files on each request.
+   * 
+   * @param context the context of the compilation. May be <code>null</code>.
+   * @return the cache of the given context.
+   */
+  public static FileStatCache getFileStatCache(
+      final Map<Object, Object> context) {
+    if (context == null) return new FileStatCache(false);
+    synchronized (context) {
+      FileStatCache cache = (FileStatCache) context
+          .get(FILE_STAT_CACHE_CONTEXT_KEY);
+      if (cache == null) {
+        cache = new FileStatCache(true);
+        context.put(FILE_STAT_CACHE_CONTEXT_KEY, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Invalidates the entry of the given file in every cache. This method must
+   * be called each time the compiler writes a file.
+   * 
+   * @param file a file that has been written.
+   */
+  public static void fileWritten(final File file) {
+    final List<FileStatCache> liveCaches;
+    synchronized (caches) {
+      if (caches.isEmpty()) return;
+      liveCaches = new ArrayList<FileStatCache>(caches.keySet());
+    }
+    for (final FileStatCache cache : liveCaches) {
+      cache.invalidate(file);
+    }
+  }
+
+  /**
+   * Returns the modification time of the given file, or <code>0</code> if the
+   * file does not exist (as {@link File#lastModified()}).
+   * 
+   * @param file a file.
+   * @return the modification time of the given file.
+   */
+  public long lastModified(final File file) {
+    final long timestamp = getTimestamp(file);
+    return (timestamp == MISSING) ? 0L : timestamp;
+  }
+
+  /**
+   * Returns <code>true</code> if the given file exists.
+   * 
+   * @param file a file.
+   * @return <code>true</code> if the given file exists.
+   */
+  public boolean exists(final File file) {
+    return getTimestamp(file) != MISSING;
+  }
+
+  /**
+   * Invalidates the entry of the given file in this cache.
+   * 
+   * @param file a file.
+   */
+  public void invalidate(final File file) {
+    if (enabled) timestamps.remove(file.getAbsoluteFile());
+  }
+
+  /**
+   * Stat's the given files that are not in the cache yet. If there are many of
+   * them, the files of different directories are stat'ed concurrently by at
+   * most <code>jobs</code> threads.
+   * 
+   * @param files the files to stat.
+   * @param jobs the maximal number of threads.
+   */
+  public void prefetch(final Collection<File> files, final int jobs) {
+    if (!enabled) return;
+
+    // group files by directory.
+    final Map<File, List<File>> directories = new HashMap<File, List<File>>();
+    int nbFiles = 0;
+    for (final File f : files) {
+      final File file = f.getAbsoluteFile();
+      if (timestamps.containsKey(file)) continue;
+      List<File> dirFiles = directories.get(file.getParentFile());
+      if (dirFiles == null) {
+        dirFiles = new ArrayList<File>();
+        directories.put(file.getParentFile(), dirFiles);
+      }
+      dirFiles.add(file);
+      nbFiles++;
+    }
+
+    if (jobs <= 1 || directories.size() <= 1
+        || nbFiles < PARALLEL_PREFETCH_THRESHOLD) {
+      for (final List<File> dirFiles : directories.values()) {
+        stat(dirFiles);
+      }
+      return;
+    }
+
+    final ExecutorService executor = getExecutor(jobs);
+    final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(
+        directories.size());
+    for (final List<File> dirFiles : directories.values()) {
+      final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        public void run() {
+          stat(dirFiles);
+        }
+      }, null);
+      tasks.add(task);
+      executor.execute(task);
+    }
+    // execute in the current thread the tasks that have not been started yet
+    // by the pool.
+    for (final FutureTask<Void> task : tasks) {
+      task.run();
+    }
+    for (final FutureTask<Void> task : tasks) {
+      try {
+        task.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (final ExecutionException e) {
+        throw new CompilerError(GenericErrors.INTERNAL_ERROR, e.getCause(),
+            "Unable to stat files");
+      }
+    }
+  }
+
+  private long getTimestamp(final File f) {
+    if (!enabled) return stat(f);
+    final File file = f.getAbsoluteFile();
+    Long timestamp = timestamps.get(file);
+    if (timestamp == null) {
+      timestamp = stat(file);
+      timestamps.put(file, timestamp);
+    }
+    return timestamp;
+  }
+
+  private void stat(final List<File> files) {
+    for (final File file : files) {
+      timestamps.put(file, stat(file));
+    }
+  }
+
+  private static long stat(final File file) {
+    final long timestamp = file.lastModified();
+    // lastModified returns 0 for missing files (or in case of I/O error).
+    if (timestamp == 0L && !file.exists()) return MISSING;
+    return timestamp;
+  }
+
+  private synchronized ExecutorService getExecutor(final int jobs) {
+    if (executor == null) {
+      executor = ThreadPoolHelper.newDaemonThreadPool("mindc-stat", jobs);
+    }
+    return executor;
+  }
+}
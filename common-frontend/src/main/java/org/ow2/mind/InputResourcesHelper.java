@@ -22,11 +22,18 @@
 
 package org.ow2.mind;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.objectweb.fractal.adl.Node;
@@ -47,7 +54,18 @@ public final class InputResourcesHelper {
    * @see #addInputResource(Node, InputResource)
    * @see #addInputResources(Node, Set)
    */
-  public static final String INPUT_RESOURCES_DECORATION = "input-resources";
+  public static final String INPUT_RESOURCES_DECORATION    = "input-resources";
+
+  /**
+   * The extension that is appended to the name of a binary AST file to get the
+   * name of its dependency manifest.
+   * 
+   * @see #writeDependencyManifest(File, Set)
+   * @see #readDependencyManifest(URL, long, Map)
+   */
+  public static final String DEPENDENCY_MANIFEST_EXTENSION = ".deps";
+
+  private static final int   DEPENDENCY_MANIFEST_VERSION   = 1;
 
   /**
    * Returns the value of the {@link #INPUT_RESOURCES_DECORATION input
@@ -114,9 +132,25 @@ public final class InputResourcesHelper {
    */
   public static long getTimestamp(final URL resource)
       throws MalformedURLException {
+    return getTimestamp(resource, null);
+  }
+
+  /**
+   * Get the time-stamp corresponding to the given {@link URL}. Files are
+   * stat'ed through the {@link FileStatCache} of the given context.
+   * 
+   * @param resource a {@link URL}
+   * @param context the context of the compilation. May be <code>null</code>.
+   * @return the time-stamp of the file designated by the given {@link URL}.
+   * @throws MalformedURLException is the given {@link URL} is invalid.
+   * @see FileStatCache#getFileStatCache(Map)
+   */
+  public static long getTimestamp(final URL resource,
+      final Map<Object, Object> context) throws MalformedURLException {
     if ("file".equals(resource.getProtocol())) {
       try {
-        return new File(resource.toURI()).lastModified();
+        return FileStatCache.getFileStatCache(context).lastModified(
+            new File(resource.toURI()));
       } catch (final URISyntaxException e) {
         final MalformedURLException mue = new MalformedURLException(
             "Invalid URL");
@@ -131,8 +165,95 @@ public final class InputResourcesHelper {
             + "'");
 
       final URL jarFile = new URL(path.substring(0, i));
-      return getTimestamp(jarFile);
+      return getTimestamp(jarFile, context);
     }
     return 0;
   }
+
+  /**
+   * Returns the dependency manifest file of the given binary AST file.
+   * 
+   * @param binaryFile a binary AST file.
+   * @return the dependency manifest file of the given binary AST file.
+   * @see #writeDependencyManifest(File, Set)
+   */
+  public static File getDependencyManifestFile(final File binaryFile) {
+    return new File(binaryFile.getPath() + DEPENDENCY_MANIFEST_EXTENSION);
+  }
+
+  /**
+   * Writes the dependency manifest of the given binary AST file. The manifest
+   * contains the given input resources, so that the freshness of the binary
+   * AST can be checked without reading it (see
+   * {@link #readDependencyManifest(URL, long, Map)}). This method must be
+   * called after the binary AST file has been written.
+   * 
+   * @param binaryFile a binary AST file.
+   * @param resources the input resources of the AST stored in the given file.
+   *          If <code>null</code>, the manifest is removed.
+   * @throws IOException if the manifest can't be written.
+   */
+  public static void writeDependencyManifest(final File binaryFile,
+      final Set<InputResource> resources) throws IOException {
+    final File manifestFile = getDependencyManifestFile(binaryFile);
+    if (resources == null) {
+      manifestFile.delete();
+      FileStatCache.fileWritten(manifestFile);
+      return;
+    }
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(manifestFile)));
+    try {
+      out.writeInt(DEPENDENCY_MANIFEST_VERSION);
+      out.writeInt(resources.size());
+      for (final InputResource resource : resources) {
+        out.writeUTF(resource.getKind());
+        out.writeUTF(resource.getName());
+      }
+    } finally {
+      out.close();
+      FileStatCache.fileWritten(manifestFile);
+    }
+  }
+
+  /**
+   * Reads the dependency manifest of the given binary AST file.
+   * 
+   * @param binaryFile the {@link URL} of a binary AST file.
+   * @param binaryTimestamp the time-stamp of the binary AST file.
+   * @param context the context of the compilation. May be <code>null</code>.
+   * @return the input resources of the AST stored in the given file, or
+   *         <code>null</code> if the manifest does not exist, is older than the
+   *         binary AST file, or can't be read.
+   * @see #writeDependencyManifest(File, Set)
+   */
+  public static Set<InputResource> readDependencyManifest(
+      final URL binaryFile, final long binaryTimestamp,
+      final Map<Object, Object> context) {
+    try {
+      final URL manifest = new URL(binaryFile.toExternalForm()
+          + DEPENDENCY_MANIFEST_EXTENSION);
+      // the manifest is written after the binary file. If it is older, it
+      // corresponds to a previous version of the binary file.
+      if (getTimestamp(manifest, context) < binaryTimestamp) return null;
+
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          manifest.openStream()));
+      try {
+        if (in.readInt() != DEPENDENCY_MANIFEST_VERSION) return null;
+        final int size = in.readInt();
+        final Set<InputResource> resources = new HashSet<InputResource>(
+            size * 2);
+        for (int i = 0; i < size; i++) {
+          final String kind = in.readUTF();
+          resources.add(new InputResource(kind, in.readUTF()));
+        }
+        return resources;
+      } finally {
+        in.close();
+      }
+    } catch (final IOException e) {
+      return null;
+    }
+  }
 }
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.fractal.adl.Node;
+
+/**
+ * Helper class to manage the persistent cache store. When a compiler instance
+ * is kept alive across several compilations (see the <code>mindc</code> daemon
+ * mode), a store that outlives the compilation context can be attached to the
+ * context. Caching components (like the ADL and IDL cache loaders) may use it
+ * to keep loaded ASTs from one compilation to the next one, as long as their
+ * {@link InputResourcesHelper input resources} are up-to-date.
+ */
+public final class PersistentCacheContextHelper {
+  private PersistentCacheContextHelper() {
+  }
+
+  public static final String PERSISTENT_CACHE_CONTEXT_KEY = "persistent-cache";
+
+  /**
+   * Returns the persistent cache store attached to the given context, or
+   * <code>null</code> if there is no such store.
+   * 
+   * @param context the compilation context.
+   * @return the persistent cache store attached to the given context. May be
+   *         <code>null</code>.
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<Object, Object> getPersistentCache(
+      final Map<Object, Object> context) {
+    if (context == null) return null;
+    return (Map<Object, Object>) context.get(PERSISTENT_CACHE_CONTEXT_KEY);
+  }
+
+  /**
+   * Attaches the given persistent cache store to the given context.
+   * 
+   * @param context the compilation context.
+   * @param cache the persistent cache store. Accesses to this map must be
+   *          synchronized on the map itself.
+   */
+  public static void setPersistentCache(final Map<Object, Object> context,
+      final Map<Object, Object> cache) {
+    context.put(PERSISTENT_CACHE_CONTEXT_KEY, cache);
+  }
+
+  /**
+   * Returns the map stored under the given key in the persistent cache store
+   * attached to the given context. Creates it if needed. Returns
+   * <code>null</code> if there is no persistent cache store attached to the
+   * context.
+   * 
+   * @param context the compilation context.
+   * @param key the key of the map in the persistent cache store.
+   * @return a map stored in the persistent cache store. May be
+   *         <code>null</code>.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> Map<K, CachedEntry<V>> getPersistentMap(
+      final Map<Object, Object> context, final Object key) {
+    final Map<Object, Object> cache = getPersistentCache(context);
+    if (cache == null) return null;
+    synchronized (cache) {
+      Map<K, CachedEntry<V>> map = (Map<K, CachedEntry<V>>) cache.get(key);
+      if (map == null) {
+        map = new ConcurrentHashMap<K, CachedEntry<V>>();
+        cache.put(key, map);
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the input resources of the given node are
+   * older than the given timestamp. The input resources are copied before being
+   * checked, since {@link InputResource} instances remember their location and
+   * timestamp once they have been located.
+   * 
+   * @param node a cached AST node.
+   * @param timestamp the time at which the node has been loaded.
+   * @param locator the {@link InputResourceLocator} used to locate input
+   *          resources.
+   * @param context the compilation context.
+   * @return <code>true</code> if the given node can be reused.
+   */
+  public static boolean isUpToDate(final Node node, final long timestamp,
+      final InputResourceLocator locator, final Map<Object, Object> context) {
+    final Set<InputResource> resources = InputResourcesHelper
+        .getInputResources(node);
+    if (resources == null) return false;
+    final Collection<InputResource> freshResources = new HashSet<InputResource>(
+        resources.size());
+    for (final InputResource resource : resources) {
+      freshResources.add(new InputResource(resource.getKind(), resource
+          .getName()));
+    }
+    return locator.isUpToDate(timestamp, freshResources, context);
+  }
+
+  /**
+   * An entry of a persistent map. Associates a cached value with the time at
+   * which it has been loaded.
+   */
+  public static final class CachedEntry<V> {
+    public final V    value;
+    public final long timestamp;
+
+    public CachedEntry(final V value, final long timestamp) {
+      this.value = value;
+      this.timestamp = timestamp;
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ow2.mind.io.FileTimestampHelper;
+
+/**
+ * Index of the resources that are reachable through a source class loader.
+ * Locators use this index instead of probing the class loader, which scans
+ * every entry of the source path on each lookup.
+ * <p>
+ * The directories of the source path are indexed lazily: the content of a
+ * directory is listed the first time a resource is looked-up in it, and is
+ * listed again only if the modification time of the directory changes. Hence,
+ * lookups of missing resources (typically binary files that have not been
+ * generated yet) are answered from the index too. Class loaders that are not
+ * {@link URLClassLoader} (typically the class loader of the compiler itself)
+ * are probed once per resource name and their answers are cached.
+ */
+public final class SourcePathIndex {
+
+  private static final String INDEXES_CONTEXT_KEY = "source-path-indexes";
+
+  private final Root[]        roots;
+
+  private SourcePathIndex(final ClassLoader classLoader) {
+    final List<Root> rootList = new ArrayList<Root>();
+    addRoots(classLoader, rootList);
+    roots = rootList.toArray(new Root[rootList.size()]);
+  }
+
+  /**
+   * Returns the index of the given class loader. Indexes are stored in the
+   * given context, so that the content of directories is listed once per
+   * compilation.
+   * 
+   * @param classLoader the class loader to index.
+   * @param context the context. May be <code>null</code>, in which case a new
+   *          index is returned.
+   * @return the index of the given class loader.
+   */
+  @SuppressWarnings("unchecked")
+  public static SourcePathIndex getIndex(final ClassLoader classLoader,
+      final Map<Object, Object> context) {
+    if (context == null) return new SourcePathIndex(classLoader);
+
+    synchronized (context) {
+      Map<ClassLoader, SourcePathIndex> indexes = (Map<ClassLoader, SourcePathIndex>) context
+          .get(INDEXES_CONTEXT_KEY);
+      if (indexes == null) {
+        indexes = new IdentityHashMap<ClassLoader, SourcePathIndex>();
+        context.put(INDEXES_CONTEXT_KEY, indexes);
+      }
+      SourcePathIndex index = indexes.get(classLoader);
+      if (index == null) {
+        index = new SourcePathIndex(classLoader);
+        indexes.put(classLoader, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Finds the first resource with the given name that is a file of the file
+   * system. This is equivalent to the first <code>file:</code> URL returned by
+   * {@link ClassLoader#getResources(String)}, resources that are contained in
+   * archives are ignored.
+   * 
+   * @param name the name of the resource (without leading '/').
+   * @return the URL of the file, or <code>null</code> if no such file exists.
+   */
+  public URL findFile(final String name) {
+    for (final Root root : roots) {
+      final URL url = root.findFile(name);
+      if (url != null) return url;
+    }
+    return null;
+  }
+
+  /**
+   * Finds the first resource with the given name. This is equivalent to
+   * {@link ClassLoader#getResource(String)}.
+   * 
+   * @param name the name of the resource (without leading '/').
+   * @return the URL of the resource, or <code>null</code> if no such resource
+   *         exists.
+   */
+  public URL findResource(final String name) {
+    for (final Root root : roots) {
+      final URL url = root.findResource(name);
+      if (url != null) return url;
+    }
+    return null;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  private static void addRoots(final ClassLoader classLoader,
+      final List<Root> rootList) {
+    if (classLoader == null) return;
+
+    if (!(classLoader instanceof URLClassLoader)) {
+      // the content of this class loader can't be indexed, but it is not
+      // expected to change during a compilation.
+      rootList.add(new ClassLoaderRoot(classLoader));
+      return;
+    }
+
+    // resources of the parent class loader have precedence.
+    addRoots(classLoader.getParent(), rootList);
+
+    for (final URL url : ((URLClassLoader) classLoader).getURLs()) {
+      File dir = null;
+      if ("file".equals(url.getProtocol())) {
+        try {
+          dir = new File(url.toURI());
+        } catch (final URISyntaxException e) {
+          dir = new File(url.getPath());
+        }
+      }
+      if (dir != null && dir.isDirectory())
+        rootList.add(new DirectoryRoot(dir));
+      else
+        rootList.add(new ClassLoaderRoot(new URLClassLoader(new URL[]{url},
+            null)));
+    }
+  }
+
+  private abstract static class Root {
+    abstract URL findFile(String name);
+
+    abstract URL findResource(String name);
+  }
+
+  /** A directory of the source path, indexed lazily. */
+  private static final class DirectoryRoot extends Root {
+    final File                                  dir;
+    final ConcurrentMap<File, DirectoryContent> contents = new ConcurrentHashMap<File, DirectoryContent>();
+
+    DirectoryRoot(final File dir) {
+      this.dir = dir;
+    }
+
+    @Override
+    URL findFile(final String name) {
+      final String[] segments = name.split("/");
+      File current = dir;
+      for (final String segment : segments) {
+        if (segment.length() == 0) continue;
+        if (!getContent(current).contains(segment)) return null;
+        current = new File(current, segment);
+      }
+      try {
+        return current.toURI().toURL();
+      } catch (final MalformedURLException e) {
+        return null;
+      }
+    }
+
+    @Override
+    URL findResource(final String name) {
+      return findFile(name);
+    }
+
+    private DirectoryContent getContent(final File directory) {
+      final long lastModified = directory.lastModified();
+      DirectoryContent content = contents.get(directory);
+      if (content == null || !content.isValid(lastModified)) {
+        content = new DirectoryContent(directory, lastModified);
+        contents.put(directory, content);
+      }
+      return content;
+    }
+  }
+
+  /** The names of the entries of a directory, at a given time. */
+  private static final class DirectoryContent {
+    final long        lastModified;
+    final boolean     racy;
+    final Set<String> names;
+
+    DirectoryContent(final File directory, final long lastModified) {
+      this.lastModified = lastModified;
+      // a file may be added in the same timestamp granule as the listing.
+      this.racy = FileTimestampHelper.isRacy(lastModified, System
+          .currentTimeMillis());
+      final String[] list = directory.list();
+      if (list == null)
+        names = Collections.emptySet();
+      else
+        names = new HashSet<String>(Arrays.asList(list));
+    }
+
+    boolean isValid(final long currentLastModified) {
+      return !racy && currentLastModified == lastModified;
+    }
+
+    boolean contains(final String name) {
+      return names.contains(name);
+    }
+  }
+
+  /** A class loader whose answers are cached. */
+  private static final class ClassLoaderRoot extends Root {
+    private static final URL         NOT_FOUND;
+    static {
+      try {
+        NOT_FOUND = new URL("file:/");
+      } catch (final MalformedURLException e) {
+        throw new Error(e);
+      }
+    }
+
+    final ClassLoader                classLoader;
+    final ConcurrentMap<String, URL> files     = new ConcurrentHashMap<String, URL>();
+    final ConcurrentMap<String, URL> resources = new ConcurrentHashMap<String, URL>();
+
+    ClassLoaderRoot(final ClassLoader classLoader) {
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    URL findFile(final String name) {
+      URL url = files.get(name);
+      if (url == null) {
+        url = NOT_FOUND;
+        try {
+          final Enumeration<URL> urls = classLoader.getResources(name);
+          while (urls.hasMoreElements()) {
+            final URL u = urls.nextElement();
+            if (u.getProtocol().equals("file")) {
+              url = u;
+              break;
+            }
+          }
+        } catch (final IOException e) {
+          // ignore, resource not found.
+        }
+        files.put(name, url);
+      }
+      return (url == NOT_FOUND) ? null : url;
+    }
+
+    @Override
+    URL findResource(final String name) {
+      URL url = resources.get(name);
+      if (url == null) {
+        url = classLoader.getResource(name);
+        if (url == null) url = NOT_FOUND;
+        resources.put(name, url);
+      }
+      return (url == NOT_FOUND) ? null : url;
+    }
+  }
+}
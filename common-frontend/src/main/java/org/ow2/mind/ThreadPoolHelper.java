@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper methods to create the pools of threads used by the compiler. Threads
+ * of these pools are daemon threads that terminate when they are idle, so that
+ * a pool never prevents the JVM from exiting and does not need to be shutdown
+ * explicitly.
+ */
+public final class ThreadPoolHelper {
+  private ThreadPoolHelper() {
+  }
+
+  /** Idle time (in seconds) after which the threads of a pool terminate. */
+  private static final long KEEP_ALIVE_TIME = 1;
+
+  /**
+   * Returns a new pool of daemon threads.
+   * 
+   * @param name the prefix of the names of the threads.
+   * @param nbThreads the maximal number of threads of the pool.
+   * @return a new pool of daemon threads.
+   */
+  public static ExecutorService newDaemonThreadPool(final String name,
+      final int nbThreads) {
+    final ThreadPoolExecutor pool = new ThreadPoolExecutor(nbThreads,
+        nbThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          final AtomicInteger threadNumber = new AtomicInteger();
+
+          public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, name + "-"
+                + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Returns the pool of daemon threads stored in the given context with the
+   * given key. The pool is created on the first call.
+   * 
+   * @param context the context.
+   * @param key the context key of the pool.
+   * @param name the prefix of the names of the threads.
+   * @param nbThreads the maximal number of threads of the pool.
+   * @return the pool of daemon threads of the given context.
+   * @see #newDaemonThreadPool(String, int)
+   */
+  public static ExecutorService getDaemonThreadPool(
+      final Map<Object, Object> context, final String key, final String name,
+      final int nbThreads) {
+    synchronized (context) {
+      ExecutorService executor = (ExecutorService) context.get(key);
+      if (executor == null) {
+        executor = newDaemonThreadPool(name, nbThreads);
+        context.put(key, executor);
+      }
+      return executor;
+    }
+  }
+}
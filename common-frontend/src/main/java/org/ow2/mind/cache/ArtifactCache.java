@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A cache of build artifacts that may be shared by several compilers, possibly
+ * running on different hosts. Artifacts are files identified by a key, which is
+ * a relative path made of '/' separated segments (for instance
+ * <code>"obj/3f/3f2a....o"</code>). Keys must be content-addressed (i.e. two
+ * artifacts with the same key must be interchangeable), so that the cache never
+ * has to be invalidated.
+ * <p>
+ * Implementations are contributed by plugins through the
+ * {@value ArtifactCacheHelper#ARTIFACT_CACHE_EXTENSION} extension point; the
+ * implementation is selected by the scheme of the
+ * {@link ArtifactCacheHelper#setArtifactCacheURL URL} of the cache. They must
+ * have a public no-arg constructor.
+ * 
+ * @see ArtifactCacheHelper#getArtifactCache
+ */
+public interface ArtifactCache {
+
+  /**
+   * Initializes this cache.
+   * 
+   * @param location the URL of the cache.
+   * @throws IOException if the cache can't be accessed.
+   */
+  void init(String location) throws IOException;
+
+  /**
+   * Retrieves the artifact with the given key. The given file is written
+   * atomically, so that it is never partially written, even if an error occurs.
+   * 
+   * @param key the key of the artifact.
+   * @param file the file into which the artifact is written.
+   * @return <code>true</code> if the artifact has been found,
+   *         <code>false</code> otherwise.
+   * @throws IOException if the artifact can't be retrieved.
+   */
+  boolean fetch(String key, File file) throws IOException;
+
+  /**
+   * Stores the given file with the given key.
+   * 
+   * @param key the key of the artifact.
+   * @param file the file to store.
+   * @throws IOException if the artifact can't be stored.
+   */
+  void store(String key, File file) throws IOException;
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.plugin.ConfigurationElement;
+import org.ow2.mind.plugin.PluginManager;
+
+/**
+ * Helper methods to access the shared {@link ArtifactCache} of a compilation
+ * context.
+ */
+public class ArtifactCacheHelper {
+
+  protected static Logger     ioLogger                       = FractalADLLogManager
+                                                                 .getLogger("io");
+
+  public static final String  ARTIFACT_CACHE_EXTENSION       = "org.ow2.mind.artifact-caches";
+
+  /** The context key of the URL of the shared artifact cache. */
+  public static final String  ARTIFACT_CACHE_URL_CONTEXT_KEY = "artifact-cache-url";
+
+  /** The context key of the artifact cache instance. */
+  private static final String ARTIFACT_CACHE_CONTEXT_KEY     = "artifact-cache";
+
+  private static final String CACHE                          = "cache";
+  private static final String SCHEME                         = "scheme";
+  private static final String CLASS                          = "class";
+
+  /** The scheme of locations that are not URLs (i.e. plain paths). */
+  public static final String  DEFAULT_SCHEME                 = "file";
+
+  /**
+   * The default time, in milliseconds, that {@link #flush(Map, long)} waits
+   * for pending uploads.
+   */
+  public static final long    FLUSH_TIMEOUT                  = 30000;
+
+  public static void setArtifactCacheURL(final Map<Object, Object> context,
+      final String url) {
+    context.put(ARTIFACT_CACHE_URL_CONTEXT_KEY, url);
+  }
+
+  public static String getArtifactCacheURL(final Map<Object, Object> context) {
+    return (String) context.get(ARTIFACT_CACHE_URL_CONTEXT_KEY);
+  }
+
+  /**
+   * Returns the artifact cache of the given context, or <code>null</code> if
+   * no artifact cache {@link #setArtifactCacheURL URL} is specified. The cache
+   * is instantiated once per context, using the {@link ArtifactCache}
+   * implementation contributed for the scheme of the URL. The returned cache
+   * {@link AsyncArtifactCache stores artifacts asynchronously}. If the cache
+   * can't be initialized, a warning is logged and <code>null</code> is
+   * returned; a build never fails because the shared cache is unavailable.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param context the context.
+   * @return the artifact cache of the given context.
+   */
+  public static ArtifactCache getArtifactCache(
+      final PluginManager pluginManagerItf, final Map<Object, Object> context) {
+    final String url = getArtifactCacheURL(context);
+    if (url == null) return null;
+    synchronized (context) {
+      final Object cache = context.get(ARTIFACT_CACHE_CONTEXT_KEY);
+      if (cache != null)
+        return (cache instanceof ArtifactCache) ? (ArtifactCache) cache : null;
+
+      ArtifactCache artifactCache = null;
+      try {
+        artifactCache = new AsyncArtifactCache(createArtifactCache(url,
+            pluginManagerItf));
+      } catch (final IOException e) {
+        if (ioLogger.isLoggable(Level.WARNING))
+          ioLogger.warning("Artifact cache \"" + url + "\" disabled: "
+              + e.getMessage());
+      }
+      // store Boolean.FALSE if the cache can't be initialized, to not retry.
+      context.put(ARTIFACT_CACHE_CONTEXT_KEY,
+          (artifactCache != null) ? artifactCache : Boolean.FALSE);
+      return artifactCache;
+    }
+  }
+
+  /**
+   * Returns the artifact cache of the given context, if it has already been
+   * instantiated by {@link #getArtifactCache(PluginManager, Map)}.
+   * 
+   * @param context the context.
+   * @return the artifact cache of the given context, or <code>null</code>.
+   */
+  public static ArtifactCache getArtifactCache(
+      final Map<Object, Object> context) {
+    synchronized (context) {
+      final Object cache = context.get(ARTIFACT_CACHE_CONTEXT_KEY);
+      return (cache instanceof ArtifactCache) ? (ArtifactCache) cache : null;
+    }
+  }
+
+  /**
+   * Waits until the artifacts stored in the artifact cache of the given context
+   * are uploaded, for at most the given time. Since artifacts are uploaded by a
+   * daemon thread, this method must be called before the JVM exits. Uploads
+   * that are still pending when the timeout elapses are abandoned and a
+   * warning is logged.
+   * 
+   * @param context the context.
+   * @param timeout the maximal time to wait, in milliseconds.
+   * @return <code>false</code> if the timeout elapsed before every artifact
+   *         is uploaded.
+   * @throws InterruptedException if the current thread is interrupted.
+   */
+  public static boolean flush(final Map<Object, Object> context,
+      final long timeout) throws InterruptedException {
+    final ArtifactCache cache = getArtifactCache(context);
+    if (!(cache instanceof AsyncArtifactCache)) return true;
+    if (((AsyncArtifactCache) cache).flush(timeout)) return true;
+    if (ioLogger.isLoggable(Level.WARNING))
+      ioLogger.warning("Artifact cache \"" + getArtifactCacheURL(context)
+          + "\" is too slow, pending uploads abandoned.");
+    return false;
+  }
+
+  /**
+   * Creates and initializes the {@link ArtifactCache} implementation that is
+   * contributed for the scheme of the given URL.
+   * 
+   * @param url the URL of the cache.
+   * @param pluginManagerItf the plugin manager.
+   * @return the initialized cache.
+   * @throws IOException if no implementation is contributed for the scheme of
+   *           the given URL, or if the cache can't be initialized.
+   */
+  public static ArtifactCache createArtifactCache(final String url,
+      final PluginManager pluginManagerItf) throws IOException {
+    final String scheme = getScheme(url);
+    for (final ConfigurationElement configElement : pluginManagerItf
+        .getConfigurationElements(ARTIFACT_CACHE_EXTENSION, CACHE)) {
+      if (scheme.equals(configElement.getAttribute(SCHEME))) {
+        final ArtifactCache cache = configElement.createInstance(CLASS,
+            ArtifactCache.class);
+        cache.init(url);
+        return cache;
+      }
+    }
+    throw new IOException("Unsupported artifact cache scheme \"" + scheme
+        + "\"");
+  }
+
+  /**
+   * Returns the scheme of the given location, or {@link #DEFAULT_SCHEME} if it
+   * is a plain path. Single letter schemes are considered as drive letters.
+   */
+  public static String getScheme(final String location) {
+    final int i = location.indexOf(':');
+    if (i <= 1) return DEFAULT_SCHEME;
+    for (int j = 0; j < i; j++) {
+      final char c = location.charAt(j);
+      if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.')
+        return DEFAULT_SCHEME;
+    }
+    return location.substring(0, i).toLowerCase();
+  }
+
+  /**
+   * Checks that the given key is a valid artifact key, i.e. a relative path
+   * that does not contain <code>".."</code> segments.
+   * 
+   * @throws IllegalArgumentException if the given key is invalid.
+   */
+  public static void checkKey(final String key) {
+    if (key.length() == 0 || key.startsWith("/") || key.endsWith("/")
+        || key.indexOf('\\') != -1 || ("/" + key + "/").contains("/../"))
+      throw new IllegalArgumentException("Invalid artifact key \"" + key
+          + "\"");
+  }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.io.AtomicFileHelper;
+
+/**
+ * {@link ArtifactCache} that stores artifacts asynchronously. Stored artifacts
+ * are queued and a writer thread uploads them by batches to the underlying
+ * cache, so that a slow (remote) cache never delays the compilation. Fetches
+ * are synchronous, but artifacts that are still queued are read locally.
+ * <p>
+ * The writer thread is started when artifacts are queued and terminates as
+ * soon as the queue is empty. It is a daemon thread, so that an unreachable
+ * cache never prevents the JVM from exiting; launchers must call
+ * {@link #flush(long)} before exiting to complete pending uploads.
+ * <p>
+ * The first error returned by the underlying cache disables it for the rest of
+ * the build: queued and subsequent artifacts are dropped and fetches are cache
+ * misses. This avoids paying a connection timeout for every artifact when the
+ * cache is unreachable.
+ */
+public class AsyncArtifactCache implements ArtifactCache {
+
+  protected static Logger         ioLogger       = FractalADLLogManager
+                                                     .getLogger("io");
+
+  /** The maximal number of artifacts uploaded by a batch. */
+  public static final int         MAX_BATCH_SIZE = 64;
+
+  protected final ArtifactCache   delegate;
+
+  /** The queued artifacts; also used as lock for {@link #writer}. */
+  private final Map<String, File> pending        = new LinkedHashMap<String, File>();
+
+  private Thread                  writer;
+
+  private volatile boolean        disabled;
+
+  public AsyncArtifactCache(final ArtifactCache delegate) {
+    this.delegate = delegate;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Implementation of the ArtifactCache interface
+  // ---------------------------------------------------------------------------
+
+  public void init(final String location) throws IOException {
+    delegate.init(location);
+  }
+
+  public boolean fetch(final String key, final File file) throws IOException {
+    if (disabled) return false;
+    final File pendingFile;
+    synchronized (pending) {
+      pendingFile = pending.get(key);
+    }
+    if (pendingFile != null && pendingFile.isFile()) {
+      AtomicFileHelper.copy(pendingFile, file);
+      return true;
+    }
+    try {
+      return delegate.fetch(key, file);
+    } catch (final IOException e) {
+      disable("Can't fetch artifact \"" + key + "\"", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Queues the given artifact. The given file must not be modified until it
+   * is uploaded, other than by being atomically replaced by a newer version of
+   * the same artifact.
+   */
+  public void store(final String key, final File file) {
+    ArtifactCacheHelper.checkKey(key);
+    if (disabled) return;
+    synchronized (pending) {
+      pending.put(key, file);
+      if (writer == null) {
+        writer = new Thread(new Writer(), "mindc-artifact-cache-writer");
+        writer.setDaemon(true);
+        writer.start();
+      }
+    }
+  }
+
+  /**
+   * Waits until every queued artifact is uploaded.
+   * 
+   * @throws InterruptedException if the current thread is interrupted.
+   */
+  public void flush() throws InterruptedException {
+    synchronized (pending) {
+      while (writer != null) {
+        pending.wait();
+      }
+    }
+  }
+
+  /**
+   * Waits until every queued artifact is uploaded, or until the given timeout
+   * elapses.
+   * 
+   * @param timeout the maximal time to wait, in milliseconds.
+   * @return <code>true</code> if every queued artifact is uploaded,
+   *         <code>false</code> if the timeout elapsed before.
+   * @throws InterruptedException if the current thread is interrupted.
+   */
+  public boolean flush(final long timeout) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeout;
+    synchronized (pending) {
+      while (writer != null) {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) return false;
+        pending.wait(remaining);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if this cache has been disabled after an error of
+   *         the underlying cache.
+   */
+  public boolean isDisabled() {
+    return disabled;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  protected void writeBatch(final List<String> keys, final List<File> files) {
+    if (ioLogger.isLoggable(Level.FINE))
+      ioLogger.fine("Upload " + keys.size() + " artifact(s) to cache.");
+    for (int i = 0; i < keys.size() && !disabled; i++) {
+      final File file = files.get(i);
+      // the file may have been removed, for instance by a cache eviction.
+      if (!file.isFile()) continue;
+      try {
+        delegate.store(keys.get(i), file);
+      } catch (final IOException e) {
+        disable("Can't store artifact \"" + keys.get(i) + "\"", e);
+      }
+    }
+  }
+
+  protected void disable(final String message, final IOException e) {
+    synchronized (pending) {
+      if (disabled) return;
+      disabled = true;
+      pending.clear();
+    }
+    // warn only once, next errors would likely have the same cause.
+    if (ioLogger.isLoggable(Level.WARNING))
+      ioLogger.warning(message + ", artifact cache disabled: "
+          + e.getMessage());
+    if (ioLogger.isLoggable(Level.FINE))
+      ioLogger.log(Level.FINE, message, e);
+  }
+
+  private final class Writer implements Runnable {
+    public void run() {
+      final List<String> keys = new ArrayList<String>(MAX_BATCH_SIZE);
+      final List<File> files = new ArrayList<File>(MAX_BATCH_SIZE);
+      boolean done = false;
+      try {
+        while (true) {
+          keys.clear();
+          files.clear();
+          synchronized (pending) {
+            if (pending.isEmpty()) {
+              writer = null;
+              pending.notifyAll();
+              done = true;
+              return;
+            }
+            final Iterator<Map.Entry<String, File>> iter = pending.entrySet()
+                .iterator();
+            while (iter.hasNext() && keys.size() < MAX_BATCH_SIZE) {
+              final Map.Entry<String, File> entry = iter.next();
+              keys.add(entry.getKey());
+              files.add(entry.getValue());
+              iter.remove();
+            }
+          }
+          writeBatch(keys, files);
+        }
+      } finally {
+        if (!done) {
+          synchronized (pending) {
+            // artifacts still queued after an unexpected error are dropped.
+            pending.clear();
+            writer = null;
+            pending.notifyAll();
+          }
+        }
+      }
+    }
+  }
+}
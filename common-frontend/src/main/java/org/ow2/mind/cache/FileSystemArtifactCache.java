@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.ow2.mind.io.AtomicFileHelper;
+
+/**
+ * {@link ArtifactCache} implementation that stores artifacts in a directory,
+ * typically on a file system that is shared by several hosts. The location of
+ * the cache is either a <code>file:</code> URL or a plain path. Every file is
+ * written in a temporary file that is then renamed, so that concurrent
+ * compilers sharing the same directory never read partial files.
+ */
+public class FileSystemArtifactCache implements ArtifactCache {
+
+  protected File rootDir;
+
+  public void init(final String location) throws IOException {
+    if (location.startsWith("file:/")) {
+      try {
+        rootDir = new File(new URI(location));
+      } catch (final URISyntaxException e) {
+        throw new IOException("Invalid artifact cache URL \"" + location
+            + "\"");
+      } catch (final IllegalArgumentException e) {
+        throw new IOException("Invalid artifact cache URL \"" + location
+            + "\"");
+      }
+    } else if (location.startsWith("file:")) {
+      rootDir = new File(location.substring("file:".length()));
+    } else {
+      rootDir = new File(location);
+    }
+    if (!rootDir.isDirectory() && !rootDir.mkdirs() && !rootDir.isDirectory())
+      throw new IOException("Can't create artifact cache directory \""
+          + rootDir + "\"");
+  }
+
+  public boolean fetch(final String key, final File file) throws IOException {
+    final File cachedFile = getFile(key);
+    if (!cachedFile.isFile()) return false;
+    AtomicFileHelper.copy(cachedFile, file);
+    return true;
+  }
+
+  public void store(final String key, final File file) throws IOException {
+    AtomicFileHelper.copy(file, getFile(key));
+  }
+
+  protected File getFile(final String key) {
+    ArtifactCacheHelper.checkKey(key);
+    return new File(rootDir, key.replace('/', File.separatorChar));
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.ow2.mind.io.AtomicFileHelper;
+
+/**
+ * {@link ArtifactCache} implementation that accesses artifacts on an HTTP
+ * server. The artifact with key <code>k</code> is retrieved with a
+ * <code>GET</code> request on <code>&lt;location&gt;/k</code> and is stored
+ * with a <code>PUT</code> request on the same URL. A <code>404</code> response
+ * to a <code>GET</code> request is a cache miss. This protocol is supported by
+ * most WebDAV servers and by plain HTTP caches such as the ones commonly used
+ * by CI farms.
+ */
+public class HttpArtifactCache implements ArtifactCache {
+
+  /** The timeout, in milliseconds, used to connect to the server. */
+  public static final int CONNECT_TIMEOUT = 10000;
+
+  /** The timeout, in milliseconds, used to read responses of the server. */
+  public static final int READ_TIMEOUT    = 60000;
+
+  protected String        baseURL;
+
+  public void init(final String location) throws IOException {
+    // check that the location is a valid URL.
+    new URL(location);
+    baseURL = location.endsWith("/") ? location : location + "/";
+  }
+
+  public boolean fetch(final String key, final File file) throws IOException {
+    final HttpURLConnection connection = openConnection(key);
+    connection.setRequestMethod("GET");
+    final int code = connection.getResponseCode();
+    if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+      closeErrorStream(connection);
+      return false;
+    }
+    if (code != HttpURLConnection.HTTP_OK) {
+      closeErrorStream(connection);
+      throw new HttpStatusException("Can't get \"" + connection.getURL()
+          + "\", server replied " + code, code);
+    }
+    final InputStream in = connection.getInputStream();
+    try {
+      AtomicFileHelper.copy(in, file);
+    } finally {
+      in.close();
+    }
+    return true;
+  }
+
+  public void store(final String key, final File file) throws IOException {
+    try {
+      put(key, file);
+    } catch (final HttpStatusException e) {
+      // the server received the request and rejected it, retrying is useless.
+      throw e;
+    } catch (final IOException e) {
+      // the request may have been sent on a pooled connection that has been
+      // closed by the server. Unlike other requests, streamed requests are not
+      // retried by HttpURLConnection, so retry once.
+      put(key, file);
+    }
+  }
+
+  protected void put(final String key, final File file) throws IOException {
+    final HttpURLConnection connection = openConnection(key);
+    connection.setRequestMethod("PUT");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/octet-stream");
+    connection.setFixedLengthStreamingMode((int) file.length());
+
+    final InputStream in = new FileInputStream(file);
+    try {
+      final OutputStream out = connection.getOutputStream();
+      try {
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, n);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+
+    final int code = connection.getResponseCode();
+    if (code < 200 || code >= 300) {
+      closeErrorStream(connection);
+      throw new HttpStatusException("Can't put \"" + connection.getURL()
+          + "\", server replied " + code, code);
+    }
+    connection.getInputStream().close();
+  }
+
+  protected HttpURLConnection openConnection(final String key)
+      throws IOException {
+    ArtifactCacheHelper.checkKey(key);
+    final HttpURLConnection connection = (HttpURLConnection) new URL(baseURL
+        + key).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    connection.setReadTimeout(READ_TIMEOUT);
+    connection.setUseCaches(false);
+    return connection;
+  }
+
+  /**
+   * Reads the error stream of the given connection, so that the underlying
+   * connection can be reused for the next request.
+   */
+  protected void closeErrorStream(final HttpURLConnection connection)
+      throws IOException {
+    final InputStream err = connection.getErrorStream();
+    if (err == null) return;
+    try {
+      final byte[] buffer = new byte[1024];
+      while (err.read(buffer) >= 0) {
+        // skip
+      }
+    } finally {
+      err.close();
+    }
+  }
+
+  /**
+   * Exception thrown when the server replies to a request with an unexpected
+   * status code.
+   */
+  public static class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final int       statusCode;
+
+    public HttpStatusException(final String message, final int statusCode) {
+      super(message);
+      this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the status code of the response of the server.
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+  }
+}
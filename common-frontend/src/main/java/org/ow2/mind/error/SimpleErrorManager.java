@@ -27,6 +27,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,8 +53,11 @@ public class SimpleErrorManager implements ErrorManager {
   protected static Logger     logger   = FractalADLLogManager
                                            .getLogger("error");
 
-  protected final List<Error> errors   = new ArrayList<Error>();
-  protected final List<Error> warnings = new ArrayList<Error>();
+  // errors may be logged concurrently by several threads.
+  protected final List<Error> errors   = Collections
+                                           .synchronizedList(new ArrayList<Error>());
+  protected final List<Error> warnings = Collections
+                                           .synchronizedList(new ArrayList<Error>());
 
   public void logError(final Error error) throws ADLException {
     errors.add(error);
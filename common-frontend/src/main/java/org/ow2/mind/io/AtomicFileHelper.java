@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper methods to write files atomically. A file is first written in a
+ * temporary file of the same directory that is then renamed, so that readers
+ * (including concurrent compilers sharing the same directory) never see a
+ * partially written file.
+ */
+public final class AtomicFileHelper {
+  private AtomicFileHelper() {
+  }
+
+  /**
+   * Creates a temporary file in the directory of the given file. The directory
+   * is created if it does not exist.
+   * 
+   * @param file the file that will be replaced by the temporary file.
+   * @return a new temporary file.
+   * @throws IOException if the temporary file can't be created.
+   */
+  public static File createTempFile(final File file) throws IOException {
+    final File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+      throw new IOException("Can't create directory \"" + dir + "\"");
+    return File.createTempFile(file.getName() + ".", ".tmp", dir);
+  }
+
+  /**
+   * Renames the given temporary file to the given file, replacing it if it
+   * exists. The temporary file is deleted if it can't be renamed.
+   * 
+   * @param tmpFile the file to rename.
+   * @param file the new name.
+   * @throws IOException if the file can't be renamed.
+   */
+  public static void replace(final File tmpFile, final File file)
+      throws IOException {
+    if (tmpFile.renameTo(file)) return;
+    // on some platforms, renameTo fails if the target file exists.
+    file.delete();
+    if (!tmpFile.renameTo(file)) {
+      tmpFile.delete();
+      throw new IOException("Can't rename \"" + tmpFile + "\" to \"" + file
+          + "\"");
+    }
+  }
+
+  /**
+   * Copies the given file atomically.
+   * 
+   * @param from the file to copy.
+   * @param to the target file.
+   * @throws IOException if the file can't be copied.
+   */
+  public static void copy(final File from, final File to) throws IOException {
+    final File tmpFile = createTempFile(to);
+    try {
+      final FileChannel in = new FileInputStream(from).getChannel();
+      try {
+        final FileChannel out = new FileOutputStream(tmpFile).getChannel();
+        try {
+          final long size = in.size();
+          long position = 0;
+          while (position < size) {
+            position += in.transferTo(position, size - position, out);
+          }
+        } finally {
+          out.close();
+        }
+      } finally {
+        in.close();
+      }
+      replace(tmpFile, to);
+    } finally {
+      // does nothing if the file has been renamed.
+      tmpFile.delete();
+    }
+  }
+
+  /**
+   * Writes the content of the given stream in the given file atomically.
+   * 
+   * @param in the stream to copy; it is not closed by this method.
+   * @param to the target file.
+   * @throws IOException if the file can't be written.
+   */
+  public static void copy(final InputStream in, final File to)
+      throws IOException {
+    final File tmpFile = createTempFile(to);
+    try {
+      final OutputStream out = new FileOutputStream(tmpFile);
+      try {
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, n);
+        }
+      } finally {
+        out.close();
+      }
+      replace(tmpFile, to);
+    } finally {
+      tmpFile.delete();
+    }
+  }
+}
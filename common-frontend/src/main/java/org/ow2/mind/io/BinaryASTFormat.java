@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.io;
+
+/**
+ * Constants of the binary AST format written by {@link BinaryASTOutputStream}
+ * and read by {@link BinaryASTInputStream}.
+ * <p>
+ * A binary AST file starts with a {@link #MAGIC magic number} followed by the
+ * {@link #VERSION version} of the format. It then contains a single value that
+ * is encoded as a one byte tag followed by a tag specific payload. Integers are
+ * encoded as variable length quantities (seven bits per byte, least
+ * significant group first). Strings and node classes are interned: their first
+ * occurrence is written in full and implicitly receives the next index of the
+ * string (resp. node class) table, further occurrences are written as
+ * <code>index + 2</code> (<code>0</code> denoting <code>null</code> and
+ * <code>1</code> introducing a new entry). Nodes are
+ * given an handle in the order they are written, so that a node that is
+ * referenced several times (for instance by a decoration) is written only
+ * once.
+ */
+final class BinaryASTFormat {
+  private BinaryASTFormat() {
+  }
+
+  static final byte[] MAGIC              = {'M', 'A', 'S', 'T'};
+
+  /**
+   * The version of the format. Must be incremented each time the encoding
+   * changes, so that files written by older compilers are ignored.
+   */
+  static final int    VERSION            = 1;
+
+  static final int    REF_NULL           = 0;
+  static final int    REF_NEW            = 1;
+  static final int    REF_OFFSET         = 2;
+
+  static final byte   TAG_NULL           = 0;
+  static final byte   TAG_NODE           = 1;
+  static final byte   TAG_NODE_REF       = 2;
+  static final byte   TAG_STRING         = 3;
+  static final byte   TAG_TRUE           = 4;
+  static final byte   TAG_FALSE          = 5;
+  static final byte   TAG_INT            = 6;
+  static final byte   TAG_LONG           = 7;
+  static final byte   TAG_LIST           = 8;
+  static final byte   TAG_SET            = 9;
+  static final byte   TAG_LINKED_SET     = 10;
+  static final byte   TAG_MAP            = 11;
+  static final byte   TAG_INPUT_RESOURCE = 12;
+  static final byte   TAG_SERIALIZED     = 13;
+}
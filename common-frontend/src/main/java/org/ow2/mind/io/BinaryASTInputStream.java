@@ -0,0 +1,392 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.io;
+
+import static org.ow2.mind.io.BinaryASTFormat.MAGIC;
+import static org.ow2.mind.io.BinaryASTFormat.REF_NEW;
+import static org.ow2.mind.io.BinaryASTFormat.REF_NULL;
+import static org.ow2.mind.io.BinaryASTFormat.REF_OFFSET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_FALSE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_INPUT_RESOURCE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_INT;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LINKED_SET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LIST;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LONG;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_MAP;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NODE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NODE_REF;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NULL;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_SERIALIZED;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_SET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_STRING;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_TRUE;
+import static org.ow2.mind.io.BinaryASTFormat.VERSION;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.NodeFactory;
+import org.objectweb.fractal.adl.io.NodeInputStream;
+import org.ow2.mind.InputResource;
+
+/**
+ * Reads AST written by {@link BinaryASTOutputStream}. Node classes are created
+ * once per file using a {@link NodeFactory}; nodes are then instantiated with
+ * {@link Node#astNewInstance()} on a prototype of their class.
+ */
+public class BinaryASTInputStream {
+
+  /**
+   * Maximal length of the strings, arrays and collections that can be read. A
+   * greater length denotes a corrupted stream; it is rejected before anything
+   * is allocated.
+   */
+  protected static final int      MAX_LENGTH  = 1 << 24;
+
+  protected final InputStream     in;
+  protected final NodeFactory     nodeFactory;
+  protected final byte[]          buffer      = new byte[8192];
+  protected int                   pos         = 0;
+  protected int                   limit       = 0;
+
+  protected final List<String>    strings     = new ArrayList<String>();
+  protected final List<NodeClass> nodeClasses = new ArrayList<NodeClass>();
+  protected final List<Node>      nodes       = new ArrayList<Node>();
+
+  /**
+   * Creates a new stream that reads from the given input stream, and checks the
+   * header of the binary format.
+   * 
+   * @param in the underlying input stream. It does not need to be buffered.
+   * @param nodeFactory the factory used to create the node classes.
+   * @throws StreamCorruptedException if the given stream does not start with a
+   *           valid header, or if the header does not correspond to the
+   *           current version of the format (the stream has probably been
+   *           written by another version of the compiler).
+   * @throws IOException if an I/O error occurs.
+   */
+  public BinaryASTInputStream(final InputStream in,
+      final NodeFactory nodeFactory) throws IOException {
+    this.in = in;
+    this.nodeFactory = nodeFactory;
+    for (final byte b : MAGIC) {
+      if (readByte() != b)
+        throw new StreamCorruptedException("Invalid binary AST header");
+    }
+    final int version = readVarInt();
+    if (version != VERSION)
+      throw new StreamCorruptedException("Unsupported binary AST version "
+          + version);
+  }
+
+  /**
+   * Reads an AST.
+   * 
+   * @return the root node of the read AST.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if a node class or the class of a
+   *           decoration can't be found.
+   */
+  public Node readNode() throws IOException, ClassNotFoundException {
+    final Object value = readValue();
+    if (value != null && !(value instanceof Node))
+      throw new StreamCorruptedException("Binary AST does not contain a node");
+    return (Node) value;
+  }
+
+  /**
+   * Closes the underlying stream.
+   * 
+   * @throws IOException if an I/O error occurs.
+   */
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Values
+  // ---------------------------------------------------------------------------
+
+  protected Object readValue() throws IOException, ClassNotFoundException {
+    final int tag = readByte();
+    switch (tag) {
+      case TAG_NULL :
+        return null;
+      case TAG_NODE :
+        return readNodeContent();
+      case TAG_NODE_REF : {
+        final int handle = readVarInt();
+        if (handle >= nodes.size())
+          throw new StreamCorruptedException("Invalid node handle " + handle);
+        return nodes.get(handle);
+      }
+      case TAG_STRING :
+        return readString();
+      case TAG_TRUE :
+        return Boolean.TRUE;
+      case TAG_FALSE :
+        return Boolean.FALSE;
+      case TAG_INT :
+        return (int) unZigZag(readVarLong());
+      case TAG_LONG :
+        return unZigZag(readVarLong());
+      case TAG_INPUT_RESOURCE : {
+        final String kind = readString();
+        return new InputResource(kind, readString());
+      }
+      case TAG_LIST : {
+        final int size = readLength();
+        return readElements(new ArrayList<Object>(size), size);
+      }
+      case TAG_SET : {
+        final int size = readLength();
+        return readElements(new HashSet<Object>(), size);
+      }
+      case TAG_LINKED_SET : {
+        final int size = readLength();
+        return readElements(new LinkedHashSet<Object>(), size);
+      }
+      case TAG_MAP : {
+        final int size = readLength();
+        final Map<Object, Object> map = new HashMap<Object, Object>();
+        for (int i = 0; i < size; i++) {
+          final Object key = readValue();
+          map.put(key, readValue());
+        }
+        return map;
+      }
+      case TAG_SERIALIZED : {
+        final byte[] bytes = new byte[readLength()];
+        readBytes(bytes);
+        final NodeInputStream nis = new NodeInputStream(
+            new ByteArrayInputStream(bytes), nodeFactory.getClassLoader());
+        try {
+          return nis.readObject();
+        } finally {
+          nis.close();
+        }
+      }
+      default :
+        throw new StreamCorruptedException("Invalid binary AST tag " + tag);
+    }
+  }
+
+  protected Collection<Object> readElements(final Collection<Object> elements,
+      final int size) throws IOException, ClassNotFoundException {
+    for (int i = 0; i < size; i++) {
+      elements.add(readValue());
+    }
+    return elements;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Nodes
+  // ---------------------------------------------------------------------------
+
+  protected Node readNodeContent() throws IOException, ClassNotFoundException {
+    final NodeClass nodeClass = readNodeClass();
+    final Node node = nodeClass.prototype.astNewInstance();
+    // register the node before reading its content, since it may be
+    // referenced by its decorations or sub-nodes.
+    nodes.add(node);
+
+    node.astSetSource(readString());
+
+    final String[] attributeNames = nodeClass.attributeNames;
+    if (attributeNames.length > 0) {
+      final Map<String, String> attributes = new HashMap<String, String>(
+          attributeNames.length * 2);
+      for (final String attributeName : attributeNames) {
+        attributes.put(attributeName, readString());
+      }
+      node.astSetAttributes(attributes);
+    }
+
+    final int nbDecorations = readLength();
+    for (int i = 0; i < nbDecorations; i++) {
+      final String name = readString();
+      node.astSetDecoration(name, readValue());
+    }
+
+    final int nbSubNodes = readLength();
+    for (int i = 0; i < nbSubNodes; i++) {
+      final Object subNode = readValue();
+      if (!(subNode instanceof Node))
+        throw new StreamCorruptedException("Invalid sub-node in binary AST");
+      node.astAddNode((Node) subNode);
+    }
+    return node;
+  }
+
+  protected NodeClass readNodeClass() throws IOException,
+      ClassNotFoundException {
+    final int ref = readVarInt();
+    if (ref != REF_NEW) {
+      final int index = ref - REF_OFFSET;
+      if (index < 0 || index >= nodeClasses.size())
+        throw new StreamCorruptedException("Invalid node class index " + index);
+      return nodeClasses.get(index);
+    }
+
+    final String type = readString();
+    final String[] interfaceNames = new String[readLength()];
+    for (int i = 0; i < interfaceNames.length; i++) {
+      interfaceNames[i] = readString();
+    }
+    final String[] attributeNames = new String[readLength()];
+    for (int i = 0; i < attributeNames.length; i++) {
+      attributeNames[i] = readString();
+    }
+    final NodeClass nodeClass = new NodeClass(nodeFactory.newNode(type,
+        interfaceNames), attributeNames);
+    nodeClasses.add(nodeClass);
+    return nodeClass;
+  }
+
+  /**
+   * Description of the class of the read nodes.
+   */
+  protected static final class NodeClass {
+    final Node     prototype;
+    final String[] attributeNames;
+
+    NodeClass(final Node prototype, final String[] attributeNames) {
+      this.prototype = prototype;
+      this.attributeNames = attributeNames;
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Primitive decoding
+  // ---------------------------------------------------------------------------
+
+  protected String readString() throws IOException {
+    final int ref = readVarInt();
+    if (ref == REF_NULL) return null;
+    if (ref != REF_NEW) {
+      final int index = ref - REF_OFFSET;
+      if (index < 0 || index >= strings.size())
+        throw new StreamCorruptedException("Invalid string index " + index);
+      return strings.get(index);
+    }
+
+    final int length = readLength();
+    final String s;
+    if (length <= buffer.length) {
+      ensureAvailable(length);
+      s = new String(buffer, pos, length, "UTF-8");
+      pos += length;
+    } else {
+      final byte[] bytes = new byte[length];
+      readBytes(bytes);
+      s = new String(bytes, "UTF-8");
+    }
+    strings.add(s);
+    return s;
+  }
+
+  protected static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a non-negative integer written by
+   * {@link BinaryASTOutputStream#writeVarInt(int)}.
+   * 
+   * @throws StreamCorruptedException if the read value is negative or does not
+   *           fit in an <code>int</code>.
+   */
+  protected int readVarInt() throws IOException {
+    final long value = readVarLong();
+    if ((value & ~0x7FFFFFFFL) != 0)
+      throw new StreamCorruptedException("Invalid integer in binary AST");
+    return (int) value;
+  }
+
+  /**
+   * Reads the length of a string, an array or a collection.
+   * 
+   * @throws StreamCorruptedException if the read length is greater than
+   *           {@link #MAX_LENGTH}.
+   */
+  protected int readLength() throws IOException {
+    final int length = readVarInt();
+    if (length > MAX_LENGTH)
+      throw new StreamCorruptedException("Invalid length " + length
+          + " in binary AST");
+    return length;
+  }
+
+  protected long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new StreamCorruptedException("Invalid integer in binary AST");
+  }
+
+  protected int readByte() throws IOException {
+    if (pos == limit) ensureAvailable(1);
+    return buffer[pos++] & 0xFF;
+  }
+
+  protected void readBytes(final byte[] b) throws IOException {
+    int off = Math.min(limit - pos, b.length);
+    System.arraycopy(buffer, pos, b, 0, off);
+    pos += off;
+    while (off < b.length) {
+      final int n = in.read(b, off, b.length - off);
+      if (n < 0) throw new EOFException();
+      off += n;
+    }
+  }
+
+  /**
+   * Ensures that at least <code>n</code> bytes are available in the buffer.
+   * <code>n</code> must not be greater than the size of the buffer.
+   */
+  protected void ensureAvailable(final int n) throws IOException {
+    if (limit - pos >= n) return;
+    System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+    limit -= pos;
+    pos = 0;
+    while (limit < n) {
+      final int read = in.read(buffer, limit, buffer.length - limit);
+      if (read < 0) throw new EOFException();
+      limit += read;
+    }
+  }
+}
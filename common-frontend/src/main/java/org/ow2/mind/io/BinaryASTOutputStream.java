@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.io;
+
+import static org.ow2.mind.io.BinaryASTFormat.MAGIC;
+import static org.ow2.mind.io.BinaryASTFormat.REF_NEW;
+import static org.ow2.mind.io.BinaryASTFormat.REF_NULL;
+import static org.ow2.mind.io.BinaryASTFormat.REF_OFFSET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_FALSE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_INPUT_RESOURCE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_INT;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LINKED_SET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LIST;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_LONG;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_MAP;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NODE;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NODE_REF;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_NULL;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_SERIALIZED;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_SET;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_STRING;
+import static org.ow2.mind.io.BinaryASTFormat.TAG_TRUE;
+import static org.ow2.mind.io.BinaryASTFormat.VERSION;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.io.NodeOutputStream;
+import org.ow2.mind.InputResource;
+
+/**
+ * Writes AST in the compact binary format described in {@link BinaryASTFormat}
+ * . Contrary to {@link NodeOutputStream}, the node classes are described only
+ * once per file (type, implemented interfaces and attribute names), so that
+ * each node is encoded as its attribute values, its decorations and its
+ * sub-nodes. Decorations of common types (strings, booleans, numbers, nodes,
+ * collections and {@link InputResource}) are encoded directly; other
+ * {@link Serializable} decorations are serialized using a
+ * {@link NodeOutputStream}. As with {@link NodeOutputStream}, decorations that
+ * are not {@link Serializable} are not written.
+ * 
+ * @see BinaryASTInputStream
+ */
+public class BinaryASTOutputStream {
+
+  protected final OutputStream             out;
+  protected final byte[]                   buffer      = new byte[8192];
+  protected int                            count       = 0;
+
+  protected final Map<String, Integer>     strings     = new HashMap<String, Integer>();
+  protected final Map<Class<?>, NodeClass> nodeClasses = new IdentityHashMap<Class<?>, NodeClass>();
+  protected final Map<Node, Integer>       nodeHandles = new IdentityHashMap<Node, Integer>();
+
+  /**
+   * Creates a new stream that writes to the given output stream, and writes the
+   * header of the binary format.
+   * 
+   * @param out the underlying output stream. It does not need to be buffered.
+   * @throws IOException if an I/O error occurs.
+   */
+  public BinaryASTOutputStream(final OutputStream out) throws IOException {
+    this.out = out;
+    writeBytes(MAGIC, 0, MAGIC.length);
+    writeVarInt(VERSION);
+  }
+
+  /**
+   * Writes the given AST.
+   * 
+   * @param node the root node of the AST to write.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeNode(final Node node) throws IOException {
+    writeValue(node);
+  }
+
+  /**
+   * Flushes the content of the internal buffer to the underlying stream.
+   * 
+   * @throws IOException if an I/O error occurs.
+   */
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  /**
+   * Flushes and closes the underlying stream.
+   * 
+   * @throws IOException if an I/O error occurs.
+   */
+  public void close() throws IOException {
+    try {
+      flushBuffer();
+    } finally {
+      out.close();
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Values
+  // ---------------------------------------------------------------------------
+
+  protected void writeValue(final Object value) throws IOException {
+    if (value == null) {
+      writeByte(TAG_NULL);
+    } else if (value instanceof Node) {
+      final Node node = (Node) value;
+      final Integer handle = nodeHandles.get(node);
+      if (handle != null) {
+        writeByte(TAG_NODE_REF);
+        writeVarInt(handle);
+      } else {
+        writeByte(TAG_NODE);
+        nodeHandles.put(node, nodeHandles.size());
+        writeNodeContent(node);
+      }
+    } else if (value instanceof String) {
+      writeByte(TAG_STRING);
+      writeString((String) value);
+    } else if (value instanceof Boolean) {
+      writeByte(((Boolean) value) ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Integer) {
+      writeByte(TAG_INT);
+      writeVarLong(zigZag((Integer) value));
+    } else if (value instanceof Long) {
+      writeByte(TAG_LONG);
+      writeVarLong(zigZag((Long) value));
+    } else if (value.getClass() == InputResource.class) {
+      final InputResource resource = (InputResource) value;
+      writeByte(TAG_INPUT_RESOURCE);
+      writeString(resource.getKind());
+      writeString(resource.getName());
+    } else if (value.getClass() == ArrayList.class) {
+      writeByte(TAG_LIST);
+      writeElements((Collection<?>) value);
+    } else if (value.getClass() == HashSet.class) {
+      writeByte(TAG_SET);
+      writeElements((Collection<?>) value);
+    } else if (value.getClass() == LinkedHashSet.class) {
+      writeByte(TAG_LINKED_SET);
+      writeElements((Collection<?>) value);
+    } else if (value.getClass() == HashMap.class) {
+      final Map<?, ?> map = (Map<?, ?>) value;
+      writeByte(TAG_MAP);
+      writeVarInt(map.size());
+      for (final Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(entry.getKey());
+        writeValue(entry.getValue());
+      }
+    } else if (value instanceof Serializable) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final NodeOutputStream nos = new NodeOutputStream(bytes);
+      nos.writeObject(value);
+      nos.close();
+      writeByte(TAG_SERIALIZED);
+      writeVarInt(bytes.size());
+      writeBytes(bytes.toByteArray(), 0, bytes.size());
+    } else {
+      throw new NotSerializableException(value.getClass().getName());
+    }
+  }
+
+  protected void writeElements(final Collection<?> elements)
+      throws IOException {
+    writeVarInt(elements.size());
+    for (final Object element : elements) {
+      writeValue(element);
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Nodes
+  // ---------------------------------------------------------------------------
+
+  protected void writeNodeContent(final Node node) throws IOException {
+    final NodeClass nodeClass = writeNodeClass(node);
+
+    writeString(node.astGetSource());
+
+    final Map<String, String> attributes = node.astGetAttributes();
+    for (final String attributeName : nodeClass.attributeNames) {
+      writeString(attributes.get(attributeName));
+    }
+
+    final Map<String, Object> decorations = node.astGetDecorations();
+    int nbDecorations = 0;
+    if (decorations != null) {
+      for (final Object decoration : decorations.values()) {
+        if (isWritableDecoration(decoration)) nbDecorations++;
+      }
+    }
+    writeVarInt(nbDecorations);
+    if (nbDecorations > 0) {
+      for (final Map.Entry<String, Object> decoration : decorations.entrySet()) {
+        if (isWritableDecoration(decoration.getValue())) {
+          writeString(decoration.getKey());
+          writeValue(decoration.getValue());
+        }
+      }
+    }
+
+    final String[] nodeTypes = node.astGetNodeTypes();
+    int nbSubNodes = 0;
+    if (nodeTypes != null) {
+      for (final String nodeType : nodeTypes) {
+        for (final Node subNode : node.astGetNodes(nodeType)) {
+          if (subNode != null) nbSubNodes++;
+        }
+      }
+    }
+    writeVarInt(nbSubNodes);
+    if (nbSubNodes > 0) {
+      for (final String nodeType : nodeTypes) {
+        for (final Node subNode : node.astGetNodes(nodeType)) {
+          if (subNode != null) writeValue(subNode);
+        }
+      }
+    }
+  }
+
+  protected boolean isWritableDecoration(final Object decoration) {
+    return decoration instanceof Node || decoration instanceof Serializable;
+  }
+
+  protected NodeClass writeNodeClass(final Node node) throws IOException {
+    NodeClass nodeClass = nodeClasses.get(node.getClass());
+    if (nodeClass != null) {
+      writeVarInt(nodeClass.index + REF_OFFSET);
+      return nodeClass;
+    }
+
+    nodeClass = new NodeClass(nodeClasses.size(), node);
+    nodeClasses.put(node.getClass(), nodeClass);
+    writeVarInt(REF_NEW);
+    writeString(node.astGetType());
+    writeVarInt(nodeClass.interfaceNames.size());
+    for (final String interfaceName : nodeClass.interfaceNames) {
+      writeString(interfaceName);
+    }
+    writeVarInt(nodeClass.attributeNames.length);
+    for (final String attributeName : nodeClass.attributeNames) {
+      writeString(attributeName);
+    }
+    return nodeClass;
+  }
+
+  /**
+   * Description of the class of the written nodes.
+   */
+  protected static final class NodeClass {
+    final int          index;
+    final List<String> interfaceNames = new ArrayList<String>();
+    final String[]     attributeNames;
+
+    NodeClass(final int index, final Node node) {
+      this.index = index;
+      // the AST interfaces are implemented by the concrete classes generated
+      // by the node factory, abstract base classes only implement generic
+      // interfaces (Node, Serializable, ...) that are re-added by the factory.
+      for (Class<?> c = node.getClass(); c != null
+          && !Modifier.isAbstract(c.getModifiers()); c = c.getSuperclass()) {
+        for (final Class<?> itf : c.getInterfaces()) {
+          if (itf != Node.class && itf != Serializable.class
+              && itf != Cloneable.class
+              && !interfaceNames.contains(itf.getName()))
+            interfaceNames.add(itf.getName());
+        }
+      }
+      final Map<String, String> attributes = node.astGetAttributes();
+      attributeNames = attributes.keySet().toArray(
+          new String[attributes.size()]);
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Primitive encoding
+  // ---------------------------------------------------------------------------
+
+  protected void writeString(final String s) throws IOException {
+    if (s == null) {
+      writeVarInt(REF_NULL);
+      return;
+    }
+    final Integer index = strings.get(s);
+    if (index != null) {
+      writeVarInt(index + REF_OFFSET);
+      return;
+    }
+    strings.put(s, strings.size());
+    writeVarInt(REF_NEW);
+    final byte[] bytes = s.getBytes("UTF-8");
+    writeVarInt(bytes.length);
+    writeBytes(bytes, 0, bytes.length);
+  }
+
+  protected static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  protected void writeVarInt(final int value) throws IOException {
+    writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  protected void writeVarLong(long value) throws IOException {
+    if (count + 10 > buffer.length) flushBuffer();
+    while ((value & ~0x7FL) != 0) {
+      buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[count++] = (byte) value;
+  }
+
+  protected void writeByte(final int b) throws IOException {
+    if (count == buffer.length) flushBuffer();
+    buffer[count++] = (byte) b;
+  }
+
+  protected void writeBytes(final byte[] b, final int off, final int len)
+      throws IOException {
+    if (len > buffer.length - count) {
+      flushBuffer();
+      if (len > buffer.length) {
+        out.write(b, off, len);
+        return;
+      }
+    }
+    System.arraycopy(b, off, buffer, count, len);
+    count += len;
+  }
+
+  protected void flushBuffer() throws IOException {
+    if (count > 0) {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+}
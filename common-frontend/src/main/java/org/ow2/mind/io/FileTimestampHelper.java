@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.io;
+
+/**
+ * Helper methods to decide whether the modification time of a file can be
+ * trusted. A file may be modified again in the same timestamp granule as an
+ * observed modification, without its modification time being changed. So
+ * information recorded about a file (its content, or the content of a
+ * directory) is trusted only if it has been recorded long enough after the
+ * last modification of the file.
+ */
+public final class FileTimestampHelper {
+  /**
+   * Delay (in milliseconds) during which the modification time of a file is
+   * not trusted. This is not smaller than the timestamp granule of the common
+   * file systems (2 seconds for FAT).
+   */
+  public static final long RACY_DELAY = 2000;
+
+  private FileTimestampHelper() {
+  }
+
+  /**
+   * Returns <code>true</code> if information recorded at the given time may be
+   * out of date even though the modification time of the file is still the
+   * given one.
+   * 
+   * @param lastModified the modification time of the file when the
+   *          information has been recorded.
+   * @param recordTime the time at which the information has been recorded.
+   * @return <code>true</code> if the recorded information must not be trusted.
+   */
+  public static boolean isRacy(final long lastModified, final long recordTime) {
+    return recordTime - lastModified < RACY_DELAY;
+  }
+}
@@ -22,6 +22,9 @@
 
 package org.ow2.mind.st;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateGroup;
 import org.antlr.stringtemplate.StringTemplateGroupLoader;
@@ -29,13 +32,24 @@ import org.antlr.stringtemplate.language.AngleBracketTemplateLexer;
 
 import com.google.inject.Inject;
 
+/**
+ * Base class of components that use a {@link StringTemplateGroup}. The template
+ * group is loaded once, on first use, and may then be used concurrently by
+ * several threads: {@link #getInstanceOf(String)} does not acquire any lock once
+ * a template has been looked-up, and returns a new {@link StringTemplate}
+ * instance on each call, so that several threads can render templates through
+ * the same processor without sharing their attributes.
+ */
 public abstract class AbstractStringTemplateProcessor {
 
-  protected final String              templateGroupName;
-  private StringTemplateGroup         templateGroup = null;
+  protected final String                            templateGroupName;
+  private volatile StringTemplateGroup              templateGroup = null;
+
+  /** The templates of the group that have already been looked-up. */
+  private final ConcurrentMap<String, StringTemplate> prototypes    = new ConcurrentHashMap<String, StringTemplate>();
 
   @Inject
-  protected StringTemplateGroupLoader templateGroupLoaderItf;
+  protected StringTemplateGroupLoader               templateGroupLoaderItf;
 
   // ---------------------------------------------------------------------------
   // Constructor
@@ -50,16 +64,47 @@ public abstract class AbstractStringTemplateProcessor {
   // ---------------------------------------------------------------------------
 
   protected synchronized void initTemplateGroup() {
-    templateGroup = templateGroupLoaderItf.loadGroup(templateGroupName,
-        getTemplateLexer(), null);
-    registerCustomRenderer(templateGroup);
+    if (templateGroup != null) return;
+    final StringTemplateGroup group = templateGroupLoaderItf.loadGroup(
+        templateGroupName, getTemplateLexer(), null);
+    registerCustomRenderer(group);
+    // publish the group only once it is completely initialized.
+    templateGroup = group;
   }
 
-  protected synchronized StringTemplate getInstanceOf(final String template) {
-    if (templateGroup == null) {
+  /**
+   * Returns the template group of this processor. The group is loaded by the
+   * first call of this method.
+   * 
+   * @return the template group of this processor.
+   */
+  protected StringTemplateGroup getTemplateGroup() {
+    StringTemplateGroup group = templateGroup;
+    if (group == null) {
       initTemplateGroup();
+      group = templateGroup;
+    }
+    return group;
+  }
+
+  /**
+   * Returns a new instance of the given template. The returned instance is
+   * owned by the caller; it can be filled and rendered without
+   * synchronization, even if other instances of the same template are rendered
+   * concurrently.
+   * 
+   * @param template the name of the template.
+   * @return a new instance of the given template.
+   */
+  protected StringTemplate getInstanceOf(final String template) {
+    StringTemplate prototype = prototypes.get(template);
+    if (prototype == null) {
+      prototype = getTemplateGroup().lookupTemplate(template);
+      final StringTemplate previous = prototypes.putIfAbsent(template,
+          prototype);
+      if (previous != null) prototype = previous;
     }
-    return templateGroup.getInstanceOf(template);
+    return prototype.getInstanceOf();
   }
 
   @SuppressWarnings("unchecked")
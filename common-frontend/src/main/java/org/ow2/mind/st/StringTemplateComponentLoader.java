@@ -25,6 +25,7 @@ package org.ow2.mind.st;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.util.HashMap;
 
 import org.antlr.stringtemplate.StringTemplateErrorListener;
@@ -45,13 +46,20 @@ import com.google.inject.name.Named;
 
 public class StringTemplateComponentLoader implements StringTemplateGroupLoader {
 
-  public static final String            STRING_TEMPLATE_LOADER_NAME = "StringTemplateLoader";
+  public static final String                                               STRING_TEMPLATE_LOADER_NAME = "StringTemplateLoader";
+
+  /**
+   * Cache of the parsed template group interfaces. Template group interfaces
+   * are not modified once parsed, so they can be shared by every group of the
+   * JVM.
+   */
+  private static final TemplateResourceCache<StringTemplateGroupInterface> interfaceCache              = new TemplateResourceCache<StringTemplateGroupInterface>();
 
   @Inject
   @Named("StringTemplateLoader")
-  public Loader                         loaderItf;
+  public Loader                                                            loaderItf;
 
-  protected StringTemplateErrorListener errors                      = null;
+  protected StringTemplateErrorListener                                    errors                      = null;
 
   public StringTemplateComponentLoader() {
     errors = new org.ow2.mind.st.StringTemplateGroup("DefaultGroup")
@@ -152,15 +160,24 @@ public class StringTemplateComponentLoader implements StringTemplateGroupLoader
   }
 
   public StringTemplateGroupInterface loadInterface(final String interfaceName) {
-    StringTemplateGroupInterface I;
-    final InputStreamReader br = locateItf(interfaceName.replace('.', '/')
-        + ".sti");
-    if (br == null) {
+    final URL itfURL = locateItf(interfaceName.replace('.', '/') + ".sti");
+    if (itfURL == null) {
       error("no such interface file " + interfaceName + ".sti");
       return null;
     }
-    I = new StringTemplateGroupInterface(br, errors);
-    return I;
+
+    try {
+      return interfaceCache.get(itfURL,
+          new TemplateResourceCache.Builder<StringTemplateGroupInterface>() {
+            public StringTemplateGroupInterface build(final byte[] content) {
+              return new StringTemplateGroupInterface(new InputStreamReader(
+                  new ByteArrayInputStream(content)), errors);
+            }
+          });
+    } catch (final IOException e) {
+      error("Cannot read interface file " + interfaceName + ".sti", e);
+      return null;
+    }
   }
 
   // ---------------------------------------------------------------------------
@@ -177,9 +194,8 @@ public class StringTemplateComponentLoader implements StringTemplateGroupLoader
     }
   }
 
-  protected InputStreamReader locateItf(final String name) {
-    return new InputStreamReader(ClassLoaderHelper.getClassLoader(this)
-        .getResourceAsStream(name));
+  protected URL locateItf(final String name) {
+    return ClassLoaderHelper.getClassLoader(this).getResource(name);
   }
 
   protected void error(final String msg) {
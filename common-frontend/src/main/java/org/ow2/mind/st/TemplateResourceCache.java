@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.st;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.io.FileTimestampHelper;
+
+/**
+ * In-JVM cache of objects built from the content of template resources
+ * (template components and template group interfaces), indexed by the URL of
+ * the resource. Nothing is persisted across JVM runs: StringTemplate groups
+ * are neither serializable nor immutable, so the cache only saves the parsing
+ * of resources to the compiler instances of a single JVM (typically a
+ * compiler daemon or a test suite).
+ * <p>
+ * A cached object is returned without reading the resource again if the
+ * modification time and the size of the resource are unchanged. Otherwise, the
+ * resource is read and the cached object is still used if the digest of its
+ * content is unchanged. Modification times that are too close to the time the
+ * entry has been recorded are not trusted, since the resource may have been
+ * modified again in the same timestamp granule.
+ * 
+ * @param <T> the type of the cached objects.
+ */
+public class TemplateResourceCache<T> {
+
+  private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<String, Entry<T>>();
+
+  /**
+   * Builds the object to cache from the content of a resource.
+   * 
+   * @param <T> the type of the built object.
+   */
+  public interface Builder<T> {
+    T build(byte[] content);
+  }
+
+  /**
+   * Returns the object built from the current content of the given resource.
+   * 
+   * @param url the URL of the resource.
+   * @param builder the builder used if the cached object is missing or
+   *          out-of-date.
+   * @return the object built from the content of the given resource.
+   * @throws IOException if the resource can't be read.
+   */
+  public T get(final URL url, final Builder<T> builder) throws IOException {
+    final String key = url.toExternalForm();
+    final long recordTime = System.currentTimeMillis();
+    // get the stamp before reading the content, so that a modification that
+    // occurs while the content is read is detected next time.
+    final long[] stamp = getStamp(url);
+    final Entry<T> entry = entries.get(key);
+    if (entry != null && entry.isUnmodified(stamp)) return entry.value;
+
+    final byte[] content = readContent(url);
+    final String digest = DigestHelper.toHexString(DigestHelper.newDigest()
+        .digest(content));
+    final T value = (entry != null && entry.digest.equals(digest))
+        ? entry.value
+        : builder.build(content);
+    entries.put(key, new Entry<T>(stamp, recordTime, digest, value));
+    return value;
+  }
+
+  /**
+   * Returns the modification time and the size of the given resource, or
+   * <code>null</code> if they are unknown.
+   */
+  protected long[] getStamp(final URL url) throws IOException {
+    if ("file".equals(url.getProtocol())) {
+      try {
+        final File file = new File(url.toURI());
+        return new long[]{file.lastModified(), file.length()};
+      } catch (final URISyntaxException e) {
+        return null;
+      } catch (final IllegalArgumentException e) {
+        return null;
+      }
+    }
+    // for "jar:" URLs, this gives the time and size of the archive entry,
+    // without reading it.
+    final URLConnection connection = url.openConnection();
+    final long lastModified = connection.getLastModified();
+    final long length = connection.getContentLength();
+    if (lastModified == 0 || length < 0) return null;
+    return new long[]{lastModified, length};
+  }
+
+  /**
+   * Reads the whole content of the given URL.
+   * 
+   * @param url an URL.
+   * @return the content of the given URL.
+   * @throws IOException if an error occurs while reading the URL.
+   */
+  protected byte[] readContent(final URL url) throws IOException {
+    final InputStream is = url.openStream();
+    try {
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        os.write(buffer, 0, n);
+      }
+      return os.toByteArray();
+    } finally {
+      is.close();
+    }
+  }
+
+  private static final class Entry<T> {
+    final long[] stamp;
+    final long   recordTime;
+    final String digest;
+    final T      value;
+
+    Entry(final long[] stamp, final long recordTime, final String digest,
+        final T value) {
+      this.stamp = stamp;
+      this.recordTime = recordTime;
+      this.digest = digest;
+      this.value = value;
+    }
+
+    boolean isUnmodified(final long[] currentStamp) {
+      return stamp != null && currentStamp != null
+          && stamp[0] == currentStamp[0] && stamp[1] == currentStamp[1]
+          && !FileTimestampHelper.isRacy(stamp[0], recordTime);
+    }
+  }
+}
@@ -22,6 +22,7 @@
 
 package org.ow2.mind.st.templates.parser;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -37,6 +38,7 @@ import org.objectweb.fractal.adl.error.ErrorLocator;
 import org.objectweb.fractal.adl.error.NodeErrorLocator;
 import org.objectweb.fractal.adl.util.ClassLoaderHelper;
 import org.objectweb.fractal.adl.xml.XMLNodeFactory;
+import org.ow2.mind.st.TemplateResourceCache;
 import org.ow2.mind.st.templates.ast.TemplateComponent;
 import org.ow2.mind.st.templates.jtb.ParseException;
 import org.ow2.mind.st.templates.jtb.Parser;
@@ -46,12 +48,19 @@ import com.google.inject.Inject;
 
 public class StringTemplateLoader implements Loader {
 
-  protected static final String DTD                = "classpath://org/ow2/mind/st/xml/template-component.dtd";
+  protected static final String                                 DTD                = "classpath://org/ow2/mind/st/xml/template-component.dtd";
 
-  public static final String    TEMPLATE_EXTENSION = ".stc";
+  public static final String                                    TEMPLATE_EXTENSION = ".stc";
+
+  /**
+   * Cache of the loaded template components shared by the loaders of the JVM,
+   * so that a template component file is parsed once, whatever the number of
+   * compiler instances.
+   */
+  private static final TemplateResourceCache<TemplateComponent> templateCache      = new TemplateResourceCache<TemplateComponent>();
 
   @Inject
-  public XMLNodeFactory         nodeFactoryItf;
+  public XMLNodeFactory                                         nodeFactoryItf;
 
   // ---------------------------------------------------------------------------
   // Implementation of the Loader interface
@@ -60,10 +69,27 @@ public class StringTemplateLoader implements Loader {
   public Definition load(final String name, final Map<Object, Object> context)
       throws ADLException {
     final URL templateFile = locateTemplateComponent(name, context);
+    try {
+      return templateCache.get(templateFile,
+          new TemplateResourceCache.Builder<TemplateComponent>() {
+            public TemplateComponent build(final byte[] content) {
+              return readTemplate(name, templateFile, content);
+            }
+          });
+    } catch (final IOException e) {
+      throw new CompilerError(ADLErrors.IO_ERROR, e, templateFile.getPath());
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
 
+  protected TemplateComponent readTemplate(final String name,
+      final URL templateFile, final byte[] content) {
     TemplateComponent tc;
     try {
-      tc = readTemplate(templateFile);
+      tc = readTemplate(templateFile, new ByteArrayInputStream(content));
     } catch (final IOException e) {
       throw new CompilerError(ADLErrors.IO_ERROR, e, templateFile.getPath());
     } catch (final ParseException e) {
@@ -78,19 +104,15 @@ public class StringTemplateLoader implements Loader {
           new NodeErrorLocator(tc), name, tc.getName());
     }
 
-    String content = tc.getContent();
-    content = content.substring(content.indexOf("$${") + 3);
-    content = content.substring(0, content.indexOf("}$$"));
+    String tcContent = tc.getContent();
+    tcContent = tcContent.substring(tcContent.indexOf("$${") + 3);
+    tcContent = tcContent.substring(0, tcContent.indexOf("}$$"));
     final String groupLine = "group "
         + tc.getName().substring(tc.getName().lastIndexOf('.') + 1) + ";\n";
-    tc.setContent(groupLine + content);
+    tc.setContent(groupLine + tcContent);
     return tc;
   }
 
-  // ---------------------------------------------------------------------------
-  // Utility methods
-  // ---------------------------------------------------------------------------
-
   protected URL locateTemplateComponent(final String name,
       final Map<Object, Object> context) {
     final String templateFileName = name.replace('.', '/') + TEMPLATE_EXTENSION;
@@ -105,7 +127,11 @@ public class StringTemplateLoader implements Loader {
 
   protected TemplateComponent readTemplate(final URL srcFile)
       throws IOException, ParseException {
-    final InputStream is = srcFile.openStream();
+    return readTemplate(srcFile, srcFile.openStream());
+  }
+
+  protected TemplateComponent readTemplate(final URL srcFile,
+      final InputStream is) throws IOException, ParseException {
     final Parser parser = new Parser(is);
     final JTBProcessor processor = new JTBProcessor(nodeFactoryItf, DTD,
         srcFile.getPath());
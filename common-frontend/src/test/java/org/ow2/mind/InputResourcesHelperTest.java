@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class InputResourcesHelperTest {
+
+  File binaryFile;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    final File testDir = new File("target/test/dependency-manifest");
+    testDir.mkdirs();
+    binaryFile = new File(testDir, "Test.def");
+    new FileOutputStream(binaryFile).close();
+    InputResourcesHelper.getDependencyManifestFile(binaryFile).delete();
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testDependencyManifest() throws Exception {
+    final Set<InputResource> resources = new HashSet<InputResource>();
+    resources.add(new InputResource("adl", "pkg.Test"));
+    resources.add(new InputResource("itf", "pkg.Itf"));
+
+    assertNull(InputResourcesHelper.readDependencyManifest(binaryFile.toURI()
+        .toURL(), binaryFile.lastModified(), null));
+
+    InputResourcesHelper.writeDependencyManifest(binaryFile, resources);
+    assertEquals(InputResourcesHelper.readDependencyManifest(binaryFile
+        .toURI().toURL(), binaryFile.lastModified(), null), resources);
+
+    // a manifest older than the binary file is ignored.
+    final File manifestFile = InputResourcesHelper
+        .getDependencyManifestFile(binaryFile);
+    manifestFile.setLastModified(binaryFile.lastModified() - 10000);
+    assertNull(InputResourcesHelper.readDependencyManifest(binaryFile.toURI()
+        .toURL(), binaryFile.lastModified(), null));
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SourcePathIndexTest {
+
+  File                rootDir1;
+  File                rootDir2;
+  ClassLoader         classLoader;
+  Map<Object, Object> context;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    final File testDir = new File("target/test/source-path-index");
+    rm(testDir);
+    rootDir1 = new File(testDir, "root1");
+    rootDir2 = new File(testDir, "root2");
+    rootDir1.mkdirs();
+    rootDir2.mkdirs();
+    classLoader = new URLClassLoader(new URL[]{rootDir1.toURI().toURL(),
+        rootDir2.toURI().toURL()}, null);
+    context = new HashMap<Object, Object>();
+  }
+
+  @Test(groups = {"functional"})
+  public void testFind() throws Exception {
+    final SourcePathIndex index = SourcePathIndex.getIndex(classLoader,
+        context);
+    assertSame(SourcePathIndex.getIndex(classLoader, context), index);
+
+    touch(new File(rootDir2, "foo/bar.adl"));
+    assertEquals(index.findFile("foo/bar.adl"), classLoader
+        .getResource("foo/bar.adl"));
+
+    // resources of the first root have precedence
+    touch(new File(rootDir1, "foo/bar.adl"));
+    assertEquals(index.findFile("foo/bar.adl"), classLoader
+        .getResource("foo/bar.adl"));
+    assertEquals(index.findResource("foo/bar.adl"), classLoader
+        .getResource("foo/bar.adl"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testMissingThenCreated() throws Exception {
+    final SourcePathIndex index = SourcePathIndex.getIndex(classLoader,
+        context);
+    touch(new File(rootDir1, "foo/other.adl"));
+    assertNull(index.findFile("foo/bar.def"));
+    assertNull(index.findResource("foo/bar.def"));
+
+    // the index sees files that are created after a failed lookup
+    touch(new File(rootDir1, "foo/bar.def"));
+    assertEquals(index.findResource("foo/bar.def"), classLoader
+        .getResource("foo/bar.def"));
+  }
+
+  protected static void touch(final File file) throws IOException {
+    file.getParentFile().mkdirs();
+    new FileWriter(file).close();
+  }
+
+  protected static void rm(final File file) {
+    if (file.isDirectory()) {
+      for (final File subFile : file.listFiles()) {
+        rm(subFile);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ArtifactCacheTest {
+
+  File                      testDir;
+  HttpServer                server;
+  final Map<String, byte[]> serverContent = new ConcurrentHashMap<String, byte[]>();
+  volatile int              nbPuts;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    testDir = new File("target/test/artifact-cache");
+    rm(testDir);
+    testDir.mkdirs();
+    serverContent.clear();
+    nbPuts = 0;
+
+    // in-process HTTP server that stores PUT requests in a map.
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/cache/", new HttpHandler() {
+      public void handle(final HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final byte[] body = read(exchange.getRequestBody());
+        if ("PUT".equals(exchange.getRequestMethod())) {
+          nbPuts++;
+          if (path.contains("/denied/")) {
+            exchange.sendResponseHeaders(403, -1);
+          } else {
+            serverContent.put(path, body);
+            exchange.sendResponseHeaders(201, -1);
+          }
+        } else {
+          final byte[] content = serverContent.get(path);
+          if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+          } else {
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+          }
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test(groups = {"functional"})
+  public void testFileSystemCache() throws Exception {
+    final ArtifactCache cache = new FileSystemArtifactCache();
+    cache.init(new File(testDir, "fs").getPath());
+    checkCache(cache);
+  }
+
+  @Test(groups = {"functional"})
+  public void testFileSystemCacheURL() throws Exception {
+    final ArtifactCache cache = new FileSystemArtifactCache();
+    cache.init(new File(testDir, "fs").toURI().toString());
+    checkCache(cache);
+    assertTrue(new File(testDir, "fs/obj/ab/abcd.o").isFile());
+  }
+
+  @Test(groups = {"functional"})
+  public void testHttpCache() throws Exception {
+    final ArtifactCache cache = new HttpArtifactCache();
+    cache.init(getServerURL());
+    checkCache(cache);
+    assertTrue(serverContent.containsKey("/cache/obj/ab/abcd.o"));
+  }
+
+  @Test(groups = {"functional"})
+  public void testHttpCacheRejectedStore() throws Exception {
+    final ArtifactCache cache = new HttpArtifactCache();
+    cache.init(getServerURL());
+    try {
+      cache.store("obj/denied/abcd.o", writeFile("in.o", "object"));
+      fail("HttpStatusException should have been raised");
+    } catch (final HttpArtifactCache.HttpStatusException e) {
+      assertEquals(e.getStatusCode(), 403);
+    }
+    // a request rejected by the server is not retried.
+    assertEquals(nbPuts, 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testAsyncCache() throws Exception {
+    final HttpArtifactCache httpCache = new HttpArtifactCache();
+    httpCache.init(getServerURL());
+    final AsyncArtifactCache cache = new AsyncArtifactCache(httpCache);
+
+    final int nbArtifacts = 2 * AsyncArtifactCache.MAX_BATCH_SIZE + 1;
+    for (int i = 0; i < nbArtifacts; i++) {
+      cache.store("obj/" + i, writeFile("in" + i, "content" + i));
+    }
+    cache.flush();
+    assertEquals(serverContent.size(), nbArtifacts);
+
+    final File out = new File(testDir, "out");
+    assertTrue(httpCache.fetch("obj/" + (nbArtifacts - 1), out));
+    assertEquals(readFile(out), "content" + (nbArtifacts - 1));
+  }
+
+  @Test(groups = {"functional"})
+  public void testAsyncCacheDisabledOnError() throws Exception {
+    final FailingArtifactCache failingCache = new FailingArtifactCache();
+    final AsyncArtifactCache cache = new AsyncArtifactCache(failingCache);
+
+    for (int i = 0; i < 10; i++) {
+      cache.store("obj/" + i, writeFile("in" + i, "content" + i));
+    }
+    cache.flush();
+    assertTrue(cache.isDisabled());
+    // only the first upload has been attempted.
+    assertEquals(failingCache.nbStores, 1);
+
+    // once disabled, the underlying cache is not accessed anymore.
+    cache.store("obj/10", writeFile("in10", "content10"));
+    cache.flush();
+    assertFalse(cache.fetch("obj/0", new File(testDir, "out")));
+    assertEquals(failingCache.nbStores, 1);
+    assertEquals(failingCache.nbFetches, 0);
+  }
+
+  @Test(groups = {"functional"})
+  public void testAsyncCacheFlushTimeout() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AsyncArtifactCache cache = new AsyncArtifactCache(
+        new FileSystemArtifactCache() {
+          @Override
+          public void store(final String key, final File file)
+              throws IOException {
+            try {
+              latch.await();
+            } catch (final InterruptedException e) {
+              throw new IOException("interrupted");
+            }
+            super.store(key, file);
+          }
+        });
+    cache.init(new File(testDir, "fs").getPath());
+
+    cache.store("obj/ab/abcd.o", writeFile("in.o", "object"));
+    assertFalse(cache.flush(100));
+    // the blocked writer thread must not prevent the JVM from exiting.
+    for (final Thread thread : getThreads()) {
+      if ("mindc-artifact-cache-writer".equals(thread.getName()))
+        assertTrue(thread.isDaemon());
+    }
+
+    latch.countDown();
+    assertTrue(cache.flush(10000));
+    assertTrue(new File(testDir, "fs/obj/ab/abcd.o").isFile());
+  }
+
+  @Test(groups = {"functional"})
+  public void testGetScheme() {
+    assertEquals(ArtifactCacheHelper.getScheme("http://host/cache"), "http");
+    assertEquals(ArtifactCacheHelper.getScheme("file:/tmp/cache"), "file");
+    assertEquals(ArtifactCacheHelper.getScheme("/tmp/cache"), "file");
+    assertEquals(ArtifactCacheHelper.getScheme("C:\\cache"), "file");
+  }
+
+  @Test(groups = {"functional"})
+  public void testInvalidKey() throws Exception {
+    final ArtifactCache cache = new FileSystemArtifactCache();
+    cache.init(new File(testDir, "fs").getPath());
+    try {
+      cache.store("obj/../../foo", writeFile("in", "content"));
+    } catch (final IllegalArgumentException e) {
+      return;
+    }
+    fail("IllegalArgumentException should have been raised");
+  }
+
+  void checkCache(final ArtifactCache cache) throws Exception {
+    final File out = new File(testDir, "out.o");
+    assertFalse(cache.fetch("obj/ab/abcd.o", out));
+    assertFalse(out.exists());
+
+    cache.store("obj/ab/abcd.o", writeFile("in.o", "object"));
+    assertTrue(cache.fetch("obj/ab/abcd.o", out));
+    assertEquals(readFile(out), "object");
+
+    // artifacts can be replaced.
+    cache.store("obj/ab/abcd.o", writeFile("in.o", "object2"));
+    assertTrue(cache.fetch("obj/ab/abcd.o", out));
+    assertEquals(readFile(out), "object2");
+  }
+
+  static final class FailingArtifactCache implements ArtifactCache {
+    volatile int nbStores;
+    volatile int nbFetches;
+
+    public void init(final String location) {
+    }
+
+    public boolean fetch(final String key, final File file)
+        throws IOException {
+      nbFetches++;
+      throw new IOException("Connection refused");
+    }
+
+    public void store(final String key, final File file) throws IOException {
+      nbStores++;
+      throw new IOException("Connection refused");
+    }
+  }
+
+  Thread[] getThreads() {
+    final Thread[] threads = new Thread[Thread.activeCount() * 2];
+    final int n = Thread.enumerate(threads);
+    final Thread[] result = new Thread[n];
+    System.arraycopy(threads, 0, result, 0, n);
+    return result;
+  }
+
+  String getServerURL() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/cache";
+  }
+
+  File writeFile(final String name, final String content) throws IOException {
+    final File f = new File(testDir, name);
+    final OutputStream out = new FileOutputStream(f);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  String readFile(final File f) throws IOException {
+    final InputStream in = new FileInputStream(f);
+    try {
+      return new String(read(in), "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  static byte[] read(final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1024];
+    int n;
+    while ((n = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  void rm(final File f) {
+    final File[] children = f.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        rm(child);
+      }
+    }
+    f.delete();
+  }
+}
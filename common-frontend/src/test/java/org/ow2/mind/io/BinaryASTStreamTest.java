@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.io;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.objectweb.fractal.adl.Node;
+import org.objectweb.fractal.adl.NodeFactory;
+import org.ow2.mind.AbstractTestcase;
+import org.ow2.mind.InputResource;
+import org.ow2.mind.annotation.ast.AnnotationArgument;
+import org.ow2.mind.annotation.ast.AnnotationNode;
+import org.ow2.mind.value.ast.Array;
+import org.ow2.mind.value.ast.StringLiteral;
+import org.testng.annotations.Test;
+
+import com.google.inject.Injector;
+
+public class BinaryASTStreamTest extends AbstractTestcase {
+
+  NodeFactory nodeFactory;
+
+  @Override
+  protected void setUp(final Injector injector) {
+    nodeFactory = injector.getInstance(NodeFactory.class);
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testRoundTrip() throws Exception {
+    final StringLiteral s1 = newStringLiteral("foo");
+    final StringLiteral s2 = newStringLiteral("bar");
+    final Array array = newArray(s1, s2);
+    final AnnotationNode annotation = newAnnotationNode("my.Annotation",
+        newAnnotationArgument("value", array));
+    annotation.astSetSource("my/Test.adl:12");
+
+    final Set<InputResource> resources = new HashSet<InputResource>();
+    resources.add(new InputResource("adl", "my.Test"));
+    annotation.astSetDecoration("resources", resources);
+    annotation.astSetDecoration("flag", Boolean.TRUE);
+    annotation.astSetDecoration("count", 42);
+    final List<Node> refs = new ArrayList<Node>();
+    refs.add(s2);
+    annotation.astSetDecoration("refs", refs);
+    s1.astSetDecoration("sibling", s2);
+    s1.astSetDecoration("transient", new Object());
+
+    final AnnotationNode read = (AnnotationNode) writeAndRead(annotation);
+
+    assertEquals(read.getType(), "my.Annotation");
+    assertEquals(read.astGetSource(), "my/Test.adl:12");
+    assertEquals(read.astGetDecoration("resources"), resources);
+    assertEquals(read.astGetDecoration("flag"), Boolean.TRUE);
+    assertEquals(read.astGetDecoration("count"), 42);
+
+    final AnnotationArgument[] args = read.getAnnotationArguments();
+    assertEquals(args.length, 1);
+    assertEquals(args[0].getName(), "value");
+    final Array readArray = (Array) args[0].getValue();
+    assertEquals(readArray.getValues().length, 2);
+    final StringLiteral readS1 = (StringLiteral) readArray.getValues()[0];
+    final StringLiteral readS2 = (StringLiteral) readArray.getValues()[1];
+    assertEquals(readS1.getValue(), "\"foo\"");
+    assertEquals(readS2.getValue(), "\"bar\"");
+
+    // shared nodes are read only once.
+    assertSame(readS1.astGetDecoration("sibling"), readS2);
+    assertSame(((List<?>) read.astGetDecoration("refs")).get(0), readS2);
+    // non serializable decorations are not written.
+    assertNull(readS1.astGetDecoration("transient"));
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testInvalidHeader() throws Exception {
+    try {
+      new BinaryASTInputStream(new ByteArrayInputStream(new byte[]{
+          (byte) 0xAC, (byte) 0xED, 0, 5}), nodeFactory);
+      fail("StreamCorruptedException expected");
+    } catch (final StreamCorruptedException e) {
+      assertTrue(e.getMessage().contains("header"));
+    }
+  }
+
+  @Test(groups = {"functional", "checkin"})
+  public void testInvalidLength() throws Exception {
+    // list of 2^32-1 elements: does not fit in an int.
+    assertCorrupted(new byte[]{'M', 'A', 'S', 'T', 1, 8, (byte) 0xFF,
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+    // list of 2^30 elements: greater than the maximal length.
+    assertCorrupted(new byte[]{'M', 'A', 'S', 'T', 1, 8, (byte) 0x80,
+        (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04});
+  }
+
+  protected void assertCorrupted(final byte[] bytes) throws Exception {
+    final BinaryASTInputStream bis = new BinaryASTInputStream(
+        new ByteArrayInputStream(bytes), nodeFactory);
+    try {
+      bis.readNode();
+      fail("StreamCorruptedException expected");
+    } catch (final StreamCorruptedException e) {
+      // expected
+    } finally {
+      bis.close();
+    }
+  }
+
+  protected Node writeAndRead(final Node node) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final BinaryASTOutputStream bos = new BinaryASTOutputStream(bytes);
+    bos.writeNode(node);
+    bos.close();
+
+    final BinaryASTInputStream bis = new BinaryASTInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()), nodeFactory);
+    try {
+      return bis.readNode();
+    } finally {
+      bis.close();
+    }
+  }
+}
@@ -22,6 +22,9 @@
 
 package org.ow2.mind.st;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +32,7 @@ import org.antlr.stringtemplate.StringTemplateGroup;
 import org.objectweb.fractal.adl.xml.XMLNodeFactory;
 import org.objectweb.fractal.adl.xml.XMLNodeFactoryImpl;
 import org.ow2.mind.st.StringTemplateComponentLoader;
+import org.ow2.mind.st.templates.ast.TemplateComponent;
 import org.ow2.mind.st.templates.parser.StringTemplateLoader;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -53,4 +57,22 @@ public class SimpleTest {
     final StringTemplateGroup group = stcLoader.loadGroup("simple.Group1");
     System.out.println(group.getInstanceOf("temp1").toString());
   }
+
+  @Test(groups = {"functional"})
+  public void testTemplateCache() throws Exception {
+    final StringTemplateLoader otherTemplateLoader = new StringTemplateLoader();
+    otherTemplateLoader.nodeFactoryItf = new XMLNodeFactoryImpl();
+
+    final TemplateComponent tc1 = (TemplateComponent) templateLoader.load(
+        "simple.Group1", context);
+    final TemplateComponent tc2 = (TemplateComponent) otherTemplateLoader
+        .load("simple.Group1", context);
+    assertSame(tc2, tc1);
+
+    final StringTemplateComponentLoader otherSTCLoader = new StringTemplateComponentLoader();
+    otherSTCLoader.loaderItf = otherTemplateLoader;
+    assertEquals(otherSTCLoader.loadGroup("simple.Group1")
+        .getInstanceOf("temp1").toString(), stcLoader.loadGroup("simple.Group1")
+        .getInstanceOf("temp1").toString());
+  }
 }
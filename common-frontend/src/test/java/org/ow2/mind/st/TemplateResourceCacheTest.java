@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.st;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TemplateResourceCacheTest {
+
+  File                                  file;
+  URL                                   url;
+  int                                   nbReads;
+  int                                   nbBuilds;
+  TemplateResourceCache<String>         cache;
+  TemplateResourceCache.Builder<String> builder;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    final File testDir = new File("target/test/template-resource-cache");
+    testDir.mkdirs();
+    file = new File(testDir, "Template.sti");
+    url = file.toURI().toURL();
+    nbReads = 0;
+    nbBuilds = 0;
+    cache = new TemplateResourceCache<String>() {
+      @Override
+      protected byte[] readContent(final URL u) throws IOException {
+        nbReads++;
+        return super.readContent(u);
+      }
+    };
+    builder = new TemplateResourceCache.Builder<String>() {
+      public String build(final byte[] content) {
+        nbBuilds++;
+        return new String(content);
+      }
+    };
+  }
+
+  @Test(groups = {"functional"})
+  public void testUnmodifiedResourceIsNotRead() throws Exception {
+    final long time = System.currentTimeMillis() - 60000;
+    writeFile("content1", time);
+    assertEquals(cache.get(url, builder), "content1");
+    assertEquals(cache.get(url, builder), "content1");
+    assertEquals(nbReads, 1);
+    assertEquals(nbBuilds, 1);
+
+    // same size, different content.
+    writeFile("content2", time + 10000);
+    assertEquals(cache.get(url, builder), "content2");
+    assertEquals(nbReads, 2);
+    assertEquals(nbBuilds, 2);
+  }
+
+  @Test(groups = {"functional"})
+  public void testTouchedResourceIsNotRebuilt() throws Exception {
+    final long time = System.currentTimeMillis() - 60000;
+    writeFile("content", time);
+    assertEquals(cache.get(url, builder), "content");
+
+    // the resource is read again, but its content is unchanged.
+    file.setLastModified(time + 10000);
+    assertEquals(cache.get(url, builder), "content");
+    assertEquals(nbReads, 2);
+    assertEquals(nbBuilds, 1);
+
+    assertEquals(cache.get(url, builder), "content");
+    assertEquals(nbReads, 2);
+  }
+
+  @Test(groups = {"functional"})
+  public void testRecentlyModifiedResourceIsRead() throws Exception {
+    // the modification time of a resource that has just been modified is not
+    // trusted, since it may be modified again in the same timestamp granule.
+    writeFile("content1", System.currentTimeMillis());
+    assertEquals(cache.get(url, builder), "content1");
+    assertEquals(cache.get(url, builder), "content1");
+    assertEquals(nbReads, 2);
+    assertEquals(nbBuilds, 1);
+  }
+
+  void writeFile(final String content, final long lastModified)
+      throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    file.setLastModified(lastModified);
+  }
+}
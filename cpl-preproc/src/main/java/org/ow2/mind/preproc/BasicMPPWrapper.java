@@ -27,6 +27,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Collection;
@@ -35,6 +37,9 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.Lexer;
 import org.antlr.runtime.RecognitionException;
@@ -45,9 +50,12 @@ import org.objectweb.fractal.adl.Definition;
 import org.objectweb.fractal.adl.error.GenericErrors;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
 import org.ow2.mind.adl.implementation.ImplementationLocator;
+import org.ow2.mind.compilation.SignedCompilationCommand;
 import org.ow2.mind.error.ErrorManager;
 import org.ow2.mind.io.OutputFileLocator;
 import org.ow2.mind.plugin.PluginManager;
+import org.ow2.mind.preproc.ExtensionHelper.RecognizerPool;
+import org.ow2.mind.preproc.ExtensionHelper.Recognizers;
 import org.ow2.mind.preproc.parser.AbstractCPLParser;
 
 import com.google.inject.Inject;
@@ -77,7 +85,10 @@ public class BasicMPPWrapper implements MPPWrapper {
     return new BasicMPPCommand(definition, context);
   }
 
-  protected class BasicMPPCommand implements MPPCommand {
+  protected class BasicMPPCommand
+      implements
+        PipeableMPPCommand,
+        SignedCompilationCommand {
 
     protected final Map<Object, Object> context;
     protected CPLChecker                cplChecker;
@@ -90,6 +101,7 @@ public class BasicMPPWrapper implements MPPWrapper {
     protected List<File>                outputFiles;
 
     protected Definition                definition;
+    protected RecognizerPool            recognizerPool;
 
     BasicMPPCommand(final Definition definition,
         final Map<Object, Object> context) {
@@ -97,6 +109,10 @@ public class BasicMPPWrapper implements MPPWrapper {
           outputFileLocatorItf, definition, context);
       this.context = context;
       this.definition = definition;
+      // resolve the recognizer pool when the command is created, so that the
+      // context is not modified while commands are executed.
+      this.recognizerPool = ExtensionHelper.getRecognizerPool(pluginManagerItf,
+          context);
     }
 
     public String getCommand() {
@@ -144,6 +160,10 @@ public class BasicMPPWrapper implements MPPWrapper {
       return false;
     }
 
+    public String getSignature() {
+      return "MPP singleton=" + singletonMode;
+    }
+
     public void prepare() {
       inputFiles = Arrays.asList(inputFile);
       if (headerOutputFile != null) {
@@ -154,23 +174,14 @@ public class BasicMPPWrapper implements MPPWrapper {
     }
 
     public boolean exec() throws ADLException, InterruptedException {
-      final Lexer lex;
+      final CharStream input;
       try {
-        lex = ExtensionHelper.getLexer(pluginManagerItf, inputFile.getPath(),
-            context);
+        input = new ANTLRFileStream(inputFile.getPath());
       } catch (final IOException e) {
         throw new ADLException(ADLErrors.IO_ERROR, e, inputFile.getPath());
       }
 
-      final CommonTokenStream tokens = new CommonTokenStream(lex);
-      final AbstractCPLParser mpp = ExtensionHelper.getParser(pluginManagerItf,
-          tokens, context);
-
-      mpp.setCplChecker(cplChecker);
-      mpp.setErrorManager(errorManagerItf);
-
       PrintStream outPS = null;
-      PrintStream headerOutPS = null;
       try {
         try {
           outputFile.getParentFile().mkdirs();
@@ -178,8 +189,51 @@ public class BasicMPPWrapper implements MPPWrapper {
         } catch (final FileNotFoundException e) {
           throw new CompilerError(GenericErrors.INTERNAL_ERROR, e, "IO error");
         }
-        mpp.setOutputStream(outPS);
+        return preprocess(input, outPS);
+      } finally {
+        if (outPS != null) outPS.close();
+      }
+    }
+
+    public boolean exec(final InputStream in, final OutputStream out)
+        throws ADLException, InterruptedException {
+      final ANTLRInputStream input;
+      try {
+        input = new ANTLRInputStream(in);
+      } catch (final IOException e) {
+        throw new ADLException(ADLErrors.IO_ERROR, e, inputFile.getPath());
+      }
+      input.name = inputFile.getPath();
 
+      final PrintStream outPS = new PrintStream(out);
+      try {
+        return preprocess(input, outPS);
+      } finally {
+        // flush but do not close the given stream, it belongs to the caller.
+        outPS.flush();
+      }
+    }
+
+    protected boolean preprocess(final CharStream input,
+        final PrintStream outPS) throws ADLException, InterruptedException {
+      final Recognizers recognizers = recognizerPool.acquire();
+      try {
+        final Lexer lex = recognizers.getLexer(input);
+        return preprocess(recognizers.getParser(new CommonTokenStream(lex)),
+            outPS);
+      } finally {
+        recognizerPool.release(recognizers);
+      }
+    }
+
+    protected boolean preprocess(final AbstractCPLParser mpp,
+        final PrintStream outPS) throws ADLException, InterruptedException {
+      mpp.setCplChecker(cplChecker);
+      mpp.setErrorManager(errorManagerItf);
+      mpp.setOutputStream(outPS);
+
+      PrintStream headerOutPS = null;
+      try {
         if (headerOutputFile != null) {
           try {
             headerOutputFile.getParentFile().mkdirs();
@@ -188,8 +242,8 @@ public class BasicMPPWrapper implements MPPWrapper {
           } catch (final FileNotFoundException e) {
             throw new CompilerError(GenericErrors.INTERNAL_ERROR, e, "IO error");
           }
-          mpp.setHeaderOutputStream(headerOutPS);
         }
+        mpp.setHeaderOutputStream(headerOutPS);
 
         mpp.setSingletonMode(singletonMode);
 
@@ -211,7 +265,6 @@ public class BasicMPPWrapper implements MPPWrapper {
         return errorManagerItf.getErrors().size() == nbErrors;
 
       } finally {
-        if (outPS != null) outPS.close();
         if (headerOutPS != null) headerOutPS.close();
       }
     }
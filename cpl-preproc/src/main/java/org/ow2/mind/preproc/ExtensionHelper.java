@@ -23,9 +23,13 @@
 package org.ow2.mind.preproc;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
 import java.util.Map;
 
 import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.Lexer;
 import org.antlr.runtime.TokenStream;
 import org.objectweb.fractal.adl.CompilerError;
@@ -37,12 +41,49 @@ import org.ow2.mind.preproc.parser.AbstractCPLParser;
 
 public final class ExtensionHelper {
 
-  public static final String  CPL_EXTENSION = "org.ow2.mind.preproc.cpl-parser";
-  private static final String FACTORY       = "factory";
-  private static final String CLASS         = "class";
-  private static final String ENABLE_WHEN   = "enableWhen";
+  public static final String  CPL_EXTENSION               = "org.ow2.mind.preproc.cpl-parser";
+  private static final String FACTORY                     = "factory";
+  private static final String CLASS                       = "class";
+  private static final String ENABLE_WHEN                 = "enableWhen";
 
-  private static CPLPreprocessorFactory getFactory(
+  /**
+   * Context key used to memoize the {@link CPLPreprocessorFactory} resolved
+   * for a compilation context.
+   */
+  public static final String  FACTORY_CONTEXT_KEY         = "cpl-preprocessor-factory";
+
+  /**
+   * Context key used to store the {@link RecognizerPool} of a compilation
+   * context.
+   */
+  public static final String  RECOGNIZER_POOL_CONTEXT_KEY = "cpl-recognizer-pool";
+
+  private ExtensionHelper() {
+  }
+
+  /**
+   * Returns the {@link CPLPreprocessorFactory} to use in the given context. The
+   * extensions of the {@value #CPL_EXTENSION} extension-point are resolved
+   * only once per context, the resolved factory is stored in the context.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param context the context.
+   * @return the {@link CPLPreprocessorFactory} to use in the given context.
+   */
+  public static CPLPreprocessorFactory getFactory(
+      final PluginManager pluginManagerItf, final Map<Object, Object> context) {
+    synchronized (context) {
+      CPLPreprocessorFactory ppFactory = (CPLPreprocessorFactory) context
+          .get(FACTORY_CONTEXT_KEY);
+      if (ppFactory == null) {
+        ppFactory = resolveFactory(pluginManagerItf, context);
+        context.put(FACTORY_CONTEXT_KEY, ppFactory);
+      }
+      return ppFactory;
+    }
+  }
+
+  private static CPLPreprocessorFactory resolveFactory(
       final PluginManager pluginManagerItf, final Map<Object, Object> context) {
     final Iterable<ConfigurationElement> extensions = pluginManagerItf
         .getConfigurationElements(CPL_EXTENSION, FACTORY);
@@ -70,6 +111,30 @@ public final class ExtensionHelper {
     return ppFactory;
   }
 
+  /**
+   * Returns the {@link RecognizerPool} of the given context. The pool is
+   * created, and stored in the context, the first time this method is called
+   * for the context.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param context the context.
+   * @return the {@link RecognizerPool} of the given context.
+   */
+  public static RecognizerPool getRecognizerPool(
+      final PluginManager pluginManagerItf, final Map<Object, Object> context) {
+    final CPLPreprocessorFactory ppFactory = getFactory(pluginManagerItf,
+        context);
+    synchronized (context) {
+      RecognizerPool pool = (RecognizerPool) context
+          .get(RECOGNIZER_POOL_CONTEXT_KEY);
+      if (pool == null || pool.ppFactory != ppFactory) {
+        pool = new RecognizerPool(ppFactory);
+        context.put(RECOGNIZER_POOL_CONTEXT_KEY, pool);
+      }
+      return pool;
+    }
+  }
+
   public static Lexer getLexer(final PluginManager pluginManagerItf,
       final String inputPath, final Map<Object, Object> context)
       throws IOException {
@@ -77,10 +142,117 @@ public final class ExtensionHelper {
         new ANTLRFileStream(inputPath));
   }
 
+  /**
+   * Returns a lexer that reads the content of the given stream.
+   * 
+   * @param pluginManagerItf the plugin manager.
+   * @param in the stream to read.
+   * @param sourceName the name of the source, used in error messages.
+   * @param context the context.
+   * @return a lexer that reads the given stream.
+   * @throws IOException if an error occurs while reading the stream.
+   */
+  public static Lexer getLexer(final PluginManager pluginManagerItf,
+      final InputStream in, final String sourceName,
+      final Map<Object, Object> context) throws IOException {
+    final ANTLRInputStream input = new ANTLRInputStream(in);
+    input.name = sourceName;
+    return getFactory(pluginManagerItf, context).getLexer(input);
+  }
+
   public static AbstractCPLParser getParser(
       final PluginManager pluginManagerItf, final TokenStream tokens,
       final Map<Object, Object> context) {
     return getFactory(pluginManagerItf, context).getParser(tokens);
   }
 
+  /**
+   * A lexer and a parser created by the same factory, that can be used to
+   * preprocess several files one after the other. Instances are obtained from
+   * {@link RecognizerPool#acquire()} and must be given back with
+   * {@link RecognizerPool#release(Recognizers)}.
+   */
+  public static final class Recognizers {
+    private final CPLPreprocessorFactory ppFactory;
+    private Lexer                        lexer;
+    private AbstractCPLParser            parser;
+
+    Recognizers(final CPLPreprocessorFactory ppFactory) {
+      this.ppFactory = ppFactory;
+    }
+
+    /**
+     * Returns the lexer of this pair, reset to read the given char stream.
+     * 
+     * @param cs the char stream to read.
+     * @return a lexer that reads the given char stream.
+     */
+    public Lexer getLexer(final CharStream cs) {
+      if (lexer == null) {
+        lexer = ppFactory.getLexer(cs);
+      } else {
+        lexer.setCharStream(cs);
+      }
+      return lexer;
+    }
+
+    /**
+     * Returns the parser of this pair, reset to read the given token stream.
+     * The returned parser is in its initial state (see
+     * {@link AbstractCPLParser#reset()}).
+     * 
+     * @param tokens the token stream to read.
+     * @return a parser that reads the given token stream.
+     */
+    public AbstractCPLParser getParser(final TokenStream tokens) {
+      if (parser == null) {
+        parser = ppFactory.getParser(tokens);
+      } else {
+        parser.setTokenStream(tokens);
+      }
+      return parser;
+    }
+
+    void clear() {
+      // drop references to the streams (and to the output streams of the
+      // parser) of the last preprocessed file.
+      if (lexer != null) lexer.setCharStream(null);
+      if (parser != null) parser.setTokenStream(null);
+    }
+  }
+
+  /**
+   * Pool of {@link Recognizers} of a compilation context. Since lexers and
+   * parsers are not thread-safe, a {@link Recognizers} pair is used by at most
+   * one thread at a time; the pool never holds more pairs than the number of
+   * files preprocessed concurrently in the context.
+   */
+  public static final class RecognizerPool {
+    private final CPLPreprocessorFactory  ppFactory;
+    private final LinkedList<Recognizers> free = new LinkedList<Recognizers>();
+
+    RecognizerPool(final CPLPreprocessorFactory ppFactory) {
+      this.ppFactory = ppFactory;
+    }
+
+    /**
+     * @return a {@link Recognizers} pair that is not used by any other thread.
+     */
+    public synchronized Recognizers acquire() {
+      if (free.isEmpty()) return new Recognizers(ppFactory);
+      return free.removeFirst();
+    }
+
+    /**
+     * Gives back a pair obtained from {@link #acquire()}.
+     * 
+     * @param recognizers the pair to give back.
+     */
+    public void release(final Recognizers recognizers) {
+      recognizers.clear();
+      synchronized (this) {
+        free.addFirst(recognizers);
+      }
+    }
+  }
 }
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.preproc;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.objectweb.fractal.adl.ADLException;
+
+/**
+ * An {@link MPPCommand} that can read its input and write its output on
+ * streams, so that it can be pipelined between the C preprocessor and the C
+ * compiler without intermediate files.
+ */
+public interface PipeableMPPCommand extends MPPCommand {
+
+  /**
+   * Executes the MPP command reading its input from the given stream and
+   * writing the preprocessed code on the given output stream. The header output
+   * file, if any, is still written on the file system. The
+   * {@link #setInputFile input file} is only used in error messages. The given
+   * streams are not closed by this method.
+   * 
+   * @param in the stream from which the input is read.
+   * @param out the stream on which the preprocessed code is written.
+   * @return <code>true</code> if the execution succeeded.
+   * @throws ADLException if an error occurs.
+   * @throws InterruptedException if the calling thread has been interrupted.
+   */
+  boolean exec(InputStream in, OutputStream out) throws ADLException,
+      InterruptedException;
+}
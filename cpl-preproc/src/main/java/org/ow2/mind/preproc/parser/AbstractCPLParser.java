@@ -92,5 +92,22 @@ public abstract class AbstractCPLParser extends Parser {
     this.errorManager = errorManager;
   }
 
+  /**
+   * Resets this parser to its initial state, so that it can be reused to
+   * preprocess another file. This method is called by
+   * {@link #setTokenStream(TokenStream)}. Sub-classes that add their own state
+   * must override this method to reset it and must call
+   * <code>super.reset()</code>.
+   */
+  @Override
+  public void reset() {
+    super.reset();
+    out = System.out;
+    headerOut = null;
+    singletonMode = false;
+    cplChecker = null;
+    errorManager = null;
+  }
+
   public abstract void preprocess() throws RecognitionException;
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.preproc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Lexer;
+import org.ow2.mind.preproc.ExtensionHelper.RecognizerPool;
+import org.ow2.mind.preproc.ExtensionHelper.Recognizers;
+import org.ow2.mind.preproc.parser.AbstractCPLParser;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestRecognizerPool {
+
+  protected static final String SOURCE = "CONSTRUCTOR(void) {\n}\n";
+
+  protected RecognizerPool      pool;
+  protected Map<Object, Object> context;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() {
+    pool = new RecognizerPool(new DefaultCPLPreprocessorFactory());
+    context = new HashMap<Object, Object>();
+  }
+
+  @Test(groups = {"functional"})
+  public void testReuseWithAndWithoutHeader() throws Exception {
+    final ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    final Recognizers first = pool.acquire();
+    final String firstOut;
+    try {
+      firstOut = preprocess(first, "first.i", header);
+    } finally {
+      pool.release(first);
+    }
+    final int headerSize = header.size();
+    assertTrue(headerSize > 0, "Header of the first file is empty");
+    assertTrue(header.toString().contains("CONSTRUCTOR_METHOD_IMPLEMENTED"));
+
+    // the second file is preprocessed on the same thread with the same parser,
+    // without header.
+    final Recognizers second = pool.acquire();
+    final String secondOut;
+    try {
+      assertSame(second, first);
+      secondOut = preprocess(second, "second.i", null);
+    } finally {
+      pool.release(second);
+    }
+    assertEquals(header.size(), headerSize,
+        "Second file has been written in the header of the first one");
+    assertEquals(secondOut, firstOut);
+  }
+
+  @Test(groups = {"functional"})
+  public void testConcurrentAcquire() throws Exception {
+    final Recognizers first = pool.acquire();
+    final Recognizers second = pool.acquire();
+    assertNotSame(second, first);
+
+    final String secondOut = preprocess(second, "second.i", null);
+    final String firstOut = preprocess(first, "first.i", null);
+    assertEquals(secondOut, firstOut);
+    assertFalse(firstOut.contains("CHECK_CONTEXT_PTR"));
+
+    pool.release(second);
+    pool.release(first);
+    assertSame(pool.acquire(), first);
+    assertSame(pool.acquire(), second);
+  }
+
+  protected String preprocess(final Recognizers recognizers,
+      final String name, final ByteArrayOutputStream header) throws Exception {
+    final ANTLRStringStream input = new ANTLRStringStream(SOURCE);
+    input.name = name;
+    final Lexer lex = recognizers.getLexer(input);
+    final AbstractCPLParser mpp = recognizers
+        .getParser(new CommonTokenStream(lex));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    mpp.setOutputStream(new PrintStream(out));
+    if (header != null) mpp.setHeaderOutputStream(new PrintStream(header));
+    mpp.setSingletonMode(true);
+    mpp.setCplChecker(new CPLChecker(null, null, null, null, context));
+    mpp.preprocess();
+    return out.toString();
+  }
+}
@@ -31,12 +31,13 @@ import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.CompilerError;
-import org.objectweb.fractal.adl.io.NodeOutputStream;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.ForceRegenContextHelper;
 import org.ow2.mind.InputResourceLocator;
 import org.ow2.mind.InputResourcesHelper;
 import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.io.BinaryASTOutputStream;
 import org.ow2.mind.io.IOErrors;
 import org.ow2.mind.io.OutputFileLocator;
 
@@ -75,21 +76,30 @@ public class BinaryIDLWriter implements IDLVisitor {
       outputFile = outputFileLocatorItf.getMetadataOutputFile(
           BasicIDLLocator.getItfBinaryName(idl.getName()), context);
 
-    if (regenerate(outputFile, idl, context)) {
+    // binary IDL written by previous versions of the compiler have no
+    // dependency manifest, regenerate them.
+    if (!FileStatCache.getFileStatCache(context).exists(
+        InputResourcesHelper.getDependencyManifestFile(outputFile))
+        || regenerate(outputFile, idl, context)) {
 
-      NodeOutputStream nos = null;
+      BinaryASTOutputStream bos = null;
       try {
         if (ioLogger.isLoggable(Level.FINE))
           ioLogger.log(Level.FINE, "Write binary IDL to " + outputFile);
-        nos = new NodeOutputStream(new FileOutputStream(outputFile));
-        nos.writeObject(idl);
+        bos = new BinaryASTOutputStream(new FileOutputStream(outputFile));
+        bos.writeNode(idl);
+        bos.close();
+        bos = null;
+        FileStatCache.fileWritten(outputFile);
+        InputResourcesHelper.writeDependencyManifest(outputFile,
+            InputResourcesHelper.getInputResources(idl));
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             "Can't write binary ADL to file " + outputFile);
       } finally {
-        if (nos != null)
+        if (bos != null)
           try {
-            nos.close();
+            bos.close();
           } catch (final IOException e) {
             if (ioLogger.isLoggable(Level.WARNING))
               ioLogger
@@ -108,7 +118,7 @@ public class BinaryIDLWriter implements IDLVisitor {
       final Map<Object, Object> context) {
     if (ForceRegenContextHelper.getForceRegen(context)) return true;
 
-    if (!outputFile.exists()) {
+    if (!FileStatCache.getFileStatCache(context).exists(outputFile)) {
       if (depLogger.isLoggable(Level.FINE)) {
         depLogger.fine("Generated source file '" + outputFile
             + "' does not exist, generate.");
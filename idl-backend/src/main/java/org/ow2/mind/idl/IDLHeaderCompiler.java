@@ -35,6 +35,7 @@ import org.antlr.stringtemplate.StringTemplateGroup;
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.FileStatCache;
 import org.ow2.mind.InputResourceLocator;
 import org.ow2.mind.InputResourcesHelper;
 import org.ow2.mind.PathHelper;
@@ -101,7 +102,7 @@ public class IDLHeaderCompiler extends AbstractStringTemplateProcessor
 
       st.setAttribute("idl", idl);
       try {
-        writeToFile(headerFile, st.toString());
+        writeToFile(headerFile, st.toString(), context);
       } catch (final IOException e) {
         throw new CompilerError(IOErrors.WRITE_ERROR, e,
             headerFile.getAbsolutePath());
@@ -111,7 +112,7 @@ public class IDLHeaderCompiler extends AbstractStringTemplateProcessor
 
   private boolean regenerate(final File outputFile, final IDL idl,
       final Map<Object, Object> context) {
-    if (!outputFile.exists()) {
+    if (!FileStatCache.getFileStatCache(context).exists(outputFile)) {
       if (depLogger.isLoggable(Level.FINE)) {
         depLogger.fine("Generated source file '" + outputFile
             + "' does not exist, generate.");
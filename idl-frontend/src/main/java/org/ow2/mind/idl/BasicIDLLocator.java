@@ -27,14 +27,13 @@ import static org.ow2.mind.PathHelper.fullyQualifiedNameToPath;
 import static org.ow2.mind.PathHelper.isRelative;
 import static org.ow2.mind.PathHelper.isValid;
 
-import java.io.IOException;
 import java.net.URL;
-import java.util.Enumeration;
 import java.util.Map;
 
 import org.ow2.mind.InputResource;
 import org.ow2.mind.NameHelper;
 import org.ow2.mind.PathHelper;
+import org.ow2.mind.SourcePathIndex;
 
 import com.google.common.collect.Lists;
 
@@ -76,33 +75,22 @@ public class BasicIDLLocator implements IDLLocator {
     if (!NameHelper.isValid(name))
       throw new IllegalArgumentException("\"" + name + "\" is not a valid name");
 
-    try {
-      /*
-       * Usual case was with getResource. However, the Maven plugin case is more
-       * complex: when using elements from fractal-runtime, it would find
-       * matches in the fractal-runtime.jar in the Maven cache + matches in the
-       * compiler's distribution 'runtime' folder. We get all possible contents,
-       * and return a file-system entry only, thus discarding jar contents.
-       */
-      final Enumeration<URL> urls = getClassLoader(this, context).getResources(
-          getItfSourceName(name).substring(1));
-
-      while (urls.hasMoreElements()) {
-        final URL url = urls.nextElement();
-        if (url.getProtocol().equals("file")) return url;
-      }
-    } catch (final IOException e) {
-      // ignore ('null' case handled at higher level)
-    }
-
-    return null;
+    /*
+     * Usual case was with getResource. However, the Maven plugin case is more
+     * complex: when using elements from fractal-runtime, it would find matches
+     * in the fractal-runtime.jar in the Maven cache + matches in the
+     * compiler's distribution 'runtime' folder. We get all possible contents,
+     * and return a file-system entry only, thus discarding jar contents.
+     */
+    return getSourcePathIndex(context).findFile(
+        getItfSourceName(name).substring(1));
   }
 
   public URL findBinaryItf(final String name, final Map<Object, Object> context) {
     if (!NameHelper.isValid(name))
       throw new IllegalArgumentException("\"" + name + "\" is not a valid name");
 
-    return getClassLoader(this, context).getResource(
+    return getSourcePathIndex(context).findResource(
         getItfBinaryName(name).substring(1));
   }
 
@@ -114,26 +102,14 @@ public class BasicIDLLocator implements IDLLocator {
       throw new IllegalArgumentException("\"" + path
           + "\" is not an absolute path");
 
-    try {
-      /*
-       * Usual case was with getResource. However, the Maven plugin case is more
-       * complex: when using elements from fractal-runtime, it would find
-       * matches in the fractal-runtime.jar in the Maven cache + matches in the
-       * compiler's distribution 'runtime' folder. We get all possible contents,
-       * and return a file-system entry only, thus discarding jar contents.
-       */
-      final Enumeration<URL> urls = getClassLoader(this, context).getResources(
-          path.substring(1));
-
-      while (urls.hasMoreElements()) {
-        final URL url = urls.nextElement();
-        if (url.getProtocol().equals("file")) return url;
-      }
-    } catch (final IOException e) {
-      // ignore ('null' case handled at higher level)
-    }
-
-    return null;
+    /*
+     * Usual case was with getResource. However, the Maven plugin case is more
+     * complex: when using elements from fractal-runtime, it would find matches
+     * in the fractal-runtime.jar in the Maven cache + matches in the
+     * compiler's distribution 'runtime' folder. We get all possible contents,
+     * and return a file-system entry only, thus discarding jar contents.
+     */
+    return getSourcePathIndex(context).findFile(path.substring(1));
   }
 
   public URL findBinaryHeader(final String path,
@@ -144,7 +120,7 @@ public class BasicIDLLocator implements IDLLocator {
       throw new IllegalArgumentException("\"" + path
           + "\" is not an absolute path");
 
-    return getClassLoader(this, context).getResource(
+    return getSourcePathIndex(context).findResource(
         getHeaderBinaryName(path).substring(1));
   }
 
@@ -162,4 +138,13 @@ public class BasicIDLLocator implements IDLLocator {
   public InputResource toSharedTypeInputResource(final String name) {
     return new InputResource(IDLLocator.IDT_RESOURCE_KIND, name);
   }
+
+  // ---------------------------------------------------------------------------
+  // Utility methods
+  // ---------------------------------------------------------------------------
+
+  protected SourcePathIndex getSourcePathIndex(
+      final Map<Object, Object> context) {
+    return SourcePathIndex.getIndex(getClassLoader(this, context), context);
+  }
 }
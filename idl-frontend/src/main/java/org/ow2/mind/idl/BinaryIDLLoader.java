@@ -27,6 +27,7 @@ import static org.ow2.mind.InputResourcesHelper.getTimestamp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StreamCorruptedException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
@@ -35,9 +36,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.NodeFactory;
 import org.objectweb.fractal.adl.NodeUtil;
 import org.objectweb.fractal.adl.error.GenericErrors;
-import org.objectweb.fractal.adl.io.NodeInputStream;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
 import org.ow2.mind.ForceRegenContextHelper;
 import org.ow2.mind.InputResource;
@@ -46,6 +47,7 @@ import org.ow2.mind.InputResourcesHelper;
 import org.ow2.mind.error.ErrorManager;
 import org.ow2.mind.idl.IDLLoader.AbstractDelegatingIDLLoader;
 import org.ow2.mind.idl.ast.IDL;
+import org.ow2.mind.io.BinaryASTInputStream;
 
 import com.google.inject.Inject;
 
@@ -63,6 +65,9 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
   @Inject
   protected InputResourceLocator inputResourceLocatorItf;
 
+  @Inject
+  protected NodeFactory          nodeFactoryItf;
+
   // ---------------------------------------------------------------------------
   // Implementation of the Loader interface
   // ---------------------------------------------------------------------------
@@ -99,15 +104,21 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
       if (logger.isLoggable(Level.FINE))
         logger.log(Level.FINE, "Load IDL \"" + name
             + "\". source unavailable, load binary");
-      return loadBinaryIDL(name, binIDL, context);
+      try {
+        return loadBinaryIDL(name, binIDL, context);
+      } catch (final IOException e) {
+        errorManagerItf.logFatal(GenericErrors.INTERNAL_ERROR, e,
+            "Can't read binary IDL " + binIDL);
+        return null;
+      }
     }
 
     // both binary and source file are available, check timestamps:
     boolean outOfDate;
     long binTimestamp = 0;
     try {
-      binTimestamp = getTimestamp(binIDL);
-      outOfDate = getTimestamp(srcIDL) >= binTimestamp;
+      binTimestamp = getTimestamp(binIDL, context);
+      outOfDate = getTimestamp(srcIDL, context) >= binTimestamp;
     } catch (final MalformedURLException e) {
       if (logger.isLoggable(Level.WARNING))
         logger.log(Level.WARNING, "Load IDL \"" + name
@@ -117,23 +128,33 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
     if (!outOfDate) {
       // if binary file is more recent than source file, check dependencies.
 
-      // load binary IDL to retrieve list of input resources.
-      final IDL binAST = loadBinaryIDL(name, binIDL, context);
+      // retrieve list of input resources from the dependency manifest of the
+      // binary IDL, so that the binary IDL is read only if it is up-to-date.
+      IDL binAST = null;
+      Set<InputResource> dependencies = InputResourcesHelper
+          .readDependencyManifest(binIDL, binTimestamp, context);
+      if (dependencies == null) {
+        // no manifest, load binary IDL to retrieve list of input resources.
+        binAST = readBinaryIDL(name, binIDL, context);
+        if (binAST != null)
+          dependencies = InputResourcesHelper.getInputResources(binAST);
+      }
 
-      final Set<InputResource> dependencies = InputResourcesHelper
-          .getInputResources(binAST);
       if (logger.isLoggable(Level.FINEST))
         logger.log(Level.FINEST, "Load IDL \"" + name
             + "\". check dependencies=" + dependencies);
       if (dependencies != null
           && inputResourceLocatorItf.isUpToDate(binTimestamp, dependencies,
               context)) {
-        if (logger.isLoggable(Level.FINEST))
-          logger.log(Level.FINEST, "Load IDL \"" + name
-              + "\". Binary version is up-to-date");
-
-        // binary version is up to date, return it
-        return binAST;
+        if (binAST == null) binAST = readBinaryIDL(name, binIDL, context);
+        if (binAST != null) {
+          if (logger.isLoggable(Level.FINEST))
+            logger.log(Level.FINEST, "Load IDL \"" + name
+                + "\". Binary version is up-to-date");
+
+          // binary version is up to date, return it
+          return binAST;
+        }
       }
     }
 
@@ -160,11 +181,39 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
     return idl;
   }
 
-  protected IDL loadBinaryIDL(final String name, final URL location,
+  /**
+   * Reads the given binary IDL. Returns <code>null</code> if the binary IDL has
+   * been written by another version of the compiler, in which case the source
+   * IDL should be used.
+   */
+  protected IDL readBinaryIDL(final String name, final URL location,
       final Map<Object, Object> context) throws ADLException {
+    try {
+      return loadBinaryIDL(name, location, context);
+    } catch (final StreamCorruptedException e) {
+      // binary IDL has been written by another version of the compiler.
+      if (logger.isLoggable(Level.FINE))
+        logger.log(Level.FINE, "Load IDL \"" + name
+            + "\". Incompatible binary IDL, load source");
+      return null;
+    } catch (final IOException e) {
+      errorManagerItf.logFatal(GenericErrors.INTERNAL_ERROR, e,
+          "Can't read binary IDL " + location);
+      return null;
+    }
+  }
+
+  protected IDL loadBinaryIDL(final String name, final URL location,
+      final Map<Object, Object> context) throws ADLException, IOException {
     try {
       final InputStream is = location.openStream();
-      final NodeInputStream nis = new NodeInputStream(is);
+      final BinaryASTInputStream bis;
+      try {
+        bis = new BinaryASTInputStream(is, nodeFactoryItf);
+      } catch (final IOException e) {
+        is.close();
+        throw e;
+      }
       if (logger.isLoggable(Level.FINE))
         logger.log(Level.FINE, "Load IDL \"" + name + "\". Read IDL from "
             + location);
@@ -172,7 +221,12 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
       long t = 0;
       if (logger.isLoggable(Level.FINER)) t = currentTimeMillis();
 
-      final IDL idl = NodeUtil.castNodeError(nis.readObject(), IDL.class);
+      final IDL idl;
+      try {
+        idl = NodeUtil.castNodeError(bis.readNode(), IDL.class);
+      } finally {
+        bis.close();
+      }
 
       if (logger.isLoggable(Level.FINER)) {
         t = currentTimeMillis() - t;
@@ -180,13 +234,7 @@ public class BinaryIDLLoader extends AbstractDelegatingIDLLoader {
             + "\".  read from binary file in " + t + "ms.");
       }
 
-      nis.close();
-
       return idl;
-    } catch (final IOException e) {
-      errorManagerItf.logFatal(GenericErrors.INTERNAL_ERROR, e,
-          "Can't read binary IDL " + location);
-      return null;
     } catch (final ClassNotFoundException e) {
       errorManagerItf.logFatal(GenericErrors.INTERNAL_ERROR, e,
           "Can't read binary IDL " + location);
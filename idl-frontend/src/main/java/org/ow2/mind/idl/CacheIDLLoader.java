@@ -22,20 +22,27 @@
 
 package org.ow2.mind.idl;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.fractal.adl.ADLException;
 import org.objectweb.fractal.adl.ContextLocal;
+import org.objectweb.fractal.adl.NodeUtil;
+import org.ow2.mind.InputResourceLocator;
+import org.ow2.mind.PersistentCacheContextHelper;
+import org.ow2.mind.PersistentCacheContextHelper.CachedEntry;
 import org.ow2.mind.idl.IDLLoader.AbstractDelegatingIDLLoader;
 import org.ow2.mind.idl.ast.IDL;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
  * Simple delegating loader that manage a cache of already loaded definitions.
  * The cache is different for each given <code>context</code> (see
- * {@link ContextLocal}).
+ * {@link ContextLocal}). If a {@link PersistentCacheContextHelper persistent
+ * cache} is attached to the context, loaded IDLs are also kept in it and reused
+ * by subsequent contexts as long as their input resources are up-to-date.
  */
 @Singleton
 public class CacheIDLLoader extends AbstractDelegatingIDLLoader
@@ -44,6 +51,9 @@ public class CacheIDLLoader extends AbstractDelegatingIDLLoader
 
   protected final ContextLocal<Map<String, IDL>> contextualCache = new ContextLocal<Map<String, IDL>>();
 
+  @Inject
+  protected InputResourceLocator                 inputResourceLocatorItf;
+
   // ---------------------------------------------------------------------------
   // Implementation of the IDLLoader interface
   // ---------------------------------------------------------------------------
@@ -54,10 +64,42 @@ public class CacheIDLLoader extends AbstractDelegatingIDLLoader
     IDL idl = cache.get(name);
 
     if (idl == null) {
-      idl = clientIDLLoaderItf.load(name, context);
-      cache.put(name, idl);
+      // IDLs may be requested concurrently by ADL loaders. Since recursive
+      // references between IDLs are resolved by the loading thread, IDLs of a
+      // given context are loaded by one thread at a time.
+      synchronized (cache) {
+        idl = cache.get(name);
+        if (idl == null) {
+          idl = loadFromClient(name, context);
+          if (idl != null) cache.put(name, idl);
+        }
+      }
+    }
+
+    return idl;
+  }
+
+  protected IDL loadFromClient(final String name,
+      final Map<Object, Object> context) throws ADLException {
+    final Map<String, CachedEntry<IDL>> persistentCache = PersistentCacheContextHelper
+        .getPersistentMap(context, CacheIDLLoader.class);
+    if (persistentCache == null) return clientIDLLoaderItf.load(name, context);
+
+    // each compilation gets its own copy of a cached IDL, so that it can't see
+    // the decorations added by a previous one.
+    final CachedEntry<IDL> entry = persistentCache.get(name);
+    if (entry != null
+        && PersistentCacheContextHelper.isUpToDate(entry.value,
+            entry.timestamp, inputResourceLocatorItf, context)) {
+      return NodeUtil.cloneGraph(entry.value);
     }
 
+    // take timestamp before loading to detect files modified while loading.
+    final long timestamp = System.currentTimeMillis();
+    final IDL idl = clientIDLLoaderItf.load(name, context);
+    if (idl != null)
+      persistentCache.put(name,
+          new CachedEntry<IDL>(NodeUtil.cloneGraph(idl), timestamp));
     return idl;
   }
 
@@ -80,11 +122,13 @@ public class CacheIDLLoader extends AbstractDelegatingIDLLoader
   // ---------------------------------------------------------------------------
 
   protected Map<String, IDL> getCache(final Map<Object, Object> context) {
-    Map<String, IDL> cache = contextualCache.get(context);
-    if (cache == null) {
-      cache = new HashMap<String, IDL>();
-      contextualCache.set(context, cache);
+    synchronized (contextualCache) {
+      Map<String, IDL> cache = contextualCache.get(context);
+      if (cache == null) {
+        cache = new ConcurrentHashMap<String, IDL>();
+        contextualCache.set(context, cache);
+      }
+      return cache;
     }
-    return cache;
   }
 }
@@ -53,12 +53,16 @@ public final class IDLParserContextHelper {
   public static void registerIDL(final String idlName, final String idlSource,
       final Map<Object, Object> context) {
     final String contextKey = getContextKey(idlName);
-    final Object o = context.get(contextKey);
-    if (o != null) {
-      throw new IllegalArgumentException("Invalid idlName '" + idlName
-          + "'. An IDL with the same name already exist in the context map");
+    // the check and the registration are atomic, the context may be shared
+    // by concurrent loaders.
+    synchronized (context) {
+      final Object o = context.get(contextKey);
+      if (o != null) {
+        throw new IllegalArgumentException("Invalid idlName '" + idlName
+            + "'. An IDL with the same name already exist in the context map");
+      }
+      context.put(contextKey, idlSource);
     }
-    context.put(contextKey, idlSource);
   }
 
   /**
@@ -75,12 +79,14 @@ public final class IDLParserContextHelper {
       throw new IllegalArgumentException("definition name must be set");
     }
     final String contextKey = getContextKey(idl.getName());
-    final Object o = context.get(contextKey);
-    if (o != null) {
-      throw new IllegalArgumentException("Invalid idlName '" + idl.getName()
-          + "'. An IDL with the same name already exist in the context map");
+    synchronized (context) {
+      final Object o = context.get(contextKey);
+      if (o != null) {
+        throw new IllegalArgumentException("Invalid idlName '" + idl.getName()
+            + "'. An IDL with the same name already exist in the context map");
+      }
+      context.put(contextKey, idl);
     }
-    context.put(contextKey, idl);
   }
 
   /**
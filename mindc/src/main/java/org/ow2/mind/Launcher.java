@@ -42,6 +42,7 @@ import org.objectweb.fractal.adl.CompilerError;
 import org.objectweb.fractal.adl.error.Error;
 import org.objectweb.fractal.adl.error.GenericErrors;
 import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.cache.ArtifactCacheHelper;
 import org.ow2.mind.cli.CmdFlag;
 import org.ow2.mind.cli.CmdOption;
 import org.ow2.mind.cli.CmdOptionBooleanEvaluator;
@@ -52,6 +53,11 @@ import org.ow2.mind.cli.InvalidCommandLineException;
 import org.ow2.mind.cli.Options;
 import org.ow2.mind.cli.PrintStackTraceOptionHandler;
 import org.ow2.mind.cli.StageOptionHandler;
+import org.ow2.mind.compilation.CompileWorker;
+import org.ow2.mind.compilation.CompileWorkerProtocol;
+import org.ow2.mind.daemon.CompilerDaemon;
+import org.ow2.mind.daemon.DaemonClient;
+import org.ow2.mind.daemon.DaemonProtocol;
 import org.ow2.mind.error.ErrorManager;
 import org.ow2.mind.inject.GuiceModuleExtensionHelper;
 import org.ow2.mind.plugin.PluginLoaderModule;
@@ -123,19 +129,19 @@ public class Launcher {
     // If help is asked, print it and exit.
     if (helpOpt.isPresent(cmdLine)) {
       printHelp(System.out);
-      System.exit(0);
+      exit(0);
     }
 
     // If version is asked, print it and exit.
     if (versionOpt.isPresent(cmdLine)) {
       printVersion(System.out);
-      System.exit(0);
+      exit(0);
     }
 
     // If the extension points list is asked, print it and exit.
     if (extensionPointsListOpt.isPresent(cmdLine)) {
       printExtensionPoints(pluginManager, System.out);
-      System.exit(0);
+      exit(0);
     }
 
     // get list of ADL
@@ -196,9 +202,10 @@ public class Launcher {
 
     final List<Object> result = new ArrayList<Object>();
     for (final Map.Entry<String, String> e : adlToExecName.entrySet()) {
+      // the context may be shared by concurrent loaders and compilers.
+      final Map<Object, Object> contextMap = ConcurrentContextHelper
+          .newContext(compilerContext);
       try {
-        final HashMap<Object, Object> contextMap = new HashMap<Object, Object>(
-            compilerContext);
         final String adlName = e.getKey();
         final String execName = e.getValue();
 
@@ -222,6 +229,9 @@ public class Launcher {
             // ignore
           }
         }
+      } finally {
+        SourceFileWriter.saveDigestManifests(contextMap);
+        flushArtifactCache(contextMap);
       }
     }
     if (errors != null) errors.addAll(errorManager.getErrors());
@@ -350,6 +360,35 @@ public class Launcher {
     ps.println("  where <definition> is the name of the component to"
         + " be compiled, ");
     ps.println("  and <execname> is the name of the output file to be created.");
+    ps.println("   or: " + getProgramName() + " "
+        + DaemonProtocol.DAEMON_OPTION + "[=<port>]");
+    ps.println("  to start a compiler daemon that serves compilation requests,");
+    ps.println("   or: " + getProgramName() + " "
+        + DaemonProtocol.CLIENT_OPTION
+        + "[=<port>] [OPTIONS] (<definition>[:<execname>])+");
+    ps.println("  to forward the compilation to a running compiler daemon.");
+    ps.println("   or: " + getProgramName() + " "
+        + CompileWorkerProtocol.WORKER_OPTION
+        + "[=[<address>:]<port>[/<threads>]] [<compiler>...]");
+    ps.println("  to start a compile worker (see --compile-workers) that");
+    ps.println("  executes the given compilers (gcc by default). The worker and");
+    ps.println("  its clients must share a token in the "
+        + CompileWorkerProtocol.TOKEN_ENV_VARIABLE + " environment variable.");
+  }
+
+  /**
+   * Waits for the uploads to the shared artifact cache of the given context.
+   * They are done by a daemon thread, so they would be dropped by
+   * {@link #exit(int)}.
+   * 
+   * @param context the compilation context.
+   */
+  protected void flushArtifactCache(final Map<Object, Object> context) {
+    try {
+      ArtifactCacheHelper.flush(context, ArtifactCacheHelper.FLUSH_TIMEOUT);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   protected void handleException(final InvalidCommandLineException e) {
@@ -359,24 +398,59 @@ public class Launcher {
     } else {
       System.err.println(e.getMessage());
       printHelp(System.err);
-      System.exit(e.getExitValue());
+      exit(e.getExitValue());
     }
   }
 
+  /**
+   * Terminates the compilation with the given exit status. This method calls
+   * {@link System#exit(int)}; it can be overridden by launchers that must not
+   * terminate the JVM (see {@link CompilerDaemon}).
+   * 
+   * @param status the exit status.
+   */
+  protected void exit(final int status) {
+    System.exit(status);
+  }
+
   /**
    * Entry point.
    * 
    * @param args
    */
   public static void main(final String... args) {
-    final Launcher l = new Launcher();
+    if (args.length > 0 && DaemonProtocol.isDaemonOption(args[0])) {
+      CompilerDaemon.main(args);
+      return;
+    }
+    if (args.length > 0 && DaemonProtocol.isClientOption(args[0])) {
+      System.exit(DaemonClient.main(args));
+    }
+    if (args.length > 0 && CompileWorkerProtocol.isWorkerOption(args[0])) {
+      CompileWorker.main(args);
+      return;
+    }
+
+    final int status = new Launcher().run(args);
+    if (status != 0) System.exit(status);
+  }
+
+  /**
+   * Initializes this launcher with the given command line and executes the
+   * compilation.
+   * 
+   * @param args the command line arguments.
+   * @return the exit status of the compilation.
+   */
+  public int run(final String... args) {
     try {
-      l.init(args);
-      l.compile(null, null);
+      init(args);
+      compile(null, null);
     } catch (final InvalidCommandLineException e) {
-      l.handleException(e);
+      handleException(e);
+      return e.getExitValue();
     }
-    if (!l.errorManager.getErrors().isEmpty()) System.exit(1);
+    return errorManager.getErrors().isEmpty() ? 0 : 1;
   }
 
   public static void nonExitMain(final String... args)
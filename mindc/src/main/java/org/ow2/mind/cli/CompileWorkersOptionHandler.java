@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ow2.mind.compilation.CompileWorkerPool;
+import org.ow2.mind.compilation.CompileWorkerProtocol;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "compile-workers" option. Registers the list of compile workers in
+ * the context (see {@link CompileWorkerPool}), with the token shared with these
+ * workers, which is read from the
+ * {@link CompileWorkerProtocol#TOKEN_ENV_VARIABLE} environment variable.
+ */
+public class CompileWorkersOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "compile-workers" option. */
+  public static final String COMPILE_WORKERS_ID = "org.ow2.mind.mindc.CompileWorkers";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    Assert.assertEquals(cmdOption.getId(), COMPILE_WORKERS_ID);
+    final CmdArgument workersOpt = Assert.assertInstanceof(cmdOption,
+        CmdArgument.class);
+
+    final String optValue = workersOpt.getValue(cmdLine);
+    if (optValue == null) return;
+    final List<String> workers = new ArrayList<String>();
+    for (String worker : optValue.split(",")) {
+      worker = worker.trim();
+      if (worker.length() == 0) continue;
+      try {
+        CompileWorkerPool.parseWorker(worker, null);
+      } catch (final IllegalArgumentException e) {
+        throw new InvalidCommandLineException(e.getMessage(), 1);
+      }
+      workers.add(worker);
+    }
+    if (workers.isEmpty()) {
+      throw new InvalidCommandLineException("Invalid compile workers '"
+          + optValue + "'", 1);
+    }
+    final String token = System
+        .getenv(CompileWorkerProtocol.TOKEN_ENV_VARIABLE);
+    if (token == null || token.length() == 0) {
+      throw new InvalidCommandLineException("The "
+          + CompileWorkerProtocol.TOKEN_ENV_VARIABLE
+          + " environment variable must be set to the token of the compile "
+          + "workers", 1);
+    }
+    context.put(CompileWorkerPool.COMPILE_WORKERS_CONTEXT_KEY, workers);
+    context.put(CompileWorkerPool.COMPILE_WORKER_TOKEN_CONTEXT_KEY, token);
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.cli;
+
+import java.io.File;
+import java.util.Map;
+
+import org.ow2.mind.DefinitionCacheContextHelper;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "def-cache" option. Create the definition cache directory if needed
+ * and register it in the context.
+ */
+public class DefinitionCacheOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "def-cache" option. */
+  public static final String DEFINITION_CACHE_ID = "org.ow2.mind.mindc.DefinitionCache";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    Assert.assertEquals(cmdOption.getId(), DEFINITION_CACHE_ID);
+    final CmdArgument cacheDirOpt = Assert.assertInstanceof(cmdOption,
+        CmdArgument.class);
+
+    final String optValue = cacheDirOpt.getValue(cmdLine);
+    if (optValue == null) return;
+    if (optValue.length() == 0) {
+      throw new InvalidCommandLineException(
+          "Invalid definition cache directory ''", 1);
+    }
+    final File cacheDir = new File(optValue);
+    if (cacheDir.exists() && !cacheDir.isDirectory())
+      throw new InvalidCommandLineException("Invalid definition cache '"
+          + cacheDir.getAbsolutePath() + "' not a directory", 1);
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new InvalidCommandLineException(
+          "Can't create definition cache directory '"
+              + cacheDir.getAbsolutePath() + "'", 1);
+    }
+    DefinitionCacheContextHelper.setDefinitionCacheDir(context, cacheDir);
+  }
+}
@@ -24,10 +24,13 @@ package org.ow2.mind.cli;
 
 import java.util.Map;
 
+import org.ow2.mind.compilation.LoadThrottle;
 import org.ow2.mind.plugin.util.Assert;
 
 /**
- * Handles "jobs" option. Registers value in context.
+ * Handles "jobs" option. Registers value in context. If the value of the
+ * option is {@value #AUTO_JOBS}, the number of jobs is computed by
+ * {@link LoadThrottle#getAutoJobs()}.
  */
 public class JobsOptionHandler implements CommandOptionHandler {
 
@@ -36,6 +39,12 @@ public class JobsOptionHandler implements CommandOptionHandler {
 
   private static final String JOBS_CONTEXT_KEY = "jobs";
 
+  /**
+   * The value of the "jobs" option that sizes the number of jobs from the
+   * available processors and free memory.
+   */
+  public static final String  AUTO_JOBS        = "auto";
+
   /**
    * Returns the number of concurrent jobs that has been registered in the given
    * context.
@@ -57,6 +66,10 @@ public class JobsOptionHandler implements CommandOptionHandler {
         CmdArgument.class);
 
     Integer jobs = null;
+    if (AUTO_JOBS.equals(jobOpt.getValue(cmdLine))) {
+      context.put(JOBS_CONTEXT_KEY, LoadThrottle.getAutoJobs());
+      return;
+    }
     try {
       jobs = Integer.decode(jobOpt.getValue(cmdLine));
     } catch (final NumberFormatException e) {
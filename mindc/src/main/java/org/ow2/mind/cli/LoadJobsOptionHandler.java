@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.cli;
+
+import java.util.Map;
+
+import org.ow2.mind.adl.ConcurrentLoadHelper;
+import org.ow2.mind.compilation.LoadThrottle;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "load-jobs" option. Registers value in context (see
+ * {@link ConcurrentLoadHelper#setLoadJobs}). If the value of the option is
+ * {@value JobsOptionHandler#AUTO_JOBS}, the number of jobs is computed by
+ * {@link LoadThrottle#getAutoJobs()}.
+ */
+public class LoadJobsOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "load-jobs" option. */
+  public static final String LOAD_JOBS_ID = "org.ow2.mind.mindc.LoadJobs";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    Assert.assertEquals(cmdOption.getId(), LOAD_JOBS_ID);
+    final CmdArgument jobOpt = Assert.assertInstanceof(cmdOption,
+        CmdArgument.class);
+
+    final String value = jobOpt.getValue(cmdLine);
+    if (JobsOptionHandler.AUTO_JOBS.equals(value)) {
+      ConcurrentLoadHelper.setLoadJobs(context, LoadThrottle.getAutoJobs());
+      return;
+    }
+    final int jobs;
+    try {
+      jobs = Integer.decode(value);
+    } catch (final NumberFormatException e) {
+      throw new InvalidCommandLineException("Invalid load-jobs value '"
+          + value + "' is not a valid number", 1);
+    }
+    ConcurrentLoadHelper.setLoadJobs(context, jobs);
+  }
+}
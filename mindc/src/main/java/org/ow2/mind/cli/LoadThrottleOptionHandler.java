@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.cli;
+
+import java.util.Map;
+
+import org.ow2.mind.compilation.LoadThrottle;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "max-load" and "min-free-mem" options. Registers values in context
+ * (see {@link LoadThrottle}).
+ */
+public class LoadThrottleOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "max-load" option. */
+  public static final String MAX_LOAD_ID        = "org.ow2.mind.mindc.MaxLoad";
+  /** The ID of the "min-free-mem" option. */
+  public static final String MIN_FREE_MEMORY_ID = "org.ow2.mind.mindc.MinFreeMemory";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    final CmdArgument opt = Assert.assertInstanceof(cmdOption,
+        CmdArgument.class);
+    final String value = opt.getValue(cmdLine);
+    if (value == null) return;
+
+    if (MAX_LOAD_ID.equals(opt.getId())) {
+      try {
+        context.put(LoadThrottle.MAX_LOAD_CONTEXT_KEY, Double.valueOf(value));
+      } catch (final NumberFormatException e) {
+        throw new InvalidCommandLineException("Invalid max-load value '"
+            + value + "' is not a valid number", 1);
+      }
+    } else if (MIN_FREE_MEMORY_ID.equals(opt.getId())) {
+      try {
+        context.put(LoadThrottle.MIN_FREE_MEMORY_CONTEXT_KEY,
+            Long.decode(value) * 1024 * 1024);
+      } catch (final NumberFormatException e) {
+        throw new InvalidCommandLineException("Invalid min-free-mem value '"
+            + value + "' is not a valid number", 1);
+      }
+    } else {
+      Assert.fail("Unknown id '" + opt.getId() + "'");
+    }
+  }
+}
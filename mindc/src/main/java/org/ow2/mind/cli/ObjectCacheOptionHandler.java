@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.cli;
+
+import java.io.File;
+import java.util.Map;
+
+import org.ow2.mind.compilation.ObjectCache;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "obj-cache" and "obj-cache-size" options. Create the object cache
+ * directory if needed and register it in the context (see {@link ObjectCache}
+ * ).
+ */
+public class ObjectCacheOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "obj-cache" option. */
+  public static final String OBJECT_CACHE_ID      = "org.ow2.mind.mindc.ObjectCache";
+  /** The ID of the "obj-cache-size" option. */
+  public static final String OBJECT_CACHE_SIZE_ID = "org.ow2.mind.mindc.ObjectCacheSize";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    final CmdArgument opt = Assert.assertInstanceof(cmdOption,
+        CmdArgument.class);
+    final String value = opt.getValue(cmdLine);
+    if (value == null) return;
+
+    if (OBJECT_CACHE_ID.equals(opt.getId())) {
+      if (value.length() == 0) {
+        throw new InvalidCommandLineException(
+            "Invalid object cache directory ''", 1);
+      }
+      final File cacheDir = new File(value);
+      if (cacheDir.exists() && !cacheDir.isDirectory())
+        throw new InvalidCommandLineException("Invalid object cache '"
+            + cacheDir.getAbsolutePath() + "' not a directory", 1);
+      if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+        throw new InvalidCommandLineException(
+            "Can't create object cache directory '"
+                + cacheDir.getAbsolutePath() + "'", 1);
+      }
+      ObjectCache.setObjectCacheDir(context, cacheDir);
+    } else if (OBJECT_CACHE_SIZE_ID.equals(opt.getId())) {
+      final long size;
+      try {
+        size = Long.decode(value);
+      } catch (final NumberFormatException e) {
+        throw new InvalidCommandLineException("Invalid obj-cache-size value '"
+            + value + "' is not a valid number", 1);
+      }
+      if (size <= 0) {
+        throw new InvalidCommandLineException("Invalid obj-cache-size value '"
+            + value + "' must be strictly positive", 1);
+      }
+      ObjectCache.setObjectCacheMaxSize(context, size * 1024 * 1024);
+    } else {
+      Assert.fail("Unknown id '" + opt.getId() + "'");
+    }
+  }
+}
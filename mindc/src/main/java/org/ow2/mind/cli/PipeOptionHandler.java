@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.cli;
+
+import java.util.Map;
+
+import org.ow2.mind.compilation.CompilerContextHelper;
+import org.ow2.mind.plugin.util.Assert;
+
+/**
+ * Handles "pipe" option. Registers value in context.
+ */
+public class PipeOptionHandler implements CommandOptionHandler {
+
+  /** The ID of the "pipe" option. */
+  public static final String PIPE_ID = "org.ow2.mind.mindc.Pipe";
+
+  public void processCommandOption(final CmdOption cmdOption,
+      final CommandLine cmdLine, final Map<Object, Object> context)
+      throws InvalidCommandLineException {
+    Assert.assertEquals(cmdOption.getId(), PIPE_ID);
+    final CmdFlag opt = Assert.assertInstanceof(cmdOption, CmdFlag.class);
+    CompilerContextHelper.setPipeline(context, opt.isPresent(cmdLine));
+  }
+}
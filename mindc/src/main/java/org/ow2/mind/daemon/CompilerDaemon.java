@@ -0,0 +1,449 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.objectweb.fractal.adl.ADLException;
+import org.objectweb.fractal.adl.error.GenericErrors;
+import org.objectweb.fractal.adl.util.FractalADLLogManager;
+import org.ow2.mind.DigestHelper;
+import org.ow2.mind.Launcher;
+import org.ow2.mind.PersistentCacheContextHelper;
+import org.ow2.mind.cli.CommandLine;
+import org.ow2.mind.cli.InvalidCommandLineException;
+import org.ow2.mind.compilation.CompileWorkerProtocol;
+import org.ow2.mind.io.AtomicFileHelper;
+import org.ow2.mind.plugin.PluginManager;
+
+import com.google.inject.Injector;
+
+/**
+ * Long-lived compiler process that serves compilation requests sent by
+ * {@link DaemonClient}s on a loopback socket.
+ * <p>
+ * The daemon keeps the bootstrap injector (and so the plugin registry), the
+ * compiler injector (and so the singleton components with their parsed
+ * template groups) and a {@link PersistentCacheContextHelper persistent cache}
+ * alive across requests. The ADL and IDL caches use the persistent cache to
+ * reuse definitions whose input resources have not been modified since they
+ * have been loaded; each request receives its own copy of a cached AST, so it
+ * never sees the decorations added by the previous ones. A persistent cache is
+ * created for each distinct set of command line options.
+ * <p>
+ * Since relative paths of the command line are resolved against the working
+ * directory of the JVM, the daemon only serves clients that run in the same
+ * working directory; other requests are rejected and compiled locally by the
+ * client. Requests are served one at a time. The output of the error manager
+ * and of the standard streams is forwarded to the client; messages of the
+ * loggers that have been initialized before the daemon started remain on the
+ * console of the daemon.
+ * <p>
+ * Only the user who started the daemon can send requests (including stop
+ * requests): clients must prove that they know the token of the daemon, which
+ * is stored in a file that only this user can read (see
+ * {@link DaemonProtocol#getTokenFile(int)}).
+ */
+public class CompilerDaemon {
+
+  protected static Logger                                logger           = FractalADLLogManager
+                                                                              .getLogger("daemon");
+
+  /**
+   * The timeout, in milliseconds, of the reception of a request, including
+   * the handshake.
+   */
+  protected static final int                             REQUEST_TIMEOUT  = 60 * 1000;
+
+  protected final int                                    port;
+  protected final File                                   workingDir;
+  protected final String                                 token;
+  protected final SecureRandom                           random           = new SecureRandom();
+
+  protected final SwitchableOutputStream                 out;
+  protected final SwitchableOutputStream                 err;
+
+  protected Injector                                     bootstrapInjector;
+  protected Injector                                     compilerInjector;
+  protected final Map<List<String>, Map<Object, Object>> persistentCaches = new HashMap<List<String>, Map<Object, Object>>();
+
+  public CompilerDaemon(final int port) throws IOException {
+    this.port = port;
+    this.workingDir = new File(System.getProperty("user.dir"))
+        .getCanonicalFile();
+    final byte[] tokenBytes = new byte[16];
+    random.nextBytes(tokenBytes);
+    this.token = DigestHelper.toHexString(tokenBytes);
+
+    // standard streams must be replaced before the compiler injector is
+    // created, since the error manager is bound to System.err.
+    out = new SwitchableOutputStream(System.out);
+    err = new SwitchableOutputStream(System.err);
+    System.setOut(new PrintStream(out, true));
+    System.setErr(new PrintStream(err, true));
+  }
+
+  /**
+   * Serves requests until a {@link DaemonProtocol#STOP_REQUEST stop request} is
+   * received.
+   * 
+   * @throws IOException if the server socket can't be opened.
+   */
+  public void serve() throws IOException {
+    final ServerSocket serverSocket = new ServerSocket(port, 50,
+        InetAddress.getByName(null));
+    final File tokenFile = DaemonProtocol.getTokenFile(port);
+    try {
+      // the token file is written once the port is bound, so that the token
+      // of a daemon already listening on this port is not replaced.
+      writeTokenFile(tokenFile);
+    } catch (final IOException e) {
+      serverSocket.close();
+      throw e;
+    }
+    if (logger.isLoggable(Level.INFO))
+      logger.info("Compiler daemon listening on port " + port
+          + ", working directory is '" + workingDir + "'.");
+    try {
+      boolean running = true;
+      while (running) {
+        final Socket socket = serverSocket.accept();
+        try {
+          running = handleRequest(socket);
+        } catch (final IOException e) {
+          logger.log(Level.WARNING, "Error while serving request", e);
+        } finally {
+          socket.close();
+        }
+      }
+    } finally {
+      serverSocket.close();
+      tokenFile.delete();
+    }
+  }
+
+  /**
+   * Writes the token of this daemon in the given file, which is readable only
+   * by its owner.
+   * 
+   * @param tokenFile the token file.
+   * @throws IOException if the token file can't be written.
+   */
+  protected void writeTokenFile(final File tokenFile) throws IOException {
+    final File tmpFile = AtomicFileHelper.createTempFile(tokenFile);
+    // restrict permissions before writing the token.
+    if (!(tmpFile.setReadable(false, false)
+        && tmpFile.setReadable(true, true)
+        && tmpFile.setWritable(false, false) && tmpFile
+        .setWritable(true, true))) {
+      logger.warning("Can't restrict the permissions of the token file '"
+          + tokenFile + "'.");
+    }
+    final OutputStream os = new FileOutputStream(tmpFile);
+    try {
+      os.write(token.getBytes("UTF-8"));
+    } catch (final IOException e) {
+      os.close();
+      tmpFile.delete();
+      throw e;
+    } finally {
+      os.close();
+    }
+    AtomicFileHelper.replace(tmpFile, tokenFile);
+  }
+
+  /**
+   * Handles a request.
+   * 
+   * @param socket the socket of the request.
+   * @return <code>false</code> if the daemon must stop.
+   * @throws IOException if a communication error occurs.
+   */
+  protected boolean handleRequest(final Socket socket) throws IOException {
+    socket.setSoTimeout(REQUEST_TIMEOUT);
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        socket.getInputStream()));
+    final DataOutputStream dout = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream()));
+
+    if (!authenticate(in, dout)) {
+      logger.warning("Authentication of a client failed.");
+      dout.writeInt(DaemonProtocol.REJECTED_STATUS);
+      dout.flush();
+      return true;
+    }
+    dout.writeInt(DaemonProtocol.ACCEPTED_STATUS);
+    dout.flush();
+
+    final byte kind = in.readByte();
+    final String clientDir = in.readUTF();
+    final String[] args = new String[in.readInt()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = in.readUTF();
+    }
+    // the compilation may be long, and the client sends nothing meanwhile.
+    socket.setSoTimeout(0);
+
+    if (kind == DaemonProtocol.STOP_REQUEST) {
+      if (logger.isLoggable(Level.INFO))
+        logger.info("Compiler daemon stopped.");
+      writeExit(dout, 0);
+      return false;
+    }
+
+    if (!new File(clientDir).getCanonicalFile().equals(workingDir)) {
+      if (logger.isLoggable(Level.FINE))
+        logger.fine("Reject request from working directory '" + clientDir
+            + "'.");
+      writeExit(dout, DaemonProtocol.REJECTED_STATUS);
+      return true;
+    }
+
+    if (logger.isLoggable(Level.FINE))
+      logger.fine("Serve request " + Arrays.asList(args));
+
+    out.setTarget(new DaemonProtocol.FrameOutputStream(dout,
+        DaemonProtocol.OUT_FRAME));
+    err.setTarget(new DaemonProtocol.FrameOutputStream(dout,
+        DaemonProtocol.ERR_FRAME));
+    int status;
+    try {
+      status = new DaemonLauncher(args).run();
+    } finally {
+      System.out.flush();
+      System.err.flush();
+      out.setTarget(null);
+      err.setTarget(null);
+    }
+    writeExit(dout, status);
+    return true;
+  }
+
+  /**
+   * Sends a challenge to the client and checks its response.
+   * 
+   * @return <code>true</code> if the client knows the token of this daemon.
+   */
+  protected boolean authenticate(final DataInputStream in,
+      final DataOutputStream out) throws IOException {
+    final byte[] challenge = new byte[DaemonProtocol.CHALLENGE_SIZE];
+    random.nextBytes(challenge);
+    out.writeInt(DaemonProtocol.PROTOCOL_VERSION);
+    out.write(challenge);
+    out.flush();
+    final byte[] response = CompileWorkerProtocol.readResponse(in);
+    return MessageDigest.isEqual(response,
+        CompileWorkerProtocol.computeResponse(token, challenge));
+  }
+
+  protected void writeExit(final DataOutputStream dout, final int status)
+      throws IOException {
+    dout.writeByte(DaemonProtocol.EXIT_FRAME);
+    dout.writeInt(status);
+    dout.flush();
+  }
+
+  protected Map<Object, Object> getPersistentCache(final List<String> options) {
+    Map<Object, Object> cache = persistentCaches.get(options);
+    if (cache == null) {
+      cache = new HashMap<Object, Object>();
+      persistentCaches.put(options, cache);
+    }
+    return cache;
+  }
+
+  /**
+   * Entry point.
+   * 
+   * @param args the first argument is the {@link DaemonProtocol#DAEMON_OPTION}
+   *          optionally followed by <code>=&lt;port&gt;</code>.
+   */
+  public static void main(final String... args) {
+    final int port;
+    try {
+      port = DaemonProtocol.getPort(args[0]);
+    } catch (final NumberFormatException e) {
+      System.err.println("Invalid daemon port in '" + args[0] + "'");
+      System.exit(1);
+      return;
+    }
+    try {
+      new CompilerDaemon(port).serve();
+    } catch (final IOException e) {
+      System.err.println("Can't start compiler daemon on port " + port + ": "
+          + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * {@link Launcher} that reuses the injectors of the daemon and does not
+   * terminate the JVM.
+   */
+  protected class DaemonLauncher extends Launcher {
+
+    protected final String[] args;
+
+    protected DaemonLauncher(final String[] args) {
+      this.args = args;
+    }
+
+    protected int run() {
+      try {
+        return run(args);
+      } catch (final DaemonExit e) {
+        return e.status;
+      } catch (final RuntimeException e) {
+        reportUnexpectedError(e);
+        return 1;
+      }
+    }
+
+    /**
+     * Reports an unexpected error of the compilation to the client. The error
+     * is logged in the error manager if it has been initialized; otherwise only
+     * its message is printed.
+     */
+    protected void reportUnexpectedError(final RuntimeException e) {
+      if (CompilerDaemon.logger.isLoggable(Level.FINE))
+        CompilerDaemon.logger.log(Level.FINE,
+            "Unexpected error while serving request", e);
+      if (errorManager != null) {
+        try {
+          errorManager.logError(GenericErrors.INTERNAL_ERROR, e,
+              "Unexpected error: " + e);
+        } catch (final ADLException e1) {
+          // the error has been printed by the error manager.
+        }
+        return;
+      }
+      System.err.println("Unexpected error: " + e);
+    }
+
+    @Override
+    protected Injector getBootstrapInjector() {
+      if (bootstrapInjector == null) {
+        bootstrapInjector = super.getBootstrapInjector();
+      }
+      return bootstrapInjector;
+    }
+
+    @Override
+    protected void initInjector(final PluginManager pluginManager,
+        final Map<Object, Object> compilerContext) {
+      if (compilerInjector == null) {
+        super.initInjector(pluginManager, compilerContext);
+        compilerInjector = injector;
+      } else {
+        injector = compilerInjector;
+      }
+    }
+
+    @Override
+    protected void initCompiler() {
+      super.initCompiler();
+      // error manager is a singleton, forget errors of previous requests.
+      errorManager.clear();
+    }
+
+    @Override
+    protected Map<String, String> parserADLList(final List<String> adlList,
+        final CommandLine cmdLine) throws InvalidCommandLineException {
+      final Map<String, String> result = super.parserADLList(adlList, cmdLine);
+
+      // the persistent cache is shared by requests with the same options.
+      final List<String> options = new ArrayList<String>(Arrays.asList(args));
+      options.removeAll(adlList);
+      PersistentCacheContextHelper.setPersistentCache(compilerContext,
+          getPersistentCache(options));
+      return result;
+    }
+
+    @Override
+    protected void exit(final int status) {
+      throw new DaemonExit(status);
+    }
+  }
+
+  protected static final class DaemonExit extends RuntimeException {
+    final int status;
+
+    DaemonExit(final int status) {
+      this.status = status;
+    }
+  }
+
+  /**
+   * {@link OutputStream} that forwards written bytes to the stream of the
+   * request being served, or to the original stream between requests.
+   */
+  protected static final class SwitchableOutputStream extends OutputStream {
+    private final OutputStream    defaultTarget;
+    private volatile OutputStream target;
+
+    SwitchableOutputStream(final OutputStream defaultTarget) {
+      this.defaultTarget = defaultTarget;
+      this.target = defaultTarget;
+    }
+
+    void setTarget(final OutputStream target) {
+      this.target = (target == null) ? defaultTarget : target;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      target.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+      target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target.flush();
+    }
+  }
+}
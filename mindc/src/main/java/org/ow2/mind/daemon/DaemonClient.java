@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.ow2.mind.Launcher;
+import org.ow2.mind.compilation.CompileWorkerProtocol;
+
+/**
+ * Thin client of the {@link CompilerDaemon}. Forwards its command line to the
+ * daemon and prints the output of the compilation. If no daemon is listening or
+ * if the daemon rejects the request, the compilation is executed locally. The
+ * client authenticates itself with the token of the daemon, which is read in
+ * the {@link DaemonProtocol#getTokenFile(int) token file} of the daemon.
+ */
+public final class DaemonClient {
+  private DaemonClient() {
+  }
+
+  /**
+   * Entry point. The first argument must be either
+   * {@link DaemonProtocol#CLIENT_OPTION} or {@link DaemonProtocol#STOP_OPTION}
+   * (optionally followed by <code>=&lt;port&gt;</code>), the remaining
+   * arguments are forwarded to the daemon.
+   * 
+   * @param args the command line arguments.
+   * @return the exit status of the compilation.
+   */
+  public static int main(final String... args) {
+    final int port;
+    try {
+      port = DaemonProtocol.getPort(args[0]);
+    } catch (final NumberFormatException e) {
+      System.err.println("Invalid daemon port in '" + args[0] + "'");
+      return 1;
+    }
+    final String[] compilerArgs = Arrays.copyOfRange(args, 1, args.length);
+
+    if (args[0].startsWith(DaemonProtocol.STOP_OPTION)) {
+      try {
+        final int status = sendRequest(port, DaemonProtocol.STOP_REQUEST,
+            compilerArgs);
+        if (status == DaemonProtocol.REJECTED_STATUS) {
+          System.err.println("Compiler daemon on port " + port
+              + " rejected the stop request");
+          return 1;
+        }
+        return 0;
+      } catch (final IOException e) {
+        System.err.println("Can't stop compiler daemon on port " + port + ": "
+            + e.getMessage());
+        return 1;
+      }
+    }
+
+    int status;
+    try {
+      status = sendRequest(port, DaemonProtocol.COMPILE_REQUEST, compilerArgs);
+    } catch (final ConnectException e) {
+      // no daemon is running.
+      status = DaemonProtocol.REJECTED_STATUS;
+    } catch (final IOException e) {
+      System.err.println("Communication error with compiler daemon: "
+          + e.getMessage());
+      return 1;
+    }
+
+    if (status == DaemonProtocol.REJECTED_STATUS) {
+      // compile locally
+      return new Launcher().run(compilerArgs);
+    }
+    return status;
+  }
+
+  /**
+   * Sends a request to the daemon listening on the given port.
+   * 
+   * @return the exit status of the request, or
+   *         {@link DaemonProtocol#REJECTED_STATUS} if the daemon rejected the
+   *         client or the request.
+   * @throws ConnectException if no daemon is listening on the given port.
+   * @throws IOException if a communication error occurs.
+   */
+  static int sendRequest(final int port, final byte kind,
+      final String... args) throws IOException {
+    final String token = DaemonProtocol.readToken(port);
+    final Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(socket.getOutputStream()));
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          socket.getInputStream()));
+      // the daemon may have been started by another user, or by another
+      // version of the compiler.
+      if (token == null || !authenticate(token, in, out))
+        return DaemonProtocol.REJECTED_STATUS;
+
+      out.writeByte(kind);
+      out.writeUTF(System.getProperty("user.dir"));
+      out.writeInt(args.length);
+      for (final String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+
+      byte[] buffer = new byte[1024];
+      while (true) {
+        final byte frameKind;
+        try {
+          frameKind = in.readByte();
+        } catch (final EOFException e) {
+          throw new IOException("Connection closed by compiler daemon");
+        }
+        final int value = in.readInt();
+        if (frameKind == DaemonProtocol.EXIT_FRAME) {
+          System.out.flush();
+          System.err.flush();
+          return value;
+        }
+        if (value > buffer.length) buffer = new byte[value];
+        in.readFully(buffer, 0, value);
+        final PrintStream ps = (frameKind == DaemonProtocol.ERR_FRAME)
+            ? System.err
+            : System.out;
+        ps.write(buffer, 0, value);
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static boolean authenticate(final String token,
+      final DataInputStream in, final DataOutputStream out) throws IOException {
+    if (in.readInt() != DaemonProtocol.PROTOCOL_VERSION) return false;
+    final byte[] challenge = new byte[DaemonProtocol.CHALLENGE_SIZE];
+    in.readFully(challenge);
+    CompileWorkerProtocol.writeResponse(out,
+        CompileWorkerProtocol.computeResponse(token, challenge));
+    out.flush();
+    return in.readInt() == DaemonProtocol.ACCEPTED_STATUS;
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+
+package org.ow2.mind.daemon;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+/**
+ * Constants and helper methods shared by the {@link CompilerDaemon} and the
+ * {@link DaemonClient}.
+ * <p>
+ * A connection starts with a handshake: the daemon sends its protocol version
+ * (an <code>int</code>) and a random challenge of {@link #CHALLENGE_SIZE}
+ * bytes, the client answers with the response to the challenge (see
+ * {@link org.ow2.mind.compilation.CompileWorkerProtocol#computeResponse}),
+ * computed with the token of the daemon. The token is generated by the daemon
+ * when it starts, and is stored in a {@link #getTokenFile token file} that
+ * only the user who started the daemon can read. The daemon then sends
+ * {@link #ACCEPTED_STATUS}, or {@link #REJECTED_STATUS} if the response is
+ * wrong, in which case it closes the connection.
+ * <p>
+ * A request is then made of the request kind (a <code>byte</code>), the working
+ * directory of the client (an UTF string), the number of arguments (an
+ * <code>int</code>) followed by the arguments (UTF strings). The daemon answers
+ * with a sequence of frames. Each frame starts with its kind (a
+ * <code>byte</code>) followed by an <code>int</code>. For {@link #OUT_FRAME}
+ * and {@link #ERR_FRAME} frames, the <code>int</code> is the number of bytes
+ * that follow. For the {@link #EXIT_FRAME} frame, which ends the answer, the
+ * <code>int</code> is the exit status of the compilation.
+ */
+public final class DaemonProtocol {
+  private DaemonProtocol() {
+  }
+
+  /** The command line option that starts the daemon. */
+  public static final String DAEMON_OPTION    = "--daemon";
+
+  /** The command line option that forwards a compilation to the daemon. */
+  public static final String CLIENT_OPTION    = "--daemon-client";
+
+  /** The command line option that stops a running daemon. */
+  public static final String STOP_OPTION      = "--daemon-stop";
+
+  /** The default loopback port the daemon listens on. */
+  public static final int    DEFAULT_PORT     = 4876;
+
+  public static final int    PROTOCOL_VERSION = 2;
+
+  /** The size, in bytes, of the challenge sent by the daemon. */
+  public static final int    CHALLENGE_SIZE   = 16;
+
+  public static final byte   COMPILE_REQUEST  = 1;
+  public static final byte   STOP_REQUEST     = 2;
+
+  public static final byte   OUT_FRAME        = 1;
+  public static final byte   ERR_FRAME        = 2;
+  public static final byte   EXIT_FRAME       = 3;
+
+  /** Status returned by the daemon when the client is authenticated. */
+  public static final int    ACCEPTED_STATUS  = 0;
+
+  /**
+   * Status returned by the daemon when the client is not authenticated, and
+   * exit status returned by the daemon when it can't serve a request (for
+   * instance if the working directory of the client differs from the one of
+   * the daemon). The client is expected to compile locally in this case.
+   */
+  public static final int    REJECTED_STATUS  = -1;
+
+  public static boolean isDaemonOption(final String arg) {
+    return arg.equals(DAEMON_OPTION) || arg.startsWith(DAEMON_OPTION + "=");
+  }
+
+  public static boolean isClientOption(final String arg) {
+    return arg.equals(CLIENT_OPTION) || arg.startsWith(CLIENT_OPTION + "=")
+        || arg.equals(STOP_OPTION) || arg.startsWith(STOP_OPTION + "=");
+  }
+
+  /**
+   * Returns the port specified by the given option (i.e.
+   * <code>--option=&lt;port&gt;</code>), or the {@link #DEFAULT_PORT} if the
+   * option does not specify a port.
+   * 
+   * @param arg a daemon option.
+   * @return the port specified by the given option.
+   * @throws NumberFormatException if the specified port is not a number.
+   */
+  public static int getPort(final String arg) {
+    final int i = arg.indexOf('=');
+    if (i == -1) return DEFAULT_PORT;
+    return Integer.parseInt(arg.substring(i + 1));
+  }
+
+  /**
+   * Returns the file that contains the token of the daemon listening on the
+   * given port. The file is in the home directory of the user.
+   * 
+   * @param port the port of the daemon.
+   * @return the token file of the daemon.
+   */
+  public static File getTokenFile(final int port) {
+    return new File(System.getProperty("user.home"), ".mind-daemon-" + port
+        + ".token");
+  }
+
+  /**
+   * Reads the token of the daemon listening on the given port.
+   * 
+   * @param port the port of the daemon.
+   * @return the token of the daemon, or <code>null</code> if its token file
+   *         does not exist.
+   * @throws IOException if the token file can't be read.
+   */
+  public static String readToken(final int port) throws IOException {
+    final File tokenFile = getTokenFile(port);
+    if (!tokenFile.isFile()) return null;
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(tokenFile), "UTF-8"));
+    try {
+      return reader.readLine();
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * An {@link OutputStream} that sends written bytes as {@link #OUT_FRAME} or
+   * {@link #ERR_FRAME} frames.
+   */
+  public static final class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte             frameKind;
+
+    public FrameOutputStream(final DataOutputStream out, final byte frameKind) {
+      this.out = out;
+      this.frameKind = frameKind;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+      if (len == 0) return;
+      // frames of both streams are written on the same socket.
+      synchronized (out) {
+        out.writeByte(frameKind);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2014 Schneider-Electric
+ *
+ * This file is part of "Mind Compiler" is free software: you can redistribute 
+ * it and/or modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT 
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact: mind@ow2.org
+ *
+ * Authors: Schneider Electric Mind4SE
+ * Contributors: 
+ */
+package org.ow2.mind.daemon;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ow2.mind.compilation.CompileWorkerProtocol;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestCompilerDaemon {
+
+  File   testDir;
+  File   srcDir;
+  File   outDir;
+  int    port;
+  Thread daemonThread;
+
+  @BeforeMethod(alwaysRun = true)
+  public void setUp() throws Exception {
+    testDir = new File("target/test/compiler-daemon");
+    deleteAll(testDir);
+    srcDir = new File(testDir, "src");
+    outDir = new File(testDir, "out");
+    new File(srcDir, "daemontest").mkdirs();
+    outDir.mkdirs();
+    writeFile(new File(srcDir, "daemontest/Hello.adl"),
+        "primitive daemontest.Hello {\n" //
+            + "  source {{\n" //
+            + "    int hello;\n" //
+            + "  }};\n" //
+            + "}\n");
+
+    final ServerSocket socket = new ServerSocket(0);
+    port = socket.getLocalPort();
+    socket.close();
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void tearDown() throws Exception {
+    if (daemonThread != null) {
+      DaemonClient.sendRequest(port, DaemonProtocol.STOP_REQUEST);
+      daemonThread.join(10000);
+      daemonThread = null;
+    }
+  }
+
+  @Test(groups = {"functional"})
+  public void testRoundTrip() throws Exception {
+    startDaemon();
+    final String[] args = {"--src-path=" + srcDir.getPath(),
+        "--out-path=" + outDir.getPath(), "--no-bin", "--def2c",
+        "daemontest.Hello"};
+
+    assertEquals(DaemonClient.sendRequest(port,
+        DaemonProtocol.COMPILE_REQUEST, args), 0);
+    final Map<String, String> firstOutputs = readOutputs(outDir);
+    assertFalse(firstOutputs.isEmpty());
+
+    // the second request reuses the cached definitions and must regenerate
+    // the same files.
+    deleteAll(outDir);
+    outDir.mkdirs();
+    assertEquals(DaemonClient.sendRequest(port,
+        DaemonProtocol.COMPILE_REQUEST, args), 0);
+    assertEquals(readOutputs(outDir), firstOutputs);
+  }
+
+  @Test(groups = {"functional"})
+  public void testErrorStatus() throws Exception {
+    startDaemon();
+    assertEquals(DaemonClient.sendRequest(port,
+        DaemonProtocol.COMPILE_REQUEST, "--src-path=" + srcDir.getPath(),
+        "--out-path=" + outDir.getPath(), "--def2c", "daemontest.Unknown"), 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testUnauthenticatedRequests() throws Exception {
+    startDaemon();
+
+    // a client with a wrong token is rejected before it can send a request.
+    final Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      final DataInputStream in = new DataInputStream(socket.getInputStream());
+      final DataOutputStream out = new DataOutputStream(
+          socket.getOutputStream());
+      assertEquals(in.readInt(), DaemonProtocol.PROTOCOL_VERSION);
+      final byte[] challenge = new byte[DaemonProtocol.CHALLENGE_SIZE];
+      in.readFully(challenge);
+      CompileWorkerProtocol.writeResponse(out,
+          CompileWorkerProtocol.computeResponse("wrong", challenge));
+      out.flush();
+      assertEquals(in.readInt(), DaemonProtocol.REJECTED_STATUS);
+    } finally {
+      socket.close();
+    }
+
+    // a client that does not know the token is rejected too.
+    final File tokenFile = DaemonProtocol.getTokenFile(port);
+    final String token = readFile(tokenFile);
+    writeFile(tokenFile, "wrong");
+    try {
+      assertEquals(DaemonClient.sendRequest(port,
+          DaemonProtocol.STOP_REQUEST), DaemonProtocol.REJECTED_STATUS);
+    } finally {
+      writeFile(tokenFile, token);
+    }
+
+    // the daemon is still running.
+    assertEquals(DaemonClient.sendRequest(port,
+        DaemonProtocol.COMPILE_REQUEST, "--src-path=" + srcDir.getPath(),
+        "--out-path=" + outDir.getPath(), "--def2c", "daemontest.Unknown"), 1);
+  }
+
+  @Test(groups = {"functional"})
+  public void testTokenFileDeletedOnStop() throws Exception {
+    startDaemon();
+    final File tokenFile = DaemonProtocol.getTokenFile(port);
+    assertTrue(tokenFile.isFile());
+
+    assertEquals(DaemonClient.sendRequest(port, DaemonProtocol.STOP_REQUEST),
+        0);
+    daemonThread.join(10000);
+    daemonThread = null;
+    assertFalse(tokenFile.exists());
+  }
+
+  @Test(groups = {"functional"})
+  public void testLocalFallbackStatus() throws Exception {
+    // no daemon is listening, the compilation is executed locally.
+    assertEquals(DaemonClient.main(DaemonProtocol.CLIENT_OPTION + "=" + port,
+        "--src-path=" + srcDir.getPath(), "--out-path=" + outDir.getPath(),
+        "--def2c", "daemontest.Unknown"), 1);
+    assertEquals(DaemonClient.main(DaemonProtocol.CLIENT_OPTION + "=" + port,
+        "--src-path=" + srcDir.getPath(), "--out-path=" + outDir.getPath(),
+        "--def2c", "daemontest.Hello"), 0);
+  }
+
+  protected void startDaemon() throws Exception {
+    final CompilerDaemon daemon = new CompilerDaemon(port);
+    daemonThread = new Thread("compiler-daemon") {
+      @Override
+      public void run() {
+        try {
+          daemon.serve();
+        } catch (final IOException e) {
+          // the test fails when the daemon can't be reached.
+        }
+      }
+    };
+    daemonThread.setDaemon(true);
+    daemonThread.start();
+
+    // wait until the daemon listens, its token file is written once its port
+    // is bound.
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (!DaemonProtocol.getTokenFile(port).isFile()) {
+      assertTrue(System.currentTimeMillis() < deadline,
+          "Compiler daemon not started");
+      Thread.sleep(100);
+    }
+    // a request without ADL name is rejected by the command line parser.
+    DaemonClient.sendRequest(port, DaemonProtocol.COMPILE_REQUEST,
+        "--src-path=" + srcDir.getPath());
+  }
+
+  /** Returns the content of the generated C files, by relative path. */
+  protected static Map<String, String> readOutputs(final File dir)
+      throws IOException {
+    final Map<String, String> outputs = new TreeMap<String, String>();
+    readOutputs(dir, "", outputs);
+    return outputs;
+  }
+
+  private static void readOutputs(final File dir, final String prefix,
+      final Map<String, String> outputs) throws IOException {
+    for (final File file : dir.listFiles()) {
+      final String path = prefix + file.getName();
+      if (file.isDirectory()) {
+        readOutputs(file, path + "/", outputs);
+      } else if (path.endsWith(".c") || path.endsWith(".h")) {
+        outputs.put(path, readFile(file));
+      }
+    }
+  }
+
+  protected static String readFile(final File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  protected static void writeFile(final File file, final String content)
+      throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  protected static void deleteAll(final File file) {
+    if (file.isDirectory()) {
+      for (final File subFile : file.listFiles()) {
+        deleteAll(subFile);
+      }
+    }
+    file.delete();
+  }
+}